@@ -0,0 +1,105 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.benchmark;
+
+import com.widowcrawler.terminator.model.RobotsTxt;
+import com.widowcrawler.terminator.model.Rule;
+import com.widowcrawler.terminator.parse.ByteParser;
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Loads the robots.txt files bundled under src/jmh/resources/corpus.
+ *
+ * @author Scott Mansfield
+ */
+final class Corpus {
+
+    private Corpus() {}
+
+    static byte[] load(String name) {
+        try (InputStream inputStream = Corpus.class.getResourceAsStream("/corpus/" + name + ".txt")) {
+            if (inputStream == null) {
+                throw new IllegalArgumentException("No corpus file named " + name);
+            }
+
+            return IOUtils.toByteArray(inputStream);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    static RobotsTxt parse(String name) {
+        try {
+            return new ByteParser(load(name)).parse();
+        } catch (Exception ex) {
+            throw new IllegalStateException("Corpus file " + name + " doesn't parse", ex);
+        }
+    }
+
+    /**
+     * @return the biggest group in the file, which is what dominates build and lookup time
+     */
+    static Set<Rule> largestRuleSet(RobotsTxt robotsTxt) {
+        return robotsTxt.getRuleSets().values().stream()
+                .max(Comparator.comparingInt(Set::size))
+                .orElseThrow(() -> new IllegalStateException("Corpus file has no groups"));
+    }
+
+    /**
+     * Builds a repeatable mix of paths: rule paths themselves, rule paths with extra segments and query strings,
+     * and paths that match nothing.
+     */
+    static String[] paths(Set<Rule> rules, int count) {
+        Random random = new Random(17);
+        List<String> rulePaths = new ArrayList<>();
+
+        for (Rule rule : rules) {
+            String path = rule.getPathMatch().replace("*", "x").replace("$", "");
+            rulePaths.add(path.startsWith("/") ? path : "/" + path);
+        }
+
+        String[] paths = new String[count];
+
+        for (int i = 0; i < count; i++) {
+            String base = rulePaths.isEmpty() ? "/" : rulePaths.get(random.nextInt(rulePaths.size()));
+
+            switch (random.nextInt(4)) {
+                case 0:
+                    paths[i] = base;
+                    break;
+                case 1:
+                    paths[i] = base + "/page-" + random.nextInt(1000) + ".html";
+                    break;
+                case 2:
+                    paths[i] = base + "?id=" + random.nextInt(100000) + "&sort=asc";
+                    break;
+                default:
+                    paths[i] = "/unmatched/" + random.nextInt(1000) + "/index.html";
+                    break;
+            }
+        }
+
+        return paths;
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.benchmark;
+
+import com.widowcrawler.terminator.eval.RuleEvaluator;
+import com.widowcrawler.terminator.model.Rule;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checking paths against a compiled evaluator. Each invocation checks {@link #PATHS} paths, so divide the score by
+ * that for per-path numbers.
+ *
+ * @author Scott Mansfield
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluateBenchmark {
+
+    static final int PATHS = 1024;
+
+    @Param({"small", "huge", "wildcards", "many_agents"})
+    public String corpus;
+
+    private RuleEvaluator ruleEvaluator;
+    private RuleEvaluator offHeapEvaluator;
+    private String[] paths;
+    private List<String> pathList;
+
+    @Setup
+    public void setup() {
+        Set<Rule> rules = Corpus.largestRuleSet(Corpus.parse(corpus));
+
+        ruleEvaluator = RuleEvaluator.build(rules);
+        offHeapEvaluator = RuleEvaluator.buildOffHeap(rules);
+        paths = Corpus.paths(rules, PATHS);
+        pathList = Arrays.asList(paths);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PATHS)
+    public void isAllowed(Blackhole blackhole) {
+        for (String path : paths) {
+            blackhole.consume(ruleEvaluator.isAllowed(path));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PATHS)
+    public void isAllowedOffHeap(Blackhole blackhole) {
+        for (String path : paths) {
+            blackhole.consume(offHeapEvaluator.isAllowed(path));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PATHS)
+    public void evaluate(Blackhole blackhole) {
+        blackhole.consume(ruleEvaluator.evaluate(pathList));
+    }
+}
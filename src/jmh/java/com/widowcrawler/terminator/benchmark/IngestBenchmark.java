@@ -0,0 +1,125 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.benchmark;
+
+import com.widowcrawler.terminator.cache.HostKey;
+import com.widowcrawler.terminator.eval.RuleInterner;
+import com.widowcrawler.terminator.ingest.BulkIngester;
+import com.widowcrawler.terminator.ingest.IngestSink;
+import com.widowcrawler.terminator.ingest.RobotsDocument;
+import com.widowcrawler.terminator.store.RobotsStore;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How {@link BulkIngester} scales with its number of workers, with and without a shared {@link RuleInterner}. The
+ * archive mixes the corpus files with small per-host variations, so some groups are shared and some aren't, like a
+ * real crawl. Scores are documents per second; compare them across {@code parallelism} on a machine with at least
+ * that many cores.
+ *
+ * With {@code sink=discard} the results are dropped, so only parsing and compiling are measured. With
+ * {@code sink=store} they go through {@link IngestSink#into} to a fresh {@link RobotsStore}, whose write lock the
+ * workers share, so the gap between the two at high parallelism is the cost of serializing the appends.
+ *
+ * @author Scott Mansfield
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IngestBenchmark {
+
+    private static final int DOCUMENTS = 2000;
+    private static final String[] CORPORA = {"small", "wildcards", "many_agents"};
+
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    @Param({"false", "true"})
+    public boolean intern;
+
+    @Param({"discard", "store"})
+    public String sink;
+
+    private List<RobotsDocument> archive;
+    private BulkIngester ingester;
+    private Path storeDirectory;
+    private RobotsStore store;
+    private IngestSink ingestSink;
+
+    @Setup
+    public void setup() {
+        archive = new ArrayList<>(DOCUMENTS);
+
+        for (int i = 0; i < DOCUMENTS; i++) {
+            String body = new String(Corpus.load(CORPORA[i % CORPORA.length]), StandardCharsets.UTF_8);
+
+            // every fifth host adds a rule of its own, the rest serve one of the stock files
+            if (i % 5 == 0) {
+                body = "User-agent: *\nDisallow: /host-" + i + "/\n\n" + body;
+            }
+
+            archive.add(new RobotsDocument(new HostKey("http", "host" + i + ".example.com", 80),
+                    body.getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void newIngester() throws IOException {
+        // a fresh interner for each pass over the archive, so it has misses to fill as well as hits
+        ingester = BulkIngester.builder()
+                .parallelism(parallelism)
+                .interner(intern ? new RuleInterner() : null)
+                .build();
+
+        if ("store".equals(sink)) {
+            // and a fresh store, so every pass appends to an empty one
+            storeDirectory = Files.createTempDirectory("ingest-benchmark");
+            store = RobotsStore.builder(storeDirectory)
+                    .segmentSize(64 * 1024 * 1024)
+                    .expectedHosts(DOCUMENTS)
+                    .build();
+            ingestSink = IngestSink.into(store);
+        } else {
+            ingestSink = (hostKey, robotsTxt) -> {};
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeStore() throws IOException {
+        if (store != null) {
+            store.close();
+            FileUtils.deleteDirectory(storeDirectory.toFile());
+            store = null;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DOCUMENTS)
+    public long ingest() throws Exception {
+        return ingester.ingest(archive, ingestSink).getSucceeded();
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.benchmark;
+
+import com.widowcrawler.terminator.eval.MultiAgentEvaluator;
+import com.widowcrawler.terminator.eval.RuleEvaluator;
+import com.widowcrawler.terminator.model.RobotsTxt;
+import com.widowcrawler.terminator.model.Rule;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Checking paths for several crawlers at once, one evaluator per agent against a single merged one. Each invocation
+ * checks {@link #PATHS} paths for every agent, so divide the score by that for per-path numbers.
+ *
+ * @author Scott Mansfield
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultiAgentBenchmark {
+
+    static final int PATHS = 1024;
+
+    @Param({"huge", "many_agents"})
+    public String corpus;
+
+    private RuleEvaluator[] ruleEvaluators;
+    private MultiAgentEvaluator multiAgentEvaluator;
+    private String[] paths;
+
+    @Setup
+    public void setup() {
+        RobotsTxt robotsTxt = Corpus.parse(corpus);
+
+        // the three biggest groups with a name of their own, plus whatever applies to everyone else
+        List<String> userAgents = robotsTxt.getRuleSets().entrySet().stream()
+                .filter(entry -> !entry.getKey().equals("*"))
+                .sorted(Comparator.comparingInt(entry -> -entry.getValue().size()))
+                .limit(3)
+                .map(entry -> entry.getKey())
+                .collect(Collectors.toCollection(ArrayList::new));
+        userAgents.add("UnknownBot");
+
+        Set<Rule> rules = new HashSet<>();
+        ruleEvaluators = new RuleEvaluator[userAgents.size()];
+
+        for (int i = 0; i < userAgents.size(); i++) {
+            ruleEvaluators[i] = robotsTxt.getEvaluator(userAgents.get(i));
+
+            if (robotsTxt.getRuleSet(userAgents.get(i)) != null) {
+                rules.addAll(robotsTxt.getRuleSet(userAgents.get(i)));
+            }
+        }
+
+        multiAgentEvaluator = robotsTxt.getEvaluator(userAgents);
+        paths = Corpus.paths(rules, PATHS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PATHS)
+    public void perAgent(Blackhole blackhole) {
+        for (String path : paths) {
+            for (RuleEvaluator ruleEvaluator : ruleEvaluators) {
+                blackhole.consume(ruleEvaluator.isAllowed(path));
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PATHS)
+    public void merged(Blackhole blackhole) {
+        for (String path : paths) {
+            blackhole.consume(multiAgentEvaluator.evaluate(path));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.benchmark;
+
+import com.widowcrawler.terminator.ParseException;
+import com.widowcrawler.terminator.model.RobotsTxt;
+import com.widowcrawler.terminator.parse.ByteParser;
+import com.widowcrawler.terminator.parse.Parser;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a whole robots.txt body, with the String based {@link Parser} (including decoding the body, as
+ * {@link Parser#Parser(java.io.InputStream)} does) and with {@link ByteParser}.
+ *
+ * @author Scott Mansfield
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"small", "huge", "wildcards", "many_agents"})
+    public String corpus;
+
+    private byte[] data;
+
+    @Setup
+    public void setup() {
+        data = Corpus.load(corpus);
+    }
+
+    @Benchmark
+    public RobotsTxt parser() throws ParseException {
+        return new Parser(new String(data, StandardCharsets.UTF_8)).parse();
+    }
+
+    @Benchmark
+    public RobotsTxt byteParser() throws ParseException {
+        return new ByteParser(data).parse();
+    }
+}
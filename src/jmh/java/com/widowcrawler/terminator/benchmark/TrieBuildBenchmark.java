@@ -0,0 +1,58 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.benchmark;
+
+import com.widowcrawler.terminator.eval.RuleEvaluator;
+import com.widowcrawler.terminator.model.Rule;
+import com.widowcrawler.terminator.trie.RuleTrie;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the node graph, and going all the way to a ready-to-query evaluator.
+ *
+ * @author Scott Mansfield
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrieBuildBenchmark {
+
+    @Param({"small", "huge", "wildcards", "many_agents"})
+    public String corpus;
+
+    private Set<Rule> rules;
+
+    @Setup
+    public void setup() {
+        rules = Corpus.largestRuleSet(Corpus.parse(corpus));
+    }
+
+    @Benchmark
+    public RuleTrie build() {
+        return RuleTrie.build(rules);
+    }
+
+    @Benchmark
+    public RuleEvaluator buildEvaluator() {
+        return RuleEvaluator.build(rules);
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator;
+
+/**
+ * Thrown when a robots.txt can't be retrieved, e.g. because the server returned an error.
+ *
+ * @author Scott Mansfield
+ */
+public class FetchException extends Exception {
+
+    private int statusCode;
+    private long retryAfterMillis;
+
+    private void init(int statusCode, long retryAfterMillis) {
+        this.statusCode = statusCode;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public FetchException(int statusCode, String message) {
+        super(message);
+        init(statusCode, -1L);
+    }
+
+    /**
+     * @param retryAfterMillis how long the server asked us to wait before trying again, or -1 if it didn't say
+     */
+    public FetchException(int statusCode, String message, long retryAfterMillis) {
+        super(message);
+        init(statusCode, retryAfterMillis);
+    }
+
+    public FetchException(int statusCode, String message, Throwable cause) {
+        super(message, cause);
+        init(statusCode, -1L);
+    }
+
+    /**
+     * @return the HTTP status code, or 0 if no response was received
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return how long the server asked us to wait before trying again, from its Retry-After header, or -1 if it
+     *         didn't say
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -15,28 +15,51 @@
  */
 package com.widowcrawler.terminator;
 
+import com.widowcrawler.terminator.fetch.RobotsTxtFetcher;
 import com.widowcrawler.terminator.model.RobotsTxt;
-import com.widowcrawler.terminator.parse.Parser;
+import com.widowcrawler.terminator.parse.IncrementalParser;
+import com.widowcrawler.terminator.parse.ParseOptions;
 
-import javax.ws.rs.client.ClientBuilder;
-import javax.ws.rs.client.Invocation;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.core.Response;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author Scott Mansfield
  */
 public class Terminator {
     public static RobotsTxt parse(String url) throws ParseException {
+        Response response = RobotsTxtFetcher.getDefault().getClient().target(url).request().get();
 
-        Invocation invocation = ClientBuilder.newClient().target(url).request().buildGet();
-
-        String data = invocation.invoke().readEntity(String.class);
+        try {
+            return IncrementalParser.parse(response.readEntity(InputStream.class));
+        } catch (IOException ex) {
+            // reading the whole entity up front would have surfaced this the same way
+            throw new ProcessingException(ex);
+        } finally {
+            response.close();
+        }
+    }
 
-        return new Parser(data).parse();
+    /**
+     * Fetches and parses without blocking the caller. Unlike {@link #parse(String)}, HTTP errors are handled as
+     * described in {@link RobotsTxtFetcher}.
+     */
+    public static CompletableFuture<RobotsTxt> parseAsync(String url) {
+        return RobotsTxtFetcher.getDefault().fetch(url);
     }
 
     public static RobotsTxt parse(InputStream inputStream) throws IOException, ParseException {
-        return new Parser(inputStream).parse();
+        return parse(inputStream, ParseOptions.DEFAULT);
+    }
+
+    public static RobotsTxt parse(InputStream inputStream, ParseOptions options) throws IOException, ParseException {
+        try {
+            return IncrementalParser.parse(inputStream, options);
+        } finally {
+            inputStream.close();
+        }
     }
 }
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.cache;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Locale;
+
+/**
+ * Identifies the robots.txt that governs a URL: its scheme, host and port. Scheme and host are lower cased and the
+ * default port is filled in, so every URL on the same site maps to an equal key.
+ *
+ * @author Scott Mansfield
+ */
+public final class HostKey {
+
+    private final String scheme;
+    private final String host;
+    private final int port;
+
+    public HostKey(String scheme, String host, int port) {
+        this.scheme = scheme.toLowerCase(Locale.ROOT);
+        this.host = host.toLowerCase(Locale.ROOT);
+        this.port = port < 0 ? defaultPort(this.scheme) : port;
+
+        if (this.port < 0) {
+            throw new IllegalArgumentException("No port given and no default port for scheme " + scheme);
+        }
+    }
+
+    /**
+     * @param url any absolute http or https URL on the site
+     * @throws IllegalArgumentException if the URL is not absolute or can't be parsed
+     */
+    public static HostKey fromUrl(String url) {
+        URI uri;
+
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException ex) {
+            throw new IllegalArgumentException("Invalid URL: " + url, ex);
+        }
+
+        if (StringUtils.isEmpty(uri.getScheme()) || StringUtils.isEmpty(uri.getHost())) {
+            throw new IllegalArgumentException("URL must have a scheme and host: " + url);
+        }
+
+        return new HostKey(uri.getScheme(), uri.getHost(), uri.getPort());
+    }
+
+    private static int defaultPort(String scheme) {
+        switch (scheme) {
+            case "http":
+                return 80;
+            case "https":
+                return 443;
+            default:
+                return -1;
+        }
+    }
+
+    public String getScheme() {
+        return scheme;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getRobotsTxtUrl() {
+        return toString() + "/robots.txt";
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 1;
+
+        hash += 37 * scheme.hashCode();
+        hash += 11 * host.hashCode();
+        hash += 7 * port;
+
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof HostKey)) {
+            return false;
+        }
+
+        HostKey other = (HostKey) obj;
+
+        return this.port == other.port &&
+                this.scheme.equals(other.scheme) &&
+                this.host.equals(other.host);
+    }
+
+    @Override
+    public String toString() {
+        boolean defaultPort = port == defaultPort(scheme);
+        return scheme + "://" + host + (defaultPort ? "" : ":" + port);
+    }
+}
@@ -0,0 +1,561 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.cache;
+
+import com.widowcrawler.terminator.eval.AgentIndex;
+import com.widowcrawler.terminator.eval.RuleEvaluator;
+import com.widowcrawler.terminator.eval.RuleInterner;
+import com.widowcrawler.terminator.fetch.RobotsTxtFetcher;
+import com.widowcrawler.terminator.metrics.GlobalMetrics;
+import com.widowcrawler.terminator.model.RobotsTxt;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * A concurrent cache of parsed robots.txt files, keyed by {@link HostKey}.
+ *
+ * Entries expire a fixed time after they were loaded, and the cache is bounded either by entry count or by a total
+ * weight such as the compiled size of the rules. Entries are split across independently locked segments, each evicting
+ * in least recently used order, so lookups on different hosts rarely contend.
+ *
+ * Loading is single-flight: when many threads miss on the same host at once, one of them runs the loader and the rest
+ * wait for its result. Failed loads are not cached. Expired entries stay put until they are evicted or replaced, so
+ * the loader can revalidate them with {@link RobotsTxtLoader#reload(HostKey, RobotsTxt)} rather than start over.
+ *
+ * With {@link Builder#refreshAhead(long, TimeUnit)}, hosts that are looked up often are reloaded in the background
+ * shortly before they expire, so lookups on busy hosts never wait for the network. Until the new rules are ready the
+ * old ones keep being served, and they are swapped in as a whole.
+ *
+ * @author Scott Mansfield
+ */
+public class RobotsTxtCache {
+
+    private static final int MAX_SEGMENTS = 16;
+    private static final int REFRESH_THREADS = 4;
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Weighs a robots.txt by the estimated memory used by its compiled rule groups, for use with
+     * {@link Builder#maximumWeight(long, ToLongFunction)}. Groups shared through a {@link RuleInterner} count in full
+     * against every host that uses them.
+     */
+    public static long compiledSize(RobotsTxt robotsTxt) {
+        // compiles each group once, and the evaluators stay cached on the robots.txt for lookups
+        return robotsTxt.getAgentIndex().estimatedSizeInBytes();
+    }
+
+    private static RobotsTxt compileOffHeap(RobotsTxt robotsTxt) {
+        AgentIndex agentIndex = AgentIndex.build(robotsTxt.getRuleSets(), RuleEvaluator::buildOffHeap);
+        return robotsTxt.withRules(robotsTxt.getRuleSets(), agentIndex);
+    }
+
+    private final RobotsTxtLoader loader;
+    private final long ttlNanos;
+    private final ToLongFunction<RobotsTxt> weigher;
+    private final LongSupplier ticker;
+
+    private final long refreshAheadNanos;
+    private final int refreshMinAccesses;
+    private final RateLimiter refreshLimiter;
+    private final Executor refreshExecutor;
+
+    private final Segment[] segments;
+    private final ConcurrentHashMap<HostKey, CompletableFuture<RobotsTxt>> loading;
+
+    private RobotsTxtCache(Builder builder) {
+        this.loader = builder.loader;
+        this.ttlNanos = builder.ttlNanos;
+        this.weigher = builder.weigher;
+        this.ticker = builder.ticker;
+
+        this.refreshAheadNanos = builder.refreshAheadNanos;
+        this.refreshMinAccesses = builder.refreshMinAccesses;
+        this.refreshLimiter = new RateLimiter(builder.maxRefreshesPerSecond, ticker.getAsLong());
+        this.refreshExecutor = builder.refreshExecutor;
+
+        // Small caches get a single segment so eviction is exact LRU
+        int segmentCount = 1;
+
+        while (segmentCount < MAX_SEGMENTS && segmentCount * 32L <= builder.maxWeight) {
+            segmentCount <<= 1;
+        }
+
+        this.segments = new Segment[segmentCount];
+
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment((builder.maxWeight + segmentCount - 1) / segmentCount);
+        }
+
+        this.loading = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Gets the robots.txt for a host, loading it if it isn't cached or has expired.
+     *
+     * @throws ExecutionException if the loader failed, wrapping whatever it threw
+     */
+    public RobotsTxt get(HostKey hostKey) throws ExecutionException {
+        long now = ticker.getAsLong();
+        Entry entry = segmentFor(hostKey).get(hostKey, now);
+
+        if (entry != null) {
+            GlobalMetrics.get().cacheHit();
+
+            if (refreshAheadNanos > 0 && entry.isRefreshDue(now, refreshMinAccesses)) {
+                refreshAsync(hostKey, entry, now);
+            }
+
+            return entry.robotsTxt;
+        }
+
+        GlobalMetrics.get().cacheMiss();
+
+        CompletableFuture<RobotsTxt> load = new CompletableFuture<>();
+        CompletableFuture<RobotsTxt> inFlight = loading.putIfAbsent(hostKey, load);
+
+        if (inFlight != null) {
+            return await(inFlight);
+        }
+
+        try {
+            // Another thread may have finished loading between our miss and claiming the load
+            RobotsTxt robotsTxt = getIfPresent(hostKey);
+
+            if (robotsTxt == null) {
+                RobotsTxt expired = segmentFor(hostKey).getExpired(hostKey);
+                robotsTxt = expired == null ? loader.load(hostKey) : loader.reload(hostKey, expired);
+                put(hostKey, robotsTxt);
+            }
+
+            load.complete(robotsTxt);
+            return robotsTxt;
+        } catch (Exception ex) {
+            load.completeExceptionally(ex);
+            throw new ExecutionException(ex);
+        } finally {
+            loading.remove(hostKey, load);
+        }
+    }
+
+    /**
+     * @param url any absolute URL on the host
+     */
+    public RobotsTxt get(String url) throws ExecutionException {
+        return get(HostKey.fromUrl(url));
+    }
+
+    /**
+     * @return the cached robots.txt, or null if there is none or it has expired
+     */
+    public RobotsTxt getIfPresent(HostKey hostKey) {
+        Entry entry = segmentFor(hostKey).get(hostKey, ticker.getAsLong());
+        return entry == null ? null : entry.robotsTxt;
+    }
+
+    public void put(HostKey hostKey, RobotsTxt robotsTxt) {
+        long now = ticker.getAsLong();
+        long expiresAt = now + ttlNanos;
+        long refreshAt = expiresAt;
+
+        if (refreshAheadNanos > 0) {
+            // spread refreshes over the first half of the window so hosts loaded together don't refresh together
+            refreshAt = expiresAt - refreshAheadNanos + ThreadLocalRandom.current().nextLong(refreshAheadNanos / 2 + 1);
+        }
+
+        Entry entry = new Entry(robotsTxt, weigher.applyAsLong(robotsTxt), expiresAt, refreshAt);
+        segmentFor(hostKey).put(hostKey, entry, now);
+    }
+
+    public void invalidate(HostKey hostKey) {
+        segmentFor(hostKey).remove(hostKey);
+    }
+
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * @return the number of cached entries, possibly including some that have expired but not yet been removed
+     */
+    public long size() {
+        long size = 0L;
+
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+
+        return size;
+    }
+
+    private void refreshAsync(HostKey hostKey, Entry entry, long now) {
+        // a host that's already loading is taken care of, and doesn't cost a refresh
+        if (loading.containsKey(hostKey) || !refreshLimiter.tryAcquire(now)) {
+            return;
+        }
+
+        CompletableFuture<RobotsTxt> refresh = new CompletableFuture<>();
+
+        if (loading.putIfAbsent(hostKey, refresh) != null) {
+            return;
+        }
+
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    RobotsTxt robotsTxt = loader.reload(hostKey, entry.robotsTxt);
+                    put(hostKey, robotsTxt);
+                    refresh.complete(robotsTxt);
+                } catch (Exception ex) {
+                    // the old entry stays until it expires, and later lookups can try again
+                    refresh.completeExceptionally(ex);
+                } finally {
+                    loading.remove(hostKey, refresh);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            loading.remove(hostKey, refresh);
+            refresh.complete(entry.robotsTxt);
+        }
+    }
+
+    private static RobotsTxt await(CompletableFuture<RobotsTxt> future) throws ExecutionException {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            throw new ExecutionException(ex.getCause());
+        }
+    }
+
+    private Segment segmentFor(HostKey hostKey) {
+        int hash = hostKey.hashCode();
+        hash ^= (hash >>> 16);
+
+        return segments[hash & (segments.length - 1)];
+    }
+
+    private static class Entry {
+        final RobotsTxt robotsTxt;
+        final long weight;
+        final long expiresAt;
+        final long refreshAt;
+
+        // lookups since the entry was loaded, counted under the segment lock
+        int accesses;
+
+        Entry(RobotsTxt robotsTxt, long weight, long expiresAt, long refreshAt) {
+            this.robotsTxt = robotsTxt;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+            this.refreshAt = refreshAt;
+        }
+
+        boolean isRefreshDue(long now, int minAccesses) {
+            return now - refreshAt >= 0 && accesses >= minAccesses;
+        }
+    }
+
+    // A token bucket holding up to a second's worth of permits
+    private static class RateLimiter {
+        private final double permitsPerNano;
+        private final double maxPermits;
+        private double permits;
+        private long lastRefill;
+
+        RateLimiter(double permitsPerSecond, long now) {
+            this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.maxPermits = Math.max(1.0, permitsPerSecond);
+            this.permits = maxPermits;
+            this.lastRefill = now;
+        }
+
+        synchronized boolean tryAcquire(long now) {
+            permits = Math.min(maxPermits, permits + (now - lastRefill) * permitsPerNano);
+            lastRefill = now;
+
+            if (permits < 1.0) {
+                return false;
+            }
+
+            permits -= 1.0;
+            return true;
+        }
+    }
+
+    private static class Segment {
+        private final long maxWeight;
+        private final LinkedHashMap<HostKey, Entry> entries;
+        private long weight;
+
+        Segment(long maxWeight) {
+            this.maxWeight = maxWeight;
+            // access order, so iteration starts at the least recently used entry
+            this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        }
+
+        synchronized Entry get(HostKey hostKey, long now) {
+            Entry entry = entries.get(hostKey);
+
+            if (entry == null) {
+                return null;
+            }
+
+            if (now - entry.expiresAt >= 0) {
+                // kept for revalidation, see getExpired
+                return null;
+            }
+
+            entry.accesses++;
+            return entry;
+        }
+
+        synchronized RobotsTxt getExpired(HostKey hostKey) {
+            Entry entry = entries.get(hostKey);
+            return entry == null ? null : entry.robotsTxt;
+        }
+
+        synchronized void put(HostKey hostKey, Entry entry, long now) {
+            Entry previous = entries.put(hostKey, entry);
+
+            if (previous != null) {
+                weight -= previous.weight;
+            }
+
+            weight += entry.weight;
+
+            // Drop least recently used entries until we fit, never evicting the new entry
+            Iterator<Map.Entry<HostKey, Entry>> iterator = entries.entrySet().iterator();
+
+            while (weight > maxWeight && iterator.hasNext()) {
+                Map.Entry<HostKey, Entry> eldest = iterator.next();
+
+                if (eldest.getKey().equals(hostKey)) {
+                    continue;
+                }
+
+                iterator.remove();
+                weight -= eldest.getValue().weight;
+                GlobalMetrics.get().cacheEviction();
+            }
+        }
+
+        synchronized void remove(HostKey hostKey) {
+            Entry entry = entries.remove(hostKey);
+
+            if (entry != null) {
+                weight -= entry.weight;
+            }
+        }
+
+        synchronized void clear() {
+            entries.clear();
+            weight = 0L;
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+
+    // Recompiles what the loader returns, unless a reload handed back the rules that were already compiled
+    private static class CompilingLoader implements RobotsTxtLoader {
+        private final RobotsTxtLoader loader;
+        private final Function<RobotsTxt, RobotsTxt> compiler;
+
+        CompilingLoader(RobotsTxtLoader loader, Function<RobotsTxt, RobotsTxt> compiler) {
+            this.loader = loader;
+            this.compiler = compiler;
+        }
+
+        @Override
+        public RobotsTxt load(HostKey hostKey) throws Exception {
+            return compiler.apply(loader.load(hostKey));
+        }
+
+        @Override
+        public RobotsTxt reload(HostKey hostKey, RobotsTxt previous) throws Exception {
+            RobotsTxt robotsTxt = loader.reload(hostKey, previous);
+            return robotsTxt.getAgentIndex() == previous.getAgentIndex() ? robotsTxt : compiler.apply(robotsTxt);
+        }
+    }
+
+    public static class Builder {
+        private RobotsTxtLoader loader;
+        private long ttlNanos = TimeUnit.HOURS.toNanos(24);
+        private long maxWeight = 10_000;
+        private ToLongFunction<RobotsTxt> weigher = robotsTxt -> 1L;
+        private LongSupplier ticker = System::nanoTime;
+        private boolean offHeap;
+        private RuleInterner interner;
+        private long refreshAheadNanos;
+        private int refreshMinAccesses = 2;
+        private double maxRefreshesPerSecond = 10.0;
+        private Executor refreshExecutor;
+
+        private Builder() {}
+
+        /**
+         * Defaults to {@link RobotsTxtFetcher#getDefault()}, see {@link RobotsTxtFetcher#asLoader()}.
+         */
+        public Builder loader(RobotsTxtLoader loader) {
+            this.loader = loader;
+            return this;
+        }
+
+        /**
+         * Defaults to 24 hours, the longest most crawlers keep a robots.txt.
+         */
+        public Builder expireAfterLoad(long duration, TimeUnit unit) {
+            this.ttlNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Bounds the cache by number of hosts. Defaults to 10,000.
+         */
+        public Builder maximumSize(long maxEntries) {
+            this.maxWeight = maxEntries;
+            this.weigher = robotsTxt -> 1L;
+            return this;
+        }
+
+        /**
+         * Bounds the cache by total weight instead of number of hosts.
+         *
+         * @see RobotsTxtCache#compiledSize(RobotsTxt)
+         */
+        public Builder maximumWeight(long maxWeight, ToLongFunction<RobotsTxt> weigher) {
+            this.maxWeight = maxWeight;
+            this.weigher = weigher;
+            return this;
+        }
+
+        /**
+         * The source of time in nanoseconds, for tests. Defaults to {@link System#nanoTime()}.
+         */
+        public Builder ticker(LongSupplier ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        /**
+         * Compiles the cached rules into direct memory, see {@link RuleEvaluator#buildOffHeap(java.util.Set)}, so a
+         * large cache adds little to garbage collection pauses.
+         */
+        public Builder compileOffHeap() {
+            this.offHeap = true;
+            return this;
+        }
+
+        /**
+         * Shares identical rule groups, and their compiled evaluators, between the cached hosts. Pass an interner
+         * built with {@link RuleEvaluator#buildOffHeap(java.util.Set)} to also compile off heap.
+         */
+        public Builder intern(RuleInterner interner) {
+            this.interner = interner;
+            return this;
+        }
+
+        /**
+         * Reloads busy hosts in the background during the last stretch of their lifetime, so they are never looked up
+         * expired. Each entry's refresh starts at a random point in the first half of this window, on the first
+         * {@link RobotsTxtCache#get(HostKey)} after that point, provided the host has been looked up at least
+         * {@link #refreshMinAccesses(int)} times since it was loaded. Hosts that aren't busy just expire.
+         */
+        public Builder refreshAhead(long duration, TimeUnit unit) {
+            this.refreshAheadNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * How many lookups make a host busy enough to refresh ahead. Defaults to 2.
+         */
+        public Builder refreshMinAccesses(int refreshMinAccesses) {
+            this.refreshMinAccesses = refreshMinAccesses;
+            return this;
+        }
+
+        /**
+         * Caps how many background refreshes start per second across the whole cache. Refreshes over the limit are
+         * tried again on a later lookup. Defaults to 10.
+         */
+        public Builder maxRefreshesPerSecond(double maxRefreshesPerSecond) {
+            this.maxRefreshesPerSecond = maxRefreshesPerSecond;
+            return this;
+        }
+
+        /**
+         * Where background refreshes run. Defaults to a small pool of daemon threads.
+         */
+        public Builder refreshExecutor(Executor refreshExecutor) {
+            this.refreshExecutor = refreshExecutor;
+            return this;
+        }
+
+        public RobotsTxtCache build() {
+            if (maxWeight <= 0) {
+                throw new IllegalArgumentException("The cache must be able to hold something");
+            }
+
+            if (refreshAheadNanos < 0 || refreshAheadNanos >= ttlNanos || maxRefreshesPerSecond <= 0) {
+                throw new IllegalArgumentException("Refreshes must start before entries expire, at a positive rate");
+            }
+
+            if (refreshAheadNanos > 0 && refreshExecutor == null) {
+                refreshExecutor = Executors.newFixedThreadPool(REFRESH_THREADS, runnable -> {
+                    Thread thread = new Thread(runnable, "robots-txt-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+
+            if (loader == null) {
+                loader = RobotsTxtFetcher.getDefault().asLoader();
+            }
+
+            if (interner != null) {
+                if (offHeap) {
+                    throw new IllegalStateException("The interner decides how rules compile, " +
+                            "build it with RuleEvaluator::buildOffHeap instead");
+                }
+
+                loader = new CompilingLoader(loader, interner::intern);
+            } else if (offHeap) {
+                loader = new CompilingLoader(loader, RobotsTxtCache::compileOffHeap);
+            }
+
+            return new RobotsTxtCache(this);
+        }
+    }
+}
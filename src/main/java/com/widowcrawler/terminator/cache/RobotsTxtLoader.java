@@ -0,0 +1,37 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.cache;
+
+import com.widowcrawler.terminator.model.RobotsTxt;
+
+/**
+ * Fetches and parses the robots.txt for a host when it isn't in a {@link RobotsTxtCache}.
+ *
+ * @author Scott Mansfield
+ */
+@FunctionalInterface
+public interface RobotsTxtLoader {
+    RobotsTxt load(HostKey hostKey) throws Exception;
+
+    /**
+     * Loads the robots.txt for a host whose cached copy has expired. Loaders that can revalidate, like
+     * {@link com.widowcrawler.terminator.fetch.RobotsTxtFetcher#asLoader()}, return the previous copy, or one sharing
+     * its compiled rules, when it hasn't changed. By default this just loads the file again.
+     */
+    default RobotsTxt reload(HostKey hostKey, RobotsTxt previous) throws Exception {
+        return load(hostKey);
+    }
+}
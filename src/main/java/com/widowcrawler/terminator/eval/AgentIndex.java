@@ -0,0 +1,297 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.eval;
+
+import com.widowcrawler.terminator.model.Rule;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Resolves a crawler's user agent to the group of rules that applies to it with a single hash lookup.
+ *
+ * Both the user-agent lines of the robots.txt and the crawler's own user agent are reduced to a product token: the
+ * leading run of letters, '_' and '-', lower-cased. So {@code User-agent: FooBot/1.2} applies to a crawler calling
+ * itself {@code foobot}. Groups whose tokens collide are merged, and a crawler with no group of its own gets the
+ * {@code *} group. Each group's {@link RuleEvaluator} is compiled the first time it is asked for and then reused.
+ *
+ * The last few user agents looked up are remembered as they were passed in, so looking the same one up again, e.g.
+ * once per URL, is a hash probe and a string compare that allocates nothing.
+ *
+ * Instances are thread safe.
+ *
+ * @author Scott Mansfield
+ */
+public class AgentIndex {
+
+    private static final String WILDCARD = "*";
+
+    // a power of two, crawlers rarely use more than one or two user agents
+    private static final int RESOLVED_SLOTS = 4;
+
+    private static final RuleEvaluator ALLOW_ALL = RuleEvaluator.build(Collections.emptySet());
+
+    public static AgentIndex build(Map<String, Set<Rule>> ruleSets) {
+        return build(ruleSets, Collections.emptyMap());
+    }
+
+    /**
+     * @param compiled evaluators that have already been compiled, keyed by the identity of their rule set
+     */
+    public static AgentIndex build(Map<String, Set<Rule>> ruleSets, Map<Set<Rule>, RuleEvaluator> compiled) {
+        return build(ruleSets, compiled, RuleEvaluator::build);
+    }
+
+    /**
+     * @param compiler compiles a group's rules when they are first needed, e.g. {@link RuleEvaluator#buildOffHeap(Set)}
+     */
+    public static AgentIndex build(Map<String, Set<Rule>> ruleSets, Function<Set<Rule>, RuleEvaluator> compiler) {
+        return build(ruleSets, Collections.emptyMap(), compiler);
+    }
+
+    private static AgentIndex build(Map<String, Set<Rule>> ruleSets, Map<Set<Rule>, RuleEvaluator> compiled,
+                                    Function<Set<Rule>, RuleEvaluator> compiler) {
+        Map<Set<Rule>, Group> byRuleSet = new IdentityHashMap<>();
+        Map<String, Group> groups = new HashMap<>();
+        Group wildcard = null;
+
+        for (Map.Entry<String, Set<Rule>> entry : ruleSets.entrySet()) {
+            // agents listed together share a rule set, and so share a group
+            Group group = byRuleSet.computeIfAbsent(entry.getValue(),
+                    rules -> new Group(rules, compiled.get(rules), compiler));
+
+            if (isWildcard(entry.getKey())) {
+                wildcard = merge(wildcard, group, compiler);
+                continue;
+            }
+
+            String token = normalize(entry.getKey());
+
+            if (!token.isEmpty()) {
+                groups.put(token, merge(groups.get(token), group, compiler));
+            }
+        }
+
+        return new AgentIndex(byRuleSet, groups, wildcard);
+    }
+
+    private static Group merge(Group existing, Group group, Function<Set<Rule>, RuleEvaluator> compiler) {
+        if (existing == null || existing == group) {
+            return group;
+        }
+
+        Set<Rule> merged = new HashSet<>(existing.rules);
+        merged.addAll(group.rules);
+        return new Group(merged, null, compiler);
+    }
+
+    /**
+     * @return true if the user agent line names the {@code *} group
+     */
+    public static boolean isWildcard(String userAgent) {
+        return userAgent.startsWith(WILDCARD)
+                && (userAgent.length() == 1 || Character.isWhitespace(userAgent.charAt(1)));
+    }
+
+    private static boolean isTokenChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == '-';
+    }
+
+    /**
+     * Reduces a user agent to its product token, e.g. {@code "FooBot/1.2 (+http://foo.com/bot)"} to
+     * {@code "foobot"}.
+     */
+    public static String normalize(String userAgent) {
+        int start = 0;
+
+        while (start < userAgent.length() && Character.isWhitespace(userAgent.charAt(start))) {
+            start++;
+        }
+
+        int end = start;
+
+        while (end < userAgent.length() && isTokenChar(userAgent.charAt(end))) {
+            end++;
+        }
+
+        return userAgent.substring(start, end).toLowerCase(Locale.ROOT);
+    }
+
+    private final Map<Set<Rule>, Group> byRuleSet;
+    private final Map<String, Group> groups;
+    private final Group wildcard;
+    // recent lookups by the user agent as given, created on first use; a racy cache of immutable entries
+    private Resolved[] resolved;
+
+    private AgentIndex(Map<Set<Rule>, Group> byRuleSet, Map<String, Group> groups, Group wildcard) {
+        this.byRuleSet = byRuleSet;
+        this.groups = groups;
+        this.wildcard = wildcard;
+    }
+
+    private Group resolve(String userAgent) {
+        Resolved[] slots = resolved;
+
+        if (slots == null) {
+            slots = new Resolved[RESOLVED_SLOTS];
+            resolved = slots;
+        }
+
+        int slot = userAgent.hashCode() & (RESOLVED_SLOTS - 1);
+        Resolved hit = slots[slot];
+
+        if (hit != null && (hit.userAgent == userAgent || hit.userAgent.equals(userAgent))) {
+            return hit.group;
+        }
+
+        Group group = groups.get(normalize(userAgent));
+
+        if (group == null) {
+            group = wildcard;
+        }
+
+        slots[slot] = new Resolved(userAgent, group);
+        return group;
+    }
+
+    /**
+     * @return the rules that apply to the user agent, or null if no group applies
+     */
+    public Set<Rule> getRuleSet(String userAgent) {
+        Group group = resolve(userAgent);
+        return group != null ? group.rules : null;
+    }
+
+    /**
+     * @return the compiled rules that apply to the user agent, allowing everything if no group applies
+     */
+    public RuleEvaluator getEvaluator(String userAgent) {
+        Group group = resolve(userAgent);
+        return group != null ? group.evaluator() : ALLOW_ALL;
+    }
+
+    /**
+     * @return the normalized product tokens that have a group of their own
+     */
+    public Set<String> getProductTokens() {
+        return Collections.unmodifiableSet(groups.keySet());
+    }
+
+    /**
+     * @return the rules of the {@code *} group, or null if there isn't one
+     */
+    public Set<Rule> getWildcardRuleSet() {
+        return wildcard != null ? wildcard.rules : null;
+    }
+
+    /**
+     * @return the compiled rules of the {@code *} group, or null if there isn't one
+     */
+    public RuleEvaluator getWildcardEvaluator() {
+        return wildcard != null ? wildcard.evaluator() : null;
+    }
+
+    /**
+     * Looks up a group by one of the rule sets of the robots.txt this index was built from, rather than by user agent.
+     * Unlike {@link #getEvaluator(String)} this doesn't merge groups.
+     *
+     * @return the compiled rule set, or null if the rule set isn't one of this index's
+     */
+    public RuleEvaluator getEvaluator(Set<Rule> ruleSet) {
+        Group group = byRuleSet.get(ruleSet);
+        return group != null ? group.evaluator() : null;
+    }
+
+    /**
+     * Compiles every group now, rather than when each is first looked up.
+     */
+    public void compileAll() {
+        for (Group group : distinctGroups()) {
+            group.evaluator();
+        }
+    }
+
+    /**
+     * Compiles every group, so this also makes sure later lookups never have to.
+     *
+     * @return an estimate of the heap used by the compiled rules of all groups
+     */
+    public long estimatedSizeInBytes() {
+        long size = 0L;
+
+        for (Group group : distinctGroups()) {
+            size += group.evaluator().estimatedSizeInBytes();
+        }
+
+        return size;
+    }
+
+    private Set<Group> distinctGroups() {
+        Set<Group> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        distinct.addAll(groups.values());
+
+        if (wildcard != null) {
+            distinct.add(wildcard);
+        }
+
+        return distinct;
+    }
+
+    private static final class Resolved {
+        private final String userAgent;
+        private final Group group;
+
+        Resolved(String userAgent, Group group) {
+            this.userAgent = userAgent;
+            this.group = group;
+        }
+    }
+
+    private static final class Group {
+        private final Set<Rule> rules;
+        private final Function<Set<Rule>, RuleEvaluator> compiler;
+        private volatile RuleEvaluator evaluator;
+
+        Group(Set<Rule> rules, RuleEvaluator evaluator, Function<Set<Rule>, RuleEvaluator> compiler) {
+            this.rules = rules;
+            this.evaluator = evaluator;
+            this.compiler = compiler;
+        }
+
+        RuleEvaluator evaluator() {
+            RuleEvaluator result = evaluator;
+
+            if (result == null) {
+                synchronized (this) {
+                    result = evaluator;
+
+                    if (result == null) {
+                        result = compiler.apply(rules);
+                        evaluator = result;
+                    }
+                }
+            }
+
+            return result;
+        }
+    }
+}
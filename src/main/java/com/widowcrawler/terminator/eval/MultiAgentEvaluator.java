@@ -0,0 +1,224 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.eval;
+
+import com.widowcrawler.terminator.model.Rule;
+import com.widowcrawler.terminator.model.RuleType;
+import com.widowcrawler.terminator.trie.FlatRuleTrie;
+import com.widowcrawler.terminator.trie.Match;
+import com.widowcrawler.terminator.trie.PathNormalizer;
+import com.widowcrawler.terminator.trie.PatternMatcher;
+import com.widowcrawler.terminator.trie.RuleTrie;
+import com.widowcrawler.terminator.trie.Utf8Path;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Answers for several user agents at once, e.g. a crawler's main, image and ads bots, with a single trie walk per
+ * path instead of one per agent.
+ *
+ * The rules of every agent's group are merged into one trie. The deepest rule in it that matches a path is always at
+ * least as long as the best match in each group, and the best match in each group is a prefix of it, so each node
+ * can carry the verdicts of all groups, worked out when this is built: a mask of the agents whose groups have a
+ * matching rule, and a mask of those whose best rule allows. Walking to that node is all a lookup takes. Wildcard
+ * rules are still matched per group, but only for groups that have any.
+ *
+ * Verdicts are the same as {@link RuleEvaluator#isAllowed(CharSequence)} gives for each agent on its own.
+ * Evaluators are immutable and can be shared by all crawler threads.
+ *
+ * @author Scott Mansfield
+ */
+public class MultiAgentEvaluator {
+
+    public static final int MAX_AGENTS = Long.SIZE;
+
+    private static final ThreadLocal<Utf8Path> URL_VIEW = ThreadLocal.withInitial(Utf8Path::new);
+
+    /**
+     * @param userAgents at most {@link #MAX_AGENTS}, in the order of the bits in {@link #evaluate(CharSequence)}
+     */
+    public static MultiAgentEvaluator build(AgentIndex agentIndex, List<String> userAgents) {
+        if (userAgents.size() > MAX_AGENTS) {
+            throw new IllegalArgumentException("At most " + MAX_AGENTS + " user agents can be evaluated together");
+        }
+
+        // agents that end up in the same group share its verdicts
+        Map<RuleEvaluator, Long> agentsByGroup = new IdentityHashMap<>();
+        Map<RuleEvaluator, Set<Rule>> rulesByGroup = new IdentityHashMap<>();
+
+        for (int i = 0; i < userAgents.size(); i++) {
+            RuleEvaluator group = agentIndex.getEvaluator(userAgents.get(i));
+            Set<Rule> rules = agentIndex.getRuleSet(userAgents.get(i));
+
+            agentsByGroup.merge(group, 1L << i, (a, b) -> a | b);
+            rulesByGroup.put(group, rules != null ? rules : Collections.emptySet());
+        }
+
+        Set<Rule> prefixRules = new HashSet<>();
+
+        for (Set<Rule> rules : rulesByGroup.values()) {
+            for (Rule rule : RuleTrie.prefixRules(rules)) {
+                // the merged trie is only used to find nodes, so whether a rule allows doesn't matter
+                prefixRules.add(new Rule(RuleType.DISALLOW, rule.getPathMatch()));
+            }
+        }
+
+        FlatRuleTrie trie = RuleTrie.build(prefixRules).freeze();
+        long[] matched = new long[trie.getNodeCount()];
+        long[] allowed = new long[trie.getNodeCount()];
+        List<PatternGroup> patternGroups = new ArrayList<>();
+
+        for (Map.Entry<RuleEvaluator, Long> entry : agentsByGroup.entrySet()) {
+            RuleEvaluator group = entry.getKey();
+            long agents = entry.getValue();
+            int[] matches = new int[trie.getNodeCount()];
+
+            for (Rule rule : prefixRules) {
+                int node = trie.matchNode(rule.getPathMatch());
+                int match = group.getRuleTrie().match(rule.getPathMatch());
+                matches[node] = match;
+
+                if (Match.isMatch(match)) {
+                    matched[node] |= agents;
+
+                    if (Match.isAllowed(match)) {
+                        allowed[node] |= agents;
+                    }
+                }
+            }
+
+            if (!group.getPatterns().isEmpty()) {
+                patternGroups.add(new PatternGroup(agents, group.getPatterns(), matches));
+            }
+        }
+
+        long all = userAgents.size() == MAX_AGENTS ? -1L : (1L << userAgents.size()) - 1;
+
+        return new MultiAgentEvaluator(userAgents, all, trie, matched, allowed,
+                patternGroups.toArray(new PatternGroup[patternGroups.size()]));
+    }
+
+    private final List<String> userAgents;
+    private final long allAgents;
+    private final FlatRuleTrie trie;
+    private final long[] matched;
+    private final long[] allowed;
+    private final PatternGroup[] patternGroups;
+
+    private MultiAgentEvaluator(List<String> userAgents, long allAgents, FlatRuleTrie trie, long[] matched,
+                                long[] allowed, PatternGroup[] patternGroups) {
+        this.userAgents = Collections.unmodifiableList(new ArrayList<>(userAgents));
+        this.allAgents = allAgents;
+        this.trie = trie;
+        this.matched = matched;
+        this.allowed = allowed;
+        this.patternGroups = patternGroups;
+    }
+
+    public List<String> getUserAgents() {
+        return userAgents;
+    }
+
+    /**
+     * @param path the path part of a URL, as for {@link RuleEvaluator#isAllowed(CharSequence)}
+     * @return a mask with bit {@code i} set if {@code getUserAgents().get(i)} may fetch the path
+     */
+    public long evaluate(CharSequence path) {
+        CharSequence toMatch = PathNormalizer.normalizeRequest(path);
+        int node = trie.matchNode(toMatch);
+        // a path no rule matches is allowed
+        long verdicts = allAgents;
+
+        if (node >= 0) {
+            verdicts = (verdicts & ~matched[node]) | allowed[node];
+        }
+
+        for (PatternGroup patternGroup : patternGroups) {
+            int match = node >= 0 ? patternGroup.matches[node] : Match.NONE;
+            match = Math.max(match, patternGroup.patterns.match(toMatch));
+
+            if (Match.isAllowed(match)) {
+                verdicts |= patternGroup.agents;
+            } else {
+                verdicts &= ~patternGroup.agents;
+            }
+        }
+
+        return verdicts;
+    }
+
+    /**
+     * @param url a URL held as UTF-8 bytes, as for {@link RuleEvaluator#isAllowed(byte[], int, int)}
+     * @return a mask as for {@link #evaluate(CharSequence)}
+     */
+    public long evaluate(byte[] url, int offset, int length) {
+        Utf8Path path = URL_VIEW.get();
+
+        try {
+            return evaluate(path.wrapUrl(url, offset, length));
+        } finally {
+            path.clear();
+        }
+    }
+
+    /**
+     * @param url a URL held as UTF-8 bytes between the buffer's position and limit, which are not changed
+     * @return a mask as for {@link #evaluate(CharSequence)}
+     */
+    public long evaluate(ByteBuffer url) {
+        Utf8Path path = URL_VIEW.get();
+
+        try {
+            return evaluate(path.wrapUrl(url));
+        } finally {
+            path.clear();
+        }
+    }
+
+    /**
+     * @param agent the index of the user agent in {@link #getUserAgents()}
+     */
+    public boolean isAllowed(CharSequence path, int agent) {
+        return (evaluate(path) & (1L << agent)) != 0;
+    }
+
+    /**
+     * @return the number of nodes in the merged trie
+     */
+    public int getNodeCount() {
+        return trie.getNodeCount();
+    }
+
+    private static class PatternGroup {
+        private final long agents;
+        private final PatternMatcher patterns;
+        // the group's best prefix rule match at each node of the merged trie
+        private final int[] matches;
+
+        PatternGroup(long agents, PatternMatcher patterns, int[] matches) {
+            this.agents = agents;
+            this.patterns = patterns;
+            this.matches = matches;
+        }
+    }
+}
@@ -15,8 +15,186 @@
  */
 package com.widowcrawler.terminator.eval;
 
+import com.widowcrawler.terminator.metrics.GlobalMetrics;
+import com.widowcrawler.terminator.metrics.Metrics;
+import com.widowcrawler.terminator.model.Rule;
+import com.widowcrawler.terminator.trie.CompiledRuleTrie;
+import com.widowcrawler.terminator.trie.Match;
+import com.widowcrawler.terminator.trie.PathNormalizer;
+import com.widowcrawler.terminator.trie.PatternMatcher;
+import com.widowcrawler.terminator.trie.RuleTrie;
+import com.widowcrawler.terminator.trie.Utf8Path;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
 /**
+ * Decides whether a path may be fetched under a set of rules. The longest matching rule wins, and a path that matches
+ * no rule is allowed. Wildcard rules compete with plain prefix rules on the length of their rule path.
+ *
+ * Evaluators are immutable and a single instance can be shared by all crawler threads.
+ *
  * @author Scott Mansfield
  */
 public class RuleEvaluator {
+
+    private static final ThreadLocal<Utf8Path> URL_VIEW = ThreadLocal.withInitial(Utf8Path::new);
+
+    public static RuleEvaluator build(Set<Rule> rules) {
+        return timed(() -> new RuleEvaluator(RuleTrie.build(rules)));
+    }
+
+    /**
+     * Compiles the trie into direct memory rather than onto the heap, for caches holding so many compiled rule sets
+     * that they would slow the garbage collector down. Every read from the buffer is bounds checked, so lookups take
+     * about twice as long as on the heap.
+     */
+    public static RuleEvaluator buildOffHeap(Set<Rule> rules) {
+        return timed(() -> {
+            RuleTrie ruleTrie = RuleTrie.build(rules);
+            return new RuleEvaluator(ruleTrie.freezeOffHeap(), ruleTrie.getPatterns());
+        });
+    }
+
+    private static RuleEvaluator timed(Supplier<RuleEvaluator> compiler) {
+        if (!GlobalMetrics.isEnabled()) {
+            return compiler.get();
+        }
+
+        long start = System.nanoTime();
+        RuleEvaluator ruleEvaluator = compiler.get();
+        GlobalMetrics.get().compiled(System.nanoTime() - start, ruleEvaluator.ruleTrie.getNodeCount());
+
+        return ruleEvaluator;
+    }
+
+    private final CompiledRuleTrie ruleTrie;
+    private final PatternMatcher patterns;
+
+    public RuleEvaluator(RuleTrie ruleTrie) {
+        this(ruleTrie.freeze(), ruleTrie.getPatterns());
+    }
+
+    public RuleEvaluator(CompiledRuleTrie ruleTrie, PatternMatcher patterns) {
+        this.ruleTrie = ruleTrie;
+        this.patterns = patterns;
+    }
+
+    public CompiledRuleTrie getRuleTrie() {
+        return ruleTrie;
+    }
+
+    public PatternMatcher getPatterns() {
+        return patterns;
+    }
+
+    /**
+     * @return an estimate of the memory used by the compiled rules
+     */
+    public long estimatedSizeInBytes() {
+        // this object's header and two references, plus what they point to
+        return 24L + ruleTrie.estimatedSizeInBytes() + patterns.estimatedSizeInBytes();
+    }
+
+    /**
+     * @param path the path part of a URL, including any query string, in any mix of escaped and unescaped characters
+     * @return true if the path may be fetched
+     * @see PathNormalizer
+     */
+    public boolean isAllowed(CharSequence path) {
+        Metrics metrics = GlobalMetrics.get();
+
+        if (metrics == Metrics.NOOP) {
+            return match(path);
+        }
+
+        metrics.evaluated();
+
+        if (ThreadLocalRandom.current().nextInt(GlobalMetrics.EVALUATION_SAMPLE_RATE) != 0) {
+            return match(path);
+        }
+
+        long start = System.nanoTime();
+        boolean allowed = match(path);
+        metrics.evaluationTimed(System.nanoTime() - start);
+
+        return allowed;
+    }
+
+    /**
+     * Checks a URL held as UTF-8 bytes, e.g. a slice of a fetched page, without decoding it or copying it out.
+     *
+     * @param url a whole URL, from which only the path and query are used, or just a path
+     * @return true if the path may be fetched
+     * @see Utf8Path#wrapUrl(byte[], int, int)
+     */
+    public boolean isAllowed(byte[] url, int offset, int length) {
+        Utf8Path path = URL_VIEW.get();
+
+        try {
+            return isAllowed(path.wrapUrl(url, offset, length));
+        } finally {
+            path.clear();
+        }
+    }
+
+    /**
+     * Like {@link #isAllowed(byte[], int, int)}, for the bytes between the buffer's position and limit. The buffer's
+     * position is not changed.
+     */
+    public boolean isAllowed(ByteBuffer url) {
+        Utf8Path path = URL_VIEW.get();
+
+        try {
+            return isAllowed(path.wrapUrl(url));
+        } finally {
+            path.clear();
+        }
+    }
+
+    private boolean match(CharSequence path) {
+        CharSequence toMatch = PathNormalizer.normalizeRequest(path);
+        int match = ruleTrie.match(toMatch);
+
+        if (!patterns.isEmpty()) {
+            match = Math.max(match, patterns.match(toMatch));
+        }
+
+        return Match.isAllowed(match);
+    }
+
+    /**
+     * Checks a batch of paths at once.
+     *
+     * @param paths the path parts of URLs, as for {@link #isAllowed(CharSequence)}
+     * @return a bitmap with bit {@code i} set if {@code paths.get(i)} may be fetched
+     */
+    public BitSet evaluate(List<? extends CharSequence> paths) {
+        long[] words = new long[(paths.size() + 63) >>> 6];
+
+        if (paths instanceof RandomAccess) {
+            for (int i = 0; i < paths.size(); i++) {
+                if (isAllowed(paths.get(i))) {
+                    words[i >>> 6] |= 1L << i;
+                }
+            }
+        } else {
+            int i = 0;
+
+            for (CharSequence path : paths) {
+                if (isAllowed(path)) {
+                    words[i >>> 6] |= 1L << i;
+                }
+
+                i++;
+            }
+        }
+
+        return BitSet.valueOf(words);
+    }
 }
@@ -0,0 +1,301 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.eval;
+
+import com.widowcrawler.terminator.model.RobotsTxt;
+import com.widowcrawler.terminator.model.Rule;
+import com.widowcrawler.terminator.trie.SizeEstimates;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Deduplicates rule groups by content so hosts that serve the same robots.txt rules (CMS defaults, hosting platforms,
+ * mirrors) share a single copy of the rules and a single compiled {@link RuleEvaluator} by reference.
+ *
+ * Groups are compared by their contents, so the order the rules appeared in the file doesn't matter. Groups that
+ * aren't shared still have their individual rules interned, since lines like {@code Disallow: /wp-admin/} turn up in
+ * many otherwise different files.
+ *
+ * Everything is weakly held: once no {@link RobotsTxt} refers to a group it can be collected, so a long running
+ * crawler doesn't accumulate every group it has ever seen. Interned groups are unmodifiable.
+ *
+ * This class is thread safe and meant to be shared by every thread that ingests robots.txt files. Lookups take no
+ * lock, and groups are compiled outside of any lock, so threads interning at the same time don't wait on each other.
+ * If two threads compile an equal group at once, both compile it and the first to finish wins.
+ *
+ * @author Scott Mansfield
+ */
+public class RuleInterner {
+
+    // A Rule is an object with two references
+    private static final long RULE_SIZE = SizeEstimates.object(2, 0);
+    // HashSet wrapping its HashMap
+    private static final long HASH_SET = SizeEstimates.object(1, 0);
+
+    private final Function<Set<Rule>, RuleEvaluator> compiler;
+
+    // the values point back at their own keys, weakly, so a canonical instance can be found from an equal one
+    private final WeakKeyMap<Set<Rule>, WeakReference<Set<Rule>>> groups = new WeakKeyMap<>();
+    private final WeakKeyMap<Rule, WeakReference<Rule>> rules = new WeakKeyMap<>();
+    private final WeakKeyMap<Set<Rule>, RuleEvaluator> evaluators = new WeakKeyMap<>();
+
+    private final LongAdder groupLookups = new LongAdder();
+    private final LongAdder groupHits = new LongAdder();
+    private final LongAdder ruleLookups = new LongAdder();
+    private final LongAdder ruleHits = new LongAdder();
+    private final LongAdder compileLookups = new LongAdder();
+    private final LongAdder compileHits = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+
+    /**
+     * Compiles groups with {@link RuleEvaluator#build(Set)}.
+     */
+    public RuleInterner() {
+        this(RuleEvaluator::build);
+    }
+
+    /**
+     * @param compiler how to compile a group the first time it's seen, e.g. {@link RuleEvaluator#buildOffHeap(Set)}
+     */
+    public RuleInterner(Function<Set<Rule>, RuleEvaluator> compiler) {
+        this.compiler = compiler;
+    }
+
+    /**
+     * @return an equivalent robots.txt whose rule groups are shared with every other robots.txt interned here, and
+     *         whose groups compile through {@link #compile(Set)}
+     */
+    public RobotsTxt intern(RobotsTxt robotsTxt) {
+        Map<String, Set<Rule>> ruleSets = new HashMap<>();
+        // agents listed together share a group, keep it that way
+        Map<Set<Rule>, Set<Rule>> interned = new IdentityHashMap<>();
+
+        for (Map.Entry<String, Set<Rule>> entry : robotsTxt.getRuleSets().entrySet()) {
+            ruleSets.put(entry.getKey(), interned.computeIfAbsent(entry.getValue(), this::intern));
+        }
+
+        AgentIndex agentIndex = AgentIndex.build(ruleSets, this::compile);
+
+        return robotsTxt.withRules(ruleSets, agentIndex);
+    }
+
+    /**
+     * @return the canonical, unmodifiable group with the same rules as the given one
+     */
+    public Set<Rule> intern(Set<Rule> ruleSet) {
+        groupLookups.increment();
+
+        Set<Rule> canonical = get(groups, ruleSet);
+
+        if (canonical != null) {
+            groupHits.increment();
+
+            if (canonical != ruleSet) {
+                bytesSaved.add(groupSize(ruleSet));
+            }
+
+            return canonical;
+        }
+
+        Set<Rule> internedRules = new HashSet<>();
+
+        for (Rule rule : ruleSet) {
+            internedRules.add(intern(rule));
+        }
+
+        // another thread may have interned the same group in the meantime
+        return putIfAbsent(groups, Collections.unmodifiableSet(internedRules));
+    }
+
+    /**
+     * @return the canonical rule equal to the given one
+     */
+    public Rule intern(Rule rule) {
+        ruleLookups.increment();
+
+        Rule canonical = get(rules, rule);
+
+        if (canonical == null) {
+            canonical = putIfAbsent(rules, rule);
+
+            if (canonical == rule) {
+                return rule;
+            }
+        }
+
+        ruleHits.increment();
+
+        if (canonical != rule) {
+            bytesSaved.add(ruleSize(rule));
+        }
+
+        return canonical;
+    }
+
+    /**
+     * @return the evaluator for the given group, compiled only the first time a group with the same rules is seen
+     */
+    public RuleEvaluator compile(Set<Rule> ruleSet) {
+        compileLookups.increment();
+
+        RuleEvaluator evaluator = evaluators.get(ruleSet);
+
+        if (evaluator != null) {
+            compileHits.increment();
+            bytesSaved.add(evaluator.estimatedSizeInBytes());
+            return evaluator;
+        }
+
+        // a big group can take a while, and nothing is locked while it compiles
+        evaluator = compiler.apply(ruleSet);
+
+        RuleEvaluator existing = evaluators.putIfAbsent(ruleSet, evaluator);
+        return existing != null ? existing : evaluator;
+    }
+
+    /**
+     * @return a snapshot of how often interning has found an existing copy
+     */
+    public Stats getStats() {
+        return new Stats(groupLookups.sum(), groupHits.sum(), ruleLookups.sum(), ruleHits.sum(),
+                compileLookups.sum(), compileHits.sum(), bytesSaved.sum());
+    }
+
+    private static <T> T get(WeakKeyMap<T, WeakReference<T>> map, T key) {
+        WeakReference<T> ref = map.get(key);
+        return ref == null ? null : ref.get();
+    }
+
+    /**
+     * @return the canonical copy, which is the given value unless an equal one got there first
+     */
+    private static <T> T putIfAbsent(WeakKeyMap<T, WeakReference<T>> map, T value) {
+        while (true) {
+            WeakReference<T> existing = map.putIfAbsent(value, new WeakReference<>(value));
+
+            if (existing == null) {
+                return value;
+            }
+
+            T canonical = existing.get();
+
+            if (canonical != null) {
+                return canonical;
+            }
+
+            // collected just after it was found, its entry goes with the next write
+        }
+    }
+
+    private static long ruleSize(Rule rule) {
+        String pathMatch = rule.getPathMatch();
+        return RULE_SIZE + (pathMatch == null ? 0L : SizeEstimates.string(pathMatch.length()));
+    }
+
+    private static long groupSize(Set<Rule> ruleSet) {
+        long size = HASH_SET + SizeEstimates.hashMap(ruleSet.size());
+
+        for (Rule rule : ruleSet) {
+            size += ruleSize(rule);
+        }
+
+        return size;
+    }
+
+    /**
+     * Counters since the interner was created. The bytes saved are an estimate of the heap that would have been
+     * used by duplicate rules, groups and compiled evaluators had they not been shared.
+     */
+    public static class Stats {
+        private final long groupLookups;
+        private final long groupHits;
+        private final long ruleLookups;
+        private final long ruleHits;
+        private final long compileLookups;
+        private final long compileHits;
+        private final long estimatedBytesSaved;
+
+        Stats(long groupLookups, long groupHits, long ruleLookups, long ruleHits, long compileLookups,
+              long compileHits, long estimatedBytesSaved) {
+            this.groupLookups = groupLookups;
+            this.groupHits = groupHits;
+            this.ruleLookups = ruleLookups;
+            this.ruleHits = ruleHits;
+            this.compileLookups = compileLookups;
+            this.compileHits = compileHits;
+            this.estimatedBytesSaved = estimatedBytesSaved;
+        }
+
+        public long getGroupLookups() {
+            return groupLookups;
+        }
+
+        public long getGroupHits() {
+            return groupHits;
+        }
+
+        public double getGroupHitRate() {
+            return hitRate(groupHits, groupLookups);
+        }
+
+        public long getRuleLookups() {
+            return ruleLookups;
+        }
+
+        public long getRuleHits() {
+            return ruleHits;
+        }
+
+        public double getRuleHitRate() {
+            return hitRate(ruleHits, ruleLookups);
+        }
+
+        public long getCompileLookups() {
+            return compileLookups;
+        }
+
+        public long getCompileHits() {
+            return compileHits;
+        }
+
+        public double getCompileHitRate() {
+            return hitRate(compileHits, compileLookups);
+        }
+
+        public long getEstimatedBytesSaved() {
+            return estimatedBytesSaved;
+        }
+
+        private static double hitRate(long hits, long lookups) {
+            return lookups == 0 ? 0.0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Stats{groupHitRate=%.3f, ruleHitRate=%.3f, compileHitRate=%.3f, " +
+                    "estimatedBytesSaved=%d}", getGroupHitRate(), getRuleHitRate(), getCompileHitRate(),
+                    estimatedBytesSaved);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.eval;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A concurrent map with weakly held keys compared by equality, like a {@link java.util.WeakHashMap} that doesn't
+ * need a lock around it. Entries whose keys have been collected are removed, through a {@link ReferenceQueue}, on the
+ * next write.
+ *
+ * Lookups go through a reusable per-thread {@link Lookup} that compares equal to the stored keys, so a hit allocates
+ * nothing; a weak reference made just for the lookup would be allocated every time.
+ *
+ * @author Scott Mansfield
+ */
+final class WeakKeyMap<K, V> {
+
+    private static final ThreadLocal<Lookup> LOOKUP = ThreadLocal.withInitial(Lookup::new);
+
+    // keys are Keys; a Lookup is only ever passed in, never stored
+    private final ConcurrentHashMap<Object, V> map = new ConcurrentHashMap<>();
+    private final ReferenceQueue<K> queue = new ReferenceQueue<>();
+
+    V get(K key) {
+        Lookup lookup = LOOKUP.get();
+        lookup.referent = key;
+
+        try {
+            return map.get(lookup);
+        } finally {
+            // don't keep the key reachable from the thread
+            lookup.referent = null;
+        }
+    }
+
+    /**
+     * @return the value already mapped to an equal key, or null if this one was added
+     */
+    V putIfAbsent(K key, V value) {
+        expunge();
+        return map.putIfAbsent(new Key<>(key, queue), value);
+    }
+
+    private void expunge() {
+        Reference<? extends K> collected;
+
+        while ((collected = queue.poll()) != null) {
+            // a cleared key is only equal to itself, so this removes exactly its entry
+            map.remove(collected);
+        }
+    }
+
+    private static final class Key<K> extends WeakReference<K> {
+        // kept so the entry can still be found after the key is cleared
+        private final int hash;
+
+        Key(K referent, ReferenceQueue<? super K> queue) {
+            super(referent, queue);
+            this.hash = referent.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (other == this) {
+                return true;
+            }
+
+            if (other instanceof Lookup) {
+                return other.equals(this);
+            }
+
+            if (!(other instanceof Key)) {
+                return false;
+            }
+
+            Object referent = get();
+            return referent != null && referent.equals(((Key<?>) other).get());
+        }
+    }
+
+    /**
+     * Stands in for a strongly held key while looking it up. Equal to a {@link Key} whose referent equals its own.
+     */
+    private static final class Lookup {
+        private Object referent;
+
+        @Override
+        public int hashCode() {
+            return referent.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return other == this;
+            }
+
+            Object stored = ((Key<?>) other).get();
+            return stored != null && referent.equals(stored);
+        }
+    }
+}
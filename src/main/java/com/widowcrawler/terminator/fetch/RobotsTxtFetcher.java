@@ -0,0 +1,558 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.fetch;
+
+import com.widowcrawler.terminator.FetchException;
+import com.widowcrawler.terminator.cache.HostKey;
+import com.widowcrawler.terminator.cache.RobotsTxtLoader;
+import com.widowcrawler.terminator.metrics.GlobalMetrics;
+import com.widowcrawler.terminator.model.RobotsTxt;
+import com.widowcrawler.terminator.model.Validators;
+import com.widowcrawler.terminator.parse.ByteParser;
+import com.widowcrawler.terminator.parse.IncrementalParser;
+import com.widowcrawler.terminator.parse.ParseOptions;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.glassfish.jersey.client.ClientProperties;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.io.Closeable;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches and parses robots.txt files asynchronously over one shared, reusable JAX-RS client.
+ *
+ * At most a fixed number of requests are in flight at once; the rest wait in a queue without holding a thread, so
+ * callers can ask for thousands of hosts at the same time. The client's connections are kept alive and reused
+ * between requests, and every response is closed so its connection goes back to the pool. Bodies are parsed as they
+ * are read, and reading stops at the {@link ParseOptions} byte limit.
+ *
+ * Status codes follow the robots.txt RFC: a 2xx body is parsed, a 4xx means there are no restrictions and yields an
+ * empty {@link RobotsTxt}, and anything else fails with a {@link FetchException}, which crawlers should treat as
+ * "disallow everything" for now. The exception is 429 Too Many Requests: the server is throttling us, not saying
+ * there's no robots.txt, so the request is retried after the delay its Retry-After header asks for, or with
+ * exponential backoff if it has none. Waiting requests don't hold a slot. If the retries run out, or the server asks
+ * for a longer wait than {@link Builder#maxRetryDelay(long, TimeUnit)}, the fetch fails like a 5xx, with the
+ * requested delay in {@link FetchException#getRetryAfterMillis()}.
+ *
+ * Every result carries {@link Validators}: the response's ETag and Last-Modified, and a SHA-256 hash of the body.
+ * Passing a stale result back to {@link #fetch(String, RobotsTxt)} sends a conditional request, and if the server
+ * answers 304 Not Modified, or sends a body with the same hash, the stale result is reused as it is, compiled rules
+ * and all, without parsing anything.
+ *
+ * Closing the fetcher fails every request still waiting for a slot or a retry.
+ *
+ * @author Scott Mansfield
+ */
+public class RobotsTxtFetcher implements Closeable {
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private static final class DefaultHolder {
+        private static final RobotsTxtFetcher INSTANCE = builder().build();
+    }
+
+    /**
+     * @return a process-wide fetcher with the default settings, created on first use
+     */
+    public static RobotsTxtFetcher getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private final Client client;
+    private final String userAgent;
+    private final ParseOptions parseOptions;
+    private final Semaphore permits;
+    private final Queue<Request> pending;
+    private final int maxRetries;
+    private final long retryBackoffMillis;
+    private final long maxRetryDelayMillis;
+    // requests waiting to be retried after a 429, failed if we're closed first
+    private final Set<Request> retrying;
+    private final ScheduledExecutorService retryScheduler;
+    // how many times drain() was asked for while it was already running, see drain()
+    private final AtomicInteger drainRequests;
+    private volatile boolean closed;
+
+    private RobotsTxtFetcher(Builder builder) {
+        this.client = ClientBuilder.newClient()
+                .property(ClientProperties.CONNECT_TIMEOUT, (int) builder.connectTimeoutMillis)
+                .property(ClientProperties.READ_TIMEOUT, (int) builder.readTimeoutMillis)
+                .property(ClientProperties.FOLLOW_REDIRECTS, true)
+                .property(ClientProperties.ASYNC_THREADPOOL_SIZE, builder.maxConcurrentRequests);
+
+        this.userAgent = builder.userAgent;
+        this.parseOptions = builder.parseOptions;
+        this.permits = new Semaphore(builder.maxConcurrentRequests);
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.maxRetries = builder.maxRetries;
+        this.retryBackoffMillis = builder.retryBackoffMillis;
+        this.maxRetryDelayMillis = builder.maxRetryDelayMillis;
+        this.retrying = ConcurrentHashMap.newKeySet();
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "robots-txt-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.drainRequests = new AtomicInteger();
+    }
+
+    /**
+     * @return the shared client, for callers that want to reuse its connections for other requests
+     */
+    public Client getClient() {
+        return client;
+    }
+
+    /**
+     * @param url the full URL of the robots.txt
+     * @return a future completed with the parsed file, or exceptionally with a {@link FetchException},
+     *         {@link com.widowcrawler.terminator.ParseException} or transport error
+     */
+    public CompletableFuture<RobotsTxt> fetch(String url) {
+        return fetch(url, null);
+    }
+
+    public CompletableFuture<RobotsTxt> fetch(HostKey hostKey) {
+        return fetch(hostKey.getRobotsTxtUrl());
+    }
+
+    /**
+     * Revalidates a robots.txt fetched earlier from the same URL.
+     *
+     * @param previous the earlier result, or null to fetch unconditionally
+     * @return a future completed with the previous result, or a copy of it sharing its compiled rules, if the file
+     *         hasn't changed, and with the newly parsed file otherwise
+     */
+    public CompletableFuture<RobotsTxt> fetch(String url, RobotsTxt previous) {
+        Request request = new Request(url, previous);
+
+        pending.add(request);
+        drain();
+
+        return request.result;
+    }
+
+    public CompletableFuture<RobotsTxt> fetch(HostKey hostKey, RobotsTxt previous) {
+        return fetch(hostKey.getRobotsTxtUrl(), previous);
+    }
+
+    /**
+     * @return a loader for {@link com.widowcrawler.terminator.cache.RobotsTxtCache} that fetches with this fetcher
+     *         and revalidates expired entries instead of downloading them again
+     */
+    public RobotsTxtLoader asLoader() {
+        return new RobotsTxtLoader() {
+            @Override
+            public RobotsTxt load(HostKey hostKey) throws Exception {
+                return await(fetch(hostKey));
+            }
+
+            @Override
+            public RobotsTxt reload(HostKey hostKey, RobotsTxt previous) throws Exception {
+                return await(fetch(hostKey, previous));
+            }
+        };
+    }
+
+    /**
+     * @return the number of requests waiting for a free slot
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Starts pending requests while there are free slots. Only one thread drains at a time; a call made meanwhile,
+     * including one from a request that finished straight away on the draining thread, makes it go round again
+     * instead of recursing, so a long queue of requests that fail to start can't overflow the stack.
+     */
+    private void drain() {
+        if (drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+
+        int requests = 1;
+
+        do {
+            while (!closed && !pending.isEmpty() && permits.tryAcquire()) {
+                Request request = pending.poll();
+
+                if (request == null) {
+                    permits.release();
+                    break;
+                }
+
+                if (!start(request)) {
+                    permits.release();
+                }
+            }
+
+            if (closed) {
+                failPending();
+            }
+
+            requests = drainRequests.addAndGet(-requests);
+        } while (requests != 0);
+    }
+
+    private void failPending() {
+        for (Request request = pending.poll(); request != null; request = pending.poll()) {
+            request.result.completeExceptionally(new FetchException(0, "Fetcher closed before fetching " + request.url));
+        }
+    }
+
+    private static RobotsTxt await(CompletableFuture<RobotsTxt> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof Exception) {
+                throw (Exception) ex.getCause();
+            }
+
+            throw ex;
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            // every JVM is required to have SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * @return false if the request failed without being sent, in which case its slot is free again
+     */
+    private boolean start(Request request) {
+        request.timed = GlobalMetrics.isEnabled();
+
+        if (request.timed) {
+            request.startNanos = System.nanoTime();
+        }
+
+        try {
+            Invocation.Builder invocation = client.target(request.url)
+                    .request()
+                    .header(HttpHeaders.USER_AGENT, userAgent);
+
+            if (request.previous != null) {
+                Validators validators = request.previous.getValidators();
+
+                if (validators.getETag() != null) {
+                    invocation.header(HttpHeaders.IF_NONE_MATCH, validators.getETag());
+                }
+
+                if (validators.getLastModified() != null) {
+                    invocation.header(HttpHeaders.IF_MODIFIED_SINCE, validators.getLastModified());
+                }
+            }
+
+            invocation.async().get(request);
+            return true;
+        } catch (RuntimeException ex) {
+            request.fail(ex);
+            return false;
+        }
+    }
+
+    private void finished() {
+        permits.release();
+        drain();
+    }
+
+    /**
+     * @return the delay a Retry-After header asks for, in either of its forms, or -1 if it's missing or malformed
+     */
+    static long retryAfterMillis(String retryAfter, long nowMillis) {
+        if (retryAfter == null) {
+            return -1L;
+        }
+
+        String value = retryAfter.trim();
+
+        try {
+            if (!value.isEmpty() && Character.isDigit(value.charAt(0))) {
+                return TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+            }
+
+            long at = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return Math.max(0L, at - nowMillis);
+        } catch (NumberFormatException | DateTimeParseException ex) {
+            return -1L;
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        retryScheduler.shutdownNow();
+        client.close();
+
+        for (Request request : retrying) {
+            if (retrying.remove(request)) {
+                request.result.completeExceptionally(
+                        new FetchException(429, "Fetcher closed while waiting to retry " + request.url));
+            }
+        }
+
+        drain();
+    }
+
+    private class Request implements InvocationCallback<Response> {
+        private final String url;
+        private final RobotsTxt previous;
+        private final CompletableFuture<RobotsTxt> result;
+        // whether metrics were enabled when the request was sent, and when that was
+        private boolean timed;
+        private long startNanos;
+        private int retries;
+
+        Request(String url, RobotsTxt previous) {
+            this.url = url;
+            this.previous = previous;
+            this.result = new CompletableFuture<>();
+        }
+
+        @Override
+        public void completed(Response response) {
+            try {
+                int status = response.getStatus();
+                recordFetch(status);
+
+                if (status == Response.Status.NOT_MODIFIED.getStatusCode() && previous != null) {
+                    result.complete(notModified(response));
+                } else if (status >= 200 && status < 300) {
+                    result.complete(parse(response));
+                } else if (status == TOO_MANY_REQUESTS) {
+                    tooManyRequests(response);
+                } else if (status >= 400 && status < 500) {
+                    result.complete(new RobotsTxt(new HashMap<>(), new HashSet<>()));
+                } else {
+                    result.completeExceptionally(new FetchException(status, "Unexpected status " + status + " for " + url));
+                }
+            } catch (Exception ex) {
+                result.completeExceptionally(ex);
+            } finally {
+                response.close();
+                finished();
+            }
+        }
+
+        private void tooManyRequests(Response response) {
+            long retryAfter = retryAfterMillis(response.getHeaderString(HttpHeaders.RETRY_AFTER),
+                    System.currentTimeMillis());
+            long delay = retryAfter >= 0 ? retryAfter : retryBackoffMillis << Math.min(retries, 30);
+
+            if (retries >= maxRetries || delay > maxRetryDelayMillis) {
+                result.completeExceptionally(new FetchException(TOO_MANY_REQUESTS,
+                        "Too many requests for " + url + " after " + retries + " retries", retryAfter));
+                return;
+            }
+
+            retries++;
+            retrying.add(this);
+
+            try {
+                retryScheduler.schedule(this::retry, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ex) {
+                // closed
+                retrying.remove(this);
+                result.completeExceptionally(new FetchException(TOO_MANY_REQUESTS, "Fetcher closed", ex));
+            }
+        }
+
+        private void retry() {
+            if (retrying.remove(this)) {
+                pending.add(this);
+                drain();
+            }
+        }
+
+        private RobotsTxt notModified(Response response) {
+            Validators validators = previous.getValidators();
+            String eTag = response.getHeaderString(HttpHeaders.ETAG);
+            String lastModified = response.getHeaderString(HttpHeaders.LAST_MODIFIED);
+
+            // a 304 may update the validators, but the body is the one we already have
+            Validators updated = new Validators(
+                    eTag != null ? eTag : validators.getETag(),
+                    lastModified != null ? lastModified : validators.getLastModified(),
+                    validators.getContentHash());
+
+            return updated.equals(validators) ? previous : previous.withValidators(updated);
+        }
+
+        private RobotsTxt parse(Response response) throws Exception {
+            MessageDigest digest = newDigest();
+            // only what the parser reads is hashed, so hashes agree however the body was read
+            InputStream body = new DigestInputStream(
+                    new BoundedInputStream(response.readEntity(InputStream.class), parseOptions.getMaxBytes() + 1L),
+                    digest);
+
+            if (previous == null) {
+                RobotsTxt robotsTxt = IncrementalParser.parse(body, parseOptions);
+                // the parser may stop a little short of the bound
+                IOUtils.skip(body, Long.MAX_VALUE);
+
+                return robotsTxt.withValidators(validators(response, digest.digest()));
+            }
+
+            byte[] bytes = IOUtils.toByteArray(body);
+            Validators validators = validators(response, digest.digest());
+
+            if (previous.getValidators().hasSameContent(validators.getContentHash())) {
+                return validators.equals(previous.getValidators()) ? previous : previous.withValidators(validators);
+            }
+
+            return new ByteParser(bytes, parseOptions).parse().withValidators(validators);
+        }
+
+        private Validators validators(Response response, byte[] contentHash) {
+            return new Validators(response.getHeaderString(HttpHeaders.ETAG),
+                    response.getHeaderString(HttpHeaders.LAST_MODIFIED), contentHash);
+        }
+
+        private void recordFetch(int statusCode) {
+            if (timed) {
+                GlobalMetrics.get().fetched(System.nanoTime() - startNanos, statusCode);
+            }
+        }
+
+        @Override
+        public void failed(Throwable throwable) {
+            fail(throwable);
+            finished();
+        }
+
+        private void fail(Throwable throwable) {
+            recordFetch(0);
+            result.completeExceptionally(new FetchException(0, "Failed to fetch " + url, throwable));
+        }
+    }
+
+    public static class Builder {
+        private int maxConcurrentRequests = 64;
+        private int maxRetries = 2;
+        private long retryBackoffMillis = TimeUnit.SECONDS.toMillis(1);
+        private long maxRetryDelayMillis = TimeUnit.MINUTES.toMillis(1);
+        private long connectTimeoutMillis = TimeUnit.SECONDS.toMillis(10);
+        private long readTimeoutMillis = TimeUnit.SECONDS.toMillis(30);
+        private String userAgent = "terminator";
+        private ParseOptions parseOptions = ParseOptions.DEFAULT;
+
+        private Builder() {}
+
+        /**
+         * Also the number of threads the client uses for I/O. Defaults to 64.
+         */
+        public Builder maxConcurrentRequests(int maxConcurrentRequests) {
+            this.maxConcurrentRequests = maxConcurrentRequests;
+            return this;
+        }
+
+        /**
+         * How many times a request answered with 429 Too Many Requests is tried again. Defaults to 2.
+         */
+        public Builder maxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        /**
+         * The wait before the first retry of a 429 that has no Retry-After header, doubled for each retry after that.
+         * Defaults to 1 second.
+         */
+        public Builder retryBackoff(long duration, TimeUnit unit) {
+            this.retryBackoffMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * The longest we'll wait to retry a 429. A longer wait fails the fetch instead. Defaults to 1 minute.
+         */
+        public Builder maxRetryDelay(long duration, TimeUnit unit) {
+            this.maxRetryDelayMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        public Builder connectTimeout(long duration, TimeUnit unit) {
+            this.connectTimeoutMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        public Builder readTimeout(long duration, TimeUnit unit) {
+            this.readTimeoutMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * The User-Agent header sent with every request. Set this to your crawler's name.
+         */
+        public Builder userAgent(String userAgent) {
+            this.userAgent = userAgent;
+            return this;
+        }
+
+        public Builder parseOptions(ParseOptions parseOptions) {
+            this.parseOptions = parseOptions;
+            return this;
+        }
+
+        public RobotsTxtFetcher build() {
+            if (maxConcurrentRequests <= 0) {
+                throw new IllegalArgumentException("maxConcurrentRequests must be positive");
+            }
+
+            if (maxRetries < 0) {
+                throw new IllegalArgumentException("maxRetries must not be negative");
+            }
+
+            return new RobotsTxtFetcher(this);
+        }
+    }
+}
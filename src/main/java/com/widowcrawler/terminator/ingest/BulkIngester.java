@@ -0,0 +1,299 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.ingest;
+
+import com.widowcrawler.terminator.eval.RuleInterner;
+import com.widowcrawler.terminator.model.RobotsTxt;
+import com.widowcrawler.terminator.parse.ByteParser;
+import com.widowcrawler.terminator.parse.ParseOptions;
+
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Parses and compiles large numbers of stored robots.txt bodies across all cores, for reprocessing crawl archives.
+ *
+ * The calling thread reads documents from the source in batches and hands each batch to a {@link ForkJoinPool}, where
+ * it is split in half recursively so idle workers can steal from busy ones. At most a fixed number of batches are in
+ * flight, and the caller blocks reading the source until one completes, so a fast source can't run ahead of the
+ * workers and fill the heap.
+ *
+ * Workers take no locks while parsing and compiling, and a shared {@link RuleInterner} doesn't add any, so the sink
+ * is the only place they can contend. Make it thread safe without serializing the workers on a single lock where
+ * possible; {@link IngestSink#into} is the exception, since a {@link com.widowcrawler.terminator.store.RobotsStore}
+ * serializes its writes.
+ *
+ * Documents are isolated from each other: one that fails to parse or that the {@link IngestSink} rejects is counted
+ * and reported to {@link IngestSink#failed}, and the rest carry on. Only an {@link Error}, or an exception thrown by
+ * {@link IngestSink#failed} itself, stops the run.
+ *
+ * <pre>
+ * BulkIngester.Result result = BulkIngester.builder()
+ *         .interner(new RuleInterner())
+ *         .build()
+ *         .ingest(archive, IngestSink.into(store));
+ * </pre>
+ *
+ * @author Scott Mansfield
+ */
+public class BulkIngester {
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private final int parallelism;
+    private final int batchSize;
+    private final int maxPendingBatches;
+    private final ParseOptions parseOptions;
+    private final RuleInterner interner;
+
+    private BulkIngester(Builder builder) {
+        this.parallelism = builder.parallelism;
+        this.batchSize = builder.batchSize;
+        this.maxPendingBatches = builder.maxPendingBatches > 0 ? builder.maxPendingBatches : parallelism * 4;
+        this.parseOptions = builder.parseOptions;
+        this.interner = builder.interner;
+    }
+
+    public Result ingest(Iterable<RobotsDocument> source, IngestSink sink)
+            throws InterruptedException, ExecutionException {
+        return ingest(source.iterator(), sink);
+    }
+
+    /**
+     * Ingests every document the source has and returns once all of them have been passed to the sink.
+     *
+     * @throws ExecutionException if the run was stopped, after the documents already in flight finish
+     * @throws InterruptedException if the calling thread was interrupted; documents already in flight still finish
+     *         in the background
+     */
+    public Result ingest(Iterator<RobotsDocument> source, IngestSink sink)
+            throws InterruptedException, ExecutionException {
+        long start = System.nanoTime();
+        Run run = new Run(sink, new Semaphore(maxPendingBatches));
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+        try {
+            while (source.hasNext() && run.error.get() == null) {
+                RobotsDocument[] batch = new RobotsDocument[batchSize];
+                int size = 0;
+
+                while (size < batchSize && source.hasNext()) {
+                    batch[size++] = source.next();
+                }
+
+                run.permits.acquire();
+                pool.execute(new BatchTask(run, batch, size));
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+        if (run.error.get() != null) {
+            throw new ExecutionException(run.error.get());
+        }
+
+        return new Result(run.succeeded.sum(), run.failed.sum(), System.nanoTime() - start);
+    }
+
+    private RobotsTxt compile(RobotsDocument document) throws Exception {
+        RobotsTxt robotsTxt = new ByteParser(document.getBody(), parseOptions).parse();
+
+        if (interner != null) {
+            robotsTxt = interner.intern(robotsTxt);
+        }
+
+        robotsTxt.getAgentIndex().compileAll();
+
+        return robotsTxt;
+    }
+
+    private void ingest(Run run, RobotsDocument document) {
+        try {
+            run.sink.accept(document.getHostKey(), compile(document));
+            run.succeeded.increment();
+        } catch (Exception ex) {
+            run.failed.increment();
+            run.sink.failed(document.getHostKey(), ex);
+        }
+    }
+
+    // State shared by the tasks of one call to ingest
+    private static class Run {
+        final IngestSink sink;
+        final Semaphore permits;
+        final LongAdder succeeded = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        Run(IngestSink sink, Semaphore permits) {
+            this.sink = sink;
+            this.permits = permits;
+        }
+    }
+
+    private class BatchTask extends RecursiveAction {
+        private final Run run;
+        private final RobotsDocument[] batch;
+        private final int size;
+
+        BatchTask(Run run, RobotsDocument[] batch, int size) {
+            this.run = run;
+            this.batch = batch;
+            this.size = size;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                new SplitTask(run, batch, 0, size).compute();
+            } catch (Throwable t) {
+                run.error.compareAndSet(null, t);
+            } finally {
+                run.permits.release();
+            }
+        }
+    }
+
+    private class SplitTask extends RecursiveAction {
+        private final Run run;
+        private final RobotsDocument[] batch;
+        private final int from;
+        private final int to;
+
+        SplitTask(Run run, RobotsDocument[] batch, int from, int to) {
+            this.run = run;
+            this.batch = batch;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                ingest(run, batch[from]);
+                // let the document be collected while the rest of the batch is still running
+                batch[from] = null;
+                return;
+            }
+
+            int mid = (from + to) >>> 1;
+            invokeAll(new SplitTask(run, batch, from, mid), new SplitTask(run, batch, mid, to));
+        }
+    }
+
+    /**
+     * Counts for one call to {@link #ingest(Iterator, IngestSink)}.
+     */
+    public static class Result {
+        private final long succeeded;
+        private final long failed;
+        private final long elapsedNanos;
+
+        Result(long succeeded, long failed, long elapsedNanos) {
+            this.succeeded = succeeded;
+            this.failed = failed;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getDocuments() {
+            return succeeded + failed;
+        }
+
+        public long getSucceeded() {
+            return succeeded;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getElapsed(TimeUnit unit) {
+            return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public String toString() {
+            return "Result{succeeded=" + succeeded + ", failed=" + failed +
+                    ", elapsedMillis=" + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + "}";
+        }
+    }
+
+    public static class Builder {
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+        private int batchSize = 64;
+        private int maxPendingBatches;
+        private ParseOptions parseOptions = ParseOptions.DEFAULT;
+        private RuleInterner interner;
+
+        private Builder() {}
+
+        /**
+         * Defaults to the number of available processors.
+         */
+        public Builder parallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * How many documents are read from the source and handed to the workers at a time. Defaults to 64.
+         */
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * How many batches can be read ahead of the workers before reading blocks. Defaults to four per worker.
+         */
+        public Builder maxPendingBatches(int maxPendingBatches) {
+            this.maxPendingBatches = maxPendingBatches;
+            return this;
+        }
+
+        public Builder parseOptions(ParseOptions parseOptions) {
+            this.parseOptions = parseOptions;
+            return this;
+        }
+
+        /**
+         * Shares identical rule groups between the ingested documents, which pays off for archives with many hosts
+         * serving the same rules.
+         */
+        public Builder interner(RuleInterner interner) {
+            this.interner = interner;
+            return this;
+        }
+
+        public BulkIngester build() {
+            if (parallelism <= 0 || batchSize <= 0 || maxPendingBatches < 0) {
+                throw new IllegalArgumentException("Parallelism, batch size and pending batches must be positive");
+            }
+
+            return new BulkIngester(this);
+        }
+    }
+}
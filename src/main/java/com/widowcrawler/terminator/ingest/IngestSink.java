@@ -0,0 +1,53 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.ingest;
+
+import com.widowcrawler.terminator.cache.HostKey;
+import com.widowcrawler.terminator.model.RobotsTxt;
+import com.widowcrawler.terminator.store.RobotsStore;
+
+/**
+ * Receives the results of a {@link BulkIngester}. Methods are called from the ingester's worker threads, several at a
+ * time, so implementations must be thread safe.
+ *
+ * @author Scott Mansfield
+ */
+@FunctionalInterface
+public interface IngestSink {
+
+    /**
+     * Writes every parsed robots.txt into the store.
+     *
+     * This is the serialized option: {@link RobotsStore#put} encodes the record on the worker's thread, but appending
+     * it takes the store's single write lock, so workers queue up on each other while they write. Ingesting into a
+     * store scales only as far as encoding outweighs appending; {@code IngestBenchmark} with {@code sink=store}
+     * measures how far that is.
+     */
+    static IngestSink into(RobotsStore store) {
+        return store::put;
+    }
+
+    /**
+     * Called with each document that parsed and compiled. If this throws, the document counts as failed and is
+     * passed to {@link #failed(HostKey, Exception)}.
+     */
+    void accept(HostKey hostKey, RobotsTxt robotsTxt) throws Exception;
+
+    /**
+     * Called with each document that couldn't be parsed, compiled or accepted. Does nothing by default.
+     */
+    default void failed(HostKey hostKey, Exception cause) {}
+}
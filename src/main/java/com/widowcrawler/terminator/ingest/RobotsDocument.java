@@ -0,0 +1,44 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.ingest;
+
+import com.widowcrawler.terminator.cache.HostKey;
+
+/**
+ * A stored robots.txt body, e.g. one record of a crawl archive, waiting to be parsed.
+ *
+ * @author Scott Mansfield
+ */
+public class RobotsDocument {
+    private final HostKey hostKey;
+    private final byte[] body;
+
+    /**
+     * @param body the raw bytes of the robots.txt, which are read but not copied
+     */
+    public RobotsDocument(HostKey hostKey, byte[] body) {
+        this.hostKey = hostKey;
+        this.body = body;
+    }
+
+    public HostKey getHostKey() {
+        return hostKey;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.metrics;
+
+/**
+ * Holds the {@link Metrics} that every part of the library reports to. Starts out as {@link Metrics#NOOP}, which costs
+ * a single field read per call site.
+ *
+ * @author Scott Mansfield
+ */
+public final class GlobalMetrics {
+
+    public static final int EVALUATION_SAMPLE_RATE = 64;
+
+    private static volatile Metrics metrics = Metrics.NOOP;
+
+    private GlobalMetrics() {}
+
+    public static Metrics get() {
+        return metrics;
+    }
+
+    /**
+     * @param metrics the metrics to report to from now on, or null to stop reporting
+     */
+    public static void set(Metrics metrics) {
+        GlobalMetrics.metrics = metrics == null ? Metrics.NOOP : metrics;
+    }
+
+    /**
+     * @return false while nothing is installed, so callers can skip measuring
+     */
+    public static boolean isEnabled() {
+        return metrics != Metrics.NOOP;
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+/**
+ * Exposes a {@link MetricsRecorder} as a read-only MBean, with one attribute per entry of
+ * {@link MetricsRecorder#snapshot()}.
+ *
+ * @author Scott Mansfield
+ */
+public class JmxMetrics implements DynamicMBean {
+
+    public static final String DEFAULT_NAME = "com.widowcrawler.terminator:type=Metrics";
+
+    /**
+     * Registers with the platform MBean server under {@link #DEFAULT_NAME}.
+     */
+    public static ObjectName register(MetricsRecorder recorder) throws JMException {
+        return register(recorder, new ObjectName(DEFAULT_NAME));
+    }
+
+    public static ObjectName register(MetricsRecorder recorder, ObjectName name) throws JMException {
+        return ManagementFactory.getPlatformMBeanServer().registerMBean(new JmxMetrics(recorder), name).getObjectName();
+    }
+
+    private final MetricsRecorder recorder;
+    private final MBeanInfo info;
+
+    public JmxMetrics(MetricsRecorder recorder) {
+        this.recorder = recorder;
+
+        Map<String, Number> snapshot = recorder.snapshot();
+        MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[snapshot.size()];
+        int i = 0;
+
+        for (Map.Entry<String, Number> entry : snapshot.entrySet()) {
+            attributes[i++] = new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(),
+                    entry.getKey(), true, false, false);
+        }
+
+        this.info = new MBeanInfo(JmxMetrics.class.getName(), "Terminator metrics", attributes, null,
+                new MBeanOperationInfo[0], new MBeanNotificationInfo[0]);
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Number value = recorder.snapshot().get(attribute);
+
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        // one snapshot, so the values are consistent with each other
+        Map<String, Number> snapshot = recorder.snapshot();
+        AttributeList list = new AttributeList();
+
+        for (String attribute : attributes) {
+            Number value = snapshot.get(attribute);
+
+            if (value != null) {
+                list.add(new Attribute(attribute, value));
+            }
+        }
+
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException("Metrics have no operations");
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        return info;
+    }
+}
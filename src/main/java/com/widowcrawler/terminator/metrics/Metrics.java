@@ -0,0 +1,71 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.metrics;
+
+/**
+ * Receives measurements from the fetcher, parsers, rule compiler, evaluators and cache. Install one with
+ * {@link GlobalMetrics#set(Metrics)}, e.g. a {@link MetricsRecorder}, or implement this to forward to a metrics
+ * library of your own.
+ *
+ * Every method does nothing by default. They are called on the threads doing the work, evaluation ones on every
+ * lookup, so implementations must be thread safe and should be as cheap as a {@link java.util.concurrent.atomic.LongAdder}
+ * increment.
+ *
+ * @author Scott Mansfield
+ */
+public interface Metrics {
+
+    /**
+     * Records nothing. While it is installed, nothing is timed either.
+     */
+    Metrics NOOP = new Metrics() {};
+
+    /**
+     * @param statusCode the HTTP status, or 0 if no response was received
+     */
+    default void fetched(long nanos, int statusCode) {}
+
+    /**
+     * @param bytes the input read, in chars for {@link com.widowcrawler.terminator.parse.Parser}
+     * @param rules the number of rules in the file, counting a group shared by several user agents once
+     */
+    default void parsed(long nanos, long bytes, int rules) {}
+
+    /**
+     * A group's rules were compiled into a trie.
+     */
+    default void compiled(long nanos, int nodes) {}
+
+    /**
+     * Called for every path evaluated.
+     */
+    default void evaluated() {}
+
+    /**
+     * Called for a sample of evaluations, one in {@link GlobalMetrics#EVALUATION_SAMPLE_RATE} on average, since
+     * timing every one would cost about as much as the lookup itself.
+     */
+    default void evaluationTimed(long nanos) {}
+
+    default void cacheHit() {}
+
+    default void cacheMiss() {}
+
+    /**
+     * An entry was dropped to make room, as opposed to expiring or being invalidated.
+     */
+    default void cacheEviction() {}
+}
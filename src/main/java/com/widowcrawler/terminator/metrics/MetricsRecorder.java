@@ -0,0 +1,183 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps counters and {@link Histogram}s in memory for everything {@link Metrics} reports. Times are in nanoseconds.
+ *
+ * <pre>
+ * MetricsRecorder recorder = new MetricsRecorder();
+ * GlobalMetrics.set(recorder);
+ * JmxMetrics.register(recorder);
+ * </pre>
+ *
+ * @author Scott Mansfield
+ */
+public class MetricsRecorder implements Metrics {
+
+    private final Histogram fetchLatency = new Histogram();
+    private final LongAdder fetchErrors = new LongAdder();
+
+    private final Histogram parseLatency = new Histogram();
+    private final LongAdder parsedBytes = new LongAdder();
+    private final Histogram rulesPerFile = new Histogram();
+
+    private final Histogram compileLatency = new Histogram();
+    private final Histogram trieNodes = new Histogram();
+
+    private final LongAdder evaluations = new LongAdder();
+    private final Histogram evaluationLatency = new Histogram();
+
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder cacheEvictions = new LongAdder();
+
+    @Override
+    public void fetched(long nanos, int statusCode) {
+        fetchLatency.record(nanos);
+
+        if (statusCode == 0 || statusCode >= 500) {
+            fetchErrors.increment();
+        }
+    }
+
+    @Override
+    public void parsed(long nanos, long bytes, int rules) {
+        parseLatency.record(nanos);
+        parsedBytes.add(bytes);
+        rulesPerFile.record(rules);
+    }
+
+    @Override
+    public void compiled(long nanos, int nodes) {
+        compileLatency.record(nanos);
+        trieNodes.record(nodes);
+    }
+
+    @Override
+    public void evaluated() {
+        evaluations.increment();
+    }
+
+    @Override
+    public void evaluationTimed(long nanos) {
+        evaluationLatency.record(nanos);
+    }
+
+    @Override
+    public void cacheHit() {
+        cacheHits.increment();
+    }
+
+    @Override
+    public void cacheMiss() {
+        cacheMisses.increment();
+    }
+
+    @Override
+    public void cacheEviction() {
+        cacheEvictions.increment();
+    }
+
+    public Histogram getFetchLatency() {
+        return fetchLatency;
+    }
+
+    /**
+     * @return fetches that got no response or a 5xx
+     */
+    public long getFetchErrors() {
+        return fetchErrors.sum();
+    }
+
+    public Histogram getParseLatency() {
+        return parseLatency;
+    }
+
+    public long getParsedBytes() {
+        return parsedBytes.sum();
+    }
+
+    public Histogram getRulesPerFile() {
+        return rulesPerFile;
+    }
+
+    public Histogram getCompileLatency() {
+        return compileLatency;
+    }
+
+    public Histogram getTrieNodes() {
+        return trieNodes;
+    }
+
+    public long getEvaluations() {
+        return evaluations.sum();
+    }
+
+    /**
+     * @return the latency of a sample of evaluations, see {@link Metrics#evaluationTimed(long)}
+     */
+    public Histogram getEvaluationLatency() {
+        return evaluationLatency;
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    public long getCacheEvictions() {
+        return cacheEvictions.sum();
+    }
+
+    /**
+     * @return every value under a dotted name, e.g. {@code parse.latency.p99}, in a fixed order, for exporting to
+     *         JMX or another metrics system
+     */
+    public Map<String, Number> snapshot() {
+        Map<String, Number> snapshot = new LinkedHashMap<>();
+
+        summarize(snapshot, "fetch.latency", fetchLatency);
+        snapshot.put("fetch.errors", getFetchErrors());
+        summarize(snapshot, "parse.latency", parseLatency);
+        snapshot.put("parse.bytes", getParsedBytes());
+        summarize(snapshot, "parse.rules", rulesPerFile);
+        summarize(snapshot, "compile.latency", compileLatency);
+        summarize(snapshot, "compile.nodes", trieNodes);
+        snapshot.put("eval.count", getEvaluations());
+        summarize(snapshot, "eval.latency", evaluationLatency);
+        snapshot.put("cache.hits", getCacheHits());
+        snapshot.put("cache.misses", getCacheMisses());
+        snapshot.put("cache.evictions", getCacheEvictions());
+
+        return snapshot;
+    }
+
+    private static void summarize(Map<String, Number> snapshot, String name, Histogram histogram) {
+        snapshot.put(name + ".count", histogram.getCount());
+        snapshot.put(name + ".mean", histogram.getMean());
+        snapshot.put(name + ".p50", histogram.getValueAtPercentile(50));
+        snapshot.put(name + ".p99", histogram.getValueAtPercentile(99));
+        snapshot.put(name + ".max", histogram.getMax());
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.model;
+
+import com.widowcrawler.terminator.ParseException;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The lines a lenient parse skipped instead of failing, see
+ * {@link com.widowcrawler.terminator.parse.ParseOptions.Builder#lenient(boolean)}.
+ *
+ * @author Scott Mansfield
+ */
+public class Diagnostics {
+
+    public static final Diagnostics NONE = new Diagnostics(Collections.emptyList(), 0);
+
+    private final List<ParseException> errors;
+    private final int skippedLines;
+
+    public Diagnostics(List<ParseException> errors, int skippedLines) {
+        this.errors = Collections.unmodifiableList(errors);
+        this.skippedLines = skippedLines;
+    }
+
+    public boolean hasErrors() {
+        return skippedLines > 0;
+    }
+
+    /**
+     * @return the errors a strict parse would have thrown for the first skipped lines, at most
+     *         {@link com.widowcrawler.terminator.parse.ParseOptions#getMaxDiagnostics()} of them, in document order
+     */
+    public List<ParseException> getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return the number of lines skipped, including those past the limit on the number of errors kept
+     */
+    public int getSkippedLines() {
+        return skippedLines;
+    }
+
+    @Override
+    public String toString() {
+        return "Diagnostics{" +
+                "errors=" + errors.size() +
+                ", skippedLines=" + skippedLines +
+                '}';
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.model;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How often a group asks crawlers to make requests, from a {@code Crawl-delay} or {@code Request-rate} line.
+ * {@code Crawl-delay: 5} is one request every five seconds, {@code Request-rate: 3/1m} three requests a minute.
+ *
+ * @author Scott Mansfield
+ */
+public class RequestRate {
+
+    private final int requests;
+    private final long periodNanos;
+
+    /**
+     * @param requests how many requests may be made in each period, at least one
+     */
+    public RequestRate(int requests, long period, TimeUnit unit) {
+        if (requests <= 0 || period < 0) {
+            throw new IllegalArgumentException("Invalid request rate " + requests + "/" + period + " " + unit);
+        }
+
+        this.requests = requests;
+        this.periodNanos = unit.toNanos(period);
+    }
+
+    public static RequestRate ofDelay(long delay, TimeUnit unit) {
+        return new RequestRate(1, delay, unit);
+    }
+
+    /**
+     * @return whichever rate leaves more time between requests, ignoring nulls
+     */
+    public static RequestRate slower(RequestRate a, RequestRate b) {
+        if (a == null) {
+            return b;
+        }
+
+        if (b == null) {
+            return a;
+        }
+
+        return a.getIntervalNanos() >= b.getIntervalNanos() ? a : b;
+    }
+
+    public int getRequests() {
+        return requests;
+    }
+
+    public long getPeriod(TimeUnit unit) {
+        return unit.convert(periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the average time to leave between requests
+     */
+    public long getIntervalNanos() {
+        return periodNanos / requests;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * requests + Long.hashCode(periodNanos);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof RequestRate)) {
+            return false;
+        }
+
+        RequestRate other = (RequestRate) obj;
+
+        return requests == other.requests && periodNanos == other.periodNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestRate{" + requests + "/" + TimeUnit.NANOSECONDS.toMillis(periodNanos) + "ms}";
+    }
+}
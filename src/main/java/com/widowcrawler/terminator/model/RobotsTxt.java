@@ -15,6 +15,13 @@
  */
 package com.widowcrawler.terminator.model;
 
+import com.widowcrawler.terminator.eval.AgentIndex;
+import com.widowcrawler.terminator.eval.MultiAgentEvaluator;
+import com.widowcrawler.terminator.eval.RuleEvaluator;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -24,10 +31,29 @@ import java.util.Set;
 public class RobotsTxt {
     private Map<String, Set<Rule>> ruleSets;
     private Set<String> siteMapRefs;
+    private Truncation truncation;
+    private AgentIndex agentIndex;
+    private Validators validators = Validators.NONE;
+    private Map<String, RequestRate> requestRates = Collections.emptyMap();
+    private Diagnostics diagnostics = Diagnostics.NONE;
 
     public RobotsTxt(Map<String, Set<Rule>> ruleSets, Set<String> siteMapRefs) {
+        this(ruleSets, siteMapRefs, Truncation.NONE);
+    }
+
+    public RobotsTxt(Map<String, Set<Rule>> ruleSets, Set<String> siteMapRefs, Truncation truncation) {
+        this(ruleSets, siteMapRefs, truncation, AgentIndex.build(ruleSets));
+    }
+
+    /**
+     * @param agentIndex an index built from the same rule sets, e.g. with evaluators that were compiled earlier
+     */
+    public RobotsTxt(Map<String, Set<Rule>> ruleSets, Set<String> siteMapRefs, Truncation truncation,
+                     AgentIndex agentIndex) {
         this.ruleSets = ruleSets;
         this.siteMapRefs = siteMapRefs;
+        this.truncation = truncation;
+        this.agentIndex = agentIndex;
     }
 
     public Map<String, Set<Rule>> getRuleSets() {
@@ -37,4 +63,148 @@ public class RobotsTxt {
     public Set<String> getSiteMapRefs() {
         return siteMapRefs;
     }
+
+    /**
+     * Built from the rule sets when this is created, so later changes to the map returned by {@link #getRuleSets()}
+     * are not reflected in it.
+     */
+    public AgentIndex getAgentIndex() {
+        return agentIndex;
+    }
+
+    /**
+     * Finds the group that applies to a crawler, see {@link AgentIndex}.
+     *
+     * @return the group's rules, or null if no group applies
+     */
+    public Set<Rule> getRuleSet(String userAgent) {
+        return agentIndex.getRuleSet(userAgent);
+    }
+
+    /**
+     * The compiled rules for a crawler. They are compiled once per group and cached, and the group is remembered for
+     * the user agent string, so this can be called per URL without paying for agent matching or compilation again.
+     * Holding on to the result is still cheapest.
+     */
+    public RuleEvaluator getEvaluator(String userAgent) {
+        return agentIndex.getEvaluator(userAgent);
+    }
+
+    /**
+     * Compiles the groups of several crawlers into one evaluator that checks a path for all of them in a single trie
+     * walk. Building it costs about as much as compiling each group, so build it once per robots.txt and keep it.
+     *
+     * @see MultiAgentEvaluator
+     */
+    public MultiAgentEvaluator getEvaluator(List<String> userAgents) {
+        return MultiAgentEvaluator.build(agentIndex, userAgents);
+    }
+
+    /**
+     * Checks a batch of paths for one crawler, resolving its group only once.
+     *
+     * @return a bitmap with bit {@code i} set if {@code paths.get(i)} may be fetched
+     * @see RuleEvaluator#evaluate(List)
+     */
+    public BitSet evaluate(List<? extends CharSequence> paths, String userAgent) {
+        return getEvaluator(userAgent).evaluate(paths);
+    }
+
+    /**
+     * @return what the parser left out to stay within its limits, {@link Truncation#NONE} if nothing
+     */
+    public Truncation getTruncation() {
+        return truncation;
+    }
+
+    /**
+     * @return the lines a lenient parse skipped, {@link Diagnostics#NONE} if none were or the parse was strict
+     */
+    public Diagnostics getDiagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * @return how to revalidate this robots.txt with the server, {@link Validators#NONE} if it wasn't fetched
+     */
+    public Validators getValidators() {
+        return validators;
+    }
+
+    /**
+     * @return the {@code Crawl-delay} or {@code Request-rate} of each user agent's group, for the groups that have one
+     */
+    public Map<String, RequestRate> getRequestRates() {
+        return requestRates;
+    }
+
+    /**
+     * Finds the request rate of the group that applies to a crawler, the same group {@link #getRuleSet(String)}
+     * picks. If several groups apply, the slowest rate wins.
+     *
+     * @return the rate, or null if the group that applies doesn't ask for one
+     */
+    public RequestRate getRequestRate(String userAgent) {
+        if (requestRates.isEmpty()) {
+            return null;
+        }
+
+        String token = AgentIndex.normalize(userAgent);
+        boolean hasOwnGroup = agentIndex.getProductTokens().contains(token);
+        RequestRate rate = null;
+
+        for (Map.Entry<String, RequestRate> entry : requestRates.entrySet()) {
+            String agent = entry.getKey();
+            boolean applies = hasOwnGroup
+                    ? !AgentIndex.isWildcard(agent) && token.equals(AgentIndex.normalize(agent))
+                    : AgentIndex.isWildcard(agent);
+
+            if (applies) {
+                rate = RequestRate.slower(rate, entry.getValue());
+            }
+        }
+
+        return rate;
+    }
+
+    /**
+     * @return a copy with different validators that shares everything else, including compiled rules, with this one
+     */
+    public RobotsTxt withValidators(Validators validators) {
+        RobotsTxt copy = copy(ruleSets, agentIndex);
+        copy.validators = validators;
+        return copy;
+    }
+
+    /**
+     * @param requestRates request rates keyed by user agent, as in {@link #getRequestRates()}
+     */
+    public RobotsTxt withRequestRates(Map<String, RequestRate> requestRates) {
+        RobotsTxt copy = copy(ruleSets, agentIndex);
+        copy.requestRates = requestRates.isEmpty() ? Collections.emptyMap() : requestRates;
+        return copy;
+    }
+
+    public RobotsTxt withDiagnostics(Diagnostics diagnostics) {
+        RobotsTxt copy = copy(ruleSets, agentIndex);
+        copy.diagnostics = diagnostics;
+        return copy;
+    }
+
+    /**
+     * @param agentIndex an index built from the given rule sets
+     * @return a copy with equivalent rule sets compiled differently, e.g. shared through an interner, and everything
+     *         else unchanged
+     */
+    public RobotsTxt withRules(Map<String, Set<Rule>> ruleSets, AgentIndex agentIndex) {
+        return copy(ruleSets, agentIndex);
+    }
+
+    private RobotsTxt copy(Map<String, Set<Rule>> ruleSets, AgentIndex agentIndex) {
+        RobotsTxt copy = new RobotsTxt(ruleSets, siteMapRefs, truncation, agentIndex);
+        copy.validators = validators;
+        copy.requestRates = requestRates;
+        copy.diagnostics = diagnostics;
+        return copy;
+    }
 }
@@ -21,8 +21,8 @@ import org.apache.commons.lang3.StringUtils;
  * @author Scott Mansfield
  */
 public class Rule {
-    private RuleType ruleType;
-    private String pathMatch;
+    private final RuleType ruleType;
+    private final String pathMatch;
 
     public Rule (RuleType ruleType, String pathMatch) {
         this.ruleType = ruleType;
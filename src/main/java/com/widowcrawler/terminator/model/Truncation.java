@@ -0,0 +1,70 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.model;
+
+/**
+ * Describes what, if anything, was cut from a robots.txt because it went over one of the parser's limits.
+ *
+ * @author Scott Mansfield
+ */
+public class Truncation {
+
+    public static final Truncation NONE = new Truncation(-1L, 0, 0);
+
+    private final long truncatedAt;
+    private final int truncatedLines;
+    private final int droppedRules;
+
+    public Truncation(long truncatedAt, int truncatedLines, int droppedRules) {
+        this.truncatedAt = truncatedAt;
+        this.truncatedLines = truncatedLines;
+        this.droppedRules = droppedRules;
+    }
+
+    public boolean isTruncated() {
+        return truncatedAt >= 0 || truncatedLines > 0 || droppedRules > 0;
+    }
+
+    /**
+     * @return the byte offset at which the rest of the file was ignored, or -1 if the whole file was read
+     */
+    public long getTruncatedAt() {
+        return truncatedAt;
+    }
+
+    /**
+     * @return the number of lines that were cut short because they were too long
+     */
+    public int getTruncatedLines() {
+        return truncatedLines;
+    }
+
+    /**
+     * @return the number of rules left out because their group already had the maximum number of rules
+     */
+    public int getDroppedRules() {
+        return droppedRules;
+    }
+
+    @Override
+    public String toString() {
+        return "Truncation{" +
+                "truncatedAt=" + truncatedAt +
+                ", truncatedLines=" + truncatedLines +
+                ", droppedRules=" + droppedRules +
+                '}';
+    }
+}
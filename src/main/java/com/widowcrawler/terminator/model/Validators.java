@@ -0,0 +1,95 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.model;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * What is known about the response a robots.txt was parsed from, used to revalidate it cheaply once it goes stale:
+ * the HTTP validators for a conditional request, and a hash of the body to notice when an unconditional refresh
+ * returned the same file again.
+ *
+ * @author Scott Mansfield
+ */
+public class Validators {
+
+    public static final Validators NONE = new Validators(null, null, null);
+
+    private final String eTag;
+    private final String lastModified;
+    private final byte[] contentHash;
+
+    /**
+     * @param eTag the ETag header, or null
+     * @param lastModified the Last-Modified header exactly as sent, or null
+     * @param contentHash a digest of the body, or null
+     */
+    public Validators(String eTag, String lastModified, byte[] contentHash) {
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+        this.contentHash = contentHash;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public byte[] getContentHash() {
+        return contentHash == null ? null : contentHash.clone();
+    }
+
+    /**
+     * @return true if there is an ETag or Last-Modified to send with a conditional request
+     */
+    public boolean isConditional() {
+        return eTag != null || lastModified != null;
+    }
+
+    /**
+     * @return true if both hashes are known and equal
+     */
+    public boolean hasSameContent(byte[] otherHash) {
+        return contentHash != null && otherHash != null && Arrays.equals(contentHash, otherHash);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(eTag, lastModified) * 31 + Arrays.hashCode(contentHash);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Validators)) {
+            return false;
+        }
+
+        Validators other = (Validators) obj;
+
+        return Objects.equals(eTag, other.eTag) &&
+                Objects.equals(lastModified, other.lastModified) &&
+                Arrays.equals(contentHash, other.contentHash);
+    }
+
+    @Override
+    public String toString() {
+        return "Validators{eTag=" + eTag + ", lastModified=" + lastModified + "}";
+    }
+}
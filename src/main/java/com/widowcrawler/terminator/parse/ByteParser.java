@@ -0,0 +1,142 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.parse;
+
+import com.widowcrawler.terminator.ParseException;
+import com.widowcrawler.terminator.metrics.GlobalMetrics;
+import com.widowcrawler.terminator.model.RobotsTxt;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parses robots.txt files straight from their UTF-8 bytes.
+ *
+ * Accepts the same grammar as {@link Parser} and produces the same {@link RobotsTxt}, but makes a single pass over
+ * the input one line at a time. Keywords are matched case-insensitively against the bytes in place, and the only
+ * Strings created are the user agents, rule paths and sitemap URLs that end up in the result.
+ *
+ * Input beyond the limits in the {@link ParseOptions} is left out, see {@link RobotsTxt#getTruncation()}.
+ *
+ * @author Scott Mansfield
+ */
+public class ByteParser {
+
+    private final byte[] data;
+    private final int start;
+    private final int end;
+    private final ParseOptions options;
+
+    public ByteParser(byte[] data) {
+        this(data, ParseOptions.DEFAULT);
+    }
+
+    public ByteParser(byte[] data, ParseOptions options) {
+        this(data, 0, data.length, options);
+    }
+
+    public ByteParser(byte[] data, int offset, int length) {
+        this(data, offset, length, ParseOptions.DEFAULT);
+    }
+
+    public ByteParser(byte[] data, int offset, int length, ParseOptions options) {
+        this.data = data;
+        this.start = offset;
+        this.end = offset + length;
+        this.options = options;
+    }
+
+    public ByteParser(ByteBuffer buffer) {
+        this(buffer, ParseOptions.DEFAULT);
+    }
+
+    /**
+     * Heap buffers are parsed in place. Direct buffers are copied once, since Strings can only be built from a
+     * byte[], but never more than the byte limit. The buffer's position is not changed.
+     */
+    public ByteParser(ByteBuffer buffer, ParseOptions options) {
+        this(arrayOf(buffer, options), arrayOffsetOf(buffer), lengthOf(buffer, options), options);
+    }
+
+    private static byte[] arrayOf(ByteBuffer buffer, ParseOptions options) {
+        if (buffer.hasArray()) {
+            return buffer.array();
+        }
+
+        byte[] copy = new byte[lengthOf(buffer, options)];
+        buffer.duplicate().get(copy);
+        return copy;
+    }
+
+    private static int lengthOf(ByteBuffer buffer, ParseOptions options) {
+        if (buffer.hasArray()) {
+            return buffer.remaining();
+        }
+
+        // one byte past the limit shows whether the last line was cut off
+        return (int) Math.min(buffer.remaining(), options.getMaxBytes() + 1L);
+    }
+
+    private static int arrayOffsetOf(ByteBuffer buffer) {
+        return buffer.hasArray() ? buffer.arrayOffset() + buffer.position() : 0;
+    }
+
+    public RobotsTxt parse() throws ParseException {
+        boolean timed = GlobalMetrics.isEnabled();
+        long startNanos = timed ? System.nanoTime() : 0L;
+        LineParser lineParser = new LineParser(options);
+        int limit = end;
+        long truncatedAt = -1L;
+
+        if (end - start > options.getMaxBytes()) {
+            limit = start + options.getMaxBytes();
+            truncatedAt = options.getMaxBytes();
+
+            // drop the line the limit falls in unless it ends right there
+            if (!LineParser.isEndline(data[limit])) {
+                while (limit > start && !LineParser.isEndline(data[limit - 1])) {
+                    limit--;
+                }
+            }
+        }
+
+        int lineStart = start;
+
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+
+            while (lineEnd < limit && !LineParser.isEndline(data[lineEnd])) {
+                lineEnd++;
+            }
+
+            lineParser.line(data, lineStart, lineEnd, lineStart - start);
+
+            // \r, \n or \r\n
+            lineStart = lineEnd + 1;
+
+            if (lineEnd + 1 < limit && data[lineEnd] == '\r' && data[lineEnd + 1] == '\n') {
+                lineStart++;
+            }
+        }
+
+        RobotsTxt robotsTxt = lineParser.finish(truncatedAt);
+
+        if (timed) {
+            ParseMetrics.parsed(robotsTxt, System.nanoTime() - startNanos, limit - start);
+        }
+
+        return robotsTxt;
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.parse;
+
+import com.widowcrawler.terminator.ParseException;
+import com.widowcrawler.terminator.model.Diagnostics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Either fails the parse on a bad line or, when lenient, notes it so the parser can skip it. Nothing is allocated
+ * until the first bad line, so well formed input costs the same in both modes.
+ *
+ * @author Scott Mansfield
+ */
+final class ErrorCollector {
+
+    private final boolean lenient;
+    private final int maxErrors;
+
+    private List<ParseException> errors;
+    private int skippedLines;
+
+    ErrorCollector(ParseOptions options) {
+        this.lenient = options.isLenient();
+        this.maxErrors = options.getMaxDiagnostics();
+    }
+
+    /**
+     * Throws unless lenient, in which case the caller should skip the rest of the line.
+     */
+    void error(int position, String message) throws ParseException {
+        if (!lenient) {
+            throw new ParseException(position, message);
+        }
+
+        skippedLines++;
+
+        if (errors == null) {
+            errors = new ArrayList<>();
+        }
+
+        if (errors.size() < maxErrors) {
+            // kept for their position and message only, a stack trace would cost more than the parse
+            errors.add(new ParseException(position, message, null, false, false));
+        }
+    }
+
+    boolean isLenient() {
+        return lenient;
+    }
+
+    Diagnostics getDiagnostics() {
+        return skippedLines == 0 ? Diagnostics.NONE : new Diagnostics(errors, skippedLines);
+    }
+}
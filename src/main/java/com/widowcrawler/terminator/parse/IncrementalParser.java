@@ -0,0 +1,280 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.parse;
+
+import com.widowcrawler.terminator.ParseException;
+import com.widowcrawler.terminator.metrics.GlobalMetrics;
+import com.widowcrawler.terminator.model.RobotsTxt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A push-style robots.txt parser that is fed the file in chunks as they arrive, e.g. straight off the network.
+ *
+ * Every complete line in a chunk is parsed immediately, so parsing overlaps with I/O and the whole file never has to
+ * be held in memory. Only the tail of a line that is split across chunks is copied and carried over to the next one,
+ * so memory use is bounded by the chunk size plus the {@link ParseOptions#getMaxLineLength() maximum line length}.
+ * The result is the same {@link RobotsTxt} that {@link ByteParser} produces for the concatenated input.
+ *
+ * Once the {@link ParseOptions#getMaxBytes() byte limit} is reached further input is ignored, and
+ * {@link #isTruncated()} tells callers they can stop reading.
+ *
+ * Instances are not thread safe and parse a single file.
+ *
+ * @author Scott Mansfield
+ */
+public class IncrementalParser {
+
+    private static final int DEFAULT_CHUNK_SIZE = 8192;
+
+    private final ParseOptions options;
+    private final LineParser lineParser;
+
+    // the unterminated end of the last chunk, at most one byte longer than the line length limit
+    private byte[] carry;
+    private int carryLength;
+    private int carryOffset;
+
+    // reused to copy direct buffers into
+    private byte[] scratch;
+
+    // position in the whole document of the next byte fed in
+    private int offset;
+
+    // a chunk ended with \r, so a \n at the start of the next one belongs to the same line ending
+    private boolean skipLineFeed;
+
+    private long truncatedAt = -1L;
+
+    private boolean finished;
+
+    // time spent in feed and finish, while metrics are enabled
+    private long parseNanos;
+
+    public IncrementalParser() {
+        this(ParseOptions.DEFAULT);
+    }
+
+    public IncrementalParser(ParseOptions options) {
+        this.options = options;
+        this.lineParser = new LineParser(options);
+        this.carry = new byte[128];
+    }
+
+    public static RobotsTxt parse(InputStream inputStream) throws IOException, ParseException {
+        return parse(inputStream, ParseOptions.DEFAULT);
+    }
+
+    /**
+     * Parses a whole stream by reading it in fixed size chunks, stopping early at the byte limit. The stream is not
+     * closed.
+     */
+    public static RobotsTxt parse(InputStream inputStream, ParseOptions options) throws IOException, ParseException {
+        IncrementalParser parser = new IncrementalParser(options);
+        byte[] chunk = new byte[DEFAULT_CHUNK_SIZE];
+        int read;
+
+        while (!parser.isTruncated() && (read = inputStream.read(chunk)) != -1) {
+            parser.feed(chunk, 0, read);
+        }
+
+        return parser.finish();
+    }
+
+    /**
+     * @return true once the byte limit has been reached and any further input will be ignored
+     */
+    public boolean isTruncated() {
+        return truncatedAt >= 0;
+    }
+
+    /**
+     * Consumes all remaining bytes of the buffer.
+     */
+    public void feed(ByteBuffer chunk) throws ParseException {
+        int length = chunk.remaining();
+
+        if (isTruncated()) {
+            chunk.position(chunk.limit());
+            return;
+        }
+
+        if (chunk.hasArray()) {
+            feed(chunk.array(), chunk.arrayOffset() + chunk.position(), length);
+        } else {
+            if (scratch == null || scratch.length < length) {
+                scratch = new byte[Math.max(length, DEFAULT_CHUNK_SIZE)];
+            }
+
+            chunk.duplicate().get(scratch, 0, length);
+            feed(scratch, 0, length);
+        }
+
+        chunk.position(chunk.limit());
+    }
+
+    public void feed(byte[] chunk) throws ParseException {
+        feed(chunk, 0, chunk.length);
+    }
+
+    /**
+     * Parses every line completed by this chunk. The array is not referenced after this returns, so callers may
+     * reuse it for the next read.
+     */
+    public void feed(byte[] chunk, int off, int len) throws ParseException {
+        if (finished) {
+            throw new IllegalStateException("Parser is already finished");
+        }
+
+        if (!GlobalMetrics.isEnabled()) {
+            consume(chunk, off, len);
+            return;
+        }
+
+        // only time spent parsing counts, not time spent waiting for the next chunk
+        long start = System.nanoTime();
+
+        try {
+            consume(chunk, off, len);
+        } finally {
+            parseNanos += System.nanoTime() - start;
+        }
+    }
+
+    private void consume(byte[] chunk, int off, int len) throws ParseException {
+        if (isTruncated()) {
+            return;
+        }
+
+        if (len > options.getMaxBytes() - offset) {
+            int allowed = options.getMaxBytes() - offset;
+            boolean lineEndsAtLimit = LineParser.isEndline(chunk[off + allowed]);
+
+            parse(chunk, off, off + allowed);
+
+            // keep the last line only if the limit falls right at its end
+            if (lineEndsAtLimit && carryLength > 0) {
+                lineParser.line(carry, 0, carryLength, carryOffset);
+            }
+
+            carryLength = 0;
+            truncatedAt = options.getMaxBytes();
+            return;
+        }
+
+        parse(chunk, off, off + len);
+    }
+
+    private void parse(byte[] chunk, int pos, int end) throws ParseException {
+        if (skipLineFeed && pos < end) {
+            skipLineFeed = false;
+
+            if (chunk[pos] == '\n') {
+                pos++;
+                offset++;
+            }
+        }
+
+        while (pos < end) {
+            int lineEnd = pos;
+
+            while (lineEnd < end && !LineParser.isEndline(chunk[lineEnd])) {
+                lineEnd++;
+            }
+
+            if (lineEnd == end) {
+                // no line ending yet, wait for more input
+                append(chunk, pos, end);
+                offset += end - pos;
+                return;
+            }
+
+            if (carryLength > 0) {
+                append(chunk, pos, lineEnd);
+                lineParser.line(carry, 0, carryLength, carryOffset);
+                carryLength = 0;
+            } else {
+                lineParser.line(chunk, pos, lineEnd, offset);
+            }
+
+            int next = lineEnd + 1;
+
+            // \r, \n or \r\n
+            if (chunk[lineEnd] == '\r') {
+                if (next < end) {
+                    if (chunk[next] == '\n') {
+                        next++;
+                    }
+                } else {
+                    skipLineFeed = true;
+                }
+            }
+
+            offset += next - pos;
+            pos = next;
+        }
+    }
+
+    /**
+     * Parses whatever unterminated line is left and returns the result. No more input may be fed after this.
+     */
+    public RobotsTxt finish() throws ParseException {
+        if (finished) {
+            throw new IllegalStateException("Parser is already finished");
+        }
+
+        finished = true;
+        boolean timed = GlobalMetrics.isEnabled();
+        long start = timed ? System.nanoTime() : 0L;
+
+        if (carryLength > 0) {
+            lineParser.line(carry, 0, carryLength, carryOffset);
+            carryLength = 0;
+        }
+
+        RobotsTxt robotsTxt = lineParser.finish(truncatedAt);
+
+        if (timed) {
+            parseNanos += System.nanoTime() - start;
+            ParseMetrics.parsed(robotsTxt, parseNanos, offset);
+        }
+
+        return robotsTxt;
+    }
+
+    private void append(byte[] chunk, int from, int to) {
+        if (carryLength == 0) {
+            carryOffset = offset;
+        }
+
+        // anything past the line length limit would be cut anyway, one more byte shows that it was
+        int length = Math.min(to - from, options.getMaxLineLength() + 1 - carryLength);
+
+        if (length <= 0) {
+            return;
+        }
+
+        if (carryLength + length > carry.length) {
+            carry = Arrays.copyOf(carry, Math.max(carry.length * 2, carryLength + length));
+        }
+
+        System.arraycopy(chunk, from, carry, carryLength, length);
+        carryLength += length;
+    }
+}
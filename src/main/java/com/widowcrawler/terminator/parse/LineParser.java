@@ -0,0 +1,333 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.parse;
+
+import com.widowcrawler.terminator.ParseException;
+import com.widowcrawler.terminator.model.RequestRate;
+import com.widowcrawler.terminator.model.RobotsTxt;
+import com.widowcrawler.terminator.model.Rule;
+import com.widowcrawler.terminator.model.RuleType;
+import com.widowcrawler.terminator.model.Truncation;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The line-at-a-time core shared by {@link ByteParser} and {@link IncrementalParser}. It is fed one line of UTF-8
+ * bytes at a time, without the line ending, and builds up the {@link RobotsTxt}.
+ *
+ * @author Scott Mansfield
+ */
+class LineParser {
+
+    private static final byte[] USER_AGENT = keyword(Parser.USER_AGENT);
+    private static final byte[] ALLOW = keyword(Parser.ALLOW);
+    private static final byte[] DISALLOW = keyword(Parser.DISALLOW);
+    private static final byte[] SITEMAP = keyword(Parser.SITEMAP);
+    private static final byte[] CRAWL_DELAY = keyword(Parser.CRAWL_DELAY);
+    private static final byte[] REQUEST_RATE = keyword(Parser.REQUEST_RATE);
+
+    private static final byte[] BYTE_ORDER_MARK = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+
+    private static final byte[] LOWER_CASE = new byte[256];
+
+    static {
+        for (int i = 0; i < LOWER_CASE.length; i++) {
+            LOWER_CASE[i] = (byte) (i >= 'A' && i <= 'Z' ? i | 0x20 : i);
+        }
+    }
+
+    private static byte[] keyword(String keyword) {
+        return keyword.toLowerCase().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    static boolean isEndline(byte b) {
+        return b == '\n' || b == '\r';
+    }
+
+    private final ParseOptions options;
+    private final ErrorCollector errors;
+
+    private final Map<String, Set<Rule>> ruleSets;
+    private final Set<String> siteMapRefs;
+    private final Map<String, RequestRate> requestRates;
+
+    private int truncatedLines;
+    private int droppedRules;
+
+    // The group currently being parsed, if any
+    private Set<String> userAgents;
+    private Set<Rule> ruleSet;
+    private RequestRate requestRate;
+    private boolean acceptingUserAgents;
+
+    // The line being parsed and the document position of its first byte, for errors
+    private byte[] data;
+    private int lineStart;
+    private int lineOffset;
+
+    LineParser(ParseOptions options) {
+        this.options = options;
+        this.errors = new ErrorCollector(options);
+        this.ruleSets = new HashMap<>();
+        this.siteMapRefs = new HashSet<>();
+        this.requestRates = new HashMap<>();
+    }
+
+    /**
+     * @param offset the position of {@code data[from]} in the whole document
+     */
+    void line(byte[] data, int from, int to, int offset) throws ParseException {
+        if (to - from > options.getMaxLineLength()) {
+            to = from + options.getMaxLineLength();
+            truncatedLines++;
+        }
+
+        this.data = data;
+        this.lineStart = from;
+        this.lineOffset = offset;
+
+        if (offset == 0 && startsWith(from, to, BYTE_ORDER_MARK)) {
+            from += BYTE_ORDER_MARK.length;
+        }
+
+        int pos = skipWhitespace(from, to);
+
+        if (pos == to || data[pos] == '#') {
+            // blank and comment lines end the list of user agents in a group
+            acceptingUserAgents = false;
+        } else if (matchKeyword(pos, to, USER_AGENT)) {
+            userAgent(pos + USER_AGENT.length, to, pos > from);
+        } else if (matchKeyword(pos, to, ALLOW)) {
+            rule(RuleType.ALLOW, pos, pos + ALLOW.length, to);
+        } else if (matchKeyword(pos, to, DISALLOW)) {
+            rule(RuleType.DISALLOW, pos, pos + DISALLOW.length, to);
+        } else if (matchKeyword(pos, to, SITEMAP)) {
+            sitemapRef(pos + SITEMAP.length, to);
+        } else if (matchKeyword(pos, to, CRAWL_DELAY)) {
+            requestRate(pos, pos + CRAWL_DELAY.length, to, true);
+        } else if (matchKeyword(pos, to, REQUEST_RATE)) {
+            requestRate(pos, pos + REQUEST_RATE.length, to, false);
+        } else {
+            // like any other line, a skipped one ends the list of user agents in a group
+            acceptingUserAgents = false;
+            errors.error(position(pos), "Invalid line");
+        }
+
+        this.data = null;
+    }
+
+    /**
+     * @param truncatedAt where the input was cut off because of the byte limit, or -1
+     */
+    RobotsTxt finish(long truncatedAt) {
+        endGroup();
+
+        Truncation truncation = Truncation.NONE;
+
+        if (truncatedAt >= 0 || truncatedLines > 0 || droppedRules > 0) {
+            truncation = new Truncation(truncatedAt, truncatedLines, droppedRules);
+        }
+
+        return new RobotsTxt(ruleSets, siteMapRefs, truncation)
+                .withRequestRates(requestRates)
+                .withDiagnostics(errors.getDiagnostics());
+    }
+
+    private void userAgent(int from, int to, boolean indented) {
+        // Consecutive User-agent lines share a group, anything in between starts a new one
+        if (userAgents == null || !acceptingUserAgents || indented) {
+            endGroup();
+            userAgents = new HashSet<>();
+            ruleSet = new HashSet<>();
+            requestRate = null;
+        }
+
+        acceptingUserAgents = true;
+
+        int identifierEnd = from;
+
+        while (identifierEnd < to && data[identifierEnd] != '#') {
+            identifierEnd++;
+        }
+
+        userAgents.add(trimmedString(from, identifierEnd));
+    }
+
+    private void rule(RuleType ruleType, int lineStart, int from, int to) throws ParseException {
+        if (userAgents == null) {
+            errors.error(position(lineStart), "Invalid line");
+            return;
+        }
+
+        acceptingUserAgents = false;
+
+        int pathStart = skipWhitespace(from, to);
+        int pathEnd = pathStart;
+
+        while (pathEnd < to && data[pathEnd] != '#' && !isWhitespace(data[pathEnd])) {
+            pathEnd++;
+        }
+
+        int rest = skipWhitespace(pathEnd, to);
+
+        if (rest < to && data[rest] != '#') {
+            errors.error(position(rest), "Unexpected text after rule path");
+            return;
+        }
+
+        if (ruleSet.size() >= options.getMaxRulesPerGroup()) {
+            droppedRules++;
+            return;
+        }
+
+        ruleSet.add(new Rule(ruleType, string(pathStart, pathEnd)));
+    }
+
+    private void requestRate(int lineStart, int from, int to, boolean crawlDelay) throws ParseException {
+        if (userAgents == null) {
+            errors.error(position(lineStart), "Invalid line");
+            return;
+        }
+
+        acceptingUserAgents = false;
+
+        int valueStart = skipWhitespace(from, to);
+        int valueEnd = valueStart;
+
+        while (valueEnd < to && data[valueEnd] != '#') {
+            valueEnd++;
+        }
+
+        String value = trimmedString(valueStart, valueEnd);
+        RequestRate rate = crawlDelay ? RequestRates.crawlDelay(value) : RequestRates.requestRate(value);
+
+        if (rate == null) {
+            errors.error(position(valueStart), crawlDelay ? "Invalid crawl delay" : "Invalid request rate");
+            return;
+        }
+
+        // if a group asks for more than one rate, honor the slowest
+        requestRate = RequestRate.slower(requestRate, rate);
+    }
+
+    private void sitemapRef(int from, int to) throws ParseException {
+        // valid or not, a Sitemap line ends the list of user agents in a group
+        acceptingUserAgents = false;
+
+        int urlStart = skipWhitespace(from, to);
+        int urlEnd = urlStart;
+
+        while (urlEnd < to && data[urlEnd] != '#' && !isWhitespace(data[urlEnd])) {
+            urlEnd++;
+        }
+
+        int rest = skipWhitespace(urlEnd, to);
+
+        if (rest < to) {
+            errors.error(position(rest), "Unexpected character: " + (char) data[rest]);
+            return;
+        }
+
+        endGroup();
+        siteMapRefs.add(string(urlStart, urlEnd));
+    }
+
+    private void endGroup() {
+        if (userAgents != null) {
+            Set<Rule> finished = ruleSet;
+            userAgents.forEach(userAgent -> ruleSets.put(userAgent, finished));
+
+            if (requestRate != null) {
+                RequestRate rate = requestRate;
+                userAgents.forEach(userAgent -> requestRates.put(userAgent, rate));
+            }
+        }
+
+        userAgents = null;
+        ruleSet = null;
+        requestRate = null;
+        acceptingUserAgents = false;
+    }
+
+    //////////////////////////
+    // Begin helper functions
+    //////////////////////////
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    private int skipWhitespace(int from, int to) {
+        while (from < to && isWhitespace(data[from])) {
+            from++;
+        }
+
+        return from;
+    }
+
+    private boolean startsWith(int from, int to, byte[] prefix) {
+        if (to - from < prefix.length) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[from + i] != prefix[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean matchKeyword(int from, int to, byte[] keyword) {
+        // be permissive with casing
+        if (to - from < keyword.length) {
+            return false;
+        }
+
+        for (int i = 0; i < keyword.length; i++) {
+            if (LOWER_CASE[data[from + i] & 0xFF] != keyword[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private String string(int from, int to) {
+        return new String(data, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    private String trimmedString(int from, int to) {
+        while (from < to && (data[from] & 0xFF) <= ' ') {
+            from++;
+        }
+
+        while (to > from && (data[to - 1] & 0xFF) <= ' ') {
+            to--;
+        }
+
+        return string(from, to);
+    }
+
+    private int position(int index) {
+        return lineOffset + (index - lineStart);
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.parse;
+
+import com.widowcrawler.terminator.metrics.GlobalMetrics;
+import com.widowcrawler.terminator.metrics.Metrics;
+import com.widowcrawler.terminator.model.RobotsTxt;
+import com.widowcrawler.terminator.model.Rule;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Reports finished parses to the {@link GlobalMetrics}.
+ *
+ * @author Scott Mansfield
+ */
+final class ParseMetrics {
+
+    private ParseMetrics() {}
+
+    static RobotsTxt parsed(RobotsTxt robotsTxt, long nanos, long bytes) {
+        Metrics metrics = GlobalMetrics.get();
+
+        if (metrics != Metrics.NOOP) {
+            metrics.parsed(nanos, bytes, countRules(robotsTxt));
+        }
+
+        return robotsTxt;
+    }
+
+    private static int countRules(RobotsTxt robotsTxt) {
+        // user agents in the same group share one rule set
+        Set<Set<Rule>> groups = Collections.newSetFromMap(new IdentityHashMap<>());
+        int rules = 0;
+
+        for (Set<Rule> ruleSet : robotsTxt.getRuleSets().values()) {
+            if (groups.add(ruleSet)) {
+                rules += ruleSet.size();
+            }
+        }
+
+        return rules;
+    }
+}
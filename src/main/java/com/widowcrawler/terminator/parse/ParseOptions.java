@@ -0,0 +1,147 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.parse;
+
+/**
+ * Limits that keep a hostile or broken robots.txt from using unbounded memory or time. Input past a limit is left
+ * out of the result and reported in its {@link com.widowcrawler.terminator.model.Truncation} rather than failing the
+ * parse. Malformed lines fail the parse unless it is {@link Builder#lenient(boolean) lenient}.
+ *
+ * @author Scott Mansfield
+ */
+public class ParseOptions {
+
+    /**
+     * 500 KiB, the same limit Google applies.
+     */
+    public static final int DEFAULT_MAX_BYTES = 500 * 1024;
+
+    /**
+     * Long enough for 8 maximum length URLs, as in Google's parser.
+     */
+    public static final int DEFAULT_MAX_LINE_LENGTH = 2083 * 8;
+
+    public static final int DEFAULT_MAX_DIAGNOSTICS = 100;
+
+    public static final ParseOptions DEFAULT = builder().build();
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private final int maxBytes;
+    private final int maxLineLength;
+    private final int maxRulesPerGroup;
+    private final boolean lenient;
+    private final int maxDiagnostics;
+
+    private ParseOptions(Builder builder) {
+        this.maxBytes = builder.maxBytes;
+        this.maxLineLength = builder.maxLineLength;
+        this.maxRulesPerGroup = builder.maxRulesPerGroup;
+        this.lenient = builder.lenient;
+        this.maxDiagnostics = builder.maxDiagnostics;
+    }
+
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+
+    public int getMaxLineLength() {
+        return maxLineLength;
+    }
+
+    public int getMaxRulesPerGroup() {
+        return maxRulesPerGroup;
+    }
+
+    public boolean isLenient() {
+        return lenient;
+    }
+
+    public int getMaxDiagnostics() {
+        return maxDiagnostics;
+    }
+
+    public static class Builder {
+        private int maxBytes = DEFAULT_MAX_BYTES;
+        private int maxLineLength = DEFAULT_MAX_LINE_LENGTH;
+        private int maxRulesPerGroup = Integer.MAX_VALUE;
+        private boolean lenient = false;
+        private int maxDiagnostics = DEFAULT_MAX_DIAGNOSTICS;
+
+        private Builder() {}
+
+        /**
+         * Everything after this many bytes is ignored, along with the line the limit falls in. Defaults to
+         * {@link #DEFAULT_MAX_BYTES}.
+         */
+        public Builder maxBytes(int maxBytes) {
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * Longer lines are cut to this many bytes before being parsed. Defaults to
+         * {@link #DEFAULT_MAX_LINE_LENGTH}.
+         */
+        public Builder maxLineLength(int maxLineLength) {
+            this.maxLineLength = maxLineLength;
+            return this;
+        }
+
+        /**
+         * Rules past this many in a single group are dropped. Unlimited by default, since {@link #maxBytes(int)}
+         * already bounds the total.
+         */
+        public Builder maxRulesPerGroup(int maxRulesPerGroup) {
+            this.maxRulesPerGroup = maxRulesPerGroup;
+            return this;
+        }
+
+        /**
+         * Skips lines that would otherwise fail the parse, such as unknown directives ({@code Host:},
+         * {@code Noindex:}), rules outside of a group, malformed values or stray HTML, and records them in
+         * {@link com.widowcrawler.terminator.model.RobotsTxt#getDiagnostics()}. A skipped line doesn't end the
+         * group it is in. Off by default.
+         */
+        public Builder lenient(boolean lenient) {
+            this.lenient = lenient;
+            return this;
+        }
+
+        /**
+         * How many errors a lenient parse keeps. Lines past this many are still skipped and counted, but their
+         * errors aren't kept. Defaults to {@link #DEFAULT_MAX_DIAGNOSTICS}.
+         */
+        public Builder maxDiagnostics(int maxDiagnostics) {
+            this.maxDiagnostics = maxDiagnostics;
+            return this;
+        }
+
+        public ParseOptions build() {
+            if (maxDiagnostics < 0) {
+                throw new IllegalArgumentException("maxDiagnostics must not be negative");
+            }
+
+            if (maxBytes <= 0 || maxLineLength <= 0 || maxRulesPerGroup <= 0) {
+                throw new IllegalArgumentException("Limits must be positive");
+            }
+
+            return new ParseOptions(this);
+        }
+    }
+}
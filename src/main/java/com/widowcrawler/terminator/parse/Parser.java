@@ -16,6 +16,8 @@
 package com.widowcrawler.terminator.parse;
 
 import com.widowcrawler.terminator.ParseException;
+import com.widowcrawler.terminator.metrics.GlobalMetrics;
+import com.widowcrawler.terminator.model.RequestRate;
 import com.widowcrawler.terminator.model.RobotsTxt;
 import com.widowcrawler.terminator.model.Rule;
 import com.widowcrawler.terminator.model.RuleType;
@@ -24,7 +26,10 @@ import org.apache.commons.lang3.StringUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.*;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Parses robots.txt files.
@@ -33,6 +38,8 @@ import java.util.*;
  *
  * Draft: http://www.robotstxt.org/norobots-rfc.txt
  *
+ * Of the {@link ParseOptions}, only the lenient setting applies here, see {@link ByteParser} for the limits.
+ *
  * @author Scott Mansfield
  */
 public class Parser {
@@ -41,32 +48,40 @@ public class Parser {
     public static final String ALLOW = "Allow:";
     public static final String DISALLOW = "Disallow:";
     public static final String SITEMAP = "Sitemap:";
+    public static final String CRAWL_DELAY = "Crawl-delay:";
+    public static final String REQUEST_RATE = "Request-rate:";
 
-    private static final List<Character> whitespaceChars;
-    private static final List<Character> endlineChars;
-
-    static {
-        whitespaceChars = Collections.unmodifiableList(Arrays.asList(' ', '\t'));
-        endlineChars = Collections.unmodifiableList(Arrays.asList('\r', '\n'));
-    }
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
 
     private String data;
     private int dataPtr;
+    private ErrorCollector errors;
 
     private Map<String, Set<Rule>> ruleSets;
     private Set<String> siteMapRefs;
+    private Map<String, RequestRate> requestRates;
 
     public Parser(String data) {
+        this(data, ParseOptions.DEFAULT);
+    }
+
+    public Parser(String data, ParseOptions options) {
         this.data = data;
         this.dataPtr = 0;
+        this.errors = new ErrorCollector(options);
         this.ruleSets = new HashMap<>();
         this.siteMapRefs = new HashSet<>();
+        this.requestRates = new HashMap<>();
     }
 
     public Parser(InputStream inputStream) throws IOException {
         this(readStreamAlwaysClose(inputStream));
     }
 
+    public Parser(InputStream inputStream, ParseOptions options) throws IOException {
+        this(readStreamAlwaysClose(inputStream), options);
+    }
+
     // ouch, seems hacky but it works
     private static String readStreamAlwaysClose(InputStream inputStream) throws IOException {
         try {
@@ -77,9 +92,20 @@ public class Parser {
     }
 
     public RobotsTxt parse() throws ParseException {
+        boolean timed = GlobalMetrics.isEnabled();
+        long startNanos = timed ? System.nanoTime() : 0L;
+
         robotsTxt();
 
-        return new RobotsTxt(ruleSets, siteMapRefs);
+        RobotsTxt robotsTxt = new RobotsTxt(ruleSets, siteMapRefs)
+                .withRequestRates(requestRates)
+                .withDiagnostics(errors.getDiagnostics());
+
+        if (timed) {
+            ParseMetrics.parsed(robotsTxt, System.nanoTime() - startNanos, data.length());
+        }
+
+        return robotsTxt;
     }
 
     //////////////////////////////////
@@ -88,6 +114,10 @@ public class Parser {
 
     private void robotsTxt() throws ParseException {
         //System.out.println("robotsTxt()");
+        if (!isEndOfFile() && current() == BYTE_ORDER_MARK) {
+            next();
+        }
+
         while (!isEndOfFile()) {
             robotsTxtPart();
         }
@@ -106,10 +136,21 @@ public class Parser {
         } else if (isSitemapRefStart()) {
             sitemapRef();
         } else {
-            throw new ParseException(dataPtr, "Invalid line");
+            invalidLine("Invalid line");
         }
     }
 
+    private void invalidLine(String message) throws ParseException {
+        //System.out.println("invalidLine()");
+        errors.error(dataPtr, message);
+
+        while (!isEndOfFile() && !isEndline()) {
+            next();
+        }
+
+        endline();
+    }
+
     private void whitespace() {
         //System.out.println("whitespace()");
         while (!isEndOfFile() && isWhitespace()) {
@@ -134,7 +175,7 @@ public class Parser {
             next();
         } else if (current() == '\r') {
             next();
-            if (current() == '\n') {
+            if (!isEndOfFile() && current() == '\n') {
                 next();
             }
         } else {
@@ -146,22 +187,33 @@ public class Parser {
         //System.out.println("agentSpec()");
         Set<String> userAgents = userAgents();
         Set<Rule> ruleSet = new HashSet<>();
+        RequestRate requestRate = null;
 
         whitespace();
 
-        while (isRuleLineStart()) {
-            Rule rule = ruleLine();
-
-            if (rule != null) {
-                ruleSet.add(rule);
-                //System.out.println(rule.getRuleType());
-                //System.out.println(rule.getPathMatch());
+        while (isRuleLineStart() || isSkippableLineStart()) {
+            if (isRequestRateLineStart()) {
+                // if a group asks for more than one rate, honor the slowest
+                requestRate = RequestRate.slower(requestRate, requestRateLine());
+            } else {
+                Rule rule = ruleLine();
+
+                if (rule != null) {
+                    ruleSet.add(rule);
+                    //System.out.println(rule.getRuleType());
+                    //System.out.println(rule.getPathMatch());
+                }
             }
 
             whitespace();
         }
 
         userAgents.forEach(userAgent -> ruleSets.put(userAgent, ruleSet));
+
+        if (requestRate != null) {
+            RequestRate rate = requestRate;
+            userAgents.forEach(userAgent -> requestRates.put(userAgent, rate));
+        }
     }
 
     private Set<String> userAgents() throws ParseException {
@@ -212,10 +264,10 @@ public class Parser {
         } else if (isRuleStart()) {
             return rule();
         } else {
-            throw new ParseException(dataPtr, "Expected either 'Allow:' or 'Disallow:' to start a rule");
+            invalidLine("Expected either 'Allow:' or 'Disallow:' to start a rule");
         }
 
-        // blank lines return null
+        // blank and skipped lines return null
         return null;
     }
 
@@ -236,7 +288,8 @@ public class Parser {
         } else if (isCommentStart()) {
             commentLine();
         } else if (!isEndOfFile()) {
-            throw new ParseException(dataPtr, "Unexpected text after rule path");
+            invalidLine("Unexpected text after rule path");
+            return null;
         }
 
         return rule;
@@ -275,12 +328,48 @@ public class Parser {
         return path;
     }
 
+    private RequestRate requestRateLine() throws ParseException {
+        //System.out.println("requestRateLine()");
+        boolean crawlDelay = isCrawlDelayStart();
+        skip(crawlDelay ? CRAWL_DELAY.length() : REQUEST_RATE.length());
+        whitespace();
+
+        int start = dataPtr;
+
+        while (!isEndOfFile() && !isCommentStart() && !isEndline()) {
+            next();
+        }
+
+        String value = StringUtils.trimToEmpty(data.substring(start, dataPtr));
+        RequestRate rate = crawlDelay ? RequestRates.crawlDelay(value) : RequestRates.requestRate(value);
+
+        if (rate == null) {
+            dataPtr = start;
+            invalidLine(crawlDelay ? "Invalid crawl delay" : "Invalid request rate");
+            return null;
+        }
+
+        if (isCommentStart()) {
+            commentLine();
+        } else {
+            endline();
+        }
+
+        return rate;
+    }
+
     private void sitemapRef() throws ParseException {
         //System.out.println("sitemapRef");
         skip(SITEMAP.length());
         whitespace();
 
         String url = sitemapRefIdentifier();
+
+        if (!isEndOfFile() && !isEndline()) {
+            invalidLine("Unexpected character: " + current());
+            return;
+        }
+
         siteMapRefs.add(url);
 
         endline();
@@ -305,7 +394,7 @@ public class Parser {
     // Begin helper functions
     //////////////////////////
 
-    private Character current() {
+    private char current() {
         return data.charAt(dataPtr);
     }
 
@@ -321,7 +410,7 @@ public class Parser {
 
     // TODO: Maybe these ought to be case-agnostic
     private boolean isWhitespace() {
-        return !isEndOfFile() && whitespaceChars.contains(current());
+        return !isEndOfFile() && (current() == ' ' || current() == '\t');
     }
 
     private boolean isCommentStart() {
@@ -329,7 +418,7 @@ public class Parser {
     }
 
     private boolean isEndline() {
-        return !isEndOfFile() && endlineChars.contains(current());
+        return !isEndOfFile() && (current() == '\r' || current() == '\n');
     }
 
     private boolean isUserAgentStart() {
@@ -337,7 +426,20 @@ public class Parser {
     }
 
     private boolean isRuleLineStart() {
-        return isRuleStart() || isCommentStart() || isEndline();
+        return isRuleStart() || isRequestRateLineStart() || isCommentStart() || isEndline();
+    }
+
+    // in lenient mode, unknown lines in a group are skipped rather than ending it
+    private boolean isSkippableLineStart() {
+        return errors.isLenient() && !isEndOfFile() && !isUserAgentStart() && !isSitemapRefStart();
+    }
+
+    private boolean isRequestRateLineStart() {
+        return isCrawlDelayStart() || (!isEndOfFile() && matchStringStart(REQUEST_RATE));
+    }
+
+    private boolean isCrawlDelayStart() {
+        return !isEndOfFile() && matchStringStart(CRAWL_DELAY);
     }
 
     private boolean isRuleStart() {
@@ -362,9 +464,6 @@ public class Parser {
 
     private boolean matchStringStart(String toMatch) {
         // be permissive with casing
-        return StringUtils.equalsIgnoreCase(
-                data.substring(dataPtr, dataPtr + toMatch.length()),
-                toMatch
-        );
+        return data.regionMatches(true, dataPtr, toMatch, 0, toMatch.length());
     }
 }
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.parse;
+
+import com.widowcrawler.terminator.model.RequestRate;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the values of {@code Crawl-delay} and {@code Request-rate} lines, for both parsers.
+ *
+ * @author Scott Mansfield
+ */
+final class RequestRates {
+
+    private static final Pattern CRAWL_DELAY = Pattern.compile("\\d+(\\.\\d*)?|\\.\\d+");
+
+    // an optional time of day window may follow, e.g. "1/5 0600-0845", which we don't support and ignore
+    private static final Pattern REQUEST_RATE = Pattern.compile("(\\d{1,9})\\s*/\\s*(\\d{1,9})\\s*([smhd]?)(\\s.*)?",
+            Pattern.CASE_INSENSITIVE);
+
+    // anything longer is as good as "never", and keeps the nanoseconds from overflowing
+    private static final double MAX_DELAY_SECONDS = TimeUnit.DAYS.toSeconds(365);
+
+    private RequestRates() {}
+
+    /**
+     * @param value a delay in seconds, possibly fractional
+     * @return the rate, or null if the value isn't a delay
+     */
+    static RequestRate crawlDelay(String value) {
+        if (!CRAWL_DELAY.matcher(value).matches()) {
+            return null;
+        }
+
+        double seconds = Math.min(Double.parseDouble(value), MAX_DELAY_SECONDS);
+
+        return RequestRate.ofDelay(Math.round(seconds * TimeUnit.SECONDS.toNanos(1)), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param value requests per period, with the period in seconds unless followed by one of s, m, h or d
+     * @return the rate, or null if the value isn't a rate
+     */
+    static RequestRate requestRate(String value) {
+        Matcher matcher = REQUEST_RATE.matcher(value);
+
+        if (!matcher.matches()) {
+            return null;
+        }
+
+        int requests = Integer.parseInt(matcher.group(1));
+
+        if (requests == 0) {
+            return null;
+        }
+
+        return new RequestRate(requests, Long.parseLong(matcher.group(2)), unit(matcher.group(3)));
+    }
+
+    private static TimeUnit unit(String suffix) {
+        switch (suffix.toLowerCase()) {
+            case "m":
+                return TimeUnit.MINUTES;
+            case "h":
+                return TimeUnit.HOURS;
+            case "d":
+                return TimeUnit.DAYS;
+            default:
+                return TimeUnit.SECONDS;
+        }
+    }
+}
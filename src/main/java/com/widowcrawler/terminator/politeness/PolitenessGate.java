@@ -0,0 +1,308 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.politeness;
+
+import com.widowcrawler.terminator.cache.HostKey;
+import com.widowcrawler.terminator.model.RequestRate;
+import com.widowcrawler.terminator.model.RobotsTxt;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.LongSupplier;
+
+/**
+ * Spaces out requests to each host according to its robots.txt {@code Crawl-delay} or {@code Request-rate}, or a
+ * default interval for hosts that don't ask for one.
+ *
+ * Each host costs one small object holding the earliest time its next request may start. Taking a permit is a single
+ * compare-and-swap on that time, with no locks and no threads, so crawler threads can check hundreds of thousands of
+ * hosts as fast as they can pick URLs:
+ *
+ * <pre>
+ * if (gate.tryAcquire(hostKey)) {
+ *     fetch(url);
+ * } else {
+ *     requeue(url, gate.nanosUntilAvailable(hostKey));
+ * }
+ * </pre>
+ *
+ * Hosts are forgotten by {@link #evictIdle()} once they have been idle for a while, including hosts configured with
+ * {@link #update(HostKey, RobotsTxt, String)}. A forgotten host is back on the default interval until its rate is
+ * applied again, so call {@code update} whenever the crawler picks up a host's robots.txt, e.g. from a cache, not
+ * just when the file is first fetched.
+ *
+ * @author Scott Mansfield
+ */
+public class PolitenessGate {
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private final long defaultIntervalNanos;
+    private final long minIntervalNanos;
+    private final long maxIntervalNanos;
+    private final long idleNanos;
+    private final LongSupplier ticker;
+
+    private final Config defaultConfig;
+    private final ConcurrentHashMap<HostKey, Slot> slots = new ConcurrentHashMap<>();
+
+    private PolitenessGate(Builder builder) {
+        this.defaultIntervalNanos = builder.defaultIntervalNanos;
+        this.minIntervalNanos = builder.minIntervalNanos;
+        this.maxIntervalNanos = builder.maxIntervalNanos;
+        this.idleNanos = builder.idleNanos;
+        this.ticker = builder.ticker;
+        this.defaultConfig = new Config(defaultIntervalNanos);
+    }
+
+    /**
+     * Takes the host's permit if its interval has passed since the last request started.
+     *
+     * @return true if a request to the host may start now
+     */
+    public boolean tryAcquire(HostKey hostKey) {
+        long now = ticker.getAsLong();
+        Slot slot = slotFor(hostKey, now);
+
+        while (true) {
+            long next = slot.next;
+
+            if (next == Slot.RETIRED) {
+                // evicted since we looked it up, a permit from it would be spaced from nothing
+                slots.remove(hostKey, slot);
+                slot = slotFor(hostKey, now);
+                continue;
+            }
+
+            if (now - next < 0) {
+                return false;
+            }
+
+            if (Slot.NEXT.compareAndSet(slot, next, now + slot.config.intervalNanos)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return how long until {@link #tryAcquire(HostKey)} could succeed for the host, 0 if it could now
+     */
+    public long nanosUntilAvailable(HostKey hostKey) {
+        Slot slot = slots.get(hostKey);
+
+        long next = slot != null ? slot.next : Slot.RETIRED;
+
+        if (next == Slot.RETIRED) {
+            return 0L;
+        }
+
+        return Math.max(0L, next - ticker.getAsLong());
+    }
+
+    /**
+     * Applies the request rate the robots.txt asks of the crawler, see {@link RobotsTxt#getRequestRate(String)}.
+     */
+    public void update(HostKey hostKey, RobotsTxt robotsTxt, String userAgent) {
+        setRequestRate(hostKey, robotsTxt.getRequestRate(userAgent));
+    }
+
+    /**
+     * @param requestRate the rate to keep to, or null for the default interval
+     */
+    public void setRequestRate(HostKey hostKey, RequestRate requestRate) {
+        Config config = defaultConfig;
+
+        if (requestRate != null) {
+            config = new Config(Math.min(maxIntervalNanos, Math.max(minIntervalNanos, requestRate.getIntervalNanos())));
+        }
+
+        setConfig(hostKey, config);
+    }
+
+    /**
+     * @return the interval kept between requests to the host
+     */
+    public long getIntervalNanos(HostKey hostKey) {
+        Slot slot = slots.get(hostKey);
+        return slot != null ? slot.config.intervalNanos : defaultIntervalNanos;
+    }
+
+    public void remove(HostKey hostKey) {
+        Slot slot = slots.get(hostKey);
+
+        if (slot != null) {
+            Slot.NEXT.set(slot, Slot.RETIRED);
+            slots.remove(hostKey, slot);
+        }
+    }
+
+    /**
+     * Forgets hosts that haven't had a request for the idle time since their interval last ran out, so a long crawl
+     * over many hosts doesn't keep every one it has seen. Such a host would get a permit anyway, so forgetting it
+     * only loses its request rate, until {@link #update(HostKey, RobotsTxt, String)} applies it again. Call this
+     * periodically, e.g. from a scheduled task.
+     *
+     * @return the number of hosts forgotten
+     */
+    public int evictIdle() {
+        long now = ticker.getAsLong();
+        int evicted = 0;
+
+        for (Map.Entry<HostKey, Slot> entry : slots.entrySet()) {
+            Slot slot = entry.getValue();
+            Config config = slot.config;
+            long next = slot.next;
+
+            // retire the slot first, so nothing can take a permit from it once it's gone from the map
+            if (next == Slot.RETIRED || now - next < idleNanos
+                    || !Slot.NEXT.compareAndSet(slot, next, Slot.RETIRED)) {
+                continue;
+            }
+
+            slots.remove(entry.getKey(), slot);
+            evicted++;
+
+            if (slot.config != config) {
+                // the rate was set while we were evicting, carry it over rather than lose it
+                setConfig(entry.getKey(), slot.config);
+            }
+        }
+
+        return evicted;
+    }
+
+    /**
+     * @return the number of hosts being tracked
+     */
+    public int size() {
+        return slots.size();
+    }
+
+    private void setConfig(HostKey hostKey, Config config) {
+        long now = ticker.getAsLong();
+        Slot slot = slotFor(hostKey, now);
+
+        // takes effect from the next permit, the one already handed out keeps its spacing
+        slot.config = config;
+
+        // written before checking, so either we see the slot was evicted or evictIdle() sees the new config
+        while (slot.next == Slot.RETIRED) {
+            slots.remove(hostKey, slot);
+            slot = slotFor(hostKey, now);
+            slot.config = config;
+        }
+    }
+
+    private Slot slotFor(HostKey hostKey, long now) {
+        Slot slot = slots.get(hostKey);
+
+        if (slot == null) {
+            slot = slots.computeIfAbsent(hostKey, key -> new Slot(now, defaultConfig));
+        }
+
+        return slot;
+    }
+
+    /**
+     * A host's settings, replaced as a whole, so a new one can be told apart from the one it replaced.
+     */
+    private static final class Config {
+        final long intervalNanos;
+
+        Config(long intervalNanos) {
+            this.intervalNanos = intervalNanos;
+        }
+    }
+
+    private static final class Slot {
+        static final AtomicLongFieldUpdater<Slot> NEXT = AtomicLongFieldUpdater.newUpdater(Slot.class, "next");
+
+        // marks a slot that has been evicted or removed, which must be looked up again
+        static final long RETIRED = Long.MIN_VALUE;
+
+        // the earliest time, on the gate's ticker, the next request may start
+        volatile long next;
+        volatile Config config;
+
+        Slot(long next, Config config) {
+            this.next = next;
+            this.config = config;
+        }
+    }
+
+    public static class Builder {
+        private long defaultIntervalNanos = TimeUnit.SECONDS.toNanos(1);
+        private long minIntervalNanos = 0L;
+        private long maxIntervalNanos = Long.MAX_VALUE;
+        private long idleNanos = TimeUnit.MINUTES.toNanos(10);
+        private LongSupplier ticker = System::nanoTime;
+
+        private Builder() {}
+
+        /**
+         * The interval for hosts whose robots.txt doesn't ask for one. Defaults to one second.
+         */
+        public Builder defaultInterval(long duration, TimeUnit unit) {
+            this.defaultIntervalNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * The shortest interval to keep, even if a robots.txt allows less. Defaults to none.
+         */
+        public Builder minInterval(long duration, TimeUnit unit) {
+            this.minIntervalNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * The longest interval to keep, for robots.txt files that ask for unreasonable delays. Defaults to none.
+         */
+        public Builder maxInterval(long duration, TimeUnit unit) {
+            this.maxIntervalNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * How long a host must go without requests, after its interval runs out, before
+         * {@link PolitenessGate#evictIdle()} forgets it. Defaults to ten minutes.
+         */
+        public Builder evictIdleAfter(long duration, TimeUnit unit) {
+            this.idleNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * The source of time in nanoseconds, for tests. Defaults to {@link System#nanoTime()}.
+         */
+        public Builder ticker(LongSupplier ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        public PolitenessGate build() {
+            if (defaultIntervalNanos < 0 || minIntervalNanos < 0 || maxIntervalNanos < minIntervalNanos) {
+                throw new IllegalArgumentException("Intervals must not be negative, and the maximum not below the minimum");
+            }
+
+            return new PolitenessGate(this);
+        }
+    }
+}
@@ -0,0 +1,366 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.sitemap;
+
+import com.widowcrawler.terminator.fetch.RobotsTxtFetcher;
+import com.widowcrawler.terminator.model.RobotsTxt;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads the sitemaps a robots.txt points to, following sitemap indexes, and streams out every URL they list.
+ *
+ * Sitemaps are fetched and parsed on a fixed number of threads, so no more than that many are open at once however
+ * wide the indexes are. Each is parsed as it downloads by a {@link SitemapParser}, and URLs go straight to a
+ * {@link SitemapSink} or a {@link SitemapStream} without being collected, so memory stays flat no matter how many
+ * gigabytes of sitemaps a site has. A slow consumer slows down the reading rather than letting entries pile up.
+ *
+ * A sitemap listed more than once, or by an index that refers back to itself, is only read once, and
+ * {@link Builder#maxSitemaps(int)} and {@link Builder#maxDepth(int)} bound how far a crawl can go.
+ *
+ * @author Scott Mansfield
+ */
+public class SitemapCrawler implements Closeable {
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private final SitemapSource source;
+    private final SitemapParser parser;
+    private final ExecutorService executor;
+    private final int maxSitemaps;
+    private final int maxDepth;
+    private final int streamBufferSize;
+
+    private SitemapCrawler(Builder builder) {
+        this.source = builder.source;
+        this.parser = new SitemapParser(builder.maxBytes);
+        this.executor = Executors.newFixedThreadPool(builder.parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "sitemap-crawler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maxSitemaps = builder.maxSitemaps;
+        this.maxDepth = builder.maxDepth;
+        this.streamBufferSize = builder.streamBufferSize;
+    }
+
+    /**
+     * Reads every sitemap in the robots.txt's {@code Sitemap:} lines.
+     */
+    public CompletableFuture<Result> crawl(RobotsTxt robotsTxt, SitemapSink sink) {
+        return crawl(robotsTxt.getSiteMapRefs(), sink);
+    }
+
+    /**
+     * @param sitemapUrls sitemaps or sitemap indexes
+     * @return a future completed once every sitemap has been read or has failed. It never completes exceptionally,
+     *         failures go to {@link SitemapSink#failed(String, Exception)} and are counted in the result.
+     */
+    public CompletableFuture<Result> crawl(Collection<String> sitemapUrls, SitemapSink sink) {
+        Crawl crawl = new Crawl(sink);
+        crawl.start(sitemapUrls);
+        return crawl.result;
+    }
+
+    public SitemapStream stream(RobotsTxt robotsTxt) {
+        return stream(robotsTxt.getSiteMapRefs());
+    }
+
+    /**
+     * Like {@link #crawl(Collection, SitemapSink)}, but hands out the URLs through a blocking iterator. Close it to
+     * stop the crawl early.
+     */
+    public SitemapStream stream(Collection<String> sitemapUrls) {
+        SitemapStream stream = new SitemapStream(streamBufferSize);
+        Crawl crawl = new Crawl(stream.sink());
+        stream.start(crawl.result, crawl::cancel);
+        crawl.start(sitemapUrls);
+        return stream;
+    }
+
+    /**
+     * Stops the threads. Crawls still running are left unfinished.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private class Crawl {
+        private final SitemapSink sink;
+        private final Set<String> seen = ConcurrentHashMap.newKeySet();
+        // the extra one is held by start() until every initial sitemap is submitted
+        private final AtomicInteger outstanding = new AtomicInteger(1);
+        private final AtomicInteger sitemaps = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger skipped = new AtomicInteger();
+        private final AtomicLong urls = new AtomicLong();
+        private final CompletableFuture<Result> result = new CompletableFuture<>();
+        private final long startNanos = System.nanoTime();
+        private volatile boolean cancelled;
+
+        Crawl(SitemapSink sink) {
+            this.sink = sink;
+        }
+
+        void start(Collection<String> sitemapUrls) {
+            for (String url : sitemapUrls) {
+                submit(url, 0);
+            }
+
+            done();
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        private void submit(String url, int depth) {
+            if (!seen.add(url)) {
+                return;
+            }
+
+            if (cancelled || depth > maxDepth || seen.size() > maxSitemaps) {
+                skipped.incrementAndGet();
+                return;
+            }
+
+            outstanding.incrementAndGet();
+
+            try {
+                executor.execute(() -> read(url, depth));
+            } catch (RejectedExecutionException ex) {
+                failed(url, ex);
+                done();
+            }
+        }
+
+        private void read(String url, int depth) {
+            try {
+                if (cancelled) {
+                    skipped.incrementAndGet();
+                    return;
+                }
+
+                try (InputStream body = source.open(url)) {
+                    parser.parse(body, this::accept, sitemap -> submit(sitemap.getLoc(), depth + 1));
+                }
+
+                sitemaps.incrementAndGet();
+            } catch (CancellationException ex) {
+                skipped.incrementAndGet();
+            } catch (SinkException ex) {
+                failed(url, ex.getCause());
+            } catch (Exception ex) {
+                failed(url, ex);
+            } finally {
+                done();
+            }
+        }
+
+        private void accept(SitemapEntry entry) {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+
+            synchronized (this) {
+                try {
+                    sink.accept(entry);
+                } catch (CancellationException ex) {
+                    throw ex;
+                } catch (Exception ex) {
+                    throw new SinkException(ex);
+                }
+            }
+
+            urls.incrementAndGet();
+        }
+
+        private void failed(String url, Exception cause) {
+            failed.incrementAndGet();
+
+            synchronized (this) {
+                sink.failed(url, cause);
+            }
+        }
+
+        private void done() {
+            if (outstanding.decrementAndGet() == 0) {
+                result.complete(new Result(sitemaps.get(), failed.get(), skipped.get(), urls.get(),
+                        System.nanoTime() - startNanos));
+            }
+        }
+    }
+
+    // carries a sink's exception out through the parser's callback
+    private static class SinkException extends RuntimeException {
+        SinkException(Exception cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized Exception getCause() {
+            return (Exception) super.getCause();
+        }
+    }
+
+    public static class Result {
+        private final int sitemaps;
+        private final int failed;
+        private final int skipped;
+        private final long urls;
+        private final long elapsedNanos;
+
+        Result(int sitemaps, int failed, int skipped, long urls, long elapsedNanos) {
+            this.sitemaps = sitemaps;
+            this.failed = failed;
+            this.skipped = skipped;
+            this.urls = urls;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return the number of sitemaps and indexes read to the end
+         */
+        public int getSitemaps() {
+            return sitemaps;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return the number of sitemaps left unread because of the limits, or because the crawl was stopped
+         */
+        public int getSkipped() {
+            return skipped;
+        }
+
+        public long getUrls() {
+            return urls;
+        }
+
+        public long getElapsed(TimeUnit unit) {
+            return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public String toString() {
+            return "Result{sitemaps=" + sitemaps + ", failed=" + failed + ", skipped=" + skipped + ", urls=" + urls +
+                    ", elapsedMillis=" + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + "}";
+        }
+    }
+
+    public static class Builder {
+        private SitemapSource source;
+        private String userAgent = "terminator";
+        private int parallelism = 4;
+        private int maxSitemaps = 1000;
+        private int maxDepth = 2;
+        private long maxBytes = SitemapParser.DEFAULT_MAX_BYTES;
+        private int streamBufferSize = 1024;
+
+        private Builder() {}
+
+        /**
+         * Where sitemaps are read from. Defaults to HTTP over the default {@link RobotsTxtFetcher}'s client.
+         */
+        public Builder source(SitemapSource source) {
+            this.source = source;
+            return this;
+        }
+
+        /**
+         * The User-Agent header sent by the default source.
+         */
+        public Builder userAgent(String userAgent) {
+            this.userAgent = userAgent;
+            return this;
+        }
+
+        /**
+         * How many sitemaps are read at once. Defaults to 4.
+         */
+        public Builder parallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Sitemaps past this many in one crawl are skipped. Defaults to 1000.
+         */
+        public Builder maxSitemaps(int maxSitemaps) {
+            this.maxSitemaps = maxSitemaps;
+            return this;
+        }
+
+        /**
+         * How many levels of sitemap index to follow. The protocol doesn't allow indexes of indexes, but some sites
+         * have them, so this defaults to 2.
+         */
+        public Builder maxDepth(int maxDepth) {
+            this.maxDepth = maxDepth;
+            return this;
+        }
+
+        /**
+         * The most uncompressed bytes read from one sitemap. Defaults to {@link SitemapParser#DEFAULT_MAX_BYTES}.
+         */
+        public Builder maxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * How many URLs a {@link SitemapStream} holds before reading waits for the consumer. Defaults to 1024.
+         */
+        public Builder streamBufferSize(int streamBufferSize) {
+            this.streamBufferSize = streamBufferSize;
+            return this;
+        }
+
+        public SitemapCrawler build() {
+            if (parallelism <= 0 || maxSitemaps <= 0 || streamBufferSize <= 0) {
+                throw new IllegalArgumentException("parallelism, maxSitemaps and streamBufferSize must be positive");
+            }
+
+            if (maxDepth < 0) {
+                throw new IllegalArgumentException("maxDepth must not be negative");
+            }
+
+            if (source == null) {
+                source = SitemapSource.of(RobotsTxtFetcher.getDefault().getClient(), userAgent);
+            }
+
+            return new SitemapCrawler(this);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.sitemap;
+
+import java.util.Objects;
+
+/**
+ * A {@code <url>} from a sitemap, or a {@code <sitemap>} from a sitemap index.
+ *
+ * @author Scott Mansfield
+ */
+public class SitemapEntry {
+
+    private final String loc;
+    private final String lastMod;
+
+    public SitemapEntry(String loc, String lastMod) {
+        this.loc = loc;
+        this.lastMod = lastMod;
+    }
+
+    public String getLoc() {
+        return loc;
+    }
+
+    /**
+     * @return the {@code <lastmod>} as written, a W3C datetime at any precision, or null if there wasn't one
+     */
+    public String getLastMod() {
+        return lastMod;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SitemapEntry that = (SitemapEntry) o;
+        return loc.equals(that.loc) && Objects.equals(lastMod, that.lastMod);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(loc, lastMod);
+    }
+
+    @Override
+    public String toString() {
+        return "SitemapEntry{" +
+                "loc='" + loc + '\'' +
+                ", lastMod='" + lastMod + '\'' +
+                '}';
+    }
+}
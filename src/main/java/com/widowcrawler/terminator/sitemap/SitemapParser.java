@@ -0,0 +1,158 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.sitemap;
+
+import com.widowcrawler.terminator.ParseException;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.input.CountingInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Parses sitemaps and sitemap indexes as a stream of StAX events, so memory use doesn't grow with the size of the
+ * file. Each entry is handed on as soon as its closing tag is read.
+ *
+ * Gzipped input is recognized by its magic number and unzipped on the fly. The sitemaps protocol caps files at 50 MB
+ * uncompressed, which is also the default limit here; it is counted after unzipping, so a small gzip bomb can't
+ * expand without bound. Elements are matched by local name, whatever namespace the file declares, and DTDs and
+ * external entities are never resolved.
+ *
+ * Draft: https://www.sitemaps.org/protocol.html
+ *
+ * @author Scott Mansfield
+ */
+public class SitemapParser {
+
+    public static final long DEFAULT_MAX_BYTES = 50L * 1024 * 1024;
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        FACTORY.setProperty(XMLInputFactory.IS_COALESCING, true);
+    }
+
+    private final long maxBytes;
+
+    public SitemapParser() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param maxBytes the most uncompressed bytes read from one file
+     */
+    public SitemapParser(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive");
+        }
+
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Reads a sitemap or sitemap index to the end. The stream is not closed.
+     *
+     * @param urls receives every {@code <url>} with a {@code <loc>}
+     * @param sitemaps receives every {@code <sitemap>} with a {@code <loc>}, from an index
+     * @throws ParseException if the XML is malformed or longer than the limit, at the character offset of the error
+     */
+    public void parse(InputStream inputStream, Consumer<SitemapEntry> urls, Consumer<SitemapEntry> sitemaps)
+            throws IOException, ParseException {
+        CountingInputStream counting = new CountingInputStream(new BoundedInputStream(unzipped(inputStream), maxBytes));
+
+        XMLStreamReader reader = null;
+
+        try {
+            reader = FACTORY.createXMLStreamReader(counting);
+
+            String loc = null;
+            String lastMod = null;
+
+            while (reader.hasNext()) {
+                int event = reader.next();
+
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    switch (reader.getLocalName()) {
+                        case "url":
+                        case "sitemap":
+                            loc = null;
+                            lastMod = null;
+                            break;
+                        case "loc":
+                            loc = reader.getElementText().trim();
+                            break;
+                        case "lastmod":
+                            lastMod = reader.getElementText().trim();
+                            break;
+                        default:
+                            break;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && loc != null && !loc.isEmpty()) {
+                    String name = reader.getLocalName();
+
+                    if ("url".equals(name)) {
+                        urls.accept(new SitemapEntry(loc, lastMod));
+                        loc = null;
+                    } else if ("sitemap".equals(name)) {
+                        sitemaps.accept(new SitemapEntry(loc, lastMod));
+                        loc = null;
+                    }
+                }
+            }
+        } catch (XMLStreamException ex) {
+            int position = ex.getLocation() != null ? ex.getLocation().getCharacterOffset() : -1;
+
+            if (counting.getByteCount() >= maxBytes) {
+                throw new ParseException(position, "Sitemap is larger than " + maxBytes + " bytes", ex);
+            }
+
+            throw new ParseException(position, ex.getMessage(), ex);
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    private static InputStream unzipped(InputStream inputStream) throws IOException {
+        InputStream buffered = inputStream.markSupported() ? inputStream : new BufferedInputStream(inputStream);
+
+        buffered.mark(2);
+        int magic = buffered.read() | (buffered.read() << 8);
+        buffered.reset();
+
+        return magic == GZIP_MAGIC ? new GZIPInputStream(buffered) : buffered;
+    }
+
+    private static void closeQuietly(XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (XMLStreamException ignored) {
+                // closing the reader never closes the stream, which belongs to the caller
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.sitemap;
+
+/**
+ * Receives the URLs found by a {@link SitemapCrawler}. Calls are never concurrent, even though sitemaps are read in
+ * parallel, and a call that blocks holds up every sitemap being read, which keeps a slow sink from being buried.
+ *
+ * @author Scott Mansfield
+ */
+@FunctionalInterface
+public interface SitemapSink {
+
+    /**
+     * Throwing stops reading the current sitemap, which is then reported to {@link #failed(String, Exception)}.
+     */
+    void accept(SitemapEntry entry) throws Exception;
+
+    /**
+     * Called when a sitemap couldn't be fetched or read to the end. URLs from it that were already accepted stay
+     * accepted.
+     */
+    default void failed(String sitemapUrl, Exception cause) {}
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.sitemap;
+
+import com.widowcrawler.terminator.FetchException;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.io.InputStream;
+
+/**
+ * Opens sitemaps for a {@link SitemapCrawler}.
+ *
+ * @author Scott Mansfield
+ */
+@FunctionalInterface
+public interface SitemapSource {
+
+    /**
+     * @return the raw body, gzipped or not, which the caller closes
+     */
+    InputStream open(String url) throws Exception;
+
+    /**
+     * Fetches over a JAX-RS client, e.g. the one shared by a
+     * {@link com.widowcrawler.terminator.fetch.RobotsTxtFetcher#getClient() RobotsTxtFetcher}. Anything but a 2xx
+     * fails with a {@link FetchException}.
+     */
+    static SitemapSource of(Client client, String userAgent) {
+        return url -> {
+            Response response = client.target(url)
+                    .request()
+                    .header(HttpHeaders.USER_AGENT, userAgent)
+                    .get();
+
+            int status = response.getStatus();
+
+            if (status < 200 || status >= 300) {
+                response.close();
+                throw new FetchException(status, "Unexpected status " + status + " for " + url);
+            }
+
+            // closing the entity stream releases the connection
+            return response.readEntity(InputStream.class);
+        };
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.sitemap;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The URLs of a running {@link SitemapCrawler} crawl, in the order they are read. {@link #hasNext()} blocks until the
+ * next URL arrives or the crawl ends. Only a bounded buffer of URLs is held; reading waits while it is full.
+ *
+ * Iterate from one thread. Closing the stream stops the crawl.
+ *
+ * @author Scott Mansfield
+ */
+public class SitemapStream implements Iterator<SitemapEntry>, Closeable {
+
+    // marks the end of the crawl in the queue
+    private static final SitemapEntry END = new SitemapEntry("", null);
+
+    private final BlockingQueue<SitemapEntry> queue;
+
+    private CompletableFuture<SitemapCrawler.Result> result;
+    private Runnable cancel;
+    private volatile boolean closed;
+    private SitemapEntry next;
+
+    SitemapStream(int bufferSize) {
+        this.queue = new ArrayBlockingQueue<>(bufferSize);
+    }
+
+    void start(CompletableFuture<SitemapCrawler.Result> result, Runnable cancel) {
+        this.result = result;
+        this.cancel = cancel;
+
+        result.whenComplete((done, ex) -> end());
+    }
+
+    SitemapSink sink() {
+        return entry -> {
+            if (closed) {
+                throw new CancellationException("Stream was closed");
+            }
+
+            queue.put(entry);
+        };
+    }
+
+    private void end() {
+        try {
+            // the consumer may have walked away, so don't wait on a full queue forever
+            while (!closed && !queue.offer(END, 100, TimeUnit.MILLISECONDS)) {
+                // keep waiting for room
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @throws CancellationException if the thread is interrupted while waiting, which also closes the stream
+     */
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            if (closed) {
+                return false;
+            }
+
+            try {
+                next = queue.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new CancellationException("Interrupted while waiting for sitemap entries");
+            }
+        }
+
+        return next != END;
+    }
+
+    @Override
+    public SitemapEntry next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        SitemapEntry entry = next;
+        next = null;
+        return entry;
+    }
+
+    /**
+     * @return the crawl's counts, completed once every URL has been handed to the stream
+     */
+    public CompletableFuture<SitemapCrawler.Result> getResult() {
+        return result;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            cancel.run();
+            // unblock readers waiting for room
+            queue.clear();
+        }
+    }
+}
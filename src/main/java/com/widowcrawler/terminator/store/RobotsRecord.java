@@ -0,0 +1,268 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.store;
+
+import com.widowcrawler.terminator.eval.AgentIndex;
+import com.widowcrawler.terminator.eval.RuleEvaluator;
+import com.widowcrawler.terminator.model.RobotsTxt;
+import com.widowcrawler.terminator.model.Rule;
+import com.widowcrawler.terminator.model.RuleType;
+import com.widowcrawler.terminator.trie.BufferRuleTrie;
+import com.widowcrawler.terminator.trie.PatternMatcher;
+import com.widowcrawler.terminator.trie.RuleTrie;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * One host's compiled rules as kept by a {@link RobotsStore}, queried in place in the store's mapped files.
+ *
+ * The layout is big endian, with offsets relative to the start of the record:
+ * <pre>
+ *   int     product token count, then for each token:
+ *             int length, the token's chars, int offset of its group
+ *   int     offset of the * group, or -1
+ *   groups, each:
+ *             int wildcard rule count, then for each: byte 1 allow or 0 disallow, int length, the rule's chars
+ *             the group's trie, see {@link BufferRuleTrie}
+ * </pre>
+ * Tokens are normalized as by {@link AgentIndex}, with colliding groups already merged.
+ *
+ * {@link #getEvaluator(String)} resolves a crawler's group once and returns a {@link RuleEvaluator} over it: the
+ * group's trie is walked in place, and its wildcard rules, if it has any, are compiled into a {@link PatternMatcher}
+ * so they match in linear time like everywhere else. The evaluators for the last few user agents looked up are kept,
+ * like {@link AgentIndex} does, so checking many URLs of a host through one record, with
+ * {@link #isAllowed(String, CharSequence)} or with the evaluator itself, scans the tokens and compiles nothing after
+ * the first. {@link RobotsStore} keeps recently used records, so this carries over from one lookup to the next.
+ *
+ * A record is never modified once written, so instances can be used from any thread.
+ *
+ * @author Scott Mansfield
+ */
+public class RobotsRecord {
+
+    private static final int RESOLVED_SLOTS = 4;
+
+    private static final RuleEvaluator ALLOW_ALL = RuleEvaluator.build(Collections.emptySet());
+
+    static byte[] encode(RobotsTxt robotsTxt) throws IOException {
+        AgentIndex agentIndex = robotsTxt.getAgentIndex();
+        List<String> tokens = new ArrayList<>(agentIndex.getProductTokens());
+
+        // tokens and the * group can share a group, which is then written once
+        Map<Set<Rule>, Integer> groupIndexes = new IdentityHashMap<>();
+        List<Set<Rule>> groups = new ArrayList<>();
+        List<RuleEvaluator> evaluators = new ArrayList<>();
+
+        for (String token : tokens) {
+            addGroup(agentIndex.getRuleSet(token), agentIndex.getEvaluator(token), groupIndexes, groups, evaluators);
+        }
+
+        Set<Rule> wildcard = agentIndex.getWildcardRuleSet();
+
+        if (wildcard != null) {
+            addGroup(wildcard, agentIndex.getWildcardEvaluator(), groupIndexes, groups, evaluators);
+        }
+
+        // encode the groups first, so the header can point into them
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        int[] groupOffsets = new int[groups.size()];
+
+        for (int i = 0; i < groups.size(); i++) {
+            groupOffsets[i] = out.size();
+
+            List<Rule> patterns = RuleTrie.patternRules(groups.get(i));
+            out.writeInt(patterns.size());
+
+            for (Rule rule : patterns) {
+                out.writeByte(rule.getRuleType() == RuleType.ALLOW ? 1 : 0);
+                out.writeInt(rule.getPathMatch().length());
+                out.writeChars(rule.getPathMatch());
+            }
+
+            evaluators.get(i).getRuleTrie().writeTo(out);
+        }
+
+        int headerSize = 4 + 4;
+
+        for (String token : tokens) {
+            headerSize += 4 + token.length() * 2 + 4;
+        }
+
+        ByteArrayOutputStream record = new ByteArrayOutputStream(headerSize + out.size());
+        DataOutputStream header = new DataOutputStream(record);
+        header.writeInt(tokens.size());
+
+        for (String token : tokens) {
+            header.writeInt(token.length());
+            header.writeChars(token);
+            header.writeInt(headerSize + groupOffsets[groupIndexes.get(agentIndex.getRuleSet(token))]);
+        }
+
+        header.writeInt(wildcard != null ? headerSize + groupOffsets[groupIndexes.get(wildcard)] : -1);
+        body.writeTo(header);
+
+        return record.toByteArray();
+    }
+
+    private static void addGroup(Set<Rule> ruleSet, RuleEvaluator ruleEvaluator, Map<Set<Rule>, Integer> groupIndexes,
+                                 List<Set<Rule>> groups, List<RuleEvaluator> evaluators) {
+        if (!groupIndexes.containsKey(ruleSet)) {
+            groupIndexes.put(ruleSet, groups.size());
+            groups.add(ruleSet);
+            evaluators.add(ruleEvaluator);
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final int offset;
+    // recent lookups, by the user agent as given; racy, a lost update only means resolving again
+    private final Resolved[] resolved = new Resolved[RESOLVED_SLOTS];
+
+    RobotsRecord(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+    }
+
+    /**
+     * @param userAgent the crawler's user agent or product token
+     * @param path the path part of a URL, including any query string
+     * @return true if the path may be fetched
+     */
+    public boolean isAllowed(String userAgent, CharSequence path) {
+        return getEvaluator(userAgent).isAllowed(path);
+    }
+
+    /**
+     * @param userAgent the crawler's user agent or product token
+     * @return the rules that apply to the crawler, allowing everything if no group applies
+     */
+    public RuleEvaluator getEvaluator(String userAgent) {
+        int slot = userAgent.hashCode() & (RESOLVED_SLOTS - 1);
+        Resolved hit = resolved[slot];
+
+        if (hit != null && (hit.userAgent == userAgent || hit.userAgent.equals(userAgent))) {
+            return hit.evaluator;
+        }
+
+        int group = findGroup(userAgent);
+        RuleEvaluator evaluator = group < 0 ? ALLOW_ALL : evaluator(offset + group);
+
+        resolved[slot] = new Resolved(userAgent, evaluator);
+        return evaluator;
+    }
+
+    private RuleEvaluator evaluator(int group) {
+        int patternCount = buffer.getInt(group);
+        List<Rule> patterns = new ArrayList<>(patternCount);
+        int pos = group + 4;
+
+        for (int i = 0; i < patternCount; i++) {
+            RuleType ruleType = buffer.get(pos) == 1 ? RuleType.ALLOW : RuleType.DISALLOW;
+            int length = buffer.getInt(pos + 1);
+            pos += 5;
+
+            char[] chars = new char[length];
+
+            for (int j = 0; j < length; j++) {
+                chars[j] = buffer.getChar(pos + j * 2);
+            }
+
+            patterns.add(new Rule(ruleType, new String(chars)));
+            pos += length * 2;
+        }
+
+        PatternMatcher patternMatcher = patterns.isEmpty() ? PatternMatcher.EMPTY : PatternMatcher.compile(patterns);
+        return new RuleEvaluator(new BufferRuleTrie(buffer, pos), patternMatcher);
+    }
+
+    /**
+     * @return the offset of the group for the user agent's product token, relative to the record, or -1 if no group
+     *         applies
+     */
+    private int findGroup(String userAgent) {
+        // the product token, found in place rather than normalized into a new string, see AgentIndex#normalize
+        int start = 0;
+
+        while (start < userAgent.length() && Character.isWhitespace(userAgent.charAt(start))) {
+            start++;
+        }
+
+        int end = start;
+
+        while (end < userAgent.length() && isTokenChar(userAgent.charAt(end))) {
+            end++;
+        }
+
+        int tokenCount = buffer.getInt(offset);
+        int pos = offset + 4;
+
+        for (int i = 0; i < tokenCount; i++) {
+            int length = buffer.getInt(pos);
+            pos += 4;
+
+            if (length == end - start && end > start && regionEquals(pos, length, userAgent, start)) {
+                return buffer.getInt(pos + length * 2);
+            }
+
+            pos += length * 2 + 4;
+        }
+
+        return buffer.getInt(pos);
+    }
+
+    private static boolean isTokenChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == '-';
+    }
+
+    /**
+     * Compares a stored, lower-cased token with as many chars of the user agent, ignoring case.
+     */
+    private boolean regionEquals(int pos, int length, String userAgent, int start) {
+        for (int i = 0; i < length; i++) {
+            char c = userAgent.charAt(start + i);
+
+            if (c >= 'A' && c <= 'Z') {
+                c = (char) (c + ('a' - 'A'));
+            }
+
+            if (buffer.getChar(pos + i * 2) != c) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static final class Resolved {
+        private final String userAgent;
+        private final RuleEvaluator evaluator;
+
+        Resolved(String userAgent, RuleEvaluator evaluator) {
+            this.userAgent = userAgent;
+            this.evaluator = evaluator;
+        }
+    }
+}
@@ -0,0 +1,806 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.store;
+
+import com.widowcrawler.terminator.cache.HostKey;
+import com.widowcrawler.terminator.model.RobotsTxt;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A persistent store of compiled robots.txt rules for very many hosts, kept in memory-mapped files so the rules live
+ * in the OS page cache instead of on the heap.
+ *
+ * Records are appended to fixed size segment files and never modified. A host's latest record is found through an
+ * open addressing hash index that is also memory mapped. {@link #get(HostKey)} returns a {@link RobotsRecord} that
+ * reads the rules straight from the mapped segment, so looking up a host deserializes nothing. Only a group's
+ * wildcard rules are compiled, once, when the group is first used.
+ *
+ * The records looked up most recently are kept on the heap, see {@link Builder#recordCacheSize(int)}, so the groups
+ * they have already resolved and compiled are reused by the next lookup of the same host instead of being redone. A
+ * cached record is dropped when its host is replaced or removed and when the store is compacted.
+ *
+ * Replacing or removing a host leaves its old record behind as dead space. {@link #compact()} copies the live records
+ * into a new generation of files and deletes the old one; call it periodically, e.g. when {@link #getDeadBytes()}
+ * passes some fraction of {@link #getTotalBytes()}.
+ *
+ * The index is marked dirty on disk while the store is being written to and clean again by {@link #close()}. A store
+ * that wasn't closed cleanly has its index rebuilt from the segments when it is next opened. Lookups can run
+ * concurrently with each other; writes are serialized.
+ *
+ * @author Scott Mansfield
+ */
+public class RobotsStore implements Closeable {
+
+    private static final int INDEX_MAGIC = 0x52534958;
+    private static final int INDEX_VERSION = 1;
+
+    // magic, version, clean flag, capacity, size, live bytes, total bytes, write segment, write position
+    private static final int INDEX_HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 16;
+
+    // as many slots as fit in a single 2 GiB mapping
+    private static final int MAX_CAPACITY = 1 << 26;
+
+    // total length, key length, then the key, a flag byte and the record
+    private static final int RECORD_HEADER_SIZE = 9;
+    private static final byte LIVE = 0;
+    private static final byte REMOVED = 1;
+
+    private static final String CURRENT = "CURRENT";
+
+    public static Builder builder(Path directory) {
+        return new Builder(directory);
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final ReadWriteLock lock;
+    // direct mapped by location, a location is never reused within a generation
+    private final AtomicReferenceArray<CachedRecord> records;
+
+    private long generation;
+    private List<MappedByteBuffer> segments;
+    private MappedByteBuffer index;
+    private int capacity;
+    private long size;
+    private long liveBytes;
+    private long totalBytes;
+    private int writeSegment;
+    private int writePosition;
+
+    private boolean dirty;
+    private boolean closed;
+
+    private RobotsStore(Builder builder) throws IOException {
+        this.directory = builder.directory;
+        this.segmentSize = builder.segmentSize;
+        this.lock = new ReentrantReadWriteLock();
+        this.records = new AtomicReferenceArray<>(
+                builder.recordCacheSize == 0 ? 0 : Integer.highestOneBit(builder.recordCacheSize * 2 - 1));
+
+        Files.createDirectories(directory);
+        Path current = directory.resolve(CURRENT);
+
+        if (Files.exists(current)) {
+            generation = Long.parseLong(new String(Files.readAllBytes(current), StandardCharsets.US_ASCII).trim());
+            open(builder.expectedHosts);
+        } else {
+            generation = 0L;
+            segments = new ArrayList<>();
+            segments.add(map(segmentPath(generation, 0), segmentSize));
+            index = createIndex(indexPath(generation), capacityFor(builder.expectedHosts));
+            capacity = index.getInt(12);
+            writeHeader(true);
+            index.force();
+            writeCurrent(generation);
+        }
+    }
+
+    private void open(long expectedHosts) throws IOException {
+        segments = new ArrayList<>();
+
+        for (int i = 0; Files.exists(segmentPath(generation, i)); i++) {
+            segments.add(map(segmentPath(generation, i), (int) Files.size(segmentPath(generation, i))));
+        }
+
+        if (segments.isEmpty()) {
+            segments.add(map(segmentPath(generation, 0), segmentSize));
+        }
+
+        Path indexPath = indexPath(generation);
+        boolean clean = false;
+
+        if (Files.exists(indexPath)) {
+            index = map(indexPath, (int) Files.size(indexPath));
+            clean = index.getInt(0) == INDEX_MAGIC && index.getInt(4) == INDEX_VERSION && index.getInt(8) == 1;
+        }
+
+        if (clean) {
+            capacity = index.getInt(12);
+            size = index.getLong(16);
+            liveBytes = index.getLong(24);
+            totalBytes = index.getLong(32);
+            writeSegment = index.getInt(40);
+            writePosition = index.getInt(44);
+        } else {
+            rebuildIndex(expectedHosts);
+        }
+    }
+
+    /**
+     * Replays every record in the segments, in the order they were written.
+     */
+    private void rebuildIndex(long expectedHosts) throws IOException {
+        index = createIndex(indexPath(generation), capacityFor(expectedHosts));
+        capacity = index.getInt(12);
+        size = 0L;
+        liveBytes = 0L;
+        totalBytes = 0L;
+
+        for (int segment = 0; segment < segments.size(); segment++) {
+            ByteBuffer buffer = segments.get(segment);
+            int position = 0;
+
+            while (position + RECORD_HEADER_SIZE <= buffer.capacity()) {
+                int length = buffer.getInt(position);
+
+                if (length < RECORD_HEADER_SIZE || position + length > buffer.capacity()) {
+                    break;
+                }
+
+                byte[] key = new byte[buffer.getInt(position + 4)];
+                readBytes(buffer, position + 8, key);
+
+                if (buffer.get(position + 8 + key.length) == LIVE) {
+                    liveBytes += length;
+                    setLocation(key, location(segment, position));
+                } else {
+                    removeLocation(key);
+                }
+
+                totalBytes += length;
+                position += length;
+            }
+
+            writePosition = position;
+        }
+
+        writeSegment = segments.size() - 1;
+        writeHeader(true);
+        index.force();
+    }
+
+    /**
+     * @return the host's rules, or null if the host isn't in the store
+     */
+    public RobotsRecord get(HostKey host) {
+        byte[] key = keyOf(host);
+
+        lock.readLock().lock();
+
+        try {
+            ensureOpen();
+            int slot = findSlot(key, hash(key));
+
+            if (slot < 0) {
+                return null;
+            }
+
+            long location = index.getLong(slotOffset(slot) + 8);
+
+            if (records.length() == 0) {
+                return newRecord(location, key);
+            }
+
+            int cacheSlot = cacheSlot(location);
+            CachedRecord cached = records.get(cacheSlot);
+
+            if (cached != null && cached.location == location) {
+                return cached.record;
+            }
+
+            // racing lookups may each create a record, only one stays cached
+            RobotsRecord record = newRecord(location, key);
+            records.set(cacheSlot, new CachedRecord(location, record));
+            return record;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private RobotsRecord newRecord(long location, byte[] key) {
+        ByteBuffer segment = segments.get(segmentOf(location));
+        return new RobotsRecord(segment, positionOf(location) + RECORD_HEADER_SIZE + key.length);
+    }
+
+    public boolean contains(HostKey host) {
+        return get(host) != null;
+    }
+
+    /**
+     * Compiles the robots.txt and stores it for the host, replacing whatever was stored for it before.
+     */
+    public void put(HostKey host, RobotsTxt robotsTxt) throws IOException {
+        byte[] key = keyOf(host);
+        byte[] record = RobotsRecord.encode(robotsTxt);
+
+        lock.writeLock().lock();
+
+        try {
+            ensureOpen();
+            markDirty();
+
+            setLocation(key, append(key, LIVE, record));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return true if the host was in the store
+     */
+    public boolean remove(HostKey host) throws IOException {
+        byte[] key = keyOf(host);
+
+        lock.writeLock().lock();
+
+        try {
+            ensureOpen();
+
+            if (findSlot(key, hash(key)) < 0) {
+                return false;
+            }
+
+            markDirty();
+
+            // the marker makes the removal survive an index rebuild
+            append(key, REMOVED, new byte[0]);
+            liveBytes -= RECORD_HEADER_SIZE + key.length;
+            removeLocation(key);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Copies the live records into a new generation of segment files with a fresh index, then deletes the old files.
+     * Records returned by {@link #get(HostKey)} before compaction stay readable, their old mappings are released once
+     * nothing refers to them any more.
+     */
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+
+        try {
+            ensureOpen();
+
+            long oldGeneration = generation;
+            int oldSegmentCount = segments.size();
+            List<MappedByteBuffer> oldSegments = segments;
+            MappedByteBuffer oldIndex = index;
+            int oldCapacity = capacity;
+
+            generation = oldGeneration + 1;
+            segments = new ArrayList<>();
+            segments.add(map(segmentPath(generation, 0), segmentSize));
+            index = createIndex(indexPath(generation), capacityFor(size));
+            capacity = index.getInt(12);
+            size = 0L;
+            liveBytes = 0L;
+            totalBytes = 0L;
+            writeSegment = 0;
+            writePosition = 0;
+
+            // locations start over in the new generation
+            for (int i = 0; i < records.length(); i++) {
+                records.set(i, null);
+            }
+
+            for (int slot = 0; slot < oldCapacity; slot++) {
+                int slotOffset = INDEX_HEADER_SIZE + slot * SLOT_SIZE;
+
+                if (oldIndex.getLong(slotOffset) == 0L) {
+                    continue;
+                }
+
+                long location = oldIndex.getLong(slotOffset + 8);
+                ByteBuffer segment = oldSegments.get(segmentOf(location));
+                int position = positionOf(location);
+
+                byte[] key = new byte[segment.getInt(position + 4)];
+                readBytes(segment, position + 8, key);
+
+                byte[] record = new byte[segment.getInt(position) - RECORD_HEADER_SIZE - key.length];
+                readBytes(segment, position + RECORD_HEADER_SIZE + key.length, record);
+
+                setLocation(key, append(key, LIVE, record));
+            }
+
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+
+            writeHeader(true);
+            index.force();
+            dirty = false;
+            writeCurrent(generation);
+
+            for (int i = 0; i < oldSegmentCount; i++) {
+                Files.deleteIfExists(segmentPath(oldGeneration, i));
+            }
+
+            Files.deleteIfExists(indexPath(oldGeneration));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of hosts in the store
+     */
+    public long size() {
+        lock.readLock().lock();
+
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the bytes taken by all records written to the current generation, live or not
+     */
+    public long getTotalBytes() {
+        lock.readLock().lock();
+
+        try {
+            return totalBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the bytes taken by replaced and removed records, which {@link #compact()} would reclaim
+     */
+    public long getDeadBytes() {
+        lock.readLock().lock();
+
+        try {
+            return totalBytes - liveBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Flushes everything to disk and marks the index clean, so the next open doesn't have to rebuild it.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+
+        try {
+            if (closed) {
+                return;
+            }
+
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+
+            writeHeader(true);
+            index.force();
+            closed = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //////////////////////////
+    // Segments
+    //////////////////////////
+
+    private long append(byte[] key, byte flag, byte[] record) throws IOException {
+        int length = RECORD_HEADER_SIZE + key.length + record.length;
+
+        if (length > segmentSize) {
+            throw new IllegalArgumentException("Record of " + length + " bytes doesn't fit in a segment");
+        }
+
+        if (writePosition + length > segments.get(writeSegment).capacity()) {
+            writeSegment++;
+            writePosition = 0;
+
+            if (writeSegment == segments.size()) {
+                segments.add(map(segmentPath(generation, writeSegment), segmentSize));
+            }
+        }
+
+        ByteBuffer segment = segments.get(writeSegment).duplicate();
+        int position = writePosition;
+
+        segment.position(position + 4);
+        segment.putInt(key.length);
+        segment.put(key);
+        segment.put(flag);
+        segment.put(record);
+
+        // the length goes in last, so a record cut short by a crash ends the replay
+        segment.putInt(position, length);
+
+        writePosition += length;
+        totalBytes += length;
+        liveBytes += length;
+
+        return location(writeSegment, position);
+    }
+
+    private int cacheSlot(long location) {
+        return (int) ((location * 0x9E3779B97F4A7C15L) >>> 32) & (records.length() - 1);
+    }
+
+    /**
+     * Drops the cached record at a location that no host points to any more.
+     */
+    private void forgetRecord(long location) {
+        if (records.length() == 0) {
+            return;
+        }
+
+        int cacheSlot = cacheSlot(location);
+        CachedRecord cached = records.get(cacheSlot);
+
+        if (cached != null && cached.location == location) {
+            records.compareAndSet(cacheSlot, cached, null);
+        }
+    }
+
+    private static long location(int segment, int position) {
+        return ((long) segment << 32) | position;
+    }
+
+    private static int segmentOf(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int positionOf(long location) {
+        return (int) location;
+    }
+
+    private static void readBytes(ByteBuffer buffer, int position, byte[] target) {
+        ByteBuffer source = buffer.duplicate();
+        source.position(position);
+        source.get(target);
+    }
+
+    //////////////////////////
+    // Index
+    //////////////////////////
+
+    private static int capacityFor(long hosts) {
+        long wanted = Math.max(1024L, hosts * 4 / 3 + 1);
+        int capacity = 1024;
+
+        while (capacity < wanted && capacity < MAX_CAPACITY) {
+            capacity <<= 1;
+        }
+
+        return capacity;
+    }
+
+    private static MappedByteBuffer createIndex(Path path, int capacity) throws IOException {
+        Files.deleteIfExists(path);
+
+        MappedByteBuffer index = map(path, INDEX_HEADER_SIZE + capacity * SLOT_SIZE);
+        index.putInt(0, INDEX_MAGIC);
+        index.putInt(4, INDEX_VERSION);
+        index.putInt(12, capacity);
+        return index;
+    }
+
+    private void writeHeader(boolean clean) {
+        index.putInt(8, clean ? 1 : 0);
+        index.putLong(16, size);
+        index.putLong(24, liveBytes);
+        index.putLong(32, totalBytes);
+        index.putInt(40, writeSegment);
+        index.putInt(44, writePosition);
+    }
+
+    private void markDirty() {
+        if (!dirty) {
+            writeHeader(false);
+            index.force();
+            dirty = true;
+        }
+    }
+
+    private static int slotOffset(int slot) {
+        return INDEX_HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    /**
+     * @return the slot holding the key, or -1
+     */
+    private int findSlot(byte[] key, long hash) {
+        int mask = capacity - 1;
+
+        for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+            long slotHash = index.getLong(slotOffset(slot));
+
+            if (slotHash == 0L) {
+                return -1;
+            }
+
+            if (slotHash == hash && keyEquals(index.getLong(slotOffset(slot) + 8), key)) {
+                return slot;
+            }
+        }
+    }
+
+    private boolean keyEquals(long location, byte[] key) {
+        ByteBuffer segment = segments.get(segmentOf(location));
+        int position = positionOf(location);
+
+        if (segment.getInt(position + 4) != key.length) {
+            return false;
+        }
+
+        for (int i = 0; i < key.length; i++) {
+            if (segment.get(position + 8 + i) != key[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void setLocation(byte[] key, long location) throws IOException {
+        long hash = hash(key);
+        int slot = findSlot(key, hash);
+
+        if (slot >= 0) {
+            // the record it replaces is now dead
+            long old = index.getLong(slotOffset(slot) + 8);
+            liveBytes -= segments.get(segmentOf(old)).getInt(positionOf(old));
+            forgetRecord(old);
+            index.putLong(slotOffset(slot) + 8, location);
+            return;
+        }
+
+        if ((size + 1) * 4 > (long) capacity * 3) {
+            growIndex();
+        }
+
+        int mask = capacity - 1;
+        slot = (int) hash & mask;
+
+        while (index.getLong(slotOffset(slot)) != 0L) {
+            slot = (slot + 1) & mask;
+        }
+
+        index.putLong(slotOffset(slot) + 8, location);
+        index.putLong(slotOffset(slot), hash);
+        size++;
+    }
+
+    private void removeLocation(byte[] key) {
+        int slot = findSlot(key, hash(key));
+
+        if (slot < 0) {
+            return;
+        }
+
+        long old = index.getLong(slotOffset(slot) + 8);
+        liveBytes -= segments.get(segmentOf(old)).getInt(positionOf(old));
+        forgetRecord(old);
+        size--;
+
+        // shift later entries of the probe sequence back, so no lookup stops early at the hole
+        int mask = capacity - 1;
+        int hole = slot;
+
+        for (int next = (hole + 1) & mask; ; next = (next + 1) & mask) {
+            long hash = index.getLong(slotOffset(next));
+
+            if (hash == 0L) {
+                break;
+            }
+
+            int home = (int) hash & mask;
+            boolean stays = hole <= next ? (hole < home && home <= next) : (hole < home || home <= next);
+
+            if (!stays) {
+                index.putLong(slotOffset(hole), hash);
+                index.putLong(slotOffset(hole) + 8, index.getLong(slotOffset(next) + 8));
+                hole = next;
+            }
+        }
+
+        index.putLong(slotOffset(hole), 0L);
+        index.putLong(slotOffset(hole) + 8, 0L);
+    }
+
+    private void growIndex() throws IOException {
+        if (capacity >= MAX_CAPACITY) {
+            throw new IllegalStateException("Index is full at " + size + " hosts");
+        }
+
+        Path path = indexPath(generation);
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        MappedByteBuffer oldIndex = index;
+        int oldCapacity = capacity;
+
+        index = createIndex(temp, capacity * 2);
+        capacity = capacity * 2;
+        int mask = capacity - 1;
+
+        for (int i = 0; i < oldCapacity; i++) {
+            long hash = oldIndex.getLong(INDEX_HEADER_SIZE + i * SLOT_SIZE);
+
+            if (hash == 0L) {
+                continue;
+            }
+
+            int slot = (int) hash & mask;
+
+            while (index.getLong(slotOffset(slot)) != 0L) {
+                slot = (slot + 1) & mask;
+            }
+
+            index.putLong(slotOffset(slot), hash);
+            index.putLong(slotOffset(slot) + 8, oldIndex.getLong(INDEX_HEADER_SIZE + i * SLOT_SIZE + 8));
+        }
+
+        writeHeader(false);
+        index.force();
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    //////////////////////////
+    // Begin helper functions
+    //////////////////////////
+
+    private static byte[] keyOf(HostKey host) {
+        return host.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * FNV-1a followed by a 64-bit finalizer, so the low bits used for the slot are well mixed. Never returns 0, which
+     * marks an empty slot.
+     */
+    static long hash(byte[] key) {
+        long hash = 0xcbf29ce484222325L;
+
+        for (byte b : key) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return hash == 0L ? 1L : hash;
+    }
+
+    private static MappedByteBuffer map(Path path, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private Path segmentPath(long generation, int segment) {
+        return directory.resolve(String.format("segment-%d-%05d.dat", generation, segment));
+    }
+
+    private Path indexPath(long generation) {
+        return directory.resolve("index-" + generation + ".idx");
+    }
+
+    private void writeCurrent(long generation) throws IOException {
+        Path temp = directory.resolve(CURRENT + ".tmp");
+        Files.write(temp, Long.toString(generation).getBytes(StandardCharsets.US_ASCII));
+        Files.move(temp, directory.resolve(CURRENT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Store is closed");
+        }
+    }
+
+    private static final class CachedRecord {
+        private final long location;
+        private final RobotsRecord record;
+
+        CachedRecord(long location, RobotsRecord record) {
+            this.location = location;
+            this.record = record;
+        }
+    }
+
+    public static class Builder {
+        private final Path directory;
+        private int segmentSize = 256 * 1024 * 1024;
+        private long expectedHosts = 1024L;
+        private int recordCacheSize = 1024;
+
+        private Builder(Path directory) {
+            this.directory = directory;
+        }
+
+        /**
+         * The size of each segment file. A single host's record has to fit in one. Defaults to 256 MiB.
+         */
+        public Builder segmentSize(int segmentSize) {
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        /**
+         * Sizes a new index up front so it doesn't have to grow. Defaults to 1024.
+         */
+        public Builder expectedHosts(long expectedHosts) {
+            this.expectedHosts = expectedHosts;
+            return this;
+        }
+
+        /**
+         * How many looked up records to keep, rounded up to a power of two, so their resolved groups are reused. 0
+         * turns the cache off, and every lookup then returns a new record. Defaults to 1024.
+         */
+        public Builder recordCacheSize(int recordCacheSize) {
+            this.recordCacheSize = recordCacheSize;
+            return this;
+        }
+
+        /**
+         * Opens the store in the directory, creating it if it doesn't exist.
+         */
+        public RobotsStore build() throws IOException {
+            if (segmentSize <= RECORD_HEADER_SIZE) {
+                throw new IllegalArgumentException("segmentSize is too small");
+            }
+
+            if (recordCacheSize < 0 || recordCacheSize > 1 << 30) {
+                throw new IllegalArgumentException("recordCacheSize must be between 0 and 2^30");
+            }
+
+            return new RobotsStore(this);
+        }
+    }
+}
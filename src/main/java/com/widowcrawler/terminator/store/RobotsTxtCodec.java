@@ -0,0 +1,347 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.store;
+
+import com.widowcrawler.terminator.eval.AgentIndex;
+import com.widowcrawler.terminator.eval.RuleEvaluator;
+import com.widowcrawler.terminator.model.RequestRate;
+import com.widowcrawler.terminator.model.RobotsTxt;
+import com.widowcrawler.terminator.model.Rule;
+import com.widowcrawler.terminator.model.RuleType;
+import com.widowcrawler.terminator.model.Truncation;
+import com.widowcrawler.terminator.model.Validators;
+import com.widowcrawler.terminator.trie.FlatRuleTrie;
+import com.widowcrawler.terminator.trie.PatternMatcher;
+import com.widowcrawler.terminator.trie.RuleTrie;
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A versioned binary encoding of a parsed and compiled {@link RobotsTxt}, so it can be persisted and loaded again
+ * without parsing the text or building any tries.
+ *
+ * The encoding is big endian:
+ * <pre>
+ *   int     magic ("RTXT")
+ *   byte    version
+ *   long    truncated at, int truncated lines, int dropped rules
+ *   int     sitemap count, then each sitemap URL as a string
+ *   int     group count, then for each group:
+ *             int rule count, then each rule as a byte (0 disallow, 1 allow) and its path as a string
+ *             the group's compiled trie, see {@link FlatRuleTrie#writeTo(java.io.DataOutput)}
+ *   int     agent count, then each user agent as a string and the int index of its group
+ *   int     request rate count, then each user agent as a string, int requests and long period in nanoseconds
+ *           (since version 2)
+ *   the validators: the ETag and Last-Modified as strings, then the content hash as an int length and its bytes
+ *           (since version 3)
+ * </pre>
+ * Strings are an int byte length followed by UTF-8, and a missing string or hash has a length of -1. Data written by
+ * an earlier version reads as having no request rates or validators, so the first refresh after an upgrade is a full
+ * fetch. Wildcard rules aren't in the trie; they are few and cheap to
+ * compile, so they are compiled again from the group's rules when reading.
+ *
+ * @author Scott Mansfield
+ */
+public class RobotsTxtCodec {
+
+    public static final int MAGIC = 0x52545854;
+    public static final byte VERSION = 3;
+
+    /**
+     * Writes one robots.txt to the stream as it goes, without building the encoding in memory first. The stream is
+     * flushed but not closed.
+     */
+    public static void write(RobotsTxt robotsTxt, OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+
+        Truncation truncation = robotsTxt.getTruncation();
+        out.writeLong(truncation.getTruncatedAt());
+        out.writeInt(truncation.getTruncatedLines());
+        out.writeInt(truncation.getDroppedRules());
+
+        out.writeInt(robotsTxt.getSiteMapRefs().size());
+
+        for (String siteMapRef : robotsTxt.getSiteMapRefs()) {
+            writeString(out, siteMapRef);
+        }
+
+        // agents that share a group share its rule set, so each one is written once
+        Map<Set<Rule>, Integer> groupIndexes = new IdentityHashMap<>();
+        List<Set<Rule>> groups = new ArrayList<>();
+
+        for (Set<Rule> ruleSet : robotsTxt.getRuleSets().values()) {
+            if (!groupIndexes.containsKey(ruleSet)) {
+                groupIndexes.put(ruleSet, groups.size());
+                groups.add(ruleSet);
+            }
+        }
+
+        out.writeInt(groups.size());
+
+        for (Set<Rule> ruleSet : groups) {
+            out.writeInt(ruleSet.size());
+
+            for (Rule rule : ruleSet) {
+                out.writeByte(rule.getRuleType() == RuleType.ALLOW ? 1 : 0);
+                writeString(out, rule.getPathMatch());
+            }
+
+            RuleEvaluator ruleEvaluator = robotsTxt.getAgentIndex().getEvaluator(ruleSet);
+
+            if (ruleEvaluator == null) {
+                ruleEvaluator = RuleEvaluator.build(ruleSet);
+            }
+
+            ruleEvaluator.getRuleTrie().writeTo(out);
+        }
+
+        out.writeInt(robotsTxt.getRuleSets().size());
+
+        for (Map.Entry<String, Set<Rule>> entry : robotsTxt.getRuleSets().entrySet()) {
+            writeString(out, entry.getKey());
+            out.writeInt(groupIndexes.get(entry.getValue()));
+        }
+
+        out.writeInt(robotsTxt.getRequestRates().size());
+
+        for (Map.Entry<String, RequestRate> entry : robotsTxt.getRequestRates().entrySet()) {
+            writeString(out, entry.getKey());
+            out.writeInt(entry.getValue().getRequests());
+            out.writeLong(entry.getValue().getPeriod(TimeUnit.NANOSECONDS));
+        }
+
+        Validators validators = robotsTxt.getValidators();
+        writeNullableString(out, validators.getETag());
+        writeNullableString(out, validators.getLastModified());
+        writeNullableBytes(out, validators.getContentHash());
+
+        out.flush();
+    }
+
+    public static byte[] toBytes(RobotsTxt robotsTxt) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try {
+            write(robotsTxt, out);
+        } catch (IOException ex) {
+            // ByteArrayOutputStream doesn't throw
+            throw new IllegalStateException(ex);
+        }
+
+        return out.toByteArray();
+    }
+
+    public static RobotsTxt read(InputStream inputStream) throws IOException {
+        return read(ByteBuffer.wrap(IOUtils.toByteArray(inputStream)));
+    }
+
+    /**
+     * Reads one robots.txt starting at the buffer's position, and leaves the position just past it so several can be
+     * read back to back. The tries come back ready to query, so nothing is compiled except wildcard rules.
+     *
+     * @throws IOException if the data is corrupt or was written by an unknown version
+     */
+    public static RobotsTxt read(ByteBuffer buffer) throws IOException {
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+
+        try {
+            return readRobotsTxt(buffer);
+        } catch (BufferUnderflowException | IllegalArgumentException ex) {
+            throw new IOException("Corrupt robots.txt data", ex);
+        } finally {
+            buffer.order(order);
+        }
+    }
+
+    private static RobotsTxt readRobotsTxt(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not an encoded robots.txt");
+        }
+
+        byte version = buffer.get();
+
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported version " + version);
+        }
+
+        long truncatedAt = buffer.getLong();
+        int truncatedLines = buffer.getInt();
+        int droppedRules = buffer.getInt();
+
+        Truncation truncation = truncatedAt < 0 && truncatedLines == 0 && droppedRules == 0 ?
+                Truncation.NONE :
+                new Truncation(truncatedAt, truncatedLines, droppedRules);
+
+        int siteMapCount = readCount(buffer);
+        Set<String> siteMapRefs = new HashSet<>(siteMapCount * 2);
+
+        for (int i = 0; i < siteMapCount; i++) {
+            siteMapRefs.add(readString(buffer));
+        }
+
+        int groupCount = readCount(buffer);
+        List<Set<Rule>> groups = new ArrayList<>(groupCount);
+        Map<Set<Rule>, RuleEvaluator> compiled = new IdentityHashMap<>();
+
+        for (int i = 0; i < groupCount; i++) {
+            int ruleCount = readCount(buffer);
+            Set<Rule> ruleSet = new HashSet<>(ruleCount * 2);
+
+            for (int j = 0; j < ruleCount; j++) {
+                RuleType ruleType = buffer.get() == 1 ? RuleType.ALLOW : RuleType.DISALLOW;
+                ruleSet.add(new Rule(ruleType, readString(buffer)));
+            }
+
+            FlatRuleTrie ruleTrie = FlatRuleTrie.readFrom(buffer);
+            PatternMatcher patterns = PatternMatcher.compile(RuleTrie.patternRules(ruleSet));
+
+            groups.add(ruleSet);
+            compiled.put(ruleSet, new RuleEvaluator(ruleTrie, patterns));
+        }
+
+        int agentCount = readCount(buffer);
+        Map<String, Set<Rule>> ruleSets = new HashMap<>(agentCount * 2);
+
+        for (int i = 0; i < agentCount; i++) {
+            String userAgent = readString(buffer);
+            int group = buffer.getInt();
+
+            if (group < 0 || group >= groups.size()) {
+                throw new IOException("Corrupt robots.txt data: group " + group + " out of range");
+            }
+
+            ruleSets.put(userAgent, groups.get(group));
+        }
+
+        Map<String, RequestRate> requestRates = new HashMap<>();
+
+        if (version >= 2) {
+            int rateCount = readCount(buffer);
+
+            for (int i = 0; i < rateCount; i++) {
+                String userAgent = readString(buffer);
+                int requests = buffer.getInt();
+                requestRates.put(userAgent, new RequestRate(requests, buffer.getLong(), TimeUnit.NANOSECONDS));
+            }
+        }
+
+        Validators validators = Validators.NONE;
+
+        if (version >= 3) {
+            String eTag = readNullableString(buffer);
+            String lastModified = readNullableString(buffer);
+            byte[] contentHash = readNullableBytes(buffer);
+
+            if (eTag != null || lastModified != null || contentHash != null) {
+                validators = new Validators(eTag, lastModified, contentHash);
+            }
+        }
+
+        return new RobotsTxt(ruleSets, siteMapRefs, truncation, AgentIndex.build(ruleSets, compiled))
+                .withRequestRates(requestRates)
+                .withValidators(validators);
+    }
+
+    private static void writeNullableString(DataOutputStream out, String value) throws IOException {
+        writeNullableBytes(out, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeNullableBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readNullableString(ByteBuffer buffer) throws IOException {
+        byte[] bytes = readNullableBytes(buffer);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readNullableBytes(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+
+        if (length == -1) {
+            return null;
+        }
+
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Corrupt robots.txt data: length " + length);
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int length = readCount(buffer);
+        String value;
+
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        return value;
+    }
+
+    private static int readCount(ByteBuffer buffer) throws IOException {
+        int count = buffer.getInt();
+
+        // every counted item takes at least a byte, so anything larger can only be corruption
+        if (count < 0 || count > buffer.remaining()) {
+            throw new IOException("Corrupt robots.txt data: count " + count);
+        }
+
+        return count;
+    }
+}
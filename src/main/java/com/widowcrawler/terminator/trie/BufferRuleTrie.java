@@ -0,0 +1,222 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.trie;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link FlatRuleTrie} that is queried where it lies in a buffer, in the form written by
+ * {@link FlatRuleTrie#writeTo(java.io.DataOutput)}, instead of being copied into arrays first. The buffer can be a
+ * memory-mapped file or direct memory, so the trie costs nothing on the heap.
+ *
+ * Only absolute reads are used, so the buffer's position and limit are never touched and one buffer can be shared by
+ * any number of threads. The buffer must be big endian.
+ *
+ * {@link #from(FlatRuleTrie)} copies a trie into direct memory, so that large caches of compiled tries are invisible
+ * to the garbage collector: each trie is a small object pointing at memory the collector never scans or copies.
+ * Tries of up to 512 bytes are carved out of shared 16 KiB slabs, and a slab stays allocated as long as any one trie
+ * on it is reachable. So under churn a few surviving tries can pin a slab each, and {@link #estimatedSizeInBytes()}
+ * charges a carved trie a fixed share of its slab on top of its own bytes.
+ *
+ * @author Scott Mansfield
+ */
+public class BufferRuleTrie implements CompiledRuleTrie {
+
+    // Below this many edges a linear scan beats a binary search
+    private static final int LINEAR_SCAN_EDGES = 8;
+
+    // Tiny tries are carved out of shared slabs, since allocating direct memory is slow and every direct buffer
+    // comes with its own cleaner. A slab is freed once none of the tries on it are reachable, so slabs are kept small,
+    // and anything bigger than a small trie gets a buffer of its own.
+    static final int SLAB_SIZE = 16 * 1024;
+    static final int MAX_CARVED_SIZE = 512;
+    // a full slab holds at least this many tries, so charging each this much covers the slab
+    static final int SLAB_SHARE = SLAB_SIZE / (SLAB_SIZE / MAX_CARVED_SIZE);
+    private static ByteBuffer currentSlab;
+
+    /**
+     * Copies a trie into direct memory.
+     */
+    public static BufferRuleTrie from(FlatRuleTrie ruleTrie) {
+        int size = ruleTrie.serializedSize();
+
+        if (size > MAX_CARVED_SIZE) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+            ruleTrie.writeTo(buffer.duplicate());
+            return new BufferRuleTrie(buffer, 0, false);
+        }
+
+        ByteBuffer buffer;
+
+        synchronized (BufferRuleTrie.class) {
+            if (currentSlab == null || currentSlab.remaining() < size) {
+                currentSlab = ByteBuffer.allocateDirect(SLAB_SIZE);
+            }
+
+            buffer = currentSlab.slice();
+            buffer.limit(size);
+            currentSlab.position(currentSlab.position() + size);
+        }
+
+        ruleTrie.writeTo(buffer.duplicate());
+        return new BufferRuleTrie(buffer, 0, true);
+    }
+
+    private final ByteBuffer buffer;
+    // whether the buffer was carved from a slab
+    private final boolean carved;
+    private final int offset;
+    private final int edgeCount;
+    private final int labelLength;
+
+    // where each array starts
+    private final int verdicts;
+    private final int firstEdge;
+    private final int edgeChars;
+    private final int labelStarts;
+    private final int labels;
+
+    /**
+     * @param offset where the trie starts in the buffer
+     */
+    public BufferRuleTrie(ByteBuffer buffer, int offset) {
+        this(buffer, offset, false);
+    }
+
+    private BufferRuleTrie(ByteBuffer buffer, int offset, boolean carved) {
+        this.buffer = buffer;
+        this.carved = carved;
+        this.offset = offset;
+        this.edgeCount = buffer.getInt(offset);
+        this.labelLength = buffer.getInt(offset + 4);
+
+        this.verdicts = offset + 8;
+        this.firstEdge = verdicts + edgeCount + 1;
+        this.edgeChars = firstEdge + (edgeCount + 2) * 4;
+        this.labelStarts = edgeChars + edgeCount * 2;
+        this.labels = labelStarts + (edgeCount + 1) * 4;
+    }
+
+    @Override
+    public int match(CharSequence path) {
+        int length = path.length();
+        int node = 0;
+        int pos = 0;
+        int best = Match.NONE;
+
+        while (true) {
+            byte verdict = buffer.get(verdicts + node);
+
+            if (verdict != FlatRuleTrie.NO_RULE) {
+                best = Match.of(pos, verdict == FlatRuleTrie.ALLOW);
+            }
+
+            if (pos >= length) {
+                return best;
+            }
+
+            int edge = findEdge(node, path.charAt(pos));
+
+            if (edge < 0) {
+                return best;
+            }
+
+            int labelStart = buffer.getInt(labelStarts + edge * 4);
+            int labelEnd = buffer.getInt(labelStarts + (edge + 1) * 4);
+
+            if (pos + 1 + labelEnd - labelStart > length) {
+                return best;
+            }
+
+            for (int i = labelStart; i < labelEnd; i++) {
+                if (buffer.getChar(labels + i * 2) != path.charAt(pos + 1 + i - labelStart)) {
+                    return best;
+                }
+            }
+
+            pos += 1 + labelEnd - labelStart;
+
+            // nodes are numbered in edge order, see FlatRuleTrie
+            node = edge + 1;
+        }
+    }
+
+    private int findEdge(int node, char c) {
+        int low = buffer.getInt(firstEdge + node * 4);
+        int high = buffer.getInt(firstEdge + (node + 1) * 4) - 1;
+
+        if (high - low < LINEAR_SCAN_EDGES) {
+            for (int i = low; i <= high; i++) {
+                if (buffer.getChar(edgeChars + i * 2) == c) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char midChar = buffer.getChar(edgeChars + mid * 2);
+
+            if (midChar < c) {
+                low = mid + 1;
+            } else if (midChar > c) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public int getNodeCount() {
+        return edgeCount + 1;
+    }
+
+    @Override
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * @return an estimate of the memory used by this trie, which is nearly all in the buffer, plus a fixed share of
+     *         the slab it was carved from, if it was, for the slab space it may keep from being freed
+     */
+    @Override
+    public long estimatedSizeInBytes() {
+        // the buffer reference, eight ints and the flag
+        return SizeEstimates.object(1, 9) + sizeInBytes() + (carved ? SLAB_SHARE : 0);
+    }
+
+    @Override
+    public void writeTo(DataOutput out) throws IOException {
+        for (int i = offset; i < offset + sizeInBytes(); i++) {
+            out.writeByte(buffer.get(i));
+        }
+    }
+
+    /**
+     * @return the number of bytes the trie takes up in the buffer
+     */
+    public int sizeInBytes() {
+        return labels + labelLength * 2 - offset;
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.trie;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A frozen, queryable form of a {@link RuleTrie}: {@link FlatRuleTrie} on the heap, or {@link BufferRuleTrie} in a
+ * buffer. Both share the binary layout described in {@link FlatRuleTrie#writeTo(DataOutput)}.
+ *
+ * @author Scott Mansfield
+ */
+public interface CompiledRuleTrie {
+
+    /**
+     * Finds the longest rule that is a prefix of the given path.
+     *
+     * @param path the path part of a URL, starting with a '/'
+     * @return the best match, encoded as described in {@link Match}
+     */
+    int match(CharSequence path);
+
+    int getNodeCount();
+
+    int getEdgeCount();
+
+    /**
+     * @return an estimate of the memory used by this trie, on or off the heap
+     */
+    long estimatedSizeInBytes();
+
+    void writeTo(DataOutput out) throws IOException;
+}
@@ -0,0 +1,373 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.trie;
+
+import com.widowcrawler.terminator.model.Rule;
+import com.widowcrawler.terminator.model.RuleType;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A frozen {@link RuleTrie} packed into primitive arrays using a sorted-edge layout.
+ *
+ * Nodes are numbered breadth first from the root at 0. The outgoing edges of node {@code n} are the range
+ * {@code [firstEdge[n], firstEdge[n + 1])}, sorted by their first character in {@code edgeChars}. The rest of each
+ * edge's label lives in {@code labels} between {@code labelStarts[e]} and {@code labelStarts[e + 1]}. A rule that ends
+ * at a node is recorded in {@code verdicts}.
+ *
+ * There are no boxed characters, no hash buckets and no per-node objects, so a lookup touches a handful of
+ * contiguous arrays and allocates nothing.
+ *
+ * Because nodes are numbered in the order their edges are created, the target of edge {@code e} is always node
+ * {@code e + 1}, so targets aren't stored at all, in memory or in the binary form written by
+ * {@link #writeTo(DataOutput)}.
+ *
+ * @author Scott Mansfield
+ */
+public class FlatRuleTrie implements CompiledRuleTrie {
+
+    static final byte NO_RULE = 0;
+    static final byte DISALLOW = 1;
+    static final byte ALLOW = 2;
+
+    // Below this many edges a linear scan beats a binary search
+    private static final int LINEAR_SCAN_EDGES = 8;
+
+    public static FlatRuleTrie from(RuleTrie ruleTrie) {
+        return new Builder().build(ruleTrie.getRoot());
+    }
+
+    /**
+     * Reads a trie written by {@link #writeTo(DataOutput)}, starting at the buffer's position and leaving the position
+     * just past it. The buffer must be big endian. The arrays are bulk copied, nothing is rebuilt.
+     */
+    public static FlatRuleTrie readFrom(ByteBuffer buffer) {
+        int edgeCount = buffer.getInt();
+        int labelLength = buffer.getInt();
+
+        // check before allocating, so a corrupt count can't ask for gigabytes
+        long size = (edgeCount + 1L) + (edgeCount + 2L) * 4 + edgeCount * 2L + (edgeCount + 1L) * 4 + labelLength * 2L;
+
+        if (edgeCount < 0 || labelLength < 0 || size > buffer.remaining()) {
+            throw new IllegalArgumentException("Corrupt trie header");
+        }
+
+        byte[] verdicts = new byte[edgeCount + 1];
+        buffer.get(verdicts);
+
+        int[] firstEdge = new int[edgeCount + 2];
+        buffer.asIntBuffer().get(firstEdge);
+        buffer.position(buffer.position() + firstEdge.length * 4);
+
+        char[] edgeChars = new char[edgeCount];
+        buffer.asCharBuffer().get(edgeChars);
+        buffer.position(buffer.position() + edgeChars.length * 2);
+
+        int[] labelStarts = new int[edgeCount + 1];
+        buffer.asIntBuffer().get(labelStarts);
+        buffer.position(buffer.position() + labelStarts.length * 4);
+
+        char[] labels = new char[labelLength];
+        buffer.asCharBuffer().get(labels);
+        buffer.position(buffer.position() + labels.length * 2);
+
+        return new FlatRuleTrie(verdicts, firstEdge, edgeChars, labelStarts, labels);
+    }
+
+    private final byte[] verdicts;
+    private final int[] firstEdge;
+    private final char[] edgeChars;
+    private final int[] labelStarts;
+    private final char[] labels;
+
+    FlatRuleTrie(byte[] verdicts, int[] firstEdge, char[] edgeChars, int[] labelStarts, char[] labels) {
+        this.verdicts = verdicts;
+        this.firstEdge = firstEdge;
+        this.edgeChars = edgeChars;
+        this.labelStarts = labelStarts;
+        this.labels = labels;
+    }
+
+    @Override
+    public int match(CharSequence path) {
+        long found = walk(path);
+
+        if (found < 0) {
+            return Match.NONE;
+        }
+
+        return Match.of((int) found, verdicts[(int) (found >>> 32)] == ALLOW);
+    }
+
+    /**
+     * Like {@link #match(CharSequence)}, but reports where the longest match ends rather than what it says, for
+     * callers that keep their own data per node.
+     *
+     * @return the number of the deepest node with a rule that is a prefix of the path, or -1 if there is none
+     */
+    public int matchNode(CharSequence path) {
+        long found = walk(path);
+        return found < 0 ? -1 : (int) (found >>> 32);
+    }
+
+    /**
+     * Follows the path as far as the trie goes.
+     *
+     * @return the deepest node with a rule that is a prefix of the path in the high int and the length of that prefix
+     *         in the low int, or -1 if there is none
+     */
+    private long walk(CharSequence path) {
+        int length = path.length();
+        int node = 0;
+        int pos = 0;
+        long best = -1L;
+
+        while (true) {
+            if (verdicts[node] != NO_RULE) {
+                best = ((long) node << 32) | pos;
+            }
+
+            if (pos >= length) {
+                return best;
+            }
+
+            int edge = findEdge(node, path.charAt(pos));
+
+            if (edge < 0) {
+                return best;
+            }
+
+            int labelStart = labelStarts[edge];
+            int labelLength = labelStarts[edge + 1] - labelStart;
+
+            if (pos + 1 + labelLength > length) {
+                return best;
+            }
+
+            for (int i = 0; i < labelLength; i++) {
+                if (labels[labelStart + i] != path.charAt(pos + 1 + i)) {
+                    return best;
+                }
+            }
+
+            pos += 1 + labelLength;
+            node = edge + 1;
+        }
+    }
+
+    private int findEdge(int node, char c) {
+        int low = firstEdge[node];
+        int high = firstEdge[node + 1] - 1;
+
+        if (high - low < LINEAR_SCAN_EDGES) {
+            for (int i = low; i <= high; i++) {
+                if (edgeChars[i] == c) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char midChar = edgeChars[mid];
+
+            if (midChar < c) {
+                low = mid + 1;
+            } else if (midChar > c) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Writes the arrays in big endian order: the edge count and label length, then verdicts, first edges, edge
+     * characters, label starts and labels.
+     */
+    @Override
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(edgeChars.length);
+        out.writeInt(labels.length);
+        out.write(verdicts);
+
+        for (int value : firstEdge) {
+            out.writeInt(value);
+        }
+
+        for (char value : edgeChars) {
+            out.writeChar(value);
+        }
+
+        for (int value : labelStarts) {
+            out.writeInt(value);
+        }
+
+        for (char value : labels) {
+            out.writeChar(value);
+        }
+    }
+
+    /**
+     * Writes the same bytes as {@link #writeTo(DataOutput)}, at the buffer's position. The buffer must be big endian.
+     */
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putInt(edgeChars.length);
+        buffer.putInt(labels.length);
+        buffer.put(verdicts);
+
+        buffer.asIntBuffer().put(firstEdge);
+        buffer.position(buffer.position() + firstEdge.length * 4);
+
+        buffer.asCharBuffer().put(edgeChars);
+        buffer.position(buffer.position() + edgeChars.length * 2);
+
+        buffer.asIntBuffer().put(labelStarts);
+        buffer.position(buffer.position() + labelStarts.length * 4);
+
+        buffer.asCharBuffer().put(labels);
+        buffer.position(buffer.position() + labels.length * 2);
+    }
+
+    /**
+     * @return the size of what {@link #writeTo(DataOutput)} writes
+     */
+    public int serializedSize() {
+        return 8 + verdicts.length + firstEdge.length * 4 + edgeChars.length * 2 + labelStarts.length * 4 +
+                labels.length * 2;
+    }
+
+    @Override
+    public int getNodeCount() {
+        return verdicts.length;
+    }
+
+    @Override
+    public int getEdgeCount() {
+        return edgeChars.length;
+    }
+
+    /**
+     * @return an estimate of the heap used by this trie, for comparison with {@link RuleTrie#estimatedSizeInBytes()}
+     */
+    @Override
+    public long estimatedSizeInBytes() {
+        return SizeEstimates.object(5, 0) +
+                SizeEstimates.byteArray(verdicts.length) +
+                SizeEstimates.intArray(firstEdge.length) +
+                SizeEstimates.charArray(edgeChars.length) +
+                SizeEstimates.intArray(labelStarts.length) +
+                SizeEstimates.charArray(labels.length);
+    }
+
+    private static class Builder {
+        private final List<Byte> verdicts = new ArrayList<>();
+        private final List<Integer> firstEdge = new ArrayList<>();
+        private final List<Character> edgeChars = new ArrayList<>();
+        private final List<Integer> labelStarts = new ArrayList<>();
+        private final StringBuilder labels = new StringBuilder();
+
+        FlatRuleTrie build(TrieNode root) {
+            // Nodes are TrieNodes, or Rules for the leaves that the node graph keeps inline in their parent
+            Deque<Object> queue = new ArrayDeque<>();
+            queue.add(root);
+
+            while (!queue.isEmpty()) {
+                Object current = queue.poll();
+                firstEdge.add(edgeChars.size());
+
+                if (current instanceof Rule) {
+                    verdicts.add(verdictOf((Rule) current));
+                    continue;
+                }
+
+                TrieNode node = (TrieNode) current;
+                Rule terminal = node.getRule('\0');
+                verdicts.add(terminal == null ? NO_RULE : verdictOf(terminal));
+
+                // Sort the outgoing edges by character, skipping the terminal rule
+                Map<Character, Object> edges = new TreeMap<>();
+                edges.putAll(node.children());
+                edges.putAll(node.rules());
+                edges.remove('\0');
+
+                for (Map.Entry<Character, Object> edge : edges.entrySet()) {
+                    Object target = edge.getValue();
+                    String targetPath = target instanceof Rule ?
+                            ((Rule) target).getPathMatch() :
+                            ((TrieNode) target).getPrefix();
+
+                    edgeChars.add(edge.getKey());
+                    labelStarts.add(labels.length());
+                    labels.append(targetPath, node.getDiffIndex() + 1, targetPath.length());
+
+                    queue.add(target);
+                }
+            }
+
+            firstEdge.add(edgeChars.size());
+            labelStarts.add(labels.length());
+
+            return new FlatRuleTrie(
+                    toBytes(verdicts),
+                    toInts(firstEdge),
+                    toChars(edgeChars),
+                    toInts(labelStarts),
+                    labels.toString().toCharArray()
+            );
+        }
+
+        private static byte verdictOf(Rule rule) {
+            return rule.getRuleType() == RuleType.ALLOW ? ALLOW : DISALLOW;
+        }
+
+        private static byte[] toBytes(List<Byte> list) {
+            byte[] array = new byte[list.size()];
+
+            for (int i = 0; i < array.length; i++) {
+                array[i] = list.get(i);
+            }
+
+            return array;
+        }
+
+        private static int[] toInts(List<Integer> list) {
+            return list.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        private static char[] toChars(List<Character> list) {
+            char[] array = new char[list.size()];
+
+            for (int i = 0; i < array.length; i++) {
+                array[i] = list.get(i);
+            }
+
+            return array;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.trie;
+
+import com.widowcrawler.terminator.model.RuleType;
+
+/**
+ * Compiled matchers report their best match as a single int so a lookup never has to allocate. The rule's path
+ * length is in the high bits and the verdict in the lowest bit, so the larger of two matches is always the one that
+ * wins: the longer rule, or the Allow if both rules are the same length.
+ *
+ * @author Scott Mansfield
+ */
+public final class Match {
+
+    public static final int NONE = -1;
+
+    private Match() {}
+
+    public static int of(int length, RuleType ruleType) {
+        return of(length, ruleType == RuleType.ALLOW);
+    }
+
+    public static int of(int length, boolean allow) {
+        return (length << 1) | (allow ? 1 : 0);
+    }
+
+    public static boolean isMatch(int match) {
+        return match != NONE;
+    }
+
+    /**
+     * @return true if the match allows the path. No match at all allows everything.
+     */
+    public static boolean isAllowed(int match) {
+        return match == NONE || (match & 1) == 1;
+    }
+
+    public static int length(int match) {
+        return match == NONE ? -1 : match >>> 1;
+    }
+}
@@ -0,0 +1,229 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.trie;
+
+/**
+ * Puts rule paths and request paths into the same canonical form before they are compared, following RFC 9309
+ * section 2.2.2:
+ *
+ * <ul>
+ *     <li>percent escapes of unreserved characters (letters, digits, '-', '.', '_' and '~') are decoded, so
+ *     {@code %7E} and {@code ~} are the same</li>
+ *     <li>other percent escapes are kept, since a reserved character means something different when escaped, but
+ *     their hex digits are upper-cased, so {@code %2f} and {@code %2F} are the same</li>
+ *     <li>characters outside US-ASCII are percent-encoded as UTF-8</li>
+ * </ul>
+ *
+ * Rule paths are normalized once, when the trie is compiled. Request paths are normalized on every check, so that
+ * side is built not to allocate: paths that are already canonical, which is nearly all of them, are used as they
+ * are, and the rest are rewritten into a per-thread buffer.
+ *
+ * @author Scott Mansfield
+ */
+public final class PathNormalizer {
+
+    private static final String ROOT_PATH = "/";
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    // one BMP character becomes at most three escaped UTF-8 bytes
+    private static final int MAX_EXPANSION = 9;
+
+    private static final ThreadLocal<NormalizedPath> SCRATCH = ThreadLocal.withInitial(NormalizedPath::new);
+
+    private PathNormalizer() {}
+
+    /**
+     * @param path a rule path
+     * @return the canonical form of the path, which is the same instance if it was already canonical
+     */
+    public static String normalizeRule(String path) {
+        if (!needsNormalizing(path, false)) {
+            return path;
+        }
+
+        char[] out = new char[path.length() * MAX_EXPANSION];
+        int length = normalize(path, false, out);
+
+        return new String(out, 0, length);
+    }
+
+    /**
+     * Normalizes the path of a URL to check. An empty path, or one that starts with the query string, is the root
+     * path, and anything after a '#' is a fragment that is never sent to the server, so it's dropped.
+     *
+     * The result may be a view over a per-thread buffer, which is only valid until the next call on the same thread.
+     * Don't hold on to it.
+     *
+     * @param path the path part of a URL, including any query string
+     * @return the canonical form of the path
+     */
+    public static CharSequence normalizeRequest(CharSequence path) {
+        if (path.length() == 0) {
+            return ROOT_PATH;
+        }
+
+        if (!needsNormalizing(path, true)) {
+            return path;
+        }
+
+        NormalizedPath normalized = SCRATCH.get();
+        normalized.length = normalize(path, true, normalized.ensureCapacity(path.length() * MAX_EXPANSION + 1));
+
+        // nothing but a fragment
+        return normalized.length == 0 ? ROOT_PATH : normalized;
+    }
+
+    private static boolean needsNormalizing(CharSequence path, boolean request) {
+        int length = path.length();
+
+        if (request && path.charAt(0) == '?') {
+            return true;
+        }
+
+        for (int i = 0; i < length; i++) {
+            char c = path.charAt(i);
+
+            if (c == '%' || c >= 0x80 || (request && c == '#')) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static int normalize(CharSequence path, boolean request, char[] out) {
+        int length = path.length();
+        int n = 0;
+
+        if (request && path.charAt(0) == '?') {
+            out[n++] = '/';
+        }
+
+        for (int i = 0; i < length; i++) {
+            char c = path.charAt(i);
+
+            if (c == '%' && i + 2 < length && isHex(path.charAt(i + 1)) && isHex(path.charAt(i + 2))) {
+                int value = (hexValue(path.charAt(i + 1)) << 4) | hexValue(path.charAt(i + 2));
+                i += 2;
+
+                if (isUnreserved(value)) {
+                    out[n++] = (char) value;
+                } else {
+                    n = escape(value, out, n);
+                }
+            } else if (c < 0x80) {
+                if (request && c == '#') {
+                    break;
+                }
+
+                out[n++] = c;
+            } else {
+                int codePoint = c;
+
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(path.charAt(i + 1))) {
+                    codePoint = Character.toCodePoint(c, path.charAt(++i));
+                } else if (Character.isSurrogate(c)) {
+                    // not valid UTF-16, so there's nothing to encode it as
+                    codePoint = 0xFFFD;
+                }
+
+                n = encodeUtf8(codePoint, out, n);
+            }
+        }
+
+        return n;
+    }
+
+    private static int encodeUtf8(int codePoint, char[] out, int n) {
+        if (codePoint < 0x800) {
+            n = escape(0xC0 | (codePoint >>> 6), out, n);
+        } else if (codePoint < 0x10000) {
+            n = escape(0xE0 | (codePoint >>> 12), out, n);
+            n = escape(0x80 | ((codePoint >>> 6) & 0x3F), out, n);
+        } else {
+            n = escape(0xF0 | (codePoint >>> 18), out, n);
+            n = escape(0x80 | ((codePoint >>> 12) & 0x3F), out, n);
+            n = escape(0x80 | ((codePoint >>> 6) & 0x3F), out, n);
+        }
+
+        return escape(0x80 | (codePoint & 0x3F), out, n);
+    }
+
+    private static int escape(int value, char[] out, int n) {
+        out[n++] = '%';
+        out[n++] = HEX[value >>> 4];
+        out[n++] = HEX[value & 0xF];
+        return n;
+    }
+
+    private static boolean isUnreserved(int c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') ||
+                c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+    private static boolean isHex(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'A' && c <= 'F') || (c >= 'a' && c <= 'f');
+    }
+
+    private static int hexValue(char c) {
+        if (c <= '9') {
+            return c - '0';
+        }
+
+        return (c & ~0x20) - 'A' + 10;
+    }
+
+    /**
+     * A reusable view over the normalized characters, so normalizing a request path allocates nothing once the
+     * buffer has grown to fit.
+     */
+    private static final class NormalizedPath implements CharSequence {
+        private char[] chars = new char[256];
+        private int length;
+
+        char[] ensureCapacity(int capacity) {
+            if (chars.length < capacity) {
+                chars = new char[Math.max(capacity, chars.length * 2)];
+            }
+
+            return chars;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index >= length) {
+                throw new IndexOutOfBoundsException(Integer.toString(index));
+            }
+
+            return chars[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, 0, length);
+        }
+    }
+}
@@ -0,0 +1,435 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.trie;
+
+import com.widowcrawler.terminator.model.Rule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Matches rules that use the '*' wildcard or the '$' end anchor. These can't live in a {@link RuleTrie}, so they are
+ * compiled into a single NFA that sits next to it.
+ *
+ * Every literal character of every pattern is one state, and the set of active states is a bitset that is advanced
+ * for all patterns at once with a few word-wide operations per character (shift-and). A '*' becomes a sticky gate that
+ * stays open once the literals before it have matched. The path is read exactly once, so a lookup costs
+ * O(path length * states / 64) no matter how hostile the patterns are; there is no backtracking. In practice most
+ * patterns stop matching within a few characters and only the words of states still in play are touched.
+ *
+ * A pattern's priority is the length of its rule path, the same as a literal rule, so results combine with
+ * {@link FlatRuleTrie#match(CharSequence)} by taking the larger {@link Match}.
+ *
+ * @author Scott Mansfield
+ */
+public class PatternMatcher {
+
+    public static final PatternMatcher EMPTY = new Compiler(Collections.emptyList()).compile();
+
+    // Per-thread state for matchers too big to keep in a single long
+    private static final ThreadLocal<long[]> SCRATCH = ThreadLocal.withInitial(() -> new long[0]);
+
+    /**
+     * @return true if the rule needs the pattern matcher rather than a plain prefix match
+     */
+    public static boolean isPattern(Rule rule) {
+        String path = rule.getPathMatch();
+        return path.indexOf('*') >= 0 || path.endsWith("$");
+    }
+
+    /**
+     * @param rules pattern rules, with leading slashes already in place
+     */
+    public static PatternMatcher compile(List<Rule> rules) {
+        if (rules.isEmpty()) {
+            return EMPTY;
+        }
+
+        return new Compiler(rules).compile();
+    }
+
+    private final int words;
+
+    // All masks are bitsets over the states, `words` longs each
+    private final long[] first;
+    private final long[] notFirst;
+    private final long[] star;
+    private final long[] initialGates;
+    private final long[] lastUnanchored;
+    private final long[] lastAnchored;
+
+    // One mask per character class, class 0 being characters that appear in no pattern
+    private final long[] charMasks;
+
+    // The Match reported when a pattern's last state is reached, indexed by state
+    private final int[] matchOfState;
+
+    private final int[] asciiClasses;
+    private final char[] otherChars;
+    private final int[] otherClasses;
+
+    private final int patternCount;
+
+    private PatternMatcher(long[] first, long[] notFirst, long[] star, long[] initialGates, long[] lastUnanchored,
+                           long[] lastAnchored, long[] charMasks, int[] matchOfState, int[] asciiClasses,
+                           char[] otherChars, int[] otherClasses, int patternCount) {
+        this.words = first.length;
+        this.first = first;
+        this.notFirst = notFirst;
+        this.star = star;
+        this.initialGates = initialGates;
+        this.lastUnanchored = lastUnanchored;
+        this.lastAnchored = lastAnchored;
+        this.charMasks = charMasks;
+        this.matchOfState = matchOfState;
+        this.asciiClasses = asciiClasses;
+        this.otherChars = otherChars;
+        this.otherClasses = otherClasses;
+        this.patternCount = patternCount;
+    }
+
+    public int getPatternCount() {
+        return patternCount;
+    }
+
+    public int getStateCount() {
+        return matchOfState.length;
+    }
+
+    public boolean isEmpty() {
+        return patternCount == 0;
+    }
+
+    /**
+     * @return an estimate of the heap used by this matcher
+     */
+    public long estimatedSizeInBytes() {
+        if (this == EMPTY) {
+            // shared by every rule set without patterns
+            return 0L;
+        }
+
+        long masks = 6L * SizeEstimates.longArray(words) + SizeEstimates.longArray(charMasks.length);
+
+        return SizeEstimates.object(11, 2) + masks +
+                SizeEstimates.intArray(matchOfState.length) +
+                SizeEstimates.intArray(asciiClasses.length) +
+                SizeEstimates.charArray(otherChars.length) +
+                SizeEstimates.intArray(otherClasses.length);
+    }
+
+    /**
+     * Finds the highest priority pattern that matches the given path.
+     *
+     * @param path the path part of a URL, starting with a '/'
+     * @return the best match, encoded as described in {@link Match}
+     */
+    public int match(CharSequence path) {
+        if (words == 0) {
+            return Match.NONE;
+        } else if (words == 1) {
+            return matchSingleWord(path);
+        } else {
+            return matchMultiWord(path);
+        }
+    }
+
+    private int matchSingleWord(CharSequence path) {
+        long first = this.first[0];
+        long notFirst = this.notFirst[0];
+        long star = this.star[0];
+        long lastUnanchored = this.lastUnanchored[0];
+
+        long active = 0L;
+        long gates = initialGates[0];
+        int best = Match.NONE;
+        int length = path.length();
+
+        for (int i = 0; i < length; i++) {
+            long shifted = active << 1;
+            gates |= shifted & star;
+
+            active = ((shifted & notFirst) | gates | (i == 0 ? first : 0L)) & charMasks[classOf(path.charAt(i))];
+
+            long matched = active & lastUnanchored;
+
+            if (matched != 0L) {
+                best = Math.max(best, bestOf(matched, 0));
+            }
+
+            if (active == 0L && gates == 0L) {
+                return best;
+            }
+        }
+
+        long matched = active & lastAnchored[0];
+
+        return matched == 0L ? best : Math.max(best, bestOf(matched, 0));
+    }
+
+    private int matchMultiWord(CharSequence path) {
+        int liveWords = (words + 63) >>> 6;
+        int size = 2 * words + 2 * liveWords;
+        long[] scratch = SCRATCH.get();
+
+        if (scratch.length < size) {
+            scratch = new long[size];
+            SCRATCH.set(scratch);
+        }
+
+        // Active states in [0, words), open gates in [words, 2 * words), then a bitmap of the words that still have
+        // anything active or open, and a second bitmap for the next step. Most patterns die within a few characters,
+        // so only the live words and their neighbours are advanced. Dead words are always all zero.
+        int gateBase = words;
+        int liveBase = 2 * words;
+        int nextLiveBase = liveBase + liveWords;
+
+        Arrays.fill(scratch, 0, words, 0L);
+        System.arraycopy(initialGates, 0, scratch, gateBase, words);
+        Arrays.fill(scratch, liveBase, size, 0L);
+
+        int best = Match.NONE;
+        int length = path.length();
+
+        for (int i = 0; i < length; i++) {
+            int charMask = classOf(path.charAt(i)) * words;
+            boolean anyLive = false;
+
+            for (int lw = liveWords - 1; lw >= 0; lw--) {
+                // A word needs advancing if it is live, or if the word below it may carry a state into it. Every
+                // word is advanced on the first character, where each pattern's first state is entered.
+                long live = scratch[liveBase + lw];
+                long candidates = i == 0 ? -1L : live | (live << 1) | (lw > 0 ? scratch[liveBase + lw - 1] >>> 63 : 0L);
+
+                if (lw == liveWords - 1 && (words & 63) != 0) {
+                    candidates &= (1L << (words & 63)) - 1;
+                }
+
+                // Walk down so the lower word still holds the previous step when its carry is shifted in
+                while (candidates != 0L) {
+                    int bit = 63 - Long.numberOfLeadingZeros(candidates);
+                    candidates &= ~(1L << bit);
+
+                    int w = (lw << 6) + bit;
+                    long shifted = (scratch[w] << 1) | (w > 0 ? scratch[w - 1] >>> 63 : 0L);
+                    long gates = scratch[gateBase + w] | (shifted & star[w]);
+                    long active = ((shifted & notFirst[w]) | gates | (i == 0 ? first[w] : 0L)) & charMasks[charMask + w];
+
+                    scratch[w] = active;
+                    scratch[gateBase + w] = gates;
+
+                    if ((active | gates) != 0L) {
+                        scratch[nextLiveBase + lw] |= 1L << bit;
+                        anyLive = true;
+                    }
+
+                    long matched = active & lastUnanchored[w];
+
+                    if (matched != 0L) {
+                        best = Math.max(best, bestOf(matched, w));
+                    }
+                }
+            }
+
+            if (!anyLive) {
+                return best;
+            }
+
+            System.arraycopy(scratch, nextLiveBase, scratch, liveBase, liveWords);
+            Arrays.fill(scratch, nextLiveBase, nextLiveBase + liveWords, 0L);
+        }
+
+        for (int w = 0; w < words; w++) {
+            long matched = scratch[w] & lastAnchored[w];
+
+            if (matched != 0L) {
+                best = Math.max(best, bestOf(matched, w));
+            }
+        }
+
+        return best;
+    }
+
+    private int bestOf(long matched, int word) {
+        int best = Match.NONE;
+
+        while (matched != 0L) {
+            int bit = Long.numberOfTrailingZeros(matched);
+            best = Math.max(best, matchOfState[word * 64 + bit]);
+            matched &= matched - 1;
+        }
+
+        return best;
+    }
+
+    private int classOf(char c) {
+        if (c < 128) {
+            return asciiClasses[c];
+        }
+
+        int index = Arrays.binarySearch(otherChars, c);
+
+        return index < 0 ? 0 : otherClasses[index];
+    }
+
+    private static class Compiler {
+        private final List<Rule> rules;
+
+        Compiler(List<Rule> rules) {
+            // Patterns whose first '*' comes early keep their states alive the longest, so pack them together. The
+            // rest share literal prefixes with their neighbours and tend to die together, leaving whole words dead.
+            this.rules = new ArrayList<>(rules);
+            this.rules.sort(Comparator
+                    .comparingInt((Rule rule) -> literalPrefixLength(rule.getPathMatch()))
+                    .thenComparing(Rule::getPathMatch));
+        }
+
+        private static int literalPrefixLength(String path) {
+            int star = path.indexOf('*');
+            return star < 0 ? path.length() : star;
+        }
+
+        PatternMatcher compile() {
+            // First pass: simplify the patterns so we know how many states we need
+            String[] bodies = new String[rules.size()];
+            boolean[] anchored = new boolean[rules.size()];
+            int states = 0;
+
+            for (int i = 0; i < rules.size(); i++) {
+                String path = rules.get(i).getPathMatch();
+                boolean isAnchored = path.endsWith("$");
+                String body = isAnchored ? path.substring(0, path.length() - 1) : path;
+
+                // "/a*" and "/a*$" both just mean "starts with /a"
+                int end = body.length();
+
+                while (end > 0 && body.charAt(end - 1) == '*') {
+                    end--;
+                    isAnchored = false;
+                }
+
+                bodies[i] = body.substring(0, end);
+                anchored[i] = isAnchored;
+                states += bodies[i].replace("*", "").length();
+            }
+
+            int words = (states + 63) / 64;
+            long[] first = new long[words];
+            long[] notFirst = new long[words];
+            long[] star = new long[words];
+            long[] initialGates = new long[words];
+            long[] lastUnanchored = new long[words];
+            long[] lastAnchored = new long[words];
+            int[] matchOfState = new int[states];
+            Arrays.fill(matchOfState, Match.NONE);
+
+            StringBuilder literals = new StringBuilder(states);
+            int patternCount = 0;
+
+            // Second pass: one state per literal character
+            for (int i = 0; i < rules.size(); i++) {
+                String body = bodies[i];
+                int firstState = literals.length();
+                boolean starBefore = false;
+
+                for (int j = 0; j < body.length(); j++) {
+                    char c = body.charAt(j);
+
+                    if (c == '*') {
+                        starBefore = true;
+                        continue;
+                    }
+
+                    int state = literals.length();
+
+                    if (state == firstState) {
+                        set(first, state);
+
+                        // Only possible without a leading '/': the first literal may then match anywhere
+                        if (starBefore) {
+                            set(star, state);
+                            set(initialGates, state);
+                        }
+                    } else {
+                        set(notFirst, state);
+
+                        if (starBefore) {
+                            set(star, state);
+                        }
+                    }
+
+                    literals.append(c);
+                    starBefore = false;
+                }
+
+                if (literals.length() == firstState) {
+                    // Nothing but wildcards, which only happens without a leading '/'
+                    continue;
+                }
+
+                Rule rule = rules.get(i);
+                int last = literals.length() - 1;
+
+                matchOfState[last] = Match.of(rule.getPathMatch().length(), rule.getRuleType());
+                set(anchored[i] ? lastAnchored : lastUnanchored, last);
+                patternCount++;
+            }
+
+            // Number the distinct characters, then build one state mask per character class
+            TreeMap<Character, Integer> classes = new TreeMap<>();
+
+            for (int i = 0; i < literals.length(); i++) {
+                classes.putIfAbsent(literals.charAt(i), classes.size() + 1);
+            }
+
+            long[] charMasks = new long[(classes.size() + 1) * words];
+
+            for (int i = 0; i < literals.length(); i++) {
+                set(charMasks, classes.get(literals.charAt(i)) * words * 64 + i);
+            }
+
+            int[] asciiClasses = new int[128];
+            int others = classes.tailMap((char) 128).size();
+            char[] otherChars = new char[others];
+            int[] otherClasses = new int[others];
+            int other = 0;
+
+            for (Map.Entry<Character, Integer> entry : classes.entrySet()) {
+                char c = entry.getKey();
+
+                if (c < 128) {
+                    asciiClasses[c] = entry.getValue();
+                } else {
+                    otherChars[other] = c;
+                    otherClasses[other] = entry.getValue();
+                    other++;
+                }
+            }
+
+            return new PatternMatcher(first, notFirst, star, initialGates, lastUnanchored, lastAnchored, charMasks,
+                    matchOfState, asciiClasses, otherChars, otherClasses, patternCount);
+        }
+
+        private static void set(long[] bits, int index) {
+            bits[index >>> 6] |= 1L << (index & 63);
+        }
+    }
+}
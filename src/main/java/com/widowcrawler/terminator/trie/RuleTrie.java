@@ -16,11 +16,20 @@
 package com.widowcrawler.terminator.trie;
 
 import com.widowcrawler.terminator.model.Rule;
+import com.widowcrawler.terminator.model.RuleType;
 import org.apache.commons.lang3.StringUtils;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 /**
+ * A path-compressed trie of rules. Once built the trie is never modified, so a single instance can be queried from
+ * any number of threads.
+ *
+ * Rules with a '*' wildcard or a '$' end anchor aren't prefixes, so they are kept out of the trie and compiled into a
+ * {@link PatternMatcher} that sits next to it.
+ *
  * @author Scott Mansfield
  */
 public class RuleTrie {
@@ -28,140 +37,251 @@ public class RuleTrie {
     private static final Character NULL = '\0';
 
     public static RuleTrie build(Set<Rule> rules) {
-        TrieNode root = new TrieNode(null, 0, "", null);
+        TrieNode root = new TrieNode(null, 0, "");
+        List<Rule> patterns = new ArrayList<>();
 
-        rules.forEach(rule -> insert(root, rule));
+        for (Rule rule : rules) {
+            // An empty path matches nothing, i.e. "Disallow:" allows everything
+            if (StringUtils.isEmpty(rule.getPathMatch())) {
+                continue;
+            }
 
-        return new RuleTrie(root);
+            Rule standardizedRule = standardize(rule);
+
+            if (PatternMatcher.isPattern(standardizedRule)) {
+                patterns.add(standardizedRule);
+            } else {
+                insertRec(root, standardizedRule);
+            }
+        }
+
+        return new RuleTrie(root, PatternMatcher.compile(patterns));
     }
 
-    private static void insert(TrieNode node, Rule rule) {
-        Rule standardizedRule = ensureRuleHasLeadingSlash(rule);
+    /**
+     * @return the rules that {@link #build(Set)} compiles into the {@link PatternMatcher} instead of the trie, in the
+     *         form they are compiled in, see {@link PathNormalizer}
+     */
+    public static List<Rule> patternRules(Set<Rule> rules) {
+        return standardizedRules(rules, true);
+    }
 
-        insertRec(node, standardizedRule, 0);
+    /**
+     * @return the rules that {@link #build(Set)} inserts into the trie, in the form they are inserted in
+     */
+    public static List<Rule> prefixRules(Set<Rule> rules) {
+        return standardizedRules(rules, false);
     }
 
-    private static void insertRec(TrieNode node, Rule rule, int curIndex) {
-        // TODO: Make sure this is the right character. Am I at the previous spot or the current spot?
-        Character current = rule.getPathMatch().charAt(curIndex);
+    private static List<Rule> standardizedRules(Set<Rule> rules, boolean patterns) {
+        List<Rule> standardizedRules = new ArrayList<>();
 
-        // case 1: No rule or child for the current character
-        //   - add rule at current character spot in current node
-        // case 2: Child for current character
-        //   - recurse to child
-        // case 3: Rule for current character
-        //   - pull rule out, create a new child node, and re-insert
-        //   - make sure to check for equality
-        if (!node.hasRule(current) && !node.hasChild(current)) {
-            // insert node
-            node.addRule(current, rule);
-        } else if (node.hasChild(current)) {
-            // recurse
-            // get common substring
-            insertRec(node.getChild(current, rule, ))
-        } else if (node.hasRule(current)) {
-            // pull rule out, create new child node and re-insert
-            Rule existing = node.removeRule(current);
-            TrieNode newChild = new TrieNode(node, -1, "")
-        } else {
-            throw new IllegalStateException("Both a rule and child exist for the same character.");
+        for (Rule rule : rules) {
+            if (StringUtils.isEmpty(rule.getPathMatch())) {
+                continue;
+            }
+
+            Rule standardizedRule = standardize(rule);
+
+            if (PatternMatcher.isPattern(standardizedRule) == patterns) {
+                standardizedRules.add(standardizedRule);
+            }
         }
 
+        return standardizedRules;
+    }
 
+    private static void insertRec(TrieNode node, Rule rule) {
+        String path = rule.getPathMatch();
+        int diffIndex = node.getDiffIndex();
 
-        // Branch node
-        if (node.getRule() == null) {
-            Character current = NULL;
+        // The rule path ends exactly at this node's prefix
+        if (path.length() == diffIndex) {
+            if (node.hasRule(NULL)) {
+                node.addRule(NULL, pickWinner(node.removeRule(NULL), rule));
+            } else {
+                node.addRule(NULL, rule);
+            }
 
-            int diffIndex = Math.max(curIndex, node.getDiffIndex());
+            return;
+        }
 
-            // If current is equal to the current node's prefix
-            if (diffIndex == rule.getPathMatch().length()) {
-                current = NULL;
+        Character current = path.charAt(diffIndex);
 
-            // If current is a prefix of the current node's prefix
-            } else if (diffIndex > rule.getPathMatch().length()) {
-                splitCoreNodeAndInsert(node, rule);
+        // case 1: Child for current character
+        //   - recurse to child, splitting it first if the rule diverges partway through its prefix
+        // case 2: Rule for current character
+        //   - pull rule out, create a new child node at the common prefix, and re-insert both
+        // case 3: No rule or child for the current character
+        //   - add rule at current character spot in current node
+        if (node.hasChild(current)) {
+            TrieNode child = node.getChild(current);
+            int common = commonPrefixLength(child.getPrefix(), path);
 
-            // If current is longer than the prefix
-            } else {
-                current = rule.getPathMatch().charAt(diffIndex);
+            if (common < child.getPrefix().length()) {
+                child = splitChild(node, current, child, path.substring(0, common));
             }
 
-            if (node.hasChild(current)) {
-                insertRec(node.getChild(current), rule, curIndex + 1);
-            } else {
-                addChild(node, rule, current, diffIndex);
+            insertRec(child, rule);
+        } else if (node.hasRule(current)) {
+            Rule existing = node.removeRule(current);
+
+            if (existing.getPathMatch().equals(path)) {
+                node.addRule(current, pickWinner(existing, rule));
+                return;
             }
 
-        // leaf node
+            int common = commonPrefixLength(existing.getPathMatch(), path);
+            TrieNode newChild = new TrieNode(node, common, path.substring(0, common));
+            node.addChild(current, newChild);
+
+            insertRec(newChild, existing);
+            insertRec(newChild, rule);
         } else {
-            splitLeafNode(node, rule);
+            node.addRule(current, rule);
         }
     }
 
-    private static void addChild(TrieNode coreNode, Rule rule, Character current, int diffIndex) {
-        TrieNode leafNode = new TrieNode(coreNode, diffIndex, rule.getPathMatch(), rule);
+    private static TrieNode splitChild(TrieNode node, Character current, TrieNode child, String prefix) {
+        TrieNode replacement = new TrieNode(node, prefix.length(), prefix);
+
+        node.replaceChild(current, replacement);
+        replacement.addChild(child.getPrefix().charAt(prefix.length()), child);
+        child.setParent(replacement);
+
+        return replacement;
+    }
 
-        coreNode.addChild(current, leafNode);
+    // Google and most other crawlers pick the least restrictive rule when an Allow and a Disallow share a path
+    private static Rule pickWinner(Rule existing, Rule rule) {
+        return existing.getRuleType() == RuleType.ALLOW ? existing : rule;
     }
 
-    private static void splitCoreNodeAndInsert(TrieNode coreNode, Rule rule) {
-        // split node, call back to insertRec on the correct child
-        String prefix = StringUtils.getCommonPrefix(coreNode.getPrefix(), rule.getPathMatch());
+    private static int commonPrefixLength(CharSequence a, CharSequence b) {
+        int max = Math.min(a.length(), b.length());
+        int i = 0;
 
-        // TODO: If coreNode is the root, add new parent (?)
+        while (i < max && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
 
-        TrieNode replacement = new TrieNode(coreNode.getParent(), prefix.length(), prefix, null);
+        return i;
+    }
 
-        TrieNode parent = coreNode.getParent();
-        String parentPrefix = parent.getPrefix();
+    private static boolean regionMatches(CharSequence path, int start, String toMatch) {
+        if (path.length() < toMatch.length()) {
+            return false;
+        }
 
-        parent.removeChild(coreNode.getPrefix().charAt(parentPrefix.length()));
-        parent.addChild(prefix.charAt(parentPrefix.length()), replacement);
+        for (int i = start; i < toMatch.length(); i++) {
+            if (path.charAt(i) != toMatch.charAt(i)) {
+                return false;
+            }
+        }
 
-        //
+        return true;
     }
 
-    private static void splitLeafNode(TrieNode leafNode, Rule rule) {
-        String leafPathMatch = leafNode.getRule().getPathMatch();
-
-        // TODO: What if they are the same exact rule?
-        // probably log info and drop
-        // If they differ by ALLOW / DISALLOW, log warn and pick latest one
-        String prefix = StringUtils.getCommonPrefix(leafPathMatch, rule.getPathMatch());
+    // Gives the rule a leading slash and puts it in the same form request paths are normalized to
+    private static Rule standardize(Rule rule) {
+        String path = PathNormalizer.normalizeRule(StringUtils.prependIfMissing(rule.getPathMatch(), "/"));
+        return new Rule(rule.getRuleType(), path);
+    }
 
-        int diffIndex = prefix.length();
+    private final TrieNode root;
+    private final PatternMatcher patterns;
 
-        TrieNode coreNode = new TrieNode(leafNode.getParent(), diffIndex, prefix, null);
-        Character leafChar = NULL;
-        Character ruleChar;
+    private RuleTrie(TrieNode root, PatternMatcher patterns) {
+        this.root = root;
+        this.patterns = patterns;
+    }
 
-        // Put original node as child of new node
-        if (diffIndex < leafPathMatch.length()) {
-            leafChar = leafPathMatch.charAt(diffIndex);
-        }
+    public TrieNode getRoot() {
+        return root;
+    }
 
-        ruleChar = rule.getPathMatch().charAt(diffIndex);
+    /**
+     * @return the compiled wildcard and end-anchored rules, which are not part of the trie itself
+     */
+    public PatternMatcher getPatterns() {
+        return patterns;
+    }
 
-        coreNode.addChild(leafChar, new TrieNode(coreNode, diffIndex, leafNode.getRule().getPathMatch(), leafNode.getRule()));
-        coreNode.addChild(ruleChar, new TrieNode(coreNode, diffIndex, rule.getPathMatch(), rule));
+    /**
+     * @return a compact, array-encoded copy of this trie for fast lookups
+     */
+    public FlatRuleTrie freeze() {
+        return FlatRuleTrie.from(this);
+    }
 
-        TrieNode parent = leafNode.getParent();
-        parent.replaceChild(leafPathMatch.charAt(leafNode.getDiffIndex()), coreNode);
+    /**
+     * Like {@link #freeze()}, but the result lives in direct memory instead of on the heap.
+     */
+    public BufferRuleTrie freezeOffHeap() {
+        return BufferRuleTrie.from(freeze());
     }
 
-    private static Rule ensureRuleHasLeadingSlash(Rule rule) {
-        return new Rule(rule.getRuleType(), StringUtils.prependIfMissing(rule.getPathMatch(), "/"));
+    /**
+     * @return an estimate of the heap used by the node graph, including the rules it holds
+     */
+    public long estimatedSizeInBytes() {
+        return estimatedSizeInBytes(root);
     }
 
-    private TrieNode root;
+    private static long estimatedSizeInBytes(TrieNode node) {
+        long size = SizeEstimates.object(4, 1) +
+                SizeEstimates.string(node.getPrefix().length()) +
+                SizeEstimates.hashMap(node.children().size()) +
+                SizeEstimates.hashMap(node.rules().size());
 
-    private RuleTrie(TrieNode root) {
-        this.root = root;
+        for (Rule rule : node.rules().values()) {
+            size += SizeEstimates.object(2, 0) + SizeEstimates.string(rule.getPathMatch().length());
+        }
+
+        for (TrieNode child : node.children().values()) {
+            size += estimatedSizeInBytes(child);
+        }
+
+        return size;
     }
 
-    public TrieNode getRoot() {
-        return root;
+    /**
+     * Finds the rule with the longest path that is a prefix of the given path. The walk allocates nothing for ASCII
+     * paths and takes no locks. Only plain prefix rules are considered; see {@link #getPatterns()} for the rest.
+     *
+     * @param path the path part of a URL, starting with a '/'
+     * @return the longest matching rule, or null if no rule matches
+     */
+    public Rule findLongestMatch(CharSequence path) {
+        TrieNode node = root;
+        Rule best = null;
+
+        while (true) {
+            int diffIndex = node.getDiffIndex();
+            Rule rule = node.getRule(NULL);
+
+            if (rule != null) {
+                best = rule;
+            }
+
+            if (diffIndex >= path.length()) {
+                return best;
+            }
+
+            Character current = path.charAt(diffIndex);
+            rule = node.getRule(current);
+
+            if (rule != null) {
+                return regionMatches(path, diffIndex + 1, rule.getPathMatch()) ? rule : best;
+            }
+
+            TrieNode child = node.getChild(current);
+
+            if (child == null || !regionMatches(path, diffIndex + 1, child.getPrefix())) {
+                return best;
+            }
+
+            node = child;
+        }
     }
 }
@@ -0,0 +1,75 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.trie;
+
+/**
+ * Rough shallow sizes of objects on a 64-bit JVM with compressed oops, used to compare the heap cost of the trie
+ * representations. These are estimates, not measurements.
+ *
+ * @author Scott Mansfield
+ */
+public final class SizeEstimates {
+
+    public static final long OBJECT_HEADER = 12;
+    public static final long ARRAY_HEADER = 16;
+    public static final long REFERENCE = 4;
+
+    // HashMap itself plus one HashMap.Node per entry
+    public static final long HASH_MAP = 48;
+    public static final long HASH_MAP_ENTRY = 32;
+
+    private SizeEstimates() {}
+
+    public static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    public static long object(int referenceFields, int intFields) {
+        return align(OBJECT_HEADER + REFERENCE * referenceFields + 4L * intFields);
+    }
+
+    public static long charArray(int length) {
+        return align(ARRAY_HEADER + 2L * length);
+    }
+
+    public static long intArray(int length) {
+        return align(ARRAY_HEADER + 4L * length);
+    }
+
+    public static long longArray(int length) {
+        return align(ARRAY_HEADER + 8L * length);
+    }
+
+    public static long byteArray(int length) {
+        return align(ARRAY_HEADER + length);
+    }
+
+    public static long string(int length) {
+        // String object (value, hash) plus its char[]
+        return object(1, 1) + charArray(length);
+    }
+
+    public static long hashMap(int size) {
+        if (size == 0) {
+            // the table is allocated lazily on the first put
+            return HASH_MAP;
+        }
+
+        int capacity = Integer.highestOneBit(Math.max(16, (int) Math.ceil(size / 0.75)) - 1) << 1;
+
+        return HASH_MAP + align(ARRAY_HEADER + REFERENCE * capacity) + HASH_MAP_ENTRY * size;
+    }
+}
@@ -21,6 +21,12 @@ import java.util.HashMap;
 import java.util.Map;
 
 /**
+ * A node in a {@link RuleTrie}. Every node represents the path prefix shared by everything below it. Children and
+ * rules are keyed by the character at {@link #getDiffIndex()}, the first position after the prefix. A rule whose path
+ * is exactly the prefix is keyed by {@code '\0'}.
+ *
+ * Nodes can only be modified while the trie is being built, so a finished trie can be shared between threads.
+ *
  * @author Scott Mansfield
  */
 
@@ -44,6 +50,10 @@ public class TrieNode {
         return parent;
     }
 
+    void setParent(TrieNode parent) {
+        this.parent = parent;
+    }
+
     public int getDiffIndex() {
         return diffIndex;
     }
@@ -61,13 +71,13 @@ public class TrieNode {
         return rules.get(character);
     }
 
-    public void addRule(Character character, Rule rule) {
+    void addRule(Character character, Rule rule) {
         assert !rules.containsKey(character);
         assert !children.containsKey(character);
         rules.put(character, rule);
     }
 
-    public Rule removeRule(Character character) {
+    Rule removeRule(Character character) {
         assert rules.containsKey(character);
         return rules.remove(character);
     }
@@ -81,19 +91,27 @@ public class TrieNode {
         return children.get(character);
     }
 
-    public void addChild(Character character, TrieNode trieNode) {
+    void addChild(Character character, TrieNode trieNode) {
         assert !children.containsKey(character);
         assert !rules.containsKey(character);
         children.put(character, trieNode);
     }
 
-    public TrieNode removeChild(Character character) {
+    TrieNode removeChild(Character character) {
         assert children.containsKey(character);
         return children.remove(character);
     }
 
-    public void replaceChild(Character character, TrieNode trieNode) {
+    void replaceChild(Character character, TrieNode trieNode) {
         children.put(character, trieNode);
     }
-}
 
+    // Used when freezing and measuring the trie
+    Map<Character, TrieNode> children() {
+        return children;
+    }
+
+    Map<Character, Rule> rules() {
+        return rules;
+    }
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.trie;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A reusable {@link CharSequence} view of a URL path held as UTF-8 bytes, in an array or a buffer, so a stored URL
+ * can be checked without decoding it into a String.
+ *
+ * ASCII bytes read as themselves. A byte outside ASCII reads as its percent escape, e.g. {@code %C3}, which is the
+ * form {@link PathNormalizer} gives non-ASCII characters anyway. Paths that are all ASCII, nearly all of them, are
+ * read straight from the bytes; the others are expanded once into a char array the view keeps for next time.
+ * Malformed UTF-8 is escaped byte for byte rather than replaced.
+ *
+ * The bytes are not copied, so they must not change while the view is in use. Views are not thread safe, keep one
+ * per thread.
+ *
+ * @author Scott Mansfield
+ */
+public final class Utf8Path implements CharSequence {
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private byte[] array;
+    private ByteBuffer buffer;
+    private int offset;
+    private int length;
+
+    // the escaped form, when there are bytes outside ASCII
+    private char[] expanded = new char[0];
+    private boolean isExpanded;
+
+    /**
+     * Views the bytes as a path, e.g. {@code /search?q=a}.
+     */
+    public Utf8Path wrap(byte[] bytes, int offset, int length) {
+        this.array = bytes;
+        this.buffer = null;
+        return view(offset, length);
+    }
+
+    /**
+     * Views the bytes between the buffer's position and limit as a path. Direct buffers are read in place, and the
+     * buffer's position is not changed.
+     */
+    public Utf8Path wrap(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return wrap(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+
+        this.array = null;
+        this.buffer = buffer;
+        return view(buffer.position(), buffer.remaining());
+    }
+
+    /**
+     * Like {@link #wrap(byte[], int, int)}, but takes a whole URL, e.g. {@code https://example.com:8080/a?b#c}, and
+     * views only its path and query. A path on its own is viewed as it is. A URL without a path views as empty, which
+     * evaluators treat as {@code /}.
+     */
+    public Utf8Path wrapUrl(byte[] bytes, int offset, int length) {
+        this.array = bytes;
+        this.buffer = null;
+        return urlView(offset, length);
+    }
+
+    /**
+     * Like {@link #wrap(ByteBuffer)}, but views only the path and query of a whole URL, see
+     * {@link #wrapUrl(byte[], int, int)}.
+     */
+    public Utf8Path wrapUrl(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return wrapUrl(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+
+        this.array = null;
+        this.buffer = buffer;
+        return urlView(buffer.position(), buffer.remaining());
+    }
+
+    /**
+     * Drops the reference to the bytes, so a view kept around doesn't keep a large buffer alive.
+     */
+    public void clear() {
+        array = null;
+        buffer = null;
+        offset = 0;
+        length = 0;
+        isExpanded = false;
+    }
+
+    private Utf8Path view(int offset, int length) {
+        this.offset = offset;
+        this.length = length;
+        this.isExpanded = false;
+
+        for (int i = 0; i < length; i++) {
+            if (byteAt(i) < 0) {
+                expand();
+                break;
+            }
+        }
+
+        return this;
+    }
+
+    private Utf8Path urlView(int offset, int length) {
+        this.offset = offset;
+        this.length = length;
+
+        int start = pathStart();
+        return view(offset + start, length - start);
+    }
+
+    // where the path starts, relative to the offset, skipping the scheme and authority if there are any
+    private int pathStart() {
+        int i = 0;
+
+        if (length >= 2 && byteAt(0) == '/' && byteAt(1) == '/') {
+            // scheme-relative, //host/path
+            i = 2;
+        } else {
+            while (i < length && isSchemeChar(byteAt(i))) {
+                i++;
+            }
+
+            if (i == 0 || i + 2 >= length || byteAt(i) != ':' || byteAt(i + 1) != '/' || byteAt(i + 2) != '/') {
+                // no scheme, so it's a path already
+                return 0;
+            }
+
+            i += 3;
+        }
+
+        while (i < length) {
+            byte b = byteAt(i);
+
+            if (b == '/' || b == '?' || b == '#') {
+                break;
+            }
+
+            i++;
+        }
+
+        return i;
+    }
+
+    private static boolean isSchemeChar(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') ||
+                b == '+' || b == '-' || b == '.';
+    }
+
+    private void expand() {
+        int n = 0;
+
+        if (expanded.length < length * 3) {
+            expanded = new char[length * 3];
+        }
+
+        for (int i = 0; i < length; i++) {
+            byte b = byteAt(i);
+
+            if (b >= 0) {
+                expanded[n++] = (char) b;
+            } else {
+                expanded[n++] = '%';
+                expanded[n++] = HEX[(b >> 4) & 0xF];
+                expanded[n++] = HEX[b & 0xF];
+            }
+        }
+
+        // from here on charAt reads the expanded form
+        length = n;
+        isExpanded = true;
+    }
+
+    private byte byteAt(int index) {
+        return array != null ? array[offset + index] : buffer.get(offset + index);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+
+        return isExpanded ? expanded[index] : (char) byteAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(length);
+
+        for (int i = 0; i < length; i++) {
+            builder.append(charAt(i));
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,331 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.cache;
+
+import com.widowcrawler.terminator.eval.RuleEvaluator;
+import com.widowcrawler.terminator.model.RobotsTxt;
+import com.widowcrawler.terminator.parse.Parser;
+import com.widowcrawler.terminator.trie.BufferRuleTrie;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author Scott Mansfield
+ */
+public class RobotsTxtCacheTest {
+
+    @Test
+    public void get_concurrentMisses_loadsOnce() throws Exception {
+        // Arrange
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        RobotsTxtCache cache = RobotsTxtCache.builder()
+                .loader(hostKey -> {
+                    loads.incrementAndGet();
+                    release.await();
+                    return emptyRobotsTxt();
+                })
+                .build();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<RobotsTxt>> results = new ArrayList<>();
+
+        // Act
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(() -> cache.get("http://example.com/page" + Math.random())));
+        }
+
+        Thread.sleep(100);
+        release.countDown();
+
+        // Assert
+        RobotsTxt first = results.get(0).get(5, TimeUnit.SECONDS);
+
+        for (Future<RobotsTxt> result : results) {
+            assertSame(first, result.get(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(1, loads.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void get_afterTtl_reloads() throws Exception {
+        // Arrange
+        AtomicLong now = new AtomicLong();
+        AtomicInteger loads = new AtomicInteger();
+
+        RobotsTxtCache cache = RobotsTxtCache.builder()
+                .loader(hostKey -> {
+                    loads.incrementAndGet();
+                    return emptyRobotsTxt();
+                })
+                .expireAfterLoad(1, TimeUnit.HOURS)
+                .ticker(now::get)
+                .build();
+
+        // Act
+        RobotsTxt first = cache.get("https://example.com/");
+        now.addAndGet(TimeUnit.MINUTES.toNanos(59));
+        RobotsTxt beforeExpiry = cache.get("https://EXAMPLE.com:443/other");
+        now.addAndGet(TimeUnit.MINUTES.toNanos(2));
+        RobotsTxt afterExpiry = cache.get("https://example.com/");
+
+        // Assert
+        assertSame(first, beforeExpiry);
+        assertNotSame(first, afterExpiry);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void get_afterTtl_reloadsWithExpiredCopy() throws Exception {
+        // Arrange
+        AtomicLong now = new AtomicLong();
+        List<RobotsTxt> reloadedFrom = new ArrayList<>();
+
+        RobotsTxtCache cache = RobotsTxtCache.builder()
+                .loader(new RobotsTxtLoader() {
+                    @Override
+                    public RobotsTxt load(HostKey hostKey) {
+                        return emptyRobotsTxt();
+                    }
+
+                    @Override
+                    public RobotsTxt reload(HostKey hostKey, RobotsTxt previous) {
+                        reloadedFrom.add(previous);
+                        return previous;
+                    }
+                })
+                .expireAfterLoad(1, TimeUnit.HOURS)
+                .ticker(now::get)
+                .build();
+
+        // Act
+        RobotsTxt first = cache.get("https://example.com/");
+        now.addAndGet(TimeUnit.MINUTES.toNanos(61));
+        RobotsTxt afterExpiry = cache.get("https://example.com/");
+
+        // Assert
+        assertThat(reloadedFrom, contains(sameInstance(first)));
+        assertSame(first, afterExpiry);
+    }
+
+    @Test
+    public void get_busyHostNearExpiry_refreshesInBackground() throws Exception {
+        // Arrange
+        AtomicLong now = new AtomicLong();
+        List<Runnable> refreshes = new ArrayList<>();
+        RobotsTxt refreshed = emptyRobotsTxt();
+
+        RobotsTxtCache cache = RobotsTxtCache.builder()
+                .loader(new RobotsTxtLoader() {
+                    @Override
+                    public RobotsTxt load(HostKey hostKey) {
+                        return emptyRobotsTxt();
+                    }
+
+                    @Override
+                    public RobotsTxt reload(HostKey hostKey, RobotsTxt previous) {
+                        return refreshed;
+                    }
+                })
+                .expireAfterLoad(1, TimeUnit.HOURS)
+                .refreshAhead(10, TimeUnit.MINUTES)
+                .refreshExecutor(refreshes::add)
+                .ticker(now::get)
+                .build();
+
+        RobotsTxt first = cache.get("https://example.com/");
+        cache.get("https://example.com/");
+
+        // Act
+        now.addAndGet(TimeUnit.MINUTES.toNanos(56));
+        RobotsTxt whileRefreshing = cache.get("https://example.com/");
+        cache.get("https://example.com/");
+        int started = refreshes.size();
+        refreshes.get(0).run();
+        RobotsTxt afterRefresh = cache.get("https://example.com/");
+
+        // Assert
+        assertSame(first, whileRefreshing);
+        assertEquals(1, started);
+        assertSame(refreshed, afterRefresh);
+    }
+
+    @Test
+    public void get_quietHostNearExpiry_doesNotRefresh() throws Exception {
+        // Arrange
+        AtomicLong now = new AtomicLong();
+        List<Runnable> refreshes = new ArrayList<>();
+
+        RobotsTxtCache cache = RobotsTxtCache.builder()
+                .loader(hostKey -> emptyRobotsTxt())
+                .expireAfterLoad(1, TimeUnit.HOURS)
+                .refreshAhead(10, TimeUnit.MINUTES)
+                .refreshExecutor(refreshes::add)
+                .ticker(now::get)
+                .build();
+
+        cache.get("https://example.com/");
+
+        // Act
+        now.addAndGet(TimeUnit.MINUTES.toNanos(56));
+        cache.get("https://example.com/");
+
+        // Assert
+        assertThat(refreshes, is(empty()));
+    }
+
+    @Test
+    public void get_manyRefreshesDue_rateLimits() throws Exception {
+        // Arrange
+        AtomicLong now = new AtomicLong();
+        List<Runnable> refreshes = new ArrayList<>();
+
+        RobotsTxtCache cache = RobotsTxtCache.builder()
+                .loader(hostKey -> emptyRobotsTxt())
+                .expireAfterLoad(1, TimeUnit.HOURS)
+                .refreshAhead(10, TimeUnit.MINUTES)
+                .refreshMinAccesses(1)
+                .maxRefreshesPerSecond(2)
+                .refreshExecutor(refreshes::add)
+                .ticker(now::get)
+                .build();
+
+        for (int i = 0; i < 5; i++) {
+            cache.get("https://host" + i + ".example.com/");
+        }
+
+        // Act
+        now.addAndGet(TimeUnit.MINUTES.toNanos(56));
+
+        for (int i = 0; i < 5; i++) {
+            cache.get("https://host" + i + ".example.com/");
+        }
+
+        int firstSecond = refreshes.size();
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+
+        for (int i = 0; i < 5; i++) {
+            cache.get("https://host" + i + ".example.com/");
+        }
+
+        // Assert
+        assertEquals(2, firstSecond);
+        // nothing ran, so the first two are still loading and don't start again
+        assertEquals(4, refreshes.size());
+    }
+
+    @Test
+    public void put_overMaximumSize_evictsLeastRecentlyUsed() throws Exception {
+        // Arrange
+        RobotsTxtCache cache = RobotsTxtCache.builder()
+                .loader(hostKey -> emptyRobotsTxt())
+                .maximumSize(2)
+                .build();
+
+        HostKey a = HostKey.fromUrl("http://a.example.com/");
+        HostKey b = HostKey.fromUrl("http://b.example.com/");
+        HostKey c = HostKey.fromUrl("http://c.example.com/");
+
+        // Act
+        cache.get(a);
+        cache.get(b);
+        cache.get(a);
+        cache.get(c);
+
+        // Assert
+        assertEquals(2, cache.size());
+        assertNotNull(cache.getIfPresent(a));
+        assertNull(cache.getIfPresent(b));
+        assertNotNull(cache.getIfPresent(c));
+    }
+
+    @Test
+    public void get_loaderFails_doesNotCacheFailure() throws Exception {
+        // Arrange
+        AtomicInteger loads = new AtomicInteger();
+
+        RobotsTxtCache cache = RobotsTxtCache.builder()
+                .loader(hostKey -> {
+                    if (loads.incrementAndGet() == 1) {
+                        throw new IllegalStateException("connection reset");
+                    }
+                    return emptyRobotsTxt();
+                })
+                .build();
+
+        // Act
+        try {
+            cache.get("http://example.com/");
+            fail("Expected an ExecutionException");
+        } catch (ExecutionException ex) {
+            assertEquals("connection reset", ex.getCause().getMessage());
+        }
+
+        RobotsTxt robotsTxt = cache.get("http://example.com/");
+
+        // Assert
+        assertNotNull(robotsTxt);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void get_compileOffHeap_evaluatesFromDirectMemory() throws Exception {
+        // Arrange
+        RobotsTxtCache cache = RobotsTxtCache.builder()
+                .loader(hostKey -> new Parser("User-agent: *\nDisallow: /private\n").parse())
+                .compileOffHeap()
+                .build();
+
+        // Act
+        RuleEvaluator ruleEvaluator = cache.get("http://example.com/").getEvaluator("FooBot");
+
+        // Assert
+        assertThat(ruleEvaluator.getRuleTrie(), instanceOf(BufferRuleTrie.class));
+        assertFalse(ruleEvaluator.isAllowed("/private/1"));
+        assertTrue(ruleEvaluator.isAllowed("/public"));
+    }
+
+    @Test
+    public void fromUrl_equivalentUrls_equalKeys() {
+        assertEquals(HostKey.fromUrl("http://Example.COM/a?b"), HostKey.fromUrl("HTTP://example.com:80/c"));
+        assertNotEquals(HostKey.fromUrl("http://example.com/"), HostKey.fromUrl("https://example.com/"));
+        assertNotEquals(HostKey.fromUrl("http://example.com/"), HostKey.fromUrl("http://example.com:8080/"));
+        assertEquals("http://example.com:8080/robots.txt", HostKey.fromUrl("http://example.com:8080/x").getRobotsTxtUrl());
+        assertEquals("https://example.com/robots.txt", HostKey.fromUrl("https://example.com/x").getRobotsTxtUrl());
+    }
+
+    private static RobotsTxt emptyRobotsTxt() {
+        return new RobotsTxt(new HashMap<>(), new HashSet<>());
+    }
+}
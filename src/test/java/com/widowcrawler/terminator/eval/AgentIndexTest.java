@@ -0,0 +1,128 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.eval;
+
+import com.widowcrawler.terminator.model.RobotsTxt;
+import com.widowcrawler.terminator.model.Rule;
+import com.widowcrawler.terminator.model.RuleType;
+import com.widowcrawler.terminator.parse.Parser;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author Scott Mansfield
+ */
+public class AgentIndexTest {
+
+    private static final String FILE = "User-agent: *\n" +
+                                       "Disallow: /\n" +
+                                       "\n" +
+                                       "User-agent: FooBot/1.2\n" +
+                                       "User-agent: BarBot\n" +
+                                       "Disallow: /private\n" +
+                                       "\n" +
+                                       "User-agent: foobot\n" +
+                                       "Disallow: /secret\n";
+
+    @Test
+    public void normalize_fullUserAgentString_returnsLowerCaseProductToken() {
+        assertEquals("foobot", AgentIndex.normalize("FooBot/1.2 (+http://foo.com/bot)"));
+        assertEquals("foo-bot_x", AgentIndex.normalize("  Foo-Bot_X 2.0"));
+        assertEquals("", AgentIndex.normalize("/1.2"));
+    }
+
+    @Test
+    public void getRuleSet_tokensCollide_mergesGroups() throws Exception {
+        // Arrange
+        RobotsTxt robotsTxt = new Parser(FILE).parse();
+
+        // Act
+        AgentIndex agentIndex = robotsTxt.getAgentIndex();
+
+        // Assert
+        assertThat(agentIndex.getRuleSet("FooBot/3.0"), containsInAnyOrder(
+                new Rule(RuleType.DISALLOW, "/private"),
+                new Rule(RuleType.DISALLOW, "/secret")));
+        assertThat(agentIndex.getRuleSet("barbot"), contains(new Rule(RuleType.DISALLOW, "/private")));
+        assertThat(agentIndex.getRuleSet("QuuxBot"), contains(new Rule(RuleType.DISALLOW, "/")));
+    }
+
+    @Test
+    public void getEvaluator_sameGroup_returnsCachedEvaluator() throws Exception {
+        // Arrange
+        RobotsTxt robotsTxt = new Parser(FILE).parse();
+
+        // Act
+        RuleEvaluator first = robotsTxt.getEvaluator("QuuxBot");
+        RuleEvaluator second = robotsTxt.getEvaluator("OtherBot/1.0");
+
+        // Assert
+        assertSame(first, second);
+        assertFalse(first.isAllowed("/index.html"));
+        assertTrue(robotsTxt.getEvaluator("foobot").isAllowed("/index.html"));
+        assertFalse(robotsTxt.getEvaluator("foobot").isAllowed("/secret/1"));
+    }
+
+    @Test
+    public void getEvaluator_manyUserAgentsRepeatedly_resolvesEachToItsGroup() throws Exception {
+        // Arrange
+        AgentIndex agentIndex = new Parser(FILE).parse().getAgentIndex();
+        String[] userAgents = {"FooBot/1.2", "barbot", "QuuxBot", "foobot", "BarBot/2 (+http://bar.com)", "Other"};
+        RuleEvaluator[] expected = new RuleEvaluator[userAgents.length];
+
+        for (int i = 0; i < userAgents.length; i++) {
+            expected[i] = agentIndex.getEvaluator(userAgents[i]);
+        }
+
+        // Act / Assert
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < userAgents.length; i++) {
+                assertSame(expected[i], agentIndex.getEvaluator(new String(userAgents[i])));
+                assertSame(expected[i], agentIndex.getEvaluator(userAgents[i]));
+            }
+        }
+
+        assertSame(agentIndex.getEvaluator("foobot"), agentIndex.getEvaluator("FooBot/1.2"));
+        assertNotSame(agentIndex.getEvaluator("barbot"), agentIndex.getEvaluator("foobot"));
+    }
+
+    @Test
+    public void getEvaluator_noMatchingGroup_allowsEverything() throws Exception {
+        // Arrange
+        RobotsTxt robotsTxt = new Parser("User-agent: FooBot\nDisallow: /\n").parse();
+
+        // Act
+        RuleEvaluator ruleEvaluator = robotsTxt.getEvaluator("BarBot");
+
+        // Assert
+        assertNull(robotsTxt.getRuleSet("BarBot"));
+        assertTrue(ruleEvaluator.isAllowed("/"));
+    }
+
+    @Test
+    public void estimatedSizeInBytes_sharedGroups_countsEachGroupOnce() throws Exception {
+        // Arrange
+        RobotsTxt robotsTxt = new Parser("User-agent: a\nUser-agent: b\nDisallow: /private\n").parse();
+
+        // Act
+        long size = robotsTxt.getAgentIndex().estimatedSizeInBytes();
+
+        // Assert
+        assertEquals(robotsTxt.getEvaluator("a").estimatedSizeInBytes(), size);
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.eval;
+
+import com.widowcrawler.terminator.model.RobotsTxt;
+import com.widowcrawler.terminator.parse.Parser;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Scott Mansfield
+ */
+public class MultiAgentEvaluatorTest {
+
+    private static final String[] SEGMENTS = { "a", "ab", "b", "%41", "x*", "y$", "*.pdf$", "", "c/d" };
+
+    @Test
+    public void evaluate_groupsSharingPrefixes_answersForEachAgent() throws Exception {
+        // Arrange
+        RobotsTxt robotsTxt = new Parser("User-agent: FooBot\n" +
+                                         "Disallow: /private\n" +
+                                         "Allow: /private/public\n" +
+                                         "\n" +
+                                         "User-agent: FooBot-Image\n" +
+                                         "User-agent: FooBot-Ads\n" +
+                                         "Allow: /private\n" +
+                                         "Disallow: /private/public/*.jpg$\n" +
+                                         "\n" +
+                                         "User-agent: *\n" +
+                                         "Disallow: /\n").parse();
+        MultiAgentEvaluator evaluator = robotsTxt.getEvaluator(
+                Arrays.asList("FooBot", "FooBot-Image", "FooBot-Ads", "BarBot"));
+
+        // Act / Assert
+        assertEquals(0b0110, evaluator.evaluate("/private/secrets"));
+        assertEquals(0b0111, evaluator.evaluate("/private/public/index.html"));
+        assertEquals(0b0001, evaluator.evaluate("/private/public/cat.jpg"));
+        assertEquals(0b0111, evaluator.evaluate("/elsewhere"));
+
+        byte[] url = "https://example.com/private/secrets".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(0b0110, evaluator.evaluate(url, 0, url.length));
+        assertEquals(0b0110, evaluator.evaluate(ByteBuffer.wrap(url)));
+        assertTrue(evaluator.isAllowed("/private/public", 0));
+        assertFalse(evaluator.isAllowed("/private/public", 3));
+    }
+
+    @Test
+    public void evaluate_randomRulesAndPaths_matchesEvaluatorPerAgent() throws Exception {
+        Random random = new Random(7);
+        List<String> userAgents = Arrays.asList("FooBot", "BarBot", "BazBot", "QuuxBot");
+
+        for (int file = 0; file < 200; file++) {
+            // Arrange
+            StringBuilder robotsTxt = new StringBuilder();
+
+            for (String group : new String[] { "FooBot", "BarBot", "*" }) {
+                robotsTxt.append("User-agent: ").append(group).append('\n');
+
+                for (int i = random.nextInt(6); i > 0; i--) {
+                    robotsTxt.append(random.nextBoolean() ? "Allow: " : "Disallow: ").append(randomPath(random)).append('\n');
+                }
+
+                robotsTxt.append('\n');
+            }
+
+            RobotsTxt parsed = new Parser(robotsTxt.toString()).parse();
+            MultiAgentEvaluator evaluator = parsed.getEvaluator(userAgents);
+
+            for (int i = 0; i < 50; i++) {
+                String path = randomPath(random).replace("*", "zz").replace("$", "");
+
+                // Act
+                long verdicts = evaluator.evaluate(path);
+
+                // Assert
+                for (int agent = 0; agent < userAgents.size(); agent++) {
+                    boolean expected = parsed.getEvaluator(userAgents.get(agent)).isAllowed(path);
+                    assertEquals(robotsTxt + "\n" + path + " for " + userAgents.get(agent),
+                            expected, (verdicts & (1L << agent)) != 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void evaluate_noGroupApplies_allowsEverything() throws Exception {
+        // Arrange
+        RobotsTxt robotsTxt = new Parser("User-agent: FooBot\nDisallow: /\n").parse();
+
+        // Act
+        MultiAgentEvaluator evaluator = robotsTxt.getEvaluator(Arrays.asList("BarBot", "BazBot"));
+
+        // Assert
+        assertEquals(0b11, evaluator.evaluate("/anything"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void build_moreThanMaxAgents_throwsIllegalArgumentException() throws Exception {
+        List<String> userAgents = new ArrayList<>(Collections.nCopies(MultiAgentEvaluator.MAX_AGENTS + 1, "FooBot"));
+        new Parser("User-agent: *\nDisallow: /\n").parse().getEvaluator(userAgents);
+    }
+
+    private static String randomPath(Random random) {
+        StringBuilder path = new StringBuilder("/");
+
+        for (int i = random.nextInt(3); i >= 0; i--) {
+            path.append(SEGMENTS[random.nextInt(SEGMENTS.length)]);
+        }
+
+        return path.toString();
+    }
+}
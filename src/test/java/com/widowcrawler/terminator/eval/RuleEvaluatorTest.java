@@ -0,0 +1,207 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.eval;
+
+import com.widowcrawler.terminator.model.RobotsTxt;
+import com.widowcrawler.terminator.model.Rule;
+import com.widowcrawler.terminator.model.RuleType;
+import com.widowcrawler.terminator.parse.Parser;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+/**
+ * @author Scott Mansfield
+ */
+public class RuleEvaluatorTest {
+
+    @Test
+    public void isAllowed_urlBytes_matchesPathOfUrl() {
+        // Arrange
+        Set<Rule> rules = new HashSet<>(3);
+        rules.add(new Rule(RuleType.DISALLOW, "/"));
+        rules.add(new Rule(RuleType.ALLOW, "/caf\u00e9"));
+        rules.add(new Rule(RuleType.ALLOW, "/*?open"));
+        RuleEvaluator ruleEvaluator = RuleEvaluator.build(rules);
+
+        byte[] page = "see http://example.com/caf\u00e9/menu and https://example.com/x?open#top"
+                .getBytes(StandardCharsets.UTF_8);
+        int first = 4;
+        int firstLength = "http://example.com/caf\u00e9/menu".getBytes(StandardCharsets.UTF_8).length;
+        int second = first + firstLength + 5;
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(page.length);
+        direct.put(page).flip();
+        direct.position(second);
+
+        // Act / Assert
+        assertTrue(ruleEvaluator.isAllowed(page, first, firstLength));
+        assertTrue(ruleEvaluator.isAllowed(page, second, page.length - second));
+        assertFalse(ruleEvaluator.isAllowed(page, second, page.length - second - "?open#top".length()));
+        assertTrue(ruleEvaluator.isAllowed(direct));
+        assertFalse(ruleEvaluator.isAllowed(ByteBuffer.wrap(page, first, 19)));
+        assertThat(direct.position(), is(second));
+    }
+
+    @Test
+    public void isAllowed_longestMatchWins_evaluatesCorrectly() {
+        // Arrange
+        Set<Rule> rules = new HashSet<>(3);
+        rules.add(new Rule(RuleType.DISALLOW, "/"));
+        rules.add(new Rule(RuleType.ALLOW, "/public"));
+        rules.add(new Rule(RuleType.DISALLOW, "/public/drafts"));
+
+        // Act
+        RuleEvaluator ruleEvaluator = RuleEvaluator.build(rules);
+
+        // Assert
+        assertFalse(ruleEvaluator.isAllowed("/"));
+        assertFalse(ruleEvaluator.isAllowed(""));
+        assertFalse(ruleEvaluator.isAllowed("/private"));
+        assertTrue(ruleEvaluator.isAllowed("/public"));
+        assertTrue(ruleEvaluator.isAllowed("/public/index.html"));
+        assertFalse(ruleEvaluator.isAllowed("/public/drafts/1"));
+    }
+
+    @Test
+    public void isAllowed_escapedPaths_matchesEitherForm() {
+        // Arrange
+        Set<Rule> rules = new HashSet<>(4);
+        rules.add(new Rule(RuleType.DISALLOW, "/%7Ejoe/"));
+        rules.add(new Rule(RuleType.DISALLOW, "/caf\u00e9"));
+        rules.add(new Rule(RuleType.DISALLOW, "/a%2fb"));
+        rules.add(new Rule(RuleType.DISALLOW, "/*.pdf$"));
+
+        // Act
+        RuleEvaluator ruleEvaluator = RuleEvaluator.build(rules);
+
+        // Assert
+        assertFalse(ruleEvaluator.isAllowed("/~joe/index.html"));
+        assertFalse(ruleEvaluator.isAllowed("/%7ejoe/index.html"));
+        assertFalse(ruleEvaluator.isAllowed("/caf%C3%A9/menu"));
+        assertFalse(ruleEvaluator.isAllowed("/caf\u00e9/menu"));
+        assertFalse(ruleEvaluator.isAllowed("/a%2Fb"));
+        assertTrue(ruleEvaluator.isAllowed("/a/b"));
+        assertFalse(ruleEvaluator.isAllowed("/docs/%72eport.pdf#page=2"));
+    }
+
+    @Test
+    public void isAllowed_noRules_allowsEverything() {
+        // Arrange
+        RuleEvaluator ruleEvaluator = RuleEvaluator.build(new HashSet<>());
+
+        // Act / Assert
+        assertTrue(ruleEvaluator.isAllowed("/"));
+        assertTrue(ruleEvaluator.isAllowed("/anything?at=all"));
+    }
+
+    @Test
+    public void isAllowed_largeRobotsTxt_evaluatesCorrectly() throws Exception {
+        // Arrange
+        RobotsTxt robotsTxt = new Parser(new FileInputStream("src/test/resources/example_robots.txt")).parse();
+
+        // Act
+        RuleEvaluator ruleEvaluator = RuleEvaluator.build(robotsTxt.getRuleSets().get("*"));
+
+        // Assert
+        assertFalse(ruleEvaluator.isAllowed("/search"));
+        assertTrue(ruleEvaluator.isAllowed("/search/about"));
+        assertFalse(ruleEvaluator.isAllowed("/mail/inbox"));
+        assertTrue(ruleEvaluator.isAllowed("/mail/help/"));
+        assertTrue(ruleEvaluator.isAllowed("/profiles/someone"));
+        assertFalse(ruleEvaluator.isAllowed("/profiles/me"));
+        assertTrue(ruleEvaluator.isAllowed("/about"));
+
+        // wildcard and end-anchored rules
+        assertFalse(ruleEvaluator.isAllowed("/books?id=1&q=robots"));
+        assertTrue(ruleEvaluator.isAllowed("/books?id=1&q=related:robots"));
+        assertTrue(ruleEvaluator.isAllowed("/places/"));
+        assertFalse(ruleEvaluator.isAllowed("/places/paris"));
+        assertTrue(ruleEvaluator.isAllowed("/toolkit/index.html"));
+        assertFalse(ruleEvaluator.isAllowed("/toolkit/index.php"));
+    }
+
+    @Test
+    public void evaluate_batchOfPaths_matchesIsAllowed() throws Exception {
+        // Arrange
+        RobotsTxt robotsTxt = new Parser(new FileInputStream("src/test/resources/example_robots.txt")).parse();
+        RuleEvaluator ruleEvaluator = RuleEvaluator.build(robotsTxt.getRuleSets().get("*"));
+
+        List<String> paths = new ArrayList<>();
+
+        for (Rule rule : robotsTxt.getRuleSets().get("*")) {
+            paths.add(rule.getPathMatch());
+            paths.add(rule.getPathMatch() + "x");
+            paths.add(rule.getPathMatch().substring(0, rule.getPathMatch().length() / 2));
+        }
+
+        for (List<String> batch : Arrays.asList(paths, new LinkedList<>(paths))) {
+            // Act
+            BitSet allowed = ruleEvaluator.evaluate(batch);
+
+            // Assert
+            for (int i = 0; i < paths.size(); i++) {
+                assertEquals(paths.get(i), ruleEvaluator.isAllowed(paths.get(i)), allowed.get(i));
+            }
+
+            assertTrue(allowed.length() <= paths.size());
+        }
+    }
+
+    @Test
+    public void evaluate_robotsTxtWithUserAgent_usesMatchingGroupOrWildcard() throws Exception {
+        // Arrange
+        String file = "User-agent: *\n" +
+                      "Disallow: /\n" +
+                      "\n" +
+                      "User-agent: FooBot\n" +
+                      "Disallow: /private\n";
+        RobotsTxt robotsTxt = new Parser(file).parse();
+        List<String> paths = Arrays.asList("/", "/public", "/private/1");
+
+        // Act
+        BitSet fooBot = robotsTxt.evaluate(paths, "foobot");
+        BitSet otherBot = robotsTxt.evaluate(paths, "OtherBot");
+
+        // Assert
+        assertEquals(BitSet.valueOf(new long[] {0b011}), fooBot);
+        assertTrue(otherBot.isEmpty());
+    }
+
+    @Test
+    public void evaluate_noMatchingGroup_allowsEverything() throws Exception {
+        // Arrange
+        RobotsTxt robotsTxt = new Parser("User-agent: FooBot\nDisallow: /\n").parse();
+
+        // Act
+        BitSet allowed = robotsTxt.evaluate(Arrays.asList("/", "/a", "/b"), "OtherBot");
+
+        // Assert
+        assertEquals(3, allowed.cardinality());
+    }
+}
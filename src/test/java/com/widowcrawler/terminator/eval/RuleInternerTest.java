@@ -0,0 +1,165 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.eval;
+
+import com.widowcrawler.terminator.model.RobotsTxt;
+import com.widowcrawler.terminator.model.Rule;
+import com.widowcrawler.terminator.model.RuleType;
+import com.widowcrawler.terminator.parse.Parser;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author Scott Mansfield
+ */
+public class RuleInternerTest {
+
+    private static final String FILE = "User-agent: *\n" +
+                                       "Disallow: /wp-admin/\n" +
+                                       "Allow: /wp-admin/admin-ajax.php\n";
+
+    @Test
+    public void intern_sameRulesFromTwoHosts_sharesGroupAndEvaluator() throws Exception {
+        // Arrange
+        RuleInterner interner = new RuleInterner();
+        RobotsTxt first = interner.intern(new Parser(FILE).parse());
+
+        // Act
+        RobotsTxt second = interner.intern(new Parser(FILE).parse());
+
+        // Assert
+        assertSame(first.getRuleSet("AnyBot"), second.getRuleSet("AnyBot"));
+        assertSame(first.getEvaluator("AnyBot"), second.getEvaluator("OtherBot"));
+        assertFalse(second.getEvaluator("AnyBot").isAllowed("/wp-admin/index.php"));
+        assertTrue(second.getEvaluator("AnyBot").isAllowed("/wp-admin/admin-ajax.php"));
+    }
+
+    @Test
+    public void intern_differentOrder_returnsSameGroup() {
+        // Arrange
+        RuleInterner interner = new RuleInterner();
+        Set<Rule> first = new HashSet<>(Arrays.asList(
+                new Rule(RuleType.DISALLOW, "/a"), new Rule(RuleType.ALLOW, "/a/b")));
+        Set<Rule> second = new HashSet<>(Arrays.asList(
+                new Rule(RuleType.ALLOW, "/a/b"), new Rule(RuleType.DISALLOW, "/a")));
+
+        // Act
+        Set<Rule> internedFirst = interner.intern(first);
+        Set<Rule> internedSecond = interner.intern(second);
+
+        // Assert
+        assertSame(internedFirst, internedSecond);
+        assertEquals(first, internedSecond);
+    }
+
+    @Test
+    public void intern_differentGroups_sharesCommonRules() {
+        // Arrange
+        RuleInterner interner = new RuleInterner();
+        Rule common = new Rule(RuleType.DISALLOW, "/wp-admin/");
+        interner.intern(new HashSet<>(Arrays.asList(common, new Rule(RuleType.DISALLOW, "/a"))));
+
+        // Act
+        Set<Rule> interned = interner.intern(new HashSet<>(Arrays.asList(
+                new Rule(RuleType.DISALLOW, "/wp-admin/"), new Rule(RuleType.DISALLOW, "/b"))));
+
+        // Assert
+        Rule internedCommon = interned.stream().filter(common::equals).findFirst().get();
+        assertSame(common, internedCommon);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void intern_group_returnsUnmodifiableSet() {
+        new RuleInterner().intern(new HashSet<Rule>()).add(new Rule(RuleType.DISALLOW, "/"));
+    }
+
+    @Test
+    public void getStats_afterDuplicates_reportsHitsAndSavings() throws Exception {
+        // Arrange
+        RuleInterner interner = new RuleInterner();
+
+        // Act
+        for (int i = 0; i < 4; i++) {
+            interner.intern(new Parser(FILE).parse()).getEvaluator("AnyBot");
+        }
+
+        RuleInterner.Stats stats = interner.getStats();
+
+        // Assert
+        assertEquals(4L, stats.getGroupLookups());
+        assertEquals(3L, stats.getGroupHits());
+        assertEquals(0.75, stats.getGroupHitRate(), 0.0);
+        assertEquals(3L, stats.getCompileHits());
+        assertThat(stats.getEstimatedBytesSaved(), greaterThan(0L));
+    }
+
+    @Test
+    public void intern_manyThreadsSameGroups_agreeOnCanonicalCopies() throws Exception {
+        // Arrange
+        RuleInterner interner = new RuleInterner();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<List<RobotsTxt>>> results = new ArrayList<>();
+
+        // Act
+        for (int t = 0; t < 8; t++) {
+            results.add(executor.submit(() -> {
+                List<RobotsTxt> interned = new ArrayList<>();
+
+                for (int i = 0; i < 200; i++) {
+                    String file = "User-agent: *\nDisallow: /private" + (i % 20) + "\nDisallow: /wp-admin/\n";
+                    RobotsTxt robotsTxt = interner.intern(new Parser(file).parse());
+                    robotsTxt.getEvaluator("AnyBot");
+                    interned.add(robotsTxt);
+                }
+
+                return interned;
+            }));
+        }
+
+        List<RobotsTxt> all = new ArrayList<>();
+
+        for (Future<List<RobotsTxt>> result : results) {
+            all.addAll(result.get(30, TimeUnit.SECONDS));
+        }
+
+        executor.shutdown();
+        RuleInterner.Stats stats = interner.getStats();
+
+        // Assert
+        assertEquals(1600L, stats.getGroupLookups());
+        assertThat(stats.getGroupHits(), greaterThanOrEqualTo(1600L - 8 * 20));
+
+        for (RobotsTxt robotsTxt : all) {
+            Set<Rule> group = robotsTxt.getRuleSets().get("*");
+            Set<Rule> canonical = interner.intern(new HashSet<>(group));
+
+            assertSame(canonical, group);
+            assertSame(interner.compile(group), robotsTxt.getEvaluator("AnyBot"));
+        }
+    }
+}
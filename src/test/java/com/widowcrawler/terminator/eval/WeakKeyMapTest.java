@@ -0,0 +1,56 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.eval;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Scott Mansfield
+ */
+public class WeakKeyMapTest {
+
+    @Test
+    public void get_equalButDistinctKey_findsValue() {
+        // Arrange
+        WeakKeyMap<String, Integer> map = new WeakKeyMap<>();
+        String stored = new String("robots");
+        map.putIfAbsent(stored, 1);
+
+        // Act
+        Integer value = map.get(new String("robots"));
+
+        // Assert
+        assertEquals(Integer.valueOf(1), value);
+        assertNull(map.get("other"));
+    }
+
+    @Test
+    public void putIfAbsent_equalKey_keepsFirstValue() {
+        // Arrange
+        WeakKeyMap<String, Integer> map = new WeakKeyMap<>();
+        String stored = new String("robots");
+        map.putIfAbsent(stored, 1);
+
+        // Act
+        Integer existing = map.putIfAbsent(new String("robots"), 2);
+
+        // Assert
+        assertEquals(Integer.valueOf(1), existing);
+        assertEquals(Integer.valueOf(1), map.get(stored));
+    }
+}
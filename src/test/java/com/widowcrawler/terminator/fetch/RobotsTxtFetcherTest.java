@@ -0,0 +1,360 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.fetch;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.widowcrawler.terminator.FetchException;
+import com.widowcrawler.terminator.model.RobotsTxt;
+import com.widowcrawler.terminator.model.Rule;
+import com.widowcrawler.terminator.model.RuleType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author Scott Mansfield
+ */
+public class RobotsTxtFetcherTest {
+
+    private HttpServer server;
+    private String baseUrl;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final CountDownLatch slowRelease = new CountDownLatch(1);
+    private final AtomicInteger notModified = new AtomicInteger();
+    private final AtomicInteger throttled = new AtomicInteger();
+    private final AtomicReference<String> changingBody = new AtomicReference<>("User-agent: *\nDisallow: /a\n");
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+
+        server.createContext("/ok/robots.txt", exchange -> respond(exchange, 200, "User-agent: *\nDisallow: /private\n"));
+        server.createContext("/missing/robots.txt", exchange -> respond(exchange, 404, "not found"));
+        server.createContext("/broken/robots.txt", exchange -> respond(exchange, 503, "try later"));
+        server.createContext("/etag/robots.txt", exchange -> {
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+
+            exchange.getResponseHeaders().add("ETag", "\"v1\"");
+            respond(exchange, 200, "User-agent: *\nDisallow: /private\n");
+        });
+        server.createContext("/throttled-once/robots.txt", exchange -> {
+            if (throttled.getAndIncrement() == 0) {
+                exchange.getResponseHeaders().add("Retry-After", "0");
+                respond(exchange, 429, "slow down");
+                return;
+            }
+
+            respond(exchange, 200, "User-agent: *\nDisallow: /private\n");
+        });
+        server.createContext("/throttled/robots.txt", exchange -> {
+            throttled.incrementAndGet();
+            respond(exchange, 429, "slow down");
+        });
+        server.createContext("/throttled-long/robots.txt", exchange -> {
+            throttled.incrementAndGet();
+            exchange.getResponseHeaders().add("Retry-After", "3600");
+            respond(exchange, 429, "come back in an hour");
+        });
+        server.createContext("/changing/robots.txt", exchange -> respond(exchange, 200, changingBody.get()));
+        server.createContext("/slow/robots.txt", exchange -> {
+            int current = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(current, Math::max);
+
+            try {
+                slowRelease.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+
+            inFlight.decrementAndGet();
+            respond(exchange, 200, "User-agent: *\nDisallow: /\n");
+        });
+
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void fetch_okResponse_parsesBody() throws Exception {
+        try (RobotsTxtFetcher fetcher = RobotsTxtFetcher.builder().build()) {
+            // Act
+            RobotsTxt robotsTxt = fetcher.fetch(baseUrl + "/ok/robots.txt").get(5, TimeUnit.SECONDS);
+
+            // Assert
+            assertThat(robotsTxt.getRuleSets().get("*"), contains(new Rule(RuleType.DISALLOW, "/private")));
+        }
+    }
+
+    @Test
+    public void fetch_notFound_allowsEverything() throws Exception {
+        try (RobotsTxtFetcher fetcher = RobotsTxtFetcher.builder().build()) {
+            // Act
+            RobotsTxt robotsTxt = fetcher.fetch(baseUrl + "/missing/robots.txt").get(5, TimeUnit.SECONDS);
+
+            // Assert
+            assertTrue(robotsTxt.getRuleSets().isEmpty());
+        }
+    }
+
+    @Test
+    public void fetch_serverError_failsWithStatus() throws Exception {
+        try (RobotsTxtFetcher fetcher = RobotsTxtFetcher.builder().build()) {
+            // Act
+            try {
+                fetcher.fetch(baseUrl + "/broken/robots.txt").get(5, TimeUnit.SECONDS);
+                fail("Expected the fetch to fail");
+            } catch (ExecutionException ex) {
+                // Assert
+                assertThat(ex.getCause(), instanceOf(FetchException.class));
+                assertEquals(503, ((FetchException) ex.getCause()).getStatusCode());
+            }
+        }
+    }
+
+    @Test
+    public void fetch_tooManyRequestsOnce_retriesAfterRetryAfter() throws Exception {
+        try (RobotsTxtFetcher fetcher = RobotsTxtFetcher.builder().build()) {
+            // Act
+            RobotsTxt robotsTxt = fetcher.fetch(baseUrl + "/throttled-once/robots.txt").get(5, TimeUnit.SECONDS);
+
+            // Assert
+            assertThat(robotsTxt.getRuleSets().get("*"), contains(new Rule(RuleType.DISALLOW, "/private")));
+            assertEquals(2, throttled.get());
+        }
+    }
+
+    @Test
+    public void fetch_tooManyRequests_failsAfterRetries() throws Exception {
+        try (RobotsTxtFetcher fetcher = RobotsTxtFetcher.builder()
+                .maxRetries(2)
+                .retryBackoff(10, TimeUnit.MILLISECONDS)
+                .build()) {
+            // Act
+            try {
+                fetcher.fetch(baseUrl + "/throttled/robots.txt").get(5, TimeUnit.SECONDS);
+                fail("Expected the fetch to fail");
+            } catch (ExecutionException ex) {
+                // Assert
+                assertThat(ex.getCause(), instanceOf(FetchException.class));
+                assertEquals(429, ((FetchException) ex.getCause()).getStatusCode());
+                assertEquals(3, throttled.get());
+            }
+        }
+    }
+
+    @Test
+    public void fetch_tooManyRequestsWithLongRetryAfter_failsWithoutWaiting() throws Exception {
+        try (RobotsTxtFetcher fetcher = RobotsTxtFetcher.builder().build()) {
+            // Act
+            try {
+                fetcher.fetch(baseUrl + "/throttled-long/robots.txt").get(5, TimeUnit.SECONDS);
+                fail("Expected the fetch to fail");
+            } catch (ExecutionException ex) {
+                // Assert
+                FetchException fetchException = (FetchException) ex.getCause();
+                assertEquals(429, fetchException.getStatusCode());
+                assertEquals(TimeUnit.HOURS.toMillis(1), fetchException.getRetryAfterMillis());
+                assertEquals(1, throttled.get());
+            }
+        }
+    }
+
+    @Test
+    public void retryAfterMillis_secondsAndDates_parsed() {
+        // Arrange
+        long now = 1445000000000L;
+
+        // Act / Assert
+        assertEquals(120000L, RobotsTxtFetcher.retryAfterMillis(" 120 ", now));
+        assertEquals(30000L, RobotsTxtFetcher.retryAfterMillis("Fri, 16 Oct 2015 12:53:50 GMT", now));
+        assertEquals(0L, RobotsTxtFetcher.retryAfterMillis("Thu, 01 Jan 2015 00:00:00 GMT", now));
+        assertEquals(-1L, RobotsTxtFetcher.retryAfterMillis("soon", now));
+        assertEquals(-1L, RobotsTxtFetcher.retryAfterMillis(null, now));
+    }
+
+    @Test
+    public void fetch_manyAtOnce_boundsConcurrency() throws Exception {
+        try (RobotsTxtFetcher fetcher = RobotsTxtFetcher.builder().maxConcurrentRequests(3).build()) {
+            // Arrange
+            List<CompletableFuture<RobotsTxt>> results = new ArrayList<>();
+
+            // Act
+            for (int i = 0; i < 12; i++) {
+                results.add(fetcher.fetch(baseUrl + "/slow/robots.txt"));
+            }
+
+            Thread.sleep(300);
+            int pending = fetcher.getPendingCount();
+            slowRelease.countDown();
+
+            CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+
+            // Assert
+            assertEquals(9, pending);
+            assertThat(maxInFlight.get(), lessThanOrEqualTo(3));
+        }
+    }
+
+    @Test
+    public void fetch_largeBacklogFailingToStart_failsEachWithoutRecursing() throws Exception {
+        try (RobotsTxtFetcher fetcher = RobotsTxtFetcher.builder().maxConcurrentRequests(1).build()) {
+            // Arrange
+            CompletableFuture<RobotsTxt> slow = fetcher.fetch(baseUrl + "/slow/robots.txt");
+            List<CompletableFuture<RobotsTxt>> futures = new ArrayList<>();
+
+            // an unresolved template fails when the request is built, before anything is sent
+            for (int i = 0; i < 20000; i++) {
+                futures.add(fetcher.fetch(baseUrl + "/{unresolved}/" + i + "/robots.txt"));
+            }
+
+            // Act
+            slowRelease.countDown();
+            slow.get(5, TimeUnit.SECONDS);
+
+            // Assert
+            for (CompletableFuture<RobotsTxt> future : futures) {
+                try {
+                    future.get(5, TimeUnit.SECONDS);
+                    fail("Expected the request to fail");
+                } catch (ExecutionException ex) {
+                    assertThat(ex.getCause(), instanceOf(FetchException.class));
+                }
+            }
+
+            assertEquals(0, fetcher.getPendingCount());
+        }
+    }
+
+    @Test
+    public void close_withQueuedRequests_failsThemAll() throws Exception {
+        // Arrange
+        RobotsTxtFetcher fetcher = RobotsTxtFetcher.builder().maxConcurrentRequests(1).build();
+        CompletableFuture<RobotsTxt> slow = fetcher.fetch(baseUrl + "/slow/robots.txt");
+        List<CompletableFuture<RobotsTxt>> futures = new ArrayList<>();
+
+        for (int i = 0; i < 20000; i++) {
+            futures.add(fetcher.fetch(baseUrl + "/ok/robots.txt"));
+        }
+
+        // Act
+        fetcher.close();
+        slowRelease.countDown();
+
+        // Assert
+        for (CompletableFuture<RobotsTxt> future : futures) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                fail("Expected the request to fail");
+            } catch (ExecutionException ex) {
+                assertThat(ex.getCause(), instanceOf(FetchException.class));
+            }
+        }
+
+        assertEquals(0, fetcher.getPendingCount());
+        assertTrue(fetcher.fetch(baseUrl + "/ok/robots.txt").isCompletedExceptionally());
+    }
+
+    @Test
+    public void fetch_notModified_reusesPrevious() throws Exception {
+        try (RobotsTxtFetcher fetcher = RobotsTxtFetcher.builder().build()) {
+            // Arrange
+            RobotsTxt first = fetcher.fetch(baseUrl + "/etag/robots.txt").get(5, TimeUnit.SECONDS);
+
+            // Act
+            RobotsTxt second = fetcher.fetch(baseUrl + "/etag/robots.txt", first).get(5, TimeUnit.SECONDS);
+
+            // Assert
+            assertEquals("\"v1\"", first.getValidators().getETag());
+            assertEquals(1, notModified.get());
+            assertSame(first, second);
+        }
+    }
+
+    @Test
+    public void fetch_sameBody_reusesCompiledRules() throws Exception {
+        try (RobotsTxtFetcher fetcher = RobotsTxtFetcher.builder().build()) {
+            // Arrange
+            RobotsTxt first = fetcher.fetch(baseUrl + "/ok/robots.txt").get(5, TimeUnit.SECONDS);
+
+            // Act
+            RobotsTxt second = fetcher.fetch(baseUrl + "/ok/robots.txt", first).get(5, TimeUnit.SECONDS);
+
+            // Assert
+            assertNotNull(first.getValidators().getContentHash());
+            assertSame(first.getAgentIndex(), second.getAgentIndex());
+        }
+    }
+
+    @Test
+    public void fetch_changedBody_parsesAgain() throws Exception {
+        try (RobotsTxtFetcher fetcher = RobotsTxtFetcher.builder().build()) {
+            // Arrange
+            RobotsTxt first = fetcher.fetch(baseUrl + "/changing/robots.txt").get(5, TimeUnit.SECONDS);
+            changingBody.set("User-agent: *\nDisallow: /b\n");
+
+            // Act
+            RobotsTxt second = fetcher.fetch(baseUrl + "/changing/robots.txt", first).get(5, TimeUnit.SECONDS);
+
+            // Assert
+            assertTrue(first.getEvaluator("AnyBot").isAllowed("/b"));
+            assertFalse(second.getEvaluator("AnyBot").isAllowed("/b"));
+            assertFalse(first.getValidators().hasSameContent(second.getValidators().getContentHash()));
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) {
+        try {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, bytes.length);
+
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(bytes);
+            }
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
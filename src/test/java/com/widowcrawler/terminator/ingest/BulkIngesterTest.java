@@ -0,0 +1,170 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.ingest;
+
+import com.widowcrawler.terminator.cache.HostKey;
+import com.widowcrawler.terminator.eval.RuleInterner;
+import com.widowcrawler.terminator.model.RobotsTxt;
+import com.widowcrawler.terminator.store.RobotsStore;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author Scott Mansfield
+ */
+public class BulkIngesterTest {
+
+    @org.junit.Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static HostKey host(int i) {
+        return new HostKey("http", "host" + i + ".example.com", -1);
+    }
+
+    private static List<RobotsDocument> documents(int count) {
+        List<RobotsDocument> documents = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            String body = "User-agent: *\nDisallow: /private" + (i % 10) + "\n";
+            documents.add(new RobotsDocument(host(i), body.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        return documents;
+    }
+
+    @Test
+    public void ingest_manyDocuments_passesEachToSink() throws Exception {
+        // Arrange
+        Map<HostKey, RobotsTxt> results = new ConcurrentHashMap<>();
+        BulkIngester ingester = BulkIngester.builder().parallelism(4).batchSize(16).build();
+
+        // Act
+        BulkIngester.Result result = ingester.ingest(documents(1000), results::put);
+
+        // Assert
+        assertEquals(1000L, result.getSucceeded());
+        assertEquals(0L, result.getFailed());
+        assertEquals(1000, results.size());
+        assertFalse(results.get(host(123)).getEvaluator("AnyBot").isAllowed("/private3/x"));
+        assertTrue(results.get(host(123)).getEvaluator("AnyBot").isAllowed("/private4/x"));
+    }
+
+    @Test
+    public void ingest_failingDocuments_isolatesFailures() throws Exception {
+        // Arrange
+        List<RobotsDocument> documents = documents(100);
+        // a document without a body can't be parsed
+        documents.set(10, new RobotsDocument(host(10), null));
+        Map<HostKey, Exception> failures = new ConcurrentHashMap<>();
+
+        IngestSink sink = new IngestSink() {
+            @Override
+            public void accept(HostKey hostKey, RobotsTxt robotsTxt) throws Exception {
+                if (hostKey.equals(host(20))) {
+                    throw new IllegalStateException("rejected");
+                }
+            }
+
+            @Override
+            public void failed(HostKey hostKey, Exception cause) {
+                failures.put(hostKey, cause);
+            }
+        };
+
+        // Act
+        BulkIngester.Result result = BulkIngester.builder().parallelism(2).build().ingest(documents, sink);
+
+        // Assert
+        assertEquals(98L, result.getSucceeded());
+        assertEquals(2L, result.getFailed());
+        assertThat(failures.keySet(), containsInAnyOrder(host(10), host(20)));
+        assertThat(failures.get(host(20)).getMessage(), is("rejected"));
+    }
+
+    @Test
+    public void ingest_slowSink_boundsReadAhead() throws Exception {
+        // Arrange
+        AtomicInteger read = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger maxAhead = new AtomicInteger();
+        Iterator<RobotsDocument> documents = documents(50).iterator();
+
+        Iterator<RobotsDocument> source = new Iterator<RobotsDocument>() {
+            @Override
+            public boolean hasNext() {
+                return documents.hasNext();
+            }
+
+            @Override
+            public RobotsDocument next() {
+                maxAhead.accumulateAndGet(read.incrementAndGet() - completed.get(), Math::max);
+                return documents.next();
+            }
+        };
+
+        BulkIngester ingester = BulkIngester.builder()
+                .parallelism(2)
+                .batchSize(2)
+                .maxPendingBatches(1)
+                .build();
+
+        // Act
+        ingester.ingest(source, (hostKey, robotsTxt) -> {
+            Thread.sleep(1);
+            completed.incrementAndGet();
+        });
+
+        // Assert
+        assertEquals(50, completed.get());
+        // one batch in flight plus the one being read
+        assertThat(maxAhead.get(), lessThanOrEqualTo(4));
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void ingest_sinkThrowsError_stopsRun() throws Exception {
+        BulkIngester.builder().build().ingest(documents(10), (hostKey, robotsTxt) -> {
+            throw new AssertionError("fatal");
+        });
+    }
+
+    @Test
+    public void ingest_intoStore_storesEveryHost() throws Exception {
+        // Arrange
+        RuleInterner interner = new RuleInterner();
+
+        try (RobotsStore store = RobotsStore.builder(folder.getRoot().toPath()).build()) {
+            // Act
+            BulkIngester.builder().interner(interner).build().ingest(documents(200), IngestSink.into(store));
+
+            // Assert
+            assertEquals(200L, store.size());
+            assertFalse(store.get(host(42)).isAllowed("AnyBot", "/private2/"));
+            assertThat(interner.getStats().getGroupHits(), is(190L));
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.metrics;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author Scott Mansfield
+ */
+public class HistogramTest {
+
+    @Test
+    public void bucketIndex_everyBucket_containsItsHighestValue() {
+        for (int i = 0; i < 960; i++) {
+            long highest = Histogram.highestValueIn(i);
+
+            assertEquals(i, Histogram.bucketIndex(highest));
+
+            if (highest < Long.MAX_VALUE) {
+                assertEquals(i + 1, Histogram.bucketIndex(highest + 1));
+            }
+        }
+    }
+
+    @Test
+    public void getValueAtPercentile_uniformValues_withinBucketPrecision() {
+        // Arrange
+        Histogram histogram = new Histogram();
+
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value);
+        }
+
+        // Act
+        long median = histogram.getValueAtPercentile(50);
+        long p99 = histogram.getValueAtPercentile(99);
+
+        // Assert
+        assertThat((double) median, closeTo(50_000, 50_000 / 16.0));
+        assertThat((double) p99, closeTo(99_000, 99_000 / 16.0));
+        assertEquals(100_000, histogram.getValueAtPercentile(100));
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(50_000.5, histogram.getMean(), 0.001);
+    }
+
+    @Test
+    public void record_randomValues_neverOffByMoreThanOneSixteenth() {
+        // Arrange
+        Random random = new Random(42);
+
+        for (int i = 0; i < 1000; i++) {
+            Histogram histogram = new Histogram();
+            long value = (random.nextLong() >>> 1) >>> random.nextInt(63);
+
+            // Act
+            histogram.record(value);
+
+            // Assert
+            long recorded = Histogram.highestValueIn(Histogram.bucketIndex(value));
+            assertThat(recorded, greaterThanOrEqualTo(value));
+            assertThat((double) recorded - value, lessThanOrEqualTo(value / 16.0));
+            assertEquals(value, histogram.getValueAtPercentile(50));
+        }
+    }
+
+    @Test
+    public void getValueAtPercentile_empty_returnsZero() {
+        assertEquals(0L, new Histogram().getValueAtPercentile(99));
+    }
+}
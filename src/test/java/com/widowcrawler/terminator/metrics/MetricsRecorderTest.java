@@ -0,0 +1,139 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.metrics;
+
+import com.widowcrawler.terminator.cache.HostKey;
+import com.widowcrawler.terminator.cache.RobotsTxtCache;
+import com.widowcrawler.terminator.eval.RuleEvaluator;
+import com.widowcrawler.terminator.model.RobotsTxt;
+import com.widowcrawler.terminator.parse.ByteParser;
+import com.widowcrawler.terminator.parse.IncrementalParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author Scott Mansfield
+ */
+public class MetricsRecorderTest {
+
+    private static final byte[] FILE = ("User-agent: FooBot\n" +
+                                        "User-agent: BarBot\n" +
+                                        "Disallow: /private\n" +
+                                        "Allow: /private/ok\n" +
+                                        "\n" +
+                                        "User-agent: *\n" +
+                                        "Disallow: /*.pdf$\n").getBytes(StandardCharsets.UTF_8);
+
+    private MetricsRecorder recorder;
+
+    @Before
+    public void setUp() {
+        recorder = new MetricsRecorder();
+        GlobalMetrics.set(recorder);
+    }
+
+    @After
+    public void tearDown() {
+        GlobalMetrics.set(null);
+    }
+
+    @Test
+    public void parse_withRecorderInstalled_recordsBytesAndRules() throws Exception {
+        // Act
+        new ByteParser(FILE).parse();
+        IncrementalParser.parse(new ByteArrayInputStream(FILE));
+
+        // Assert
+        assertEquals(2, recorder.getParseLatency().getCount());
+        assertEquals(2L * FILE.length, recorder.getParsedBytes());
+        assertEquals(3, recorder.getRulesPerFile().getMax());
+    }
+
+    @Test
+    public void isAllowed_manyPaths_countsEveryEvaluationAndSamplesLatency() throws Exception {
+        // Arrange
+        RobotsTxt robotsTxt = new ByteParser(FILE).parse();
+        RuleEvaluator ruleEvaluator = robotsTxt.getEvaluator("FooBot");
+
+        // Act
+        for (int i = 0; i < 10_000; i++) {
+            ruleEvaluator.isAllowed("/private/" + i);
+        }
+
+        // Assert
+        assertEquals(1, recorder.getCompileLatency().getCount());
+        assertThat(recorder.getTrieNodes().getMax(), greaterThan(1L));
+        assertEquals(10_000, recorder.getEvaluations());
+        assertThat(recorder.getEvaluationLatency().getCount(), is(both(greaterThan(50L)).and(lessThan(500L))));
+    }
+
+    @Test
+    public void get_hitsMissesAndEvictions_areCounted() throws Exception {
+        // Arrange
+        RobotsTxt robotsTxt = new ByteParser(FILE).parse();
+        RobotsTxtCache cache = RobotsTxtCache.builder().loader(hostKey -> robotsTxt).maximumSize(1).build();
+
+        // Act
+        cache.get(HostKey.fromUrl("http://a.example.com/"));
+        cache.get(HostKey.fromUrl("http://a.example.com/"));
+        cache.get(HostKey.fromUrl("http://b.example.com/"));
+
+        // Assert
+        assertEquals(1, recorder.getCacheHits());
+        assertEquals(2, recorder.getCacheMisses());
+        assertEquals(1, recorder.getCacheEvictions());
+    }
+
+    @Test
+    public void register_platformMBeanServer_exposesSnapshot() throws Exception {
+        // Arrange
+        new ByteParser(FILE).parse();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(JmxMetrics.DEFAULT_NAME + ",test=" + getClass().getSimpleName());
+
+        // Act
+        JmxMetrics.register(recorder, name);
+
+        try {
+            // Assert
+            assertEquals(1L, server.getAttribute(name, "parse.latency.count"));
+            assertEquals((long) FILE.length, server.getAttribute(name, "parse.bytes"));
+            assertEquals(recorder.snapshot().size(), server.getMBeanInfo(name).getAttributes().length);
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+
+    @Test
+    public void set_null_restoresNoop() {
+        // Act
+        GlobalMetrics.set(null);
+
+        // Assert
+        assertSame(Metrics.NOOP, GlobalMetrics.get());
+        assertFalse(GlobalMetrics.isEnabled());
+    }
+}
@@ -0,0 +1,266 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.parse;
+
+import com.widowcrawler.terminator.ParseException;
+import com.widowcrawler.terminator.model.Diagnostics;
+import com.widowcrawler.terminator.model.RequestRate;
+import com.widowcrawler.terminator.model.RobotsTxt;
+import com.widowcrawler.terminator.model.Rule;
+import com.widowcrawler.terminator.model.RuleType;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author Scott Mansfield
+ */
+public class ByteParserTest {
+
+    @Test
+    public void parse_validRobotsTxtTwoUserAgents_bothRuleSetsEqual() throws Exception {
+        // Arrange
+        String file = "user-AGENT: foo\r\n" +
+                      "User-agent: bar\r\n" +
+                      "ALLOW: /baz # comment\r\n" +
+                      "\tDisallow:/quux";
+
+        ByteParser parser = new ByteParser(file.getBytes(StandardCharsets.UTF_8));
+
+        // Act
+        RobotsTxt robotsTxt = parser.parse();
+
+        // Assert
+        assertEquals(2, robotsTxt.getRuleSets().size());
+        assertSame(robotsTxt.getRuleSets().get("foo"), robotsTxt.getRuleSets().get("bar"));
+
+        assertThat(robotsTxt.getRuleSets().get("foo"), containsInAnyOrder(
+                new Rule(RuleType.ALLOW, "/baz"),
+                new Rule(RuleType.DISALLOW, "/quux")));
+    }
+
+    @Test
+    public void parse_blankLineBetweenUserAgents_startsNewGroup() throws Exception {
+        // Arrange
+        String file = "User-agent: foo\n" +
+                      "\n" +
+                      "User-agent: bar\n" +
+                      "Disallow: /\n";
+
+        // Act
+        RobotsTxt robotsTxt = new ByteParser(file.getBytes(StandardCharsets.UTF_8)).parse();
+
+        // Assert
+        assertThat(robotsTxt.getRuleSets().get("foo"), is(empty()));
+        assertThat(robotsTxt.getRuleSets().get("bar"), contains(new Rule(RuleType.DISALLOW, "/")));
+    }
+
+    @Test
+    public void parse_crawlDelayAndRequestRate_attachToGroup() throws Exception {
+        // Arrange
+        String file = "User-agent: *\n" +
+                      "Crawl-delay: 2.5\n" +
+                      "Disallow: /private\n" +
+                      "\n" +
+                      "User-agent: FooBot\n" +
+                      "Request-rate: 3/1m # three a minute\n" +
+                      "Crawl-delay: 10\n" +
+                      "\n" +
+                      "User-agent: BarBot\n" +
+                      "Disallow: /\n";
+
+        // Act
+        RobotsTxt robotsTxt = new ByteParser(file.getBytes(StandardCharsets.UTF_8)).parse();
+
+        // Assert
+        assertEquals(2_500_000_000L, robotsTxt.getRequestRate("QuuxBot").getIntervalNanos());
+        assertEquals(new RequestRate(3, 1, TimeUnit.MINUTES), robotsTxt.getRequestRate("FooBot/1.0"));
+        assertNull(robotsTxt.getRequestRate("BarBot"));
+        assertThat(robotsTxt.getRuleSets().get("*"), contains(new Rule(RuleType.DISALLOW, "/private")));
+        assertEquals(new Parser(file).parse().getRequestRates(), robotsTxt.getRequestRates());
+    }
+
+    @Test(expected = ParseException.class)
+    public void parse_invalidCrawlDelay_throwsParseException() throws Exception {
+        new ByteParser("User-agent: *\nCrawl-delay: soon\n".getBytes(StandardCharsets.UTF_8)).parse();
+    }
+
+    @Test
+    public void parse_exampleFiles_matchesParser() throws Exception {
+        for (String file : new String[] {"src/test/resources/example_robots.txt", "src/test/resources/example_robots_small.txt"}) {
+            // Arrange
+            byte[] data = IOUtils.toByteArray(new FileInputStream(file));
+
+            // Act
+            RobotsTxt expected = new Parser(new String(data, StandardCharsets.UTF_8)).parse();
+            RobotsTxt actual = new ByteParser(data).parse();
+
+            // Assert
+            assertEquals(expected.getRuleSets(), actual.getRuleSets());
+            assertEquals(expected.getSiteMapRefs(), actual.getSiteMapRefs());
+        }
+    }
+
+    @Test
+    public void parse_directByteBufferSlice_parsesOnlyRemaining() throws Exception {
+        // Arrange
+        byte[] file = "garbage\nUser-agent: *\nDisallow: /private\n".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(file.length);
+        buffer.put(file);
+        buffer.position("garbage\n".length());
+
+        // Act
+        RobotsTxt robotsTxt = new ByteParser(buffer).parse();
+
+        // Assert
+        assertThat(robotsTxt.getRuleSets().get("*"), contains(new Rule(RuleType.DISALLOW, "/private")));
+        assertEquals("garbage\n".length(), buffer.position());
+    }
+
+    @Test
+    public void parse_ruleBeforeUserAgent_throwsParseException() {
+        // Arrange
+        String file = "Sitemap: http://example.com/sitemap.xml\n" +
+                      "Disallow: /\n";
+
+        // Act
+        try {
+            new ByteParser(file.getBytes(StandardCharsets.UTF_8)).parse();
+            fail("Expected a ParseException");
+        } catch (ParseException ex) {
+            // Assert
+            assertEquals(file.indexOf("Disallow"), ex.getPosition());
+        }
+    }
+
+    @Test(expected = ParseException.class)
+    public void parse_textAfterRulePath_throwsParseException() throws Exception {
+        new ByteParser("User-agent: *\nDisallow: /foo bar\n".getBytes(StandardCharsets.UTF_8)).parse();
+    }
+
+    @Test(expected = ParseException.class)
+    public void parse_unknownDirective_throwsParseException() throws Exception {
+        new ByteParser("User-agent: *\nNoindex: /foo\n".getBytes(StandardCharsets.UTF_8)).parse();
+    }
+
+    @Test
+    public void parse_byteOrderMark_isSkipped() throws Exception {
+        // Arrange
+        String file = "\uFEFFUser-agent: *\nDisallow: /private\n";
+
+        // Act
+        RobotsTxt robotsTxt = new ByteParser(file.getBytes(StandardCharsets.UTF_8)).parse();
+
+        // Assert
+        assertThat(robotsTxt.getRuleSets().get("*"), contains(new Rule(RuleType.DISALLOW, "/private")));
+        assertSame(Diagnostics.NONE, robotsTxt.getDiagnostics());
+    }
+
+    @Test
+    public void parse_lenientWithBadLines_skipsThemAndKeepsGroup() throws Exception {
+        // Arrange
+        String file = "<html><body>Not Found</body></html>\n" +
+                      "Disallow: /early\n" +
+                      "User-agent: *\n" +
+                      "Host: example.com\n" +
+                      "Disallow: /private\n" +
+                      "Noindex: /drafts\n" +
+                      "Disallow: /foo bar\n" +
+                      "Crawl-delay: soon\n" +
+                      "Allow: /private/ok\n" +
+                      "Sitemap: http://example.com/sitemap.xml junk\n";
+        ParseOptions options = ParseOptions.builder().lenient(true).build();
+
+        // Act
+        RobotsTxt robotsTxt = new ByteParser(file.getBytes(StandardCharsets.UTF_8), options).parse();
+
+        // Assert
+        assertThat(robotsTxt.getRuleSets().get("*"), containsInAnyOrder(
+                new Rule(RuleType.DISALLOW, "/private"),
+                new Rule(RuleType.ALLOW, "/private/ok")));
+        assertThat(robotsTxt.getSiteMapRefs(), is(empty()));
+        assertNull(robotsTxt.getRequestRate("FooBot"));
+        assertEquals(7, robotsTxt.getDiagnostics().getSkippedLines());
+        assertEquals(0, robotsTxt.getDiagnostics().getErrors().get(0).getPosition());
+        assertEquals(file.indexOf("Disallow: /early"), robotsTxt.getDiagnostics().getErrors().get(1).getPosition());
+        assertEquals("Invalid crawl delay", robotsTxt.getDiagnostics().getErrors().get(5).getMessage());
+        assertEquals(new Parser(file, options).parse().getRuleSets(), robotsTxt.getRuleSets());
+    }
+
+    @Test
+    public void parse_lenientBadSitemapBetweenUserAgents_separatesGroups() throws Exception {
+        // Arrange
+        String file = "User-agent: FooBot\n" +
+                      "Sitemap: http://example.com/sitemap.xml junk\n" +
+                      "User-agent: BarBot\n" +
+                      "Disallow: /private\n";
+        ParseOptions options = ParseOptions.builder().lenient(true).build();
+
+        // Act
+        RobotsTxt robotsTxt = new ByteParser(file.getBytes(StandardCharsets.UTF_8), options).parse();
+
+        // Assert
+        assertThat(robotsTxt.getRuleSets().get("FooBot"), is(empty()));
+        assertThat(robotsTxt.getRuleSets().get("BarBot"), contains(new Rule(RuleType.DISALLOW, "/private")));
+        assertEquals(1, robotsTxt.getDiagnostics().getSkippedLines());
+        assertEquals(new Parser(file, options).parse().getRuleSets(), robotsTxt.getRuleSets());
+    }
+
+    @Test
+    public void parse_lenientManyBadLines_keepsOnlyMaxDiagnostics() throws Exception {
+        // Arrange
+        StringBuilder file = new StringBuilder("User-agent: *\n");
+
+        for (int i = 0; i < 10; i++) {
+            file.append("Host: mirror").append(i).append(".example.com\n");
+        }
+
+        file.append("Disallow: /\n");
+        ParseOptions options = ParseOptions.builder().lenient(true).maxDiagnostics(2).build();
+
+        // Act
+        RobotsTxt robotsTxt = new ByteParser(file.toString().getBytes(StandardCharsets.UTF_8), options).parse();
+
+        // Assert
+        assertThat(robotsTxt.getRuleSets().get("*"), contains(new Rule(RuleType.DISALLOW, "/")));
+        assertEquals(10, robotsTxt.getDiagnostics().getSkippedLines());
+        assertEquals(2, robotsTxt.getDiagnostics().getErrors().size());
+    }
+
+    @Test
+    public void parse_directBufferOverByteLimit_parsesOnlyCompleteLinesWithinLimit() throws Exception {
+        // Arrange
+        byte[] file = "User-agent: *\nDisallow: /private\nDisallow: /secret\n".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(file.length);
+        buffer.put(file).flip();
+        ParseOptions options = ParseOptions.builder().maxBytes("User-agent: *\nDisallow: /private".length()).build();
+
+        // Act
+        RobotsTxt robotsTxt = new ByteParser(buffer, options).parse();
+
+        // Assert
+        assertThat(robotsTxt.getRuleSets().get("*"), contains(new Rule(RuleType.DISALLOW, "/private")));
+        assertTrue(robotsTxt.getTruncation().isTruncated());
+        assertEquals(options.getMaxBytes(), robotsTxt.getTruncation().getTruncatedAt());
+    }
+}
@@ -0,0 +1,277 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.parse;
+
+import com.widowcrawler.terminator.ParseException;
+import com.widowcrawler.terminator.model.RobotsTxt;
+import com.widowcrawler.terminator.model.Rule;
+import com.widowcrawler.terminator.model.RuleType;
+import com.widowcrawler.terminator.model.Truncation;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author Scott Mansfield
+ */
+public class IncrementalParserTest {
+
+    private static final String FILE = "User-agent: foo\r\n" +
+                                       "User-agent: bar\r\n" +
+                                       "Allow: /baz # comment\r\n" +
+                                       "\r\n" +
+                                       "User-agent: quux\r" +
+                                       "Disallow: /quux\n" +
+                                       "Sitemap: http://example.com/sitemap.xml";
+
+    @Test
+    public void feed_everySplitPoint_matchesByteParser() throws Exception {
+        // Arrange
+        byte[] data = FILE.getBytes(StandardCharsets.UTF_8);
+        RobotsTxt expected = new ByteParser(data).parse();
+
+        for (int split = 0; split <= data.length; split++) {
+            IncrementalParser parser = new IncrementalParser();
+
+            // Act
+            parser.feed(data, 0, split);
+            parser.feed(data, split, data.length - split);
+            RobotsTxt actual = parser.finish();
+
+            // Assert
+            assertEquals("split at " + split, expected.getRuleSets(), actual.getRuleSets());
+            assertEquals("split at " + split, expected.getSiteMapRefs(), actual.getSiteMapRefs());
+        }
+    }
+
+    @Test
+    public void feed_crlfSplitAcrossChunks_doesNotEndUserAgentList() throws Exception {
+        // Arrange
+        IncrementalParser parser = new IncrementalParser();
+
+        // Act
+        parser.feed("User-agent: foo\r".getBytes(StandardCharsets.UTF_8));
+        parser.feed("\nUser-agent: bar\nDisallow: /".getBytes(StandardCharsets.UTF_8));
+        RobotsTxt robotsTxt = parser.finish();
+
+        // Assert
+        assertSame(robotsTxt.getRuleSets().get("foo"), robotsTxt.getRuleSets().get("bar"));
+        assertThat(robotsTxt.getRuleSets().get("foo"), contains(new Rule(RuleType.DISALLOW, "/")));
+    }
+
+    @Test
+    public void feed_singleByteDirectBuffers_matchesByteParser() throws Exception {
+        // Arrange
+        byte[] data = IOUtils.toByteArray(new FileInputStream("src/test/resources/example_robots_small.txt"));
+        RobotsTxt expected = new ByteParser(data).parse();
+        IncrementalParser parser = new IncrementalParser();
+        ByteBuffer chunk = ByteBuffer.allocateDirect(1);
+
+        // Act
+        for (byte b : data) {
+            chunk.clear();
+            chunk.put(b).flip();
+            parser.feed(chunk);
+            assertFalse(chunk.hasRemaining());
+        }
+
+        RobotsTxt actual = parser.finish();
+
+        // Assert
+        assertEquals(expected.getRuleSets(), actual.getRuleSets());
+        assertEquals(expected.getSiteMapRefs(), actual.getSiteMapRefs());
+    }
+
+    @Test
+    public void parse_inputStream_matchesByteParser() throws Exception {
+        // Arrange
+        byte[] data = IOUtils.toByteArray(new FileInputStream("src/test/resources/example_robots.txt"));
+
+        // Act
+        RobotsTxt expected = new ByteParser(data).parse();
+        RobotsTxt actual = IncrementalParser.parse(new ByteArrayInputStream(data));
+
+        // Assert
+        assertEquals(expected.getRuleSets(), actual.getRuleSets());
+        assertEquals(expected.getSiteMapRefs(), actual.getSiteMapRefs());
+    }
+
+    @Test
+    public void feed_invalidLineSplitAcrossChunks_reportsDocumentPosition() throws Exception {
+        // Arrange
+        String file = "User-agent: *\nDisallow: /\nNoindex: /foo\n";
+        byte[] data = file.getBytes(StandardCharsets.UTF_8);
+        IncrementalParser parser = new IncrementalParser();
+        int split = file.indexOf("index");
+
+        // Act
+        try {
+            parser.feed(data, 0, split);
+            parser.feed(data, split, data.length - split);
+            fail("Expected a ParseException");
+        } catch (ParseException ex) {
+            // Assert
+            assertEquals(file.indexOf("Noindex"), ex.getPosition());
+        }
+    }
+
+    @Test
+    public void feed_everyByteLimitAndSplitPoint_matchesByteParser() throws Exception {
+        // Arrange
+        byte[] data = FILE.getBytes(StandardCharsets.UTF_8);
+
+        for (int maxBytes = 1; maxBytes <= data.length + 1; maxBytes++) {
+            ParseOptions options = ParseOptions.builder().maxBytes(maxBytes).build();
+            RobotsTxt expected = new ByteParser(data, options).parse();
+
+            for (int split = 0; split <= data.length; split++) {
+                IncrementalParser parser = new IncrementalParser(options);
+
+                // Act
+                parser.feed(data, 0, split);
+                parser.feed(data, split, data.length - split);
+                RobotsTxt actual = parser.finish();
+
+                // Assert
+                String message = "limit " + maxBytes + ", split at " + split;
+                assertEquals(message, expected.getRuleSets(), actual.getRuleSets());
+                assertEquals(message, expected.getSiteMapRefs(), actual.getSiteMapRefs());
+                assertEquals(message, expected.getTruncation().getTruncatedAt(), actual.getTruncation().getTruncatedAt());
+            }
+        }
+    }
+
+    @Test
+    public void finish_byteLimitInsideLine_dropsThatLine() throws Exception {
+        // Arrange
+        String file = "User-agent: *\nDisallow: /private\nDisallow: /secret\n";
+        ParseOptions options = ParseOptions.builder().maxBytes(file.indexOf("/secret")).build();
+        IncrementalParser parser = new IncrementalParser(options);
+
+        // Act
+        parser.feed(file.getBytes(StandardCharsets.UTF_8));
+        RobotsTxt robotsTxt = parser.finish();
+
+        // Assert
+        assertTrue(parser.isTruncated());
+        assertThat(robotsTxt.getRuleSets().get("*"), contains(new Rule(RuleType.DISALLOW, "/private")));
+        assertEquals(file.indexOf("/secret"), robotsTxt.getTruncation().getTruncatedAt());
+    }
+
+    @Test(timeout = 10000)
+    public void parse_endlessStream_stopsReadingAtByteLimit() throws Exception {
+        // Arrange
+        byte[] header = "User-agent: *\n".getBytes(StandardCharsets.UTF_8);
+        byte[] line = "Disallow: /a\n".getBytes(StandardCharsets.UTF_8);
+        InputStream endless = new InputStream() {
+            private long position;
+
+            @Override
+            public int read() {
+                long index = position++;
+                return index < header.length ? header[(int) index] : line[(int) ((index - header.length) % line.length)];
+            }
+        };
+
+        // Act
+        RobotsTxt robotsTxt = IncrementalParser.parse(endless, ParseOptions.builder().maxBytes(64 * 1024).build());
+
+        // Assert
+        assertEquals(64 * 1024, robotsTxt.getTruncation().getTruncatedAt());
+        assertThat(robotsTxt.getRuleSets().get("*"), is(not(empty())));
+    }
+
+    @Test
+    public void finish_lineLongerThanLimitAcrossChunks_cutsLineAndCountsIt() throws Exception {
+        // Arrange
+        StringBuilder file = new StringBuilder("User-agent: *\nDisallow: /");
+
+        for (int i = 0; i < 1000; i++) {
+            file.append("abcdefghij");
+        }
+
+        file.append("\nAllow: /public\n");
+
+        byte[] data = file.toString().getBytes(StandardCharsets.UTF_8);
+        IncrementalParser parser = new IncrementalParser(ParseOptions.builder().maxLineLength(20).build());
+
+        // Act
+        for (int i = 0; i < data.length; i += 7) {
+            parser.feed(data, i, Math.min(7, data.length - i));
+        }
+
+        RobotsTxt robotsTxt = parser.finish();
+
+        // Assert
+        assertThat(robotsTxt.getRuleSets().get("*"), containsInAnyOrder(
+                new Rule(RuleType.DISALLOW, "/abcdefghi"),
+                new Rule(RuleType.ALLOW, "/public")));
+        assertEquals(1, robotsTxt.getTruncation().getTruncatedLines());
+        assertEquals(-1L, robotsTxt.getTruncation().getTruncatedAt());
+    }
+
+    @Test
+    public void finish_moreRulesThanGroupLimit_dropsExtraRules() throws Exception {
+        // Arrange
+        String file = "User-agent: a\n" +
+                      "Disallow: /1\n" +
+                      "Disallow: /2\n" +
+                      "Disallow: /3\n" +
+                      "User-agent: b\n" +
+                      "Disallow: /4\n";
+        IncrementalParser parser = new IncrementalParser(ParseOptions.builder().maxRulesPerGroup(2).build());
+
+        // Act
+        parser.feed(file.getBytes(StandardCharsets.UTF_8));
+        RobotsTxt robotsTxt = parser.finish();
+
+        // Assert
+        assertThat(robotsTxt.getRuleSets().get("a"), containsInAnyOrder(
+                new Rule(RuleType.DISALLOW, "/1"),
+                new Rule(RuleType.DISALLOW, "/2")));
+        assertThat(robotsTxt.getRuleSets().get("b"), contains(new Rule(RuleType.DISALLOW, "/4")));
+        assertEquals(1, robotsTxt.getTruncation().getDroppedRules());
+    }
+
+    @Test
+    public void finish_withinLimits_reportsNoTruncation() throws Exception {
+        // Arrange
+        IncrementalParser parser = new IncrementalParser();
+
+        // Act
+        parser.feed(FILE.getBytes(StandardCharsets.UTF_8));
+        RobotsTxt robotsTxt = parser.finish();
+
+        // Assert
+        assertFalse(parser.isTruncated());
+        assertSame(Truncation.NONE, robotsTxt.getTruncation());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void feed_afterFinish_throwsIllegalStateException() throws Exception {
+        IncrementalParser parser = new IncrementalParser();
+        parser.finish();
+        parser.feed(new byte[] {'\n'});
+    }
+}
@@ -15,6 +15,7 @@
  */
 package com.widowcrawler.terminator.parse;
 
+import com.widowcrawler.terminator.ParseException;
 import com.widowcrawler.terminator.model.RobotsTxt;
 import com.widowcrawler.terminator.model.Rule;
 import com.widowcrawler.terminator.model.RuleType;
@@ -24,6 +25,7 @@ import org.junit.Test;
 import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 import static org.hamcrest.Matchers.*;
@@ -60,6 +62,50 @@ public class ParserTest {
         assertThat(robotsTxt.getRuleSets().get("bar"), hasItem(new Rule(RuleType.DISALLOW, "/quux")));
     }
 
+    @Test
+    public void parse_crawlDelayInGroup_parsesRequestRate() throws Exception {
+        // Arrange
+        String file = "User-agent: foo\n" +
+                      "Disallow: /bar\n" +
+                      "Crawl-delay: 5 # seconds\n" +
+                      "Allow: /bar/baz\n";
+
+        // Act
+        RobotsTxt robotsTxt = new Parser(file).parse();
+
+        // Assert
+        assertEquals(TimeUnit.SECONDS.toNanos(5), robotsTxt.getRequestRate("foo").getIntervalNanos());
+        assertEquals(2, robotsTxt.getRuleSets().get("foo").size());
+    }
+
+    @Test
+    public void parse_lenientUnknownDirectives_skipsThem() throws Exception {
+        // Arrange
+        String file = "\uFEFF# robots.txt\n" +
+                      "User-agent: foo\n" +
+                      "Host: example.com\n" +
+                      "Disallow: /bar\n" +
+                      "Clean-param: ref /articles/\n" +
+                      "Allow: /bar/baz\n" +
+                      "\n" +
+                      "User-agent: quux\n" +
+                      "Disallow: /\n";
+
+        // Act
+        RobotsTxt robotsTxt = new Parser(file, ParseOptions.builder().lenient(true).build()).parse();
+
+        // Assert
+        assertEquals(2, robotsTxt.getRuleSets().get("foo").size());
+        assertEquals(1, robotsTxt.getRuleSets().get("quux").size());
+        assertEquals(2, robotsTxt.getDiagnostics().getSkippedLines());
+        assertEquals(file.indexOf("Host"), robotsTxt.getDiagnostics().getErrors().get(0).getPosition());
+    }
+
+    @Test(expected = ParseException.class)
+    public void parse_strictUnknownDirective_throwsParseException() throws Exception {
+        new Parser("User-agent: foo\nHost: example.com\nDisallow: /bar\n").parse();
+    }
+
     @Test(timeout = 1000)
     public void parse_validRobotsTxtSmall_parsesFile() throws Exception {
         InputStream inputStream = new FileInputStream("src/test/resources/example_robots_small.txt");
@@ -0,0 +1,182 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.politeness;
+
+import com.widowcrawler.terminator.cache.HostKey;
+import com.widowcrawler.terminator.model.RequestRate;
+import com.widowcrawler.terminator.model.RobotsTxt;
+import com.widowcrawler.terminator.parse.Parser;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Scott Mansfield
+ */
+public class PolitenessGateTest {
+
+    private static final HostKey HOST = HostKey.fromUrl("http://example.com/");
+
+    @Test
+    public void tryAcquire_withinInterval_refuses() {
+        // Arrange
+        AtomicLong now = new AtomicLong();
+        PolitenessGate gate = PolitenessGate.builder().ticker(now::get).build();
+
+        // Act / Assert
+        assertTrue(gate.tryAcquire(HOST));
+        assertFalse(gate.tryAcquire(HOST));
+        assertEquals(TimeUnit.SECONDS.toNanos(1), gate.nanosUntilAvailable(HOST));
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertTrue(gate.tryAcquire(HOST));
+        assertTrue(gate.tryAcquire(HostKey.fromUrl("http://other.example.com/")));
+    }
+
+    @Test
+    public void update_crawlDelay_spacesRequests() throws Exception {
+        // Arrange
+        AtomicLong now = new AtomicLong();
+        PolitenessGate gate = PolitenessGate.builder()
+                .maxInterval(30, TimeUnit.SECONDS)
+                .ticker(now::get)
+                .build();
+        RobotsTxt robotsTxt = new Parser("User-agent: *\nCrawl-delay: 5\n").parse();
+
+        // Act
+        gate.update(HOST, robotsTxt, "FooBot");
+        gate.setRequestRate(HostKey.fromUrl("http://slow.example.com/"), RequestRate.ofDelay(1, TimeUnit.HOURS));
+
+        // Assert
+        assertTrue(gate.tryAcquire(HOST));
+        now.addAndGet(TimeUnit.SECONDS.toNanos(4));
+        assertFalse(gate.tryAcquire(HOST));
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertTrue(gate.tryAcquire(HOST));
+        assertEquals(TimeUnit.SECONDS.toNanos(30), gate.getIntervalNanos(HostKey.fromUrl("http://slow.example.com/")));
+    }
+
+    @Test
+    public void evictIdle_idleHosts_forgetsThemAndUpdateReappliesRate() {
+        // Arrange
+        AtomicLong now = new AtomicLong();
+        PolitenessGate gate = PolitenessGate.builder().evictIdleAfter(1, TimeUnit.MINUTES).ticker(now::get).build();
+        HostKey configured = HostKey.fromUrl("http://configured.example.com/");
+
+        for (int i = 0; i < 100; i++) {
+            gate.tryAcquire(HostKey.fromUrl("http://host" + i + ".example.com/"));
+        }
+
+        gate.setRequestRate(configured, RequestRate.ofDelay(2, TimeUnit.SECONDS));
+
+        gate.tryAcquire(configured);
+        HostKey busy = HostKey.fromUrl("http://busy.example.com/");
+
+        // Act
+        now.addAndGet(TimeUnit.MINUTES.toNanos(2));
+        gate.tryAcquire(busy);
+        int evicted = gate.evictIdle();
+
+        // Assert
+        assertEquals(101, evicted);
+        assertEquals(1, gate.size());
+        assertEquals(TimeUnit.SECONDS.toNanos(1), gate.getIntervalNanos(configured));
+
+        gate.setRequestRate(configured, RequestRate.ofDelay(2, TimeUnit.SECONDS));
+        assertEquals(TimeUnit.SECONDS.toNanos(2), gate.getIntervalNanos(configured));
+    }
+
+    @Test
+    public void tryAcquire_whileEvicting_neverGrantsUnspacedPermits() throws Exception {
+        // Arrange
+        PolitenessGate gate = PolitenessGate.builder()
+                .defaultInterval(1, TimeUnit.HOURS)
+                .evictIdleAfter(0, TimeUnit.NANOSECONDS)
+                .build();
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+
+        for (int round = 0; round < 200; round++) {
+            HostKey host = HostKey.fromUrl("http://host" + round + ".example.com/");
+            AtomicInteger granted = new AtomicInteger();
+            List<Future<?>> futures = new ArrayList<>();
+
+            // Act
+            // a slot nobody has taken a permit from yet is idle, so the evictor races the first tryAcquire
+            futures.add(executor.submit(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    gate.evictIdle();
+                }
+            }));
+
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 1000; j++) {
+                        if (gate.tryAcquire(host)) {
+                            granted.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+
+            // Assert
+            assertEquals(1, granted.get());
+        }
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void tryAcquire_manyThreadsOneHost_grantsOnePermit() throws Exception {
+        // Arrange
+        PolitenessGate gate = PolitenessGate.builder().defaultInterval(1, TimeUnit.HOURS).build();
+        AtomicInteger granted = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+
+        // Act
+        for (int i = 0; i < 8; i++) {
+            futures.add(executor.submit(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    if (gate.tryAcquire(HOST)) {
+                        granted.incrementAndGet();
+                    }
+                }
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+
+        executor.shutdown();
+
+        // Assert
+        assertEquals(1, granted.get());
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.sitemap;
+
+import com.widowcrawler.terminator.FetchException;
+import com.widowcrawler.terminator.model.RobotsTxt;
+import com.widowcrawler.terminator.parse.Parser;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author Scott Mansfield
+ */
+public class SitemapCrawlerTest {
+
+    private static final String INDEX_URL = "http://example.com/sitemap_index.xml";
+
+    private final Map<String, byte[]> sitemaps = new HashMap<>();
+    private SitemapCrawler crawler;
+
+    private final SitemapSource source = url -> {
+        byte[] body = sitemaps.get(url);
+
+        if (body == null) {
+            throw new FetchException(404, "Unexpected status 404 for " + url);
+        }
+
+        return new ByteArrayInputStream(body);
+    };
+
+    @After
+    public void tearDown() {
+        if (crawler != null) {
+            crawler.close();
+        }
+    }
+
+    @Test
+    public void crawl_robotsTxtWithIndex_emitsEveryUrlOnce() throws Exception {
+        // Arrange
+        put(INDEX_URL, index("http://example.com/a.xml", "http://example.com/b.xml.gz",
+                "http://example.com/missing.xml", INDEX_URL));
+        put("http://example.com/a.xml", urlset(0, 3));
+        sitemaps.put("http://example.com/b.xml.gz", SitemapParserTest.gzip(urlset(3, 5)));
+
+        RobotsTxt robotsTxt = new Parser("Sitemap: " + INDEX_URL + "\nSitemap: http://example.com/a.xml\n").parse();
+        crawler = SitemapCrawler.builder().source(source).parallelism(2).build();
+
+        List<SitemapEntry> urls = new ArrayList<>();
+        List<String> failed = new ArrayList<>();
+
+        // Act
+        SitemapCrawler.Result result = crawler.crawl(robotsTxt, new SitemapSink() {
+            @Override
+            public void accept(SitemapEntry entry) {
+                urls.add(entry);
+            }
+
+            @Override
+            public void failed(String sitemapUrl, Exception cause) {
+                failed.add(sitemapUrl);
+            }
+        }).get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(8, urls.size());
+        assertThat(urls, hasItem(new SitemapEntry("http://example.com/7", null)));
+        assertThat(failed, contains("http://example.com/missing.xml"));
+        assertEquals(3, result.getSitemaps());
+        assertEquals(1, result.getFailed());
+        assertEquals(8, result.getUrls());
+    }
+
+    @Test
+    public void crawl_moreSitemapsThanLimit_skipsTheRest() throws Exception {
+        // Arrange
+        put(INDEX_URL, index("http://example.com/0.xml", "http://example.com/1.xml", "http://example.com/2.xml"));
+        put("http://example.com/0.xml", urlset(0, 1));
+        put("http://example.com/1.xml", urlset(1, 1));
+        put("http://example.com/2.xml", urlset(2, 1));
+        crawler = SitemapCrawler.builder().source(source).maxSitemaps(2).build();
+
+        // Act
+        SitemapCrawler.Result result = crawler.crawl(Collections.singleton(INDEX_URL), entry -> {})
+                .get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(2, result.getSitemaps());
+        assertEquals(2, result.getSkipped());
+        assertEquals(1, result.getUrls());
+    }
+
+    @Test(timeout = 10000)
+    public void stream_moreUrlsThanBuffer_iteratesAll() throws Exception {
+        // Arrange
+        put("http://example.com/big.xml", urlset(0, 20_000));
+        crawler = SitemapCrawler.builder().source(source).streamBufferSize(16).build();
+        long count = 0;
+
+        // Act
+        try (SitemapStream stream = crawler.stream(Collections.singleton("http://example.com/big.xml"))) {
+            while (stream.hasNext()) {
+                stream.next();
+                count++;
+            }
+
+            // Assert
+            assertEquals(20_000, count);
+            assertEquals(20_000, stream.getResult().get(5, TimeUnit.SECONDS).getUrls());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void stream_closedEarly_stopsCrawl() throws Exception {
+        // Arrange
+        put("http://example.com/big.xml", urlset(0, 20_000));
+        crawler = SitemapCrawler.builder().source(source).streamBufferSize(16).build();
+        SitemapStream stream = crawler.stream(Collections.singleton("http://example.com/big.xml"));
+
+        // Act
+        for (int i = 0; i < 10; i++) {
+            stream.next();
+        }
+
+        stream.close();
+        SitemapCrawler.Result result = stream.getResult().get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertFalse(stream.hasNext());
+        assertEquals(0, result.getSitemaps());
+        assertEquals(1, result.getSkipped());
+        assertThat(result.getUrls(), lessThan(20_000L));
+    }
+
+    private void put(String url, String xml) {
+        sitemaps.put(url, xml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String index(String... locs) {
+        StringBuilder xml = new StringBuilder("<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">");
+
+        for (String loc : locs) {
+            xml.append("<sitemap><loc>").append(loc).append("</loc></sitemap>");
+        }
+
+        return xml.append("</sitemapindex>").toString();
+    }
+
+    private static String urlset(int from, int count) {
+        StringBuilder xml = new StringBuilder("<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">");
+
+        for (int i = from; i < from + count; i++) {
+            xml.append("<url><loc>http://example.com/").append(i).append("</loc></url>");
+        }
+
+        return xml.append("</urlset>").toString();
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.sitemap;
+
+import com.widowcrawler.terminator.ParseException;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * @author Scott Mansfield
+ */
+public class SitemapParserTest {
+
+    static final String URLSET = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n" +
+            "  <url>\n" +
+            "    <loc>\n      http://example.com/\n    </loc>\n" +
+            "    <lastmod>2015-06-01</lastmod>\n" +
+            "    <changefreq>daily</changefreq>\n" +
+            "  </url>\n" +
+            "  <url><loc>http://example.com/search?q=a&amp;page=2</loc></url>\n" +
+            "  <url><lastmod>2015-06-02</lastmod></url>\n" +
+            "</urlset>\n";
+
+    static byte[] gzip(String xml) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(xml.getBytes(StandardCharsets.UTF_8));
+        }
+
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void parse_urlset_emitsUrlsWithLoc() throws Exception {
+        // Arrange
+        List<SitemapEntry> urls = new ArrayList<>();
+        List<SitemapEntry> sitemaps = new ArrayList<>();
+
+        // Act
+        new SitemapParser().parse(stream(URLSET.getBytes(StandardCharsets.UTF_8)), urls::add, sitemaps::add);
+
+        // Assert
+        assertThat(urls, contains(
+                new SitemapEntry("http://example.com/", "2015-06-01"),
+                new SitemapEntry("http://example.com/search?q=a&page=2", null)));
+        assertThat(sitemaps, is(empty()));
+    }
+
+    @Test
+    public void parse_gzippedSitemap_isUnzipped() throws Exception {
+        // Arrange
+        List<SitemapEntry> urls = new ArrayList<>();
+
+        // Act
+        new SitemapParser().parse(stream(gzip(URLSET)), urls::add, sitemap -> fail());
+
+        // Assert
+        assertEquals(2, urls.size());
+    }
+
+    @Test
+    public void parse_sitemapIndex_emitsSitemaps() throws Exception {
+        // Arrange
+        String xml = "<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">" +
+                     "<sitemap><loc>http://example.com/a.xml</loc><lastmod>2015-06-01T12:00:00+00:00</lastmod></sitemap>" +
+                     "<sitemap><loc>http://example.com/b.xml.gz</loc></sitemap>" +
+                     "</sitemapindex>";
+        List<SitemapEntry> sitemaps = new ArrayList<>();
+
+        // Act
+        new SitemapParser().parse(stream(xml.getBytes(StandardCharsets.UTF_8)), url -> fail(), sitemaps::add);
+
+        // Assert
+        assertThat(sitemaps, contains(
+                new SitemapEntry("http://example.com/a.xml", "2015-06-01T12:00:00+00:00"),
+                new SitemapEntry("http://example.com/b.xml.gz", null)));
+    }
+
+    @Test
+    public void parse_largerThanLimit_throwsParseExceptionAfterEarlierUrls() throws Exception {
+        // Arrange
+        StringBuilder xml = new StringBuilder("<urlset>");
+
+        for (int i = 0; i < 1000; i++) {
+            xml.append("<url><loc>http://example.com/").append(i).append("</loc></url>");
+        }
+
+        xml.append("</urlset>");
+        List<SitemapEntry> urls = new ArrayList<>();
+
+        // Act
+        try {
+            new SitemapParser(4096).parse(stream(gzip(xml.toString())), urls::add, sitemap -> fail());
+            fail("Expected a ParseException");
+        } catch (ParseException ex) {
+            // Assert
+            assertThat(ex.getMessage(), containsString("4096"));
+            assertThat(urls.size(), is(both(greaterThan(0)).and(lessThan(1000))));
+        }
+    }
+
+    @Test(expected = ParseException.class)
+    public void parse_externalEntity_isNotResolved() throws Exception {
+        // Arrange
+        String xml = "<?xml version=\"1.0\"?>\n" +
+                     "<!DOCTYPE urlset [<!ENTITY secret SYSTEM \"file:///etc/passwd\">]>\n" +
+                     "<urlset><url><loc>http://example.com/&secret;</loc></url></urlset>";
+
+        // Act
+        new SitemapParser().parse(stream(xml.getBytes(StandardCharsets.UTF_8)),
+                url -> fail("Resolved " + url), sitemap -> fail());
+    }
+
+    private static InputStream stream(byte[] bytes) {
+        return new ByteArrayInputStream(bytes);
+    }
+}
@@ -0,0 +1,352 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.store;
+
+import com.widowcrawler.terminator.cache.HostKey;
+import com.widowcrawler.terminator.eval.RuleEvaluator;
+import com.widowcrawler.terminator.model.RobotsTxt;
+import com.widowcrawler.terminator.model.Rule;
+import com.widowcrawler.terminator.model.RuleType;
+import com.widowcrawler.terminator.parse.ByteParser;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.FileInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Scott Mansfield
+ */
+public class RobotsStoreTest {
+
+    @org.junit.Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String FILE = "User-agent: *\n" +
+                                       "Disallow: /private\n" +
+                                       "Allow: /private/public\n" +
+                                       "Disallow: /*.pdf$\n" +
+                                       "\n" +
+                                       "User-agent: FooBot/1.2\n" +
+                                       "Disallow: /\n" +
+                                       "Allow: /*/open\n";
+
+    private static RobotsTxt parse(String file) throws Exception {
+        return new ByteParser(file.getBytes(StandardCharsets.UTF_8)).parse();
+    }
+
+    private static HostKey host(int i) {
+        return new HostKey("http", "host" + i + ".example.com", -1);
+    }
+
+    @Test
+    public void get_storedHost_evaluatesInPlace() throws Exception {
+        // Arrange
+        try (RobotsStore store = RobotsStore.builder(folder.getRoot().toPath()).build()) {
+            store.put(HostKey.fromUrl("http://example.com/"), parse(FILE));
+
+            // Act
+            RobotsRecord record = store.get(HostKey.fromUrl("http://EXAMPLE.com:80/index.html"));
+
+            // Assert
+            assertNotNull(record);
+            assertFalse(record.isAllowed("OtherBot", "/private/1"));
+            assertTrue(record.isAllowed("OtherBot", "/private/public/1"));
+            assertFalse(record.isAllowed("OtherBot", "/docs/a.pdf"));
+            assertTrue(record.isAllowed("OtherBot", "/docs/a.pdf?download"));
+            assertTrue(record.isAllowed("OtherBot", ""));
+            assertFalse(record.isAllowed("foobot/2.0 (+http://foo.com)", "/index.html"));
+            assertTrue(record.isAllowed("FooBot", "/a/open/b"));
+            assertNull(store.get(HostKey.fromUrl("https://example.com/")));
+        }
+    }
+
+    @Test
+    public void get_noMatchingGroup_allowsEverything() throws Exception {
+        // Arrange
+        try (RobotsStore store = RobotsStore.builder(folder.getRoot().toPath()).build()) {
+            store.put(host(1), parse("User-agent: FooBot\nDisallow: /\n"));
+
+            // Act
+            RobotsRecord record = store.get(host(1));
+
+            // Assert
+            assertTrue(record.isAllowed("BarBot", "/"));
+            assertFalse(record.isAllowed("FooBot", "/"));
+        }
+    }
+
+    @Test
+    public void getEvaluator_sameUserAgent_resolvesOnce() throws Exception {
+        // Arrange
+        try (RobotsStore store = RobotsStore.builder(folder.getRoot().toPath()).build()) {
+            store.put(host(1), parse(FILE));
+            RobotsRecord record = store.get(host(1));
+
+            // Act
+            RuleEvaluator first = record.getEvaluator("FooBot/1.2");
+            RuleEvaluator second = record.getEvaluator("FooBot/1.2");
+            RuleEvaluator other = record.getEvaluator("OtherBot");
+
+            // Assert
+            assertSame(first, second);
+            assertNotSame(first, other);
+            assertTrue(first.isAllowed("/a/open/b"));
+            assertFalse(first.isAllowed("/index.html"));
+            assertFalse(other.isAllowed("/docs/a.pdf"));
+            assertFalse(record.getEvaluator("FOOBOT").isAllowed("/index.html"));
+        }
+    }
+
+    @Test
+    public void get_sameHostAgain_reusesRecordAndResolvedGroups() throws Exception {
+        // Arrange
+        try (RobotsStore store = RobotsStore.builder(folder.getRoot().toPath()).build()) {
+            store.put(host(1), parse(FILE));
+            RobotsRecord record = store.get(host(1));
+            RuleEvaluator fooBot = record.getEvaluator("FooBot");
+            RuleEvaluator otherBot = record.getEvaluator("OtherBot");
+
+            // Act
+            RobotsRecord again = store.get(host(1));
+
+            // Assert
+            assertSame(record, again);
+            assertSame(fooBot, again.getEvaluator("FooBot"));
+            assertSame(otherBot, again.getEvaluator("OtherBot"));
+        }
+    }
+
+    @Test
+    public void get_afterPutOrCompact_returnsCurrentRecord() throws Exception {
+        // Arrange
+        try (RobotsStore store = RobotsStore.builder(folder.getRoot().toPath()).build()) {
+            store.put(host(1), parse(FILE));
+            RobotsRecord original = store.get(host(1));
+
+            // Act
+            store.put(host(1), parse("User-agent: *\nDisallow: /other\n"));
+            RobotsRecord replaced = store.get(host(1));
+            store.compact();
+            RobotsRecord compacted = store.get(host(1));
+
+            // Assert
+            assertNotSame(original, replaced);
+            assertNotSame(replaced, compacted);
+            assertTrue(replaced.isAllowed("AnyBot", "/private"));
+            assertFalse(replaced.isAllowed("AnyBot", "/other"));
+            assertFalse(compacted.isAllowed("AnyBot", "/other"));
+            assertSame(compacted, store.get(host(1)));
+        }
+    }
+
+    @Test
+    public void get_cacheTurnedOff_returnsNewRecords() throws Exception {
+        // Arrange
+        try (RobotsStore store = RobotsStore.builder(folder.getRoot().toPath()).recordCacheSize(0).build()) {
+            store.put(host(1), parse(FILE));
+
+            // Act
+            RobotsRecord first = store.get(host(1));
+            RobotsRecord second = store.get(host(1));
+
+            // Assert
+            assertNotSame(first, second);
+            assertFalse(second.isAllowed("AnyBot", "/private"));
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void isAllowed_hostileWildcardRule_matchesInLinearTime() throws Exception {
+        // Arrange
+        String rule = "/*" + StringUtils.repeat('a', 3000) + "b";
+        String path = "/" + StringUtils.repeat('a', 8000);
+
+        try (RobotsStore store = RobotsStore.builder(folder.getRoot().toPath()).build()) {
+            store.put(host(1), parse("User-agent: *\nDisallow: /\nAllow: " + rule + "\n"));
+            RobotsRecord record = store.get(host(1));
+
+            // Act / Assert
+            // backtracking on the last '*' takes tens of milliseconds for each of these
+            for (int i = 0; i < 200; i++) {
+                assertFalse(record.isAllowed("AnyBot", path));
+            }
+
+            assertTrue(record.isAllowed("AnyBot", path + "b"));
+        }
+    }
+
+    @Test
+    public void isAllowed_randomWildcardRules_matchesRuleEvaluator() throws Exception {
+        // Arrange
+        Random random = new Random(7);
+
+        try (RobotsStore store = RobotsStore.builder(folder.getRoot().toPath()).build()) {
+            for (int round = 0; round < 200; round++) {
+                Set<Rule> rules = new HashSet<>();
+
+                for (int i = 0; i < 1 + random.nextInt(8); i++) {
+                    RuleType ruleType = random.nextBoolean() ? RuleType.ALLOW : RuleType.DISALLOW;
+                    rules.add(new Rule(ruleType, randomPath(random, "ab*", 6) + (random.nextInt(3) == 0 ? "$" : "")));
+                }
+
+                Map<String, Set<Rule>> ruleSets = new HashMap<>();
+                ruleSets.put("*", rules);
+                RobotsTxt robotsTxt = new RobotsTxt(ruleSets, new HashSet<>());
+                RuleEvaluator expected = RuleEvaluator.build(rules);
+
+                // Act
+                store.put(host(round), robotsTxt);
+                RobotsRecord record = store.get(host(round));
+
+                // Assert
+                for (int i = 0; i < 50; i++) {
+                    String path = randomPath(random, "abc", 10);
+                    assertEquals(rules + " " + path, expected.isAllowed(path), record.isAllowed("AnyBot", path));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void build_reopenAfterClose_keepsEveryHost() throws Exception {
+        // Arrange
+        Path directory = folder.getRoot().toPath();
+        RobotsTxt robotsTxt = new ByteParser(IOUtils.toByteArray(new FileInputStream("src/test/resources/example_robots.txt"))).parse();
+
+        try (RobotsStore store = RobotsStore.builder(directory).expectedHosts(10).build()) {
+            for (int i = 0; i < 3000; i++) {
+                store.put(host(i), i % 2 == 0 ? robotsTxt : parse(FILE));
+            }
+        }
+
+        // Act
+        try (RobotsStore store = RobotsStore.builder(directory).build()) {
+            // Assert
+            assertEquals(3000, store.size());
+            assertFalse(store.get(host(0)).isAllowed("AnyBot", "/search"));
+            assertTrue(store.get(host(0)).isAllowed("AnyBot", "/search/about"));
+            assertFalse(store.get(host(2999)).isAllowed("AnyBot", "/private"));
+            assertNull(store.get(host(3000)));
+        }
+    }
+
+    @Test
+    public void build_reopenWithoutClose_rebuildsIndex() throws Exception {
+        // Arrange
+        Path directory = folder.getRoot().toPath();
+        RobotsStore crashed = RobotsStore.builder(directory).segmentSize(4096).build();
+
+        for (int i = 0; i < 100; i++) {
+            crashed.put(host(i), parse(FILE));
+        }
+
+        crashed.put(host(5), parse("User-agent: *\nDisallow: /\n"));
+        crashed.remove(host(6));
+
+        // Act
+        try (RobotsStore store = RobotsStore.builder(directory).segmentSize(4096).build()) {
+            // Assert
+            assertEquals(99, store.size());
+            assertFalse(store.get(host(5)).isAllowed("AnyBot", "/index.html"));
+            assertTrue(store.get(host(7)).isAllowed("AnyBot", "/index.html"));
+            assertNull(store.get(host(6)));
+            assertEquals(crashed.getDeadBytes(), store.getDeadBytes());
+            assertEquals(crashed.getTotalBytes(), store.getTotalBytes());
+        }
+    }
+
+    @Test
+    public void compact_afterOverwrites_reclaimsDeadSpace() throws Exception {
+        // Arrange
+        Path directory = folder.getRoot().toPath();
+
+        try (RobotsStore store = RobotsStore.builder(directory).segmentSize(4096).build()) {
+            for (int round = 0; round < 5; round++) {
+                for (int i = 0; i < 50; i++) {
+                    store.put(host(i), parse(round % 2 == 0 ? FILE : "User-agent: *\nDisallow: /round" + round + "\n"));
+                }
+            }
+
+            for (int i = 40; i < 50; i++) {
+                store.remove(host(i));
+            }
+
+            long liveBytes = store.getTotalBytes() - store.getDeadBytes();
+
+            // Act
+            store.compact();
+
+            // Assert
+            assertEquals(0L, store.getDeadBytes());
+            assertEquals(liveBytes, store.getTotalBytes());
+            assertEquals(40, store.size());
+            assertFalse(store.get(host(0)).isAllowed("AnyBot", "/private"));
+            assertNull(store.get(host(45)));
+        }
+
+        try (RobotsStore store = RobotsStore.builder(directory).build()) {
+            assertEquals(40, store.size());
+            assertFalse(store.get(host(39)).isAllowed("AnyBot", "/private"));
+        }
+
+        List<String> files = new ArrayList<>();
+
+        for (String name : folder.getRoot().list()) {
+            files.add(name);
+        }
+
+        assertFalse(files.toString(), files.stream().anyMatch(name -> name.contains("-0-") || name.equals("index-0.idx")));
+    }
+
+    @Test
+    public void get_recordFromBeforeCompaction_staysReadable() throws Exception {
+        // Arrange
+        try (RobotsStore store = RobotsStore.builder(folder.getRoot().toPath()).build()) {
+            store.put(host(1), parse(FILE));
+            RobotsRecord record = store.get(host(1));
+
+            // Act
+            store.compact();
+
+            // Assert
+            assertFalse(record.isAllowed("AnyBot", "/private"));
+        }
+    }
+
+    private static String randomPath(Random random, String alphabet, int maxLength) {
+        StringBuilder path = new StringBuilder("/");
+        int length = random.nextInt(maxLength);
+
+        for (int i = 0; i < length; i++) {
+            path.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+
+        return path.toString();
+    }
+}
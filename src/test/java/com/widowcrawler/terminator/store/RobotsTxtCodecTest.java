@@ -0,0 +1,197 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.store;
+
+import com.widowcrawler.terminator.eval.RuleEvaluator;
+import com.widowcrawler.terminator.model.RobotsTxt;
+import com.widowcrawler.terminator.model.Rule;
+import com.widowcrawler.terminator.model.Validators;
+import com.widowcrawler.terminator.parse.ByteParser;
+import com.widowcrawler.terminator.parse.ParseOptions;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Scott Mansfield
+ */
+public class RobotsTxtCodecTest {
+
+    private static final String FILE = "User-agent: *\n" +
+                                       "Disallow: /private\n" +
+                                       "Allow: /private/public\n" +
+                                       "Disallow: /*.pdf$\n" +
+                                       "Crawl-delay: 5\n" +
+                                       "\n" +
+                                       "User-agent: FooBot\n" +
+                                       "User-agent: BarBot\n" +
+                                       "Disallow: /\n" +
+                                       "Allow: /caf\u00e9\n" +
+                                       "\n" +
+                                       "Sitemap: http://example.com/sitemap.xml\n";
+
+    @Test
+    public void read_writtenRobotsTxt_roundTrips() throws Exception {
+        // Arrange
+        RobotsTxt robotsTxt = new ByteParser(FILE.getBytes(StandardCharsets.UTF_8)).parse();
+
+        // Act
+        RobotsTxt decoded = RobotsTxtCodec.read(ByteBuffer.wrap(RobotsTxtCodec.toBytes(robotsTxt)));
+
+        // Assert
+        assertEquals(robotsTxt.getRuleSets(), decoded.getRuleSets());
+        assertEquals(robotsTxt.getSiteMapRefs(), decoded.getSiteMapRefs());
+        assertEquals(robotsTxt.getRequestRates(), decoded.getRequestRates());
+        assertSame(decoded.getRuleSets().get("FooBot"), decoded.getRuleSets().get("BarBot"));
+
+        RuleEvaluator wildcard = decoded.getEvaluator("QuuxBot");
+        assertFalse(wildcard.isAllowed("/private/1"));
+        assertTrue(wildcard.isAllowed("/private/public/1"));
+        assertFalse(wildcard.isAllowed("/docs/a.pdf"));
+        assertTrue(decoded.getEvaluator("foobot").isAllowed("/caf\u00e9/menu"));
+        assertFalse(decoded.getEvaluator("foobot").isAllowed("/other"));
+    }
+
+    @Test
+    public void read_robotsTxtWithValidators_roundTripsValidators() throws Exception {
+        // Arrange
+        byte[] data = FILE.getBytes(StandardCharsets.UTF_8);
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(data);
+        Validators validators = new Validators("\"abc123\"", "Wed, 21 Oct 2015 07:28:00 GMT", hash);
+        RobotsTxt robotsTxt = new ByteParser(data).parse().withValidators(validators);
+
+        // Act
+        RobotsTxt decoded = RobotsTxtCodec.read(ByteBuffer.wrap(RobotsTxtCodec.toBytes(robotsTxt)));
+
+        // Assert
+        assertEquals(validators, decoded.getValidators());
+        assertTrue(decoded.getValidators().isConditional());
+        assertTrue(decoded.getValidators().hasSameContent(hash));
+    }
+
+    @Test
+    public void read_robotsTxtWithoutValidators_decodesNone() throws Exception {
+        // Arrange
+        RobotsTxt robotsTxt = new ByteParser(FILE.getBytes(StandardCharsets.UTF_8)).parse();
+
+        // Act
+        RobotsTxt decoded = RobotsTxtCodec.read(ByteBuffer.wrap(RobotsTxtCodec.toBytes(robotsTxt)));
+
+        // Assert
+        assertSame(Validators.NONE, decoded.getValidators());
+    }
+
+    @Test
+    public void read_version2Data_upgradesWithoutValidators() throws Exception {
+        // Arrange
+        RobotsTxt robotsTxt = new ByteParser(FILE.getBytes(StandardCharsets.UTF_8)).parse()
+                .withValidators(new Validators("\"abc123\"", null, null));
+        byte[] current = RobotsTxtCodec.toBytes(robotsTxt);
+
+        // a version 2 encoding is the same data without the trailing validators: a 12 byte ETag and two -1 lengths
+        byte[] data = Arrays.copyOf(current, current.length - (4 + 8) - 4 - 4);
+        data[4] = 2;
+
+        // Act
+        RobotsTxt decoded = RobotsTxtCodec.read(ByteBuffer.wrap(data));
+
+        // Assert
+        assertEquals(robotsTxt.getRuleSets(), decoded.getRuleSets());
+        assertEquals(robotsTxt.getRequestRates(), decoded.getRequestRates());
+        assertSame(Validators.NONE, decoded.getValidators());
+    }
+
+    @Test
+    public void read_largeRobotsTxt_evaluatesLikeOriginal() throws Exception {
+        // Arrange
+        byte[] data = IOUtils.toByteArray(new FileInputStream("src/test/resources/example_robots.txt"));
+        RobotsTxt robotsTxt = new ByteParser(data).parse();
+        RuleEvaluator expected = robotsTxt.getEvaluator("*");
+
+        List<String> paths = new ArrayList<>();
+
+        for (Rule rule : robotsTxt.getRuleSets().get("*")) {
+            paths.add(rule.getPathMatch());
+            paths.add(rule.getPathMatch() + "/x");
+            paths.add(rule.getPathMatch().substring(0, rule.getPathMatch().length() / 2));
+        }
+
+        // Act
+        RuleEvaluator actual = RobotsTxtCodec.read(ByteBuffer.wrap(RobotsTxtCodec.toBytes(robotsTxt))).getEvaluator("*");
+
+        // Assert
+        assertEquals(expected.evaluate(paths), actual.evaluate(paths));
+        assertEquals(expected.getRuleTrie().getNodeCount(), actual.getRuleTrie().getNodeCount());
+    }
+
+    @Test
+    public void read_severalWrittenBackToBack_readsEachInTurn() throws Exception {
+        // Arrange
+        RobotsTxt first = new ByteParser(FILE.getBytes(StandardCharsets.UTF_8)).parse();
+        RobotsTxt second = new ByteParser("User-agent: *\nDisallow: /tmp\n".getBytes(StandardCharsets.UTF_8),
+                ParseOptions.builder().maxRulesPerGroup(1).build()).parse();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RobotsTxtCodec.write(first, out);
+        RobotsTxtCodec.write(second, out);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(out.size());
+        buffer.put(out.toByteArray()).flip();
+
+        // Act
+        RobotsTxt firstDecoded = RobotsTxtCodec.read(buffer);
+        RobotsTxt secondDecoded = RobotsTxtCodec.read(buffer);
+
+        // Assert
+        assertEquals(first.getRuleSets(), firstDecoded.getRuleSets());
+        assertEquals(second.getRuleSets(), secondDecoded.getRuleSets());
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test(expected = IOException.class)
+    public void read_unknownVersion_throwsIOException() throws Exception {
+        byte[] data = RobotsTxtCodec.toBytes(new ByteParser(FILE.getBytes(StandardCharsets.UTF_8)).parse());
+        data[4] = (byte) (RobotsTxtCodec.VERSION + 1);
+        RobotsTxtCodec.read(ByteBuffer.wrap(data));
+    }
+
+    @Test
+    public void read_truncatedData_throwsIOException() throws Exception {
+        // Arrange
+        byte[] data = RobotsTxtCodec.toBytes(new ByteParser(FILE.getBytes(StandardCharsets.UTF_8)).parse());
+
+        for (int length = 0; length < data.length; length++) {
+            // Act
+            try {
+                RobotsTxtCodec.read(ByteBuffer.wrap(data, 0, length));
+                fail("Expected an IOException at length " + length);
+            } catch (IOException ex) {
+                // Assert
+                assertNotNull(ex.getMessage());
+            }
+        }
+    }
+}
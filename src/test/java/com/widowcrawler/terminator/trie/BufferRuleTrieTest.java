@@ -0,0 +1,138 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.trie;
+
+import com.widowcrawler.terminator.model.RobotsTxt;
+import com.widowcrawler.terminator.model.Rule;
+import com.widowcrawler.terminator.model.RuleType;
+import com.widowcrawler.terminator.parse.Parser;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Scott Mansfield
+ */
+public class BufferRuleTrieTest {
+
+    @Test
+    public void match_largeRobotsTxtOffHeap_matchesFlatTrie() throws Exception {
+        // Arrange
+        Set<Rule> rules = loadLargeRuleSet();
+        RuleTrie ruleTrie = RuleTrie.build(rules);
+        FlatRuleTrie flatRuleTrie = ruleTrie.freeze();
+
+        // Act
+        BufferRuleTrie bufferRuleTrie = ruleTrie.freezeOffHeap();
+
+        // Assert
+        assertEquals(flatRuleTrie.getNodeCount(), bufferRuleTrie.getNodeCount());
+
+        for (Rule rule : rules) {
+            String path = rule.getPathMatch();
+
+            for (int i = 0; i <= path.length(); i++) {
+                String probe = path.substring(0, i);
+                assertEquals(probe, flatRuleTrie.match(probe), bufferRuleTrie.match(probe));
+                assertEquals(probe + "x", flatRuleTrie.match(probe + "x"), bufferRuleTrie.match(probe + "x"));
+            }
+        }
+    }
+
+    @Test
+    public void from_manySmallTries_eachKeepsItsOwnRules() {
+        // Arrange
+        BufferRuleTrie[] tries = new BufferRuleTrie[5000];
+
+        // Act
+        for (int i = 0; i < tries.length; i++) {
+            Set<Rule> rules = new HashSet<>(2);
+            rules.add(new Rule(RuleType.DISALLOW, "/" + i));
+            rules.add(new Rule(RuleType.ALLOW, "/" + i + "/public"));
+            tries[i] = RuleTrie.build(rules).freezeOffHeap();
+        }
+
+        // Assert
+        for (int i = 0; i < tries.length; i++) {
+            assertFalse(Match.isAllowed(tries[i].match("/" + i + "/private")));
+            assertTrue(Match.isAllowed(tries[i].match("/" + i + "/public/a")));
+            assertFalse(Match.isMatch(tries[i].match("/x" + i)));
+        }
+    }
+
+    @Test
+    public void estimatedSizeInBytes_smallTries_countFixedShareOfSlab() {
+        // Arrange
+        Set<Rule> rules = new HashSet<>(1);
+        rules.add(new Rule(RuleType.DISALLOW, "/private"));
+        FlatRuleTrie flatRuleTrie = RuleTrie.build(rules).freeze();
+        long total = 0L;
+
+        // Act
+        for (int i = 0; i < BufferRuleTrie.SLAB_SIZE / BufferRuleTrie.MAX_CARVED_SIZE; i++) {
+            BufferRuleTrie bufferRuleTrie = BufferRuleTrie.from(flatRuleTrie);
+            long estimate = bufferRuleTrie.estimatedSizeInBytes();
+
+            // Assert
+            assertTrue(estimate >= bufferRuleTrie.sizeInBytes() + BufferRuleTrie.SLAB_SHARE);
+            assertTrue(estimate < bufferRuleTrie.sizeInBytes() + BufferRuleTrie.SLAB_SHARE + 64);
+            total += estimate;
+        }
+
+        // the fewest tries a slab can end up holding are charged for all of it
+        assertTrue(total >= BufferRuleTrie.SLAB_SIZE);
+    }
+
+    @Test
+    public void estimatedSizeInBytes_largeTrie_countsOnlyItsOwnBuffer() throws Exception {
+        // Arrange
+        FlatRuleTrie flatRuleTrie = RuleTrie.build(loadLargeRuleSet()).freeze();
+
+        // Act
+        BufferRuleTrie bufferRuleTrie = BufferRuleTrie.from(flatRuleTrie);
+
+        // Assert
+        assertTrue(bufferRuleTrie.sizeInBytes() > BufferRuleTrie.MAX_CARVED_SIZE);
+        assertTrue(bufferRuleTrie.estimatedSizeInBytes() < bufferRuleTrie.sizeInBytes() + 64);
+    }
+
+    @Test
+    public void writeTo_offHeapTrie_writesSameBytesAsFlatTrie() throws Exception {
+        // Arrange
+        RuleTrie ruleTrie = RuleTrie.build(loadLargeRuleSet());
+        ByteArrayOutputStream flat = new ByteArrayOutputStream();
+        ByteArrayOutputStream offHeap = new ByteArrayOutputStream();
+
+        // Act
+        ruleTrie.freeze().writeTo(new DataOutputStream(flat));
+        ruleTrie.freezeOffHeap().writeTo(new DataOutputStream(offHeap));
+
+        // Assert
+        assertArrayEquals(flat.toByteArray(), offHeap.toByteArray());
+        assertEquals(flat.size(), ruleTrie.freeze().serializedSize());
+    }
+
+    private static Set<Rule> loadLargeRuleSet() throws Exception {
+        RobotsTxt robotsTxt = new Parser(new FileInputStream("src/test/resources/example_robots.txt")).parse();
+        return robotsTxt.getRuleSets().get("*");
+    }
+}
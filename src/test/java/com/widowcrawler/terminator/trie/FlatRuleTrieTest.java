@@ -0,0 +1,104 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.trie;
+
+import com.widowcrawler.terminator.model.RobotsTxt;
+import com.widowcrawler.terminator.model.Rule;
+import com.widowcrawler.terminator.model.RuleType;
+import com.widowcrawler.terminator.parse.Parser;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Scott Mansfield
+ */
+public class FlatRuleTrieTest {
+
+    @Test
+    public void match_nestedRules_matchesNodeGraph() {
+        // Arrange
+        Set<Rule> rules = new HashSet<>(5);
+        rules.add(new Rule(RuleType.DISALLOW, "/"));
+        rules.add(new Rule(RuleType.ALLOW, "/foo"));
+        rules.add(new Rule(RuleType.DISALLOW, "/foo/bar"));
+        rules.add(new Rule(RuleType.ALLOW, "/fop"));
+        rules.add(new Rule(RuleType.ALLOW, "/baz/biz"));
+
+        RuleTrie ruleTrie = RuleTrie.build(rules);
+
+        // Act
+        FlatRuleTrie flatRuleTrie = ruleTrie.freeze();
+
+        // Assert
+        String[] paths = {"", "/", "/f", "/fo", "/foo", "/foo/", "/foo/bar", "/foo/bar/x", "/fop", "/fopx", "/baz",
+                "/baz/biz", "/baz/bizz", "/quux"};
+
+        for (String path : paths) {
+            assertEquals(path, expected(ruleTrie, path), flatRuleTrie.match(path));
+        }
+    }
+
+    @Test
+    public void match_largeRobotsTxt_matchesNodeGraph() throws Exception {
+        // Arrange
+        Set<Rule> rules = loadLargeRuleSet();
+        RuleTrie ruleTrie = RuleTrie.build(rules);
+
+        // Act
+        FlatRuleTrie flatRuleTrie = ruleTrie.freeze();
+
+        // Assert
+        for (Rule rule : rules) {
+            String path = rule.getPathMatch();
+
+            for (int i = 0; i <= path.length(); i++) {
+                String probe = path.substring(0, i);
+                assertEquals(probe, expected(ruleTrie, probe), flatRuleTrie.match(probe));
+                assertEquals(probe + "x", expected(ruleTrie, probe + "x"), flatRuleTrie.match(probe + "x"));
+            }
+        }
+    }
+
+    @Test
+    public void estimatedSizeInBytes_largeRobotsTxt_smallerThanNodeGraph() throws Exception {
+        // Arrange
+        RuleTrie ruleTrie = RuleTrie.build(loadLargeRuleSet());
+
+        // Act
+        FlatRuleTrie flatRuleTrie = ruleTrie.freeze();
+
+        // Assert
+        long graphSize = ruleTrie.estimatedSizeInBytes();
+        long flatSize = flatRuleTrie.estimatedSizeInBytes();
+
+        assertTrue(flatSize * 3 < graphSize);
+    }
+
+    private static int expected(RuleTrie ruleTrie, String path) {
+        Rule rule = ruleTrie.findLongestMatch(path);
+        return rule == null ? Match.NONE : Match.of(rule.getPathMatch().length(), rule.getRuleType());
+    }
+
+    private static Set<Rule> loadLargeRuleSet() throws Exception {
+        RobotsTxt robotsTxt = new Parser(new FileInputStream("src/test/resources/example_robots.txt")).parse();
+        return robotsTxt.getRuleSets().get("*");
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.trie;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Scott Mansfield
+ */
+public class PathNormalizerTest {
+
+    @Test
+    public void normalizeRule_alreadyCanonical_returnsSameInstance() {
+        String path = "/foo/bar?baz=quz";
+        assertSame(path, PathNormalizer.normalizeRule(path));
+    }
+
+    @Test
+    public void normalizeRule_unreservedEscapes_decodes() {
+        assertEquals("/~user/abc-1", PathNormalizer.normalizeRule("/%7Euser/%61b%63%2D1"));
+    }
+
+    @Test
+    public void normalizeRule_reservedEscapes_upperCasesHex() {
+        assertEquals("/a%2Fb%3F", PathNormalizer.normalizeRule("/a%2fb%3f"));
+    }
+
+    @Test
+    public void normalizeRule_nonAscii_encodesUtf8() {
+        assertEquals("/foo/bar/%E3%83%84", PathNormalizer.normalizeRule("/foo/bar/\u30c4"));
+        assertEquals("/caf%C3%A9", PathNormalizer.normalizeRule("/caf\u00e9"));
+        assertEquals("/%F0%9F%98%80", PathNormalizer.normalizeRule("/\ud83d\ude00"));
+    }
+
+    @Test
+    public void normalizeRule_strayPercent_keepsIt() {
+        assertEquals("/100%/%4", PathNormalizer.normalizeRule("/100%/%4"));
+    }
+
+    @Test
+    public void normalizeRequest_canonicalPath_returnsSameInstance() {
+        String path = "/index.html?page=2";
+        assertSame(path, PathNormalizer.normalizeRequest(path));
+    }
+
+    @Test
+    public void normalizeRequest_queryOrFragmentOnly_returnsRootRelative() {
+        assertEquals("/", PathNormalizer.normalizeRequest("").toString());
+        assertEquals("/?a=b", PathNormalizer.normalizeRequest("?a=b").toString());
+        assertEquals("/", PathNormalizer.normalizeRequest("#top").toString());
+        assertEquals("/page", PathNormalizer.normalizeRequest("/page#top").toString());
+    }
+
+    @Test
+    public void normalizeRequest_matchesRuleForm() {
+        String rule = PathNormalizer.normalizeRule("/caf\u00e9/%7e%2f");
+        assertEquals(rule, PathNormalizer.normalizeRequest("/caf%c3%a9/~%2F").toString());
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.trie;
+
+import com.widowcrawler.terminator.model.Rule;
+import com.widowcrawler.terminator.model.RuleType;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Scott Mansfield
+ */
+public class PatternMatcherTest {
+
+    @Test
+    public void match_wildcardInMiddle_matchesAnyRun() {
+        // Arrange
+        PatternMatcher matcher = compile(new Rule(RuleType.DISALLOW, "/fish*.php"));
+
+        // Act / Assert
+        assertTrue(Match.isMatch(matcher.match("/fish.php")));
+        assertTrue(Match.isMatch(matcher.match("/fishheads/catfish.php?parameters")));
+        assertFalse(Match.isMatch(matcher.match("/Fish.PHP")));
+        assertFalse(Match.isMatch(matcher.match("/fis.php")));
+    }
+
+    @Test
+    public void match_endAnchor_onlyMatchesAtEnd() {
+        // Arrange
+        PatternMatcher matcher = compile(new Rule(RuleType.DISALLOW, "/*.php$"));
+
+        // Act / Assert
+        assertTrue(Match.isMatch(matcher.match("/filename.php")));
+        assertTrue(Match.isMatch(matcher.match("/folder/filename.php")));
+        assertTrue(Match.isMatch(matcher.match("/a.php.php")));
+        assertFalse(Match.isMatch(matcher.match("/filename.php?parameters")));
+        assertFalse(Match.isMatch(matcher.match("/filename.php/")));
+        assertFalse(Match.isMatch(matcher.match("/windows.PHP")));
+    }
+
+    @Test
+    public void match_trailingWildcard_actsAsPrefix() {
+        // Arrange
+        PatternMatcher matcher = compile(new Rule(RuleType.DISALLOW, "/fish*"), new Rule(RuleType.ALLOW, "/cat*$"));
+
+        // Act / Assert
+        assertEquals(Match.of(6, RuleType.DISALLOW), matcher.match("/fish"));
+        assertEquals(Match.of(6, RuleType.DISALLOW), matcher.match("/fishheads/yummy.html"));
+        assertEquals(Match.of(6, RuleType.ALLOW), matcher.match("/catalog"));
+        assertFalse(Match.isMatch(matcher.match("/Fish.asp")));
+    }
+
+    @Test
+    public void match_severalPatterns_returnsLongestRule() {
+        // Arrange
+        PatternMatcher matcher = compile(
+                new Rule(RuleType.DISALLOW, "/*q=*"),
+                new Rule(RuleType.ALLOW, "/books?*q=related:*"),
+                new Rule(RuleType.DISALLOW, "/books?*q=related:$"));
+
+        // Act / Assert
+        assertEquals(Match.of(5, RuleType.DISALLOW), matcher.match("/search?q=1"));
+        assertEquals(Match.of(19, RuleType.ALLOW), matcher.match("/books?id=1&q=related:2"));
+        assertEquals(Match.NONE, matcher.match("/books?id=1"));
+    }
+
+    @Test
+    public void match_randomPatterns_agreesWithRegex() {
+        // Arrange
+        Random random = new Random(42);
+
+        for (int round = 0; round < 55; round++) {
+            // Enough patterns to need several words of state, and the last few more than 64 words
+            List<Rule> rules = new ArrayList<>();
+            int patternCount = 1 + random.nextInt(round < 10 ? 4 : round < 50 ? 60 : 3000);
+
+            for (int i = 0; i < patternCount; i++) {
+                rules.add(new Rule(random.nextBoolean() ? RuleType.ALLOW : RuleType.DISALLOW, randomPattern(random)));
+            }
+
+            // Act
+            PatternMatcher matcher = PatternMatcher.compile(rules);
+
+            // Assert
+            for (int i = 0; i < 200; i++) {
+                String path = randomPath(random);
+                assertEquals(rules + " " + path, expected(rules, path), matcher.match(path));
+            }
+        }
+    }
+
+    @Test(timeout = 2000)
+    public void match_hostilePatterns_runsInLinearTime() {
+        // Arrange
+        StringBuilder pattern = new StringBuilder("/");
+        for (int i = 0; i < 50; i++) {
+            pattern.append("a*");
+        }
+        pattern.append("b$");
+
+        List<Rule> rules = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            rules.add(new Rule(RuleType.DISALLOW, pattern.toString() + i));
+        }
+        rules.add(new Rule(RuleType.DISALLOW, pattern.toString()));
+
+        PatternMatcher matcher = PatternMatcher.compile(rules);
+
+        StringBuilder path = new StringBuilder("/");
+        for (int i = 0; i < 5000; i++) {
+            path.append('a');
+        }
+
+        // Act / Assert
+        for (int i = 0; i < 20; i++) {
+            assertEquals(Match.NONE, matcher.match(path));
+        }
+        assertTrue(Match.isMatch(matcher.match(path + "b")));
+    }
+
+    private static PatternMatcher compile(Rule... rules) {
+        return PatternMatcher.compile(Arrays.asList(rules));
+    }
+
+    private static String randomPattern(Random random) {
+        StringBuilder pattern = new StringBuilder("/");
+        int length = random.nextInt(6);
+
+        for (int i = 0; i < length; i++) {
+            pattern.append("ab*".charAt(random.nextInt(3)));
+        }
+
+        if (random.nextInt(3) == 0) {
+            pattern.append('$');
+        }
+
+        return pattern.toString();
+    }
+
+    private static String randomPath(Random random) {
+        StringBuilder path = new StringBuilder("/");
+        int length = random.nextInt(10);
+
+        for (int i = 0; i < length; i++) {
+            path.append("abc".charAt(random.nextInt(3)));
+        }
+
+        return path.toString();
+    }
+
+    // Brute force reference using a backtracking regex
+    private static int expected(List<Rule> rules, String path) {
+        int best = Match.NONE;
+
+        for (Rule rule : rules) {
+            String pattern = rule.getPathMatch();
+            boolean anchored = pattern.endsWith("$");
+            String body = anchored ? pattern.substring(0, pattern.length() - 1) : pattern;
+
+            StringBuilder regex = new StringBuilder();
+            for (String part : body.split("\\*", -1)) {
+                if (regex.length() > 0) {
+                    regex.append(".*");
+                }
+                regex.append(Pattern.quote(part));
+            }
+            regex.append(anchored ? "$" : ".*");
+
+            if (Pattern.compile(regex.toString(), Pattern.DOTALL).matcher(path).matches()) {
+                best = Math.max(best, Match.of(pattern.length(), rule.getRuleType()));
+            }
+        }
+
+        return best;
+    }
+}
@@ -45,4 +45,74 @@ public class RuleTrieTest {
         // Assert
         assertEquals(ruleTrie.getRoot().getClass(), TrieNode.class);
     }
+
+    @Test
+    public void findLongestMatch_nestedRules_returnsLongestPrefix() {
+        // Arrange
+        Set<Rule> rules = new HashSet<>(5);
+        rules.add(new Rule(RuleType.DISALLOW, "/"));
+        rules.add(new Rule(RuleType.ALLOW, "/foo"));
+        rules.add(new Rule(RuleType.DISALLOW, "/foo/bar"));
+        rules.add(new Rule(RuleType.ALLOW, "/fop"));
+        rules.add(new Rule(RuleType.ALLOW, "/baz/biz"));
+
+        RuleTrie ruleTrie = RuleTrie.build(rules);
+
+        // Act / Assert
+        assertEquals(new Rule(RuleType.DISALLOW, "/"), ruleTrie.findLongestMatch("/"));
+        assertEquals(new Rule(RuleType.DISALLOW, "/"), ruleTrie.findLongestMatch("/fo"));
+        assertEquals(new Rule(RuleType.ALLOW, "/foo"), ruleTrie.findLongestMatch("/foo"));
+        assertEquals(new Rule(RuleType.ALLOW, "/foo"), ruleTrie.findLongestMatch("/foo/ba"));
+        assertEquals(new Rule(RuleType.DISALLOW, "/foo/bar"), ruleTrie.findLongestMatch("/foo/bar/baz.html"));
+        assertEquals(new Rule(RuleType.ALLOW, "/fop"), ruleTrie.findLongestMatch("/fopx"));
+        assertEquals(new Rule(RuleType.DISALLOW, "/"), ruleTrie.findLongestMatch("/baz/bi"));
+        assertEquals(new Rule(RuleType.ALLOW, "/baz/biz"), ruleTrie.findLongestMatch("/baz/biz"));
+    }
+
+    @Test
+    public void findLongestMatch_noMatchingRule_returnsNull() {
+        // Arrange
+        Set<Rule> rules = new HashSet<>(2);
+        rules.add(new Rule(RuleType.DISALLOW, "/private"));
+        rules.add(new Rule(RuleType.DISALLOW, "/priv/"));
+
+        RuleTrie ruleTrie = RuleTrie.build(rules);
+
+        // Act / Assert
+        assertNull(ruleTrie.findLongestMatch("/public"));
+        assertNull(ruleTrie.findLongestMatch("/priv"));
+        assertNull(ruleTrie.findLongestMatch("/privat"));
+        assertNull(ruleTrie.findLongestMatch(""));
+    }
+
+    @Test
+    public void findLongestMatch_allowAndDisallowSamePath_prefersAllow() {
+        // Arrange
+        Set<Rule> rules = new HashSet<>(2);
+        rules.add(new Rule(RuleType.DISALLOW, "/page"));
+        rules.add(new Rule(RuleType.ALLOW, "/page"));
+
+        RuleTrie ruleTrie = RuleTrie.build(rules);
+
+        // Act
+        Rule match = ruleTrie.findLongestMatch("/page.html");
+
+        // Assert
+        assertEquals(RuleType.ALLOW, match.getRuleType());
+    }
+
+    @Test
+    public void build_rulesWithoutLeadingSlashOrEmpty_standardizesPaths() {
+        // Arrange
+        Set<Rule> rules = new HashSet<>(2);
+        rules.add(new Rule(RuleType.DISALLOW, "tmp"));
+        rules.add(new Rule(RuleType.DISALLOW, ""));
+
+        // Act
+        RuleTrie ruleTrie = RuleTrie.build(rules);
+
+        // Assert
+        assertEquals(new Rule(RuleType.DISALLOW, "/tmp"), ruleTrie.findLongestMatch("/tmp/file"));
+        assertNull(ruleTrie.findLongestMatch("/other"));
+    }
 }
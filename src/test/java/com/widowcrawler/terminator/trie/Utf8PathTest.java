@@ -0,0 +1,96 @@
+/**
+ * Copyright 2015 Scott Mansfield
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.widowcrawler.terminator.trie;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Scott Mansfield
+ */
+public class Utf8PathTest {
+
+    @Test
+    public void wrapUrl_fullUrl_viewsPathAndQuery() {
+        // Arrange
+        Utf8Path path = new Utf8Path();
+
+        // Act / Assert
+        assertThat(url(path, "https://example.com:8080/a/b?c=d#e"), is("/a/b?c=d#e"));
+        assertThat(url(path, "http://user@example.com?q"), is("?q"));
+        assertThat(url(path, "//example.com/a"), is("/a"));
+        assertThat(url(path, "https://example.com"), is(""));
+        assertThat(url(path, "/a?next=http://example.com/b"), is("/a?next=http://example.com/b"));
+        assertThat(url(path, "/"), is("/"));
+    }
+
+    @Test
+    public void wrapUrl_slice_viewsOnlyTheSlice() {
+        // Arrange
+        byte[] bytes = "<a href=\"http://example.com/page\">".getBytes(StandardCharsets.US_ASCII);
+        Utf8Path path = new Utf8Path();
+
+        // Act
+        path.wrapUrl(bytes, 9, 23);
+
+        // Assert
+        assertThat(path.toString(), is("/page"));
+        assertThat(path.length(), is(5));
+        assertThat(path.charAt(1), is('p'));
+    }
+
+    @Test
+    public void wrap_nonAscii_readsPercentEscapes() {
+        // Arrange
+        byte[] bytes = "/caf\u00e9/x".getBytes(StandardCharsets.UTF_8);
+        Utf8Path path = new Utf8Path();
+
+        // Act
+        path.wrap(bytes, 0, bytes.length);
+
+        // Assert
+        assertThat(path.toString(), is("/caf%C3%A9/x"));
+        assertThat(path.toString(), is(PathNormalizer.normalizeRequest("/caf\u00e9/x").toString()));
+    }
+
+    @Test
+    public void wrapUrl_directBuffer_readsInPlaceWithoutMovingPosition() {
+        // Arrange
+        byte[] bytes = "xxhttp://example.com/\u00fcber?q=1yy".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.position(2).limit(bytes.length - 2);
+        Utf8Path path = new Utf8Path();
+
+        // Act
+        path.wrapUrl(buffer);
+
+        // Assert
+        assertThat(path.toString(), is("/%C3%BCber?q=1"));
+        assertThat(buffer.position(), is(2));
+        assertThat(buffer.limit(), is(bytes.length - 2));
+    }
+
+    private static String url(Utf8Path path, String url) {
+        byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+        return path.wrapUrl(bytes, 0, bytes.length).toString();
+    }
+}